@@ -10,6 +10,7 @@ import com.lemon.supershop.swp391fa25evdm.role.repository.RoleRepo;
 import com.lemon.supershop.swp391fa25evdm.user.model.entity.User;
 import com.lemon.supershop.swp391fa25evdm.user.model.enums.UserStatus;
 import com.lemon.supershop.swp391fa25evdm.user.repository.UserRepo;
+import com.lemon.supershop.swp391fa25evdm.user.service.DealerStaffRosterCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
@@ -36,6 +37,9 @@ public class AuthenService {
     @Autowired
     private OtpService otpService;
 
+    @Autowired
+    private DealerStaffRosterCache dealerStaffRosterCache;
+
     private static final Pattern EMAIL_PATTERN =
             Pattern.compile("^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,6}$", Pattern.CASE_INSENSITIVE);
 
@@ -218,6 +222,7 @@ public class AuthenService {
                 newUser.setStatus(UserStatus.ACTIVE);
                 newUser.setEmailVerified(true);
                 userRepo.save(newUser);
+                dealerStaffRosterCache.invalidate(newUser.getDealer() != null ? newUser.getDealer().getId() : null);
                 // Không gửi OTP vì admin đã verify
             } else {
                 // User tự đăng ký: Đặt trạng thái là INACTIVE cho đến khi xác thực email
@@ -248,6 +253,7 @@ public class AuthenService {
         user.setEmailVerified(true);
         user.setStatus(UserStatus.ACTIVE);
         userRepo.save(user);
+        dealerStaffRosterCache.invalidate(user.getDealer() != null ? user.getDealer().getId() : null);
     }
     
     public void resendOtp(String email, String type) {
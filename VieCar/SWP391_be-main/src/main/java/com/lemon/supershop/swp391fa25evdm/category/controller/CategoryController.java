@@ -12,8 +12,10 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.lemon.supershop.swp391fa25evdm.category.model.dto.CategoryPriceAggregateRes;
 import com.lemon.supershop.swp391fa25evdm.category.model.dto.CategoryReq;
 import com.lemon.supershop.swp391fa25evdm.category.model.dto.CategoryRes;
 import com.lemon.supershop.swp391fa25evdm.category.service.CategoryService;
@@ -116,4 +118,11 @@ public class CategoryController {
         List<CategoryRes> categories = categoryService.getCategoriesByDealerId(dealerId);
         return ResponseEntity.ok(categories);
     }
+
+    // Thống kê giá hãng (max/min/avg) theo category + màu; categoryId bỏ trống = tất cả
+    @GetMapping("/price-aggregates")
+    public ResponseEntity<List<CategoryPriceAggregateRes>> getPriceAggregates(@RequestParam(required = false) Integer categoryId) {
+        List<CategoryPriceAggregateRes> aggregates = categoryService.getPriceAggregates(categoryId);
+        return ResponseEntity.ok(aggregates);
+    }
 }
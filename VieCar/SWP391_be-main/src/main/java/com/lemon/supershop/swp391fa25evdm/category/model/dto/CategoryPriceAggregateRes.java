@@ -0,0 +1,71 @@
+package com.lemon.supershop.swp391fa25evdm.category.model.dto;
+
+import java.time.LocalDateTime;
+
+public class CategoryPriceAggregateRes {
+    private int categoryId;
+    private String color;
+    private long maxPrice;
+    private long minPrice;
+    private long avgPrice;
+    private long unitCount;
+    private LocalDateTime updatedAt;
+
+    public CategoryPriceAggregateRes() {}
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(int categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
+    public long getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(long maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public long getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(long minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public long getAvgPrice() {
+        return avgPrice;
+    }
+
+    public void setAvgPrice(long avgPrice) {
+        this.avgPrice = avgPrice;
+    }
+
+    public long getUnitCount() {
+        return unitCount;
+    }
+
+    public void setUnitCount(long unitCount) {
+        this.unitCount = unitCount;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,72 @@
+package com.lemon.supershop.swp391fa25evdm.category.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+// Thống kê giá hãng theo (category, màu) - cập nhật cộng dồn mỗi lần distribution hoàn tất (MERGE)
+@Entity
+@Table(name = "category_price_aggregate", uniqueConstraints = {
+        @UniqueConstraint(name = "UK_category_price_aggregate_category_color", columnNames = {"CategoryId", "Color"})
+})
+public class CategoryPriceAggregate {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id", columnDefinition = "BIGINT")
+    private long id;
+
+    @Column(name = "CategoryId", nullable = false)
+    private int categoryId;
+
+    @Column(name = "Color", columnDefinition = "NVARCHAR(20) DEFAULT N'' NOT NULL")
+    private String color; // '' khi item không có màu
+
+    @Column(name = "MaxPrice", columnDefinition = "BIGINT")
+    private long maxPrice;
+
+    @Column(name = "MinPrice", columnDefinition = "BIGINT")
+    private long minPrice;
+
+    @Column(name = "PriceSum", columnDefinition = "BIGINT")
+    private long priceSum; // tổng giá * số xe, dùng để tính giá trung bình
+
+    @Column(name = "UnitCount", columnDefinition = "BIGINT")
+    private long unitCount;
+
+    @Column(name = "UpdatedAt", columnDefinition = "DATETIME2")
+    private LocalDateTime updatedAt;
+
+    public CategoryPriceAggregate() {}
+
+    public long getId() {
+        return id;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public long getMaxPrice() {
+        return maxPrice;
+    }
+
+    public long getMinPrice() {
+        return minPrice;
+    }
+
+    public long getPriceSum() {
+        return priceSum;
+    }
+
+    public long getUnitCount() {
+        return unitCount;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
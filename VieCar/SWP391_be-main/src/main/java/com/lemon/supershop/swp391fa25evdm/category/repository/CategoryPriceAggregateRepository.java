@@ -0,0 +1,78 @@
+package com.lemon.supershop.swp391fa25evdm.category.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.CategoryPriceAggregate;
+
+@Repository
+public interface CategoryPriceAggregateRepository extends JpaRepository<CategoryPriceAggregate, Long> {
+
+    // Giá từng dòng của 1 distribution: category lấy từ product mẫu hoặc categoryId của item,
+    // giá = DealerPrice của item, fallback ManufacturerPrice của distribution
+    String DISTRIBUTION_ITEM_PRICES =
+            "SELECT COALESCE(p.category_id, di.category_id) AS category_id, " +
+            "       COALESCE(di.color, N'') AS color, " +
+            "       CAST(COALESCE(di.dealer_price, d.manufacturer_price) AS BIGINT) AS price, " +
+            "       COALESCE(di.approved_quantity, di.quantity, 0) AS units " +
+            "FROM distribution_item di " +
+            "JOIN distribution d ON d.id = di.distribution_id " +
+            "LEFT JOIN product p ON p.id = di.product_id " +
+            "WHERE di.distribution_id = :distributionId";
+
+    // Giá cao nhất của distribution theo từng category
+    String DISTRIBUTION_CATEGORY_MAX =
+            "SELECT x.category_id, MAX(x.price) AS max_price " +
+            "FROM (" + DISTRIBUTION_ITEM_PRICES + ") x " +
+            "WHERE x.category_id IS NOT NULL AND x.price > 0 " +
+            "GROUP BY x.category_id";
+
+    // Cộng dồn giá của 1 distribution vào bảng thống kê - 1 câu MERGE cho toàn bộ items
+    @Modifying(flushAutomatically = true)
+    @Query(value =
+            "MERGE category_price_aggregate WITH (HOLDLOCK) AS t " +
+            "USING (" +
+            "    SELECT x.category_id, x.color, MAX(x.price) AS max_price, MIN(x.price) AS min_price, " +
+            "           SUM(x.price * x.units) AS price_sum, SUM(CAST(x.units AS BIGINT)) AS unit_count " +
+            "    FROM (" + DISTRIBUTION_ITEM_PRICES + ") x " +
+            "    WHERE x.category_id IS NOT NULL AND x.price > 0 AND x.units > 0 " +
+            "    GROUP BY x.category_id, x.color" +
+            ") AS s " +
+            "ON t.category_id = s.category_id AND t.color = s.color " +
+            "WHEN MATCHED THEN UPDATE SET " +
+            "    t.max_price = CASE WHEN s.max_price > t.max_price THEN s.max_price ELSE t.max_price END, " +
+            "    t.min_price = CASE WHEN s.min_price < t.min_price THEN s.min_price ELSE t.min_price END, " +
+            "    t.price_sum = t.price_sum + s.price_sum, " +
+            "    t.unit_count = t.unit_count + s.unit_count, " +
+            "    t.updated_at = SYSDATETIME() " +
+            "WHEN NOT MATCHED THEN INSERT (category_id, color, max_price, min_price, price_sum, unit_count, updated_at) " +
+            "    VALUES (s.category_id, s.color, s.max_price, s.min_price, s.price_sum, s.unit_count, SYSDATETIME());",
+            nativeQuery = true)
+    int mergeFromDistribution(@Param("distributionId") int distributionId);
+
+    // Category.basePrice = giá cao nhất của distribution (khi EVM duyệt / gửi lại giá)
+    @Modifying(flushAutomatically = true)
+    @Query(value =
+            "UPDATE c SET c.base_price = s.max_price " +
+            "FROM category c JOIN (" + DISTRIBUTION_CATEGORY_MAX + ") s ON s.category_id = c.id",
+            nativeQuery = true)
+    int setBasePriceFromDistribution(@Param("distributionId") int distributionId);
+
+    // Chỉ nâng Category.basePrice nếu giá cao nhất của distribution cao hơn giá hiện tại (khi nhận hàng)
+    @Modifying(flushAutomatically = true)
+    @Query(value =
+            "UPDATE c SET c.base_price = s.max_price " +
+            "FROM category c JOIN (" + DISTRIBUTION_CATEGORY_MAX + ") s ON s.category_id = c.id " +
+            "WHERE s.max_price > c.base_price",
+            nativeQuery = true)
+    int raiseBasePriceFromDistribution(@Param("distributionId") int distributionId);
+
+    List<CategoryPriceAggregate> findByCategoryIdOrderByColorAsc(int categoryId);
+
+    List<CategoryPriceAggregate> findAllByOrderByCategoryIdAscColorAsc();
+}
@@ -1,6 +1,9 @@
 package com.lemon.supershop.swp391fa25evdm.category.service;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -8,9 +11,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.lemon.supershop.swp391fa25evdm.category.model.dto.CategoryPriceAggregateRes;
 import com.lemon.supershop.swp391fa25evdm.category.model.dto.CategoryReq;
 import com.lemon.supershop.swp391fa25evdm.category.model.dto.CategoryRes;
 import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.CategoryPriceAggregate;
+import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryPriceAggregateRepository;
 import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryRepository;
 import com.lemon.supershop.swp391fa25evdm.dealer.repository.DealerRepo;
 
@@ -24,6 +30,9 @@ public class CategoryService {
     @Autowired
     private DealerRepo dealerRepo;
 
+    @Autowired
+    private CategoryPriceAggregateRepository categoryPriceAggregateRepository;
+
     public List<CategoryRes> getAllCategories() {
         List<Category> categories = categoryRepository.findAll();
         return categories.stream().map(this::convertToRes).toList();
@@ -42,6 +51,18 @@ public class CategoryService {
         return null;
     }
 
+    // Load nhiều category bằng 1 IN query, trả về map id -> CategoryRes
+    public Map<Integer, CategoryRes> getCategoriesByIds(Collection<Integer> ids) {
+        Map<Integer, CategoryRes> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+        for (Category category : categoryRepository.findAllById(ids)) {
+            result.put(category.getId(), convertToRes(category));
+        }
+        return result;
+    }
+
     public CategoryRes createCategory(CategoryReq dto) {
         if (dto == null) {
             throw new IllegalArgumentException("Category data cannot be null");
@@ -220,4 +241,25 @@ public class CategoryService {
             return null;
         }
     }
+
+    // Thống kê giá hãng theo màu - đọc trực tiếp từ bảng aggregate, không quét distribution_item
+    @Transactional(readOnly = true)
+    public List<CategoryPriceAggregateRes> getPriceAggregates(Integer categoryId) {
+        List<CategoryPriceAggregate> aggregates = (categoryId != null)
+                ? categoryPriceAggregateRepository.findByCategoryIdOrderByColorAsc(categoryId)
+                : categoryPriceAggregateRepository.findAllByOrderByCategoryIdAscColorAsc();
+        return aggregates.stream().map(this::convertToAggregateRes).toList();
+    }
+
+    private CategoryPriceAggregateRes convertToAggregateRes(CategoryPriceAggregate aggregate) {
+        CategoryPriceAggregateRes res = new CategoryPriceAggregateRes();
+        res.setCategoryId(aggregate.getCategoryId());
+        res.setColor(aggregate.getColor());
+        res.setMaxPrice(aggregate.getMaxPrice());
+        res.setMinPrice(aggregate.getMinPrice());
+        res.setAvgPrice(aggregate.getUnitCount() > 0 ? aggregate.getPriceSum() / aggregate.getUnitCount() : 0L);
+        res.setUnitCount(aggregate.getUnitCount());
+        res.setUpdatedAt(aggregate.getUpdatedAt());
+        return res;
+    }
 }
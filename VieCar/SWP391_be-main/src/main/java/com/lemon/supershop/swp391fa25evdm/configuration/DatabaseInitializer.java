@@ -1,5 +1,6 @@
 package com.lemon.supershop.swp391fa25evdm.configuration;
 
+import com.lemon.supershop.swp391fa25evdm.product.service.VehicleCodeAllocator;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -24,5 +25,16 @@ public class DatabaseInitializer {
         } catch (Exception e) {
             System.out.println("⚠️ Could not drop constraint (might not exist): " + e.getMessage());
         }
+
+        try {
+            // Sequence cấp block mã VIN/ENG (INCREMENT BY = VehicleCodeAllocator.BLOCK_SIZE)
+            String createSequenceSql =
+                "IF NOT EXISTS (SELECT * FROM sys.sequences WHERE name = 'vehicle_code_seq') " +
+                "CREATE SEQUENCE vehicle_code_seq AS BIGINT START WITH 1 INCREMENT BY " + VehicleCodeAllocator.BLOCK_SIZE;
+
+            jdbcTemplate.execute(createSequenceSql);
+        } catch (Exception e) {
+            System.out.println("⚠️ Could not create sequence vehicle_code_seq: " + e.getMessage());
+        }
     }
 }
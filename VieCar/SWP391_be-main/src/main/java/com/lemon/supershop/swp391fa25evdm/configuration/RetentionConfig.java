@@ -0,0 +1,70 @@
+package com.lemon.supershop.swp391fa25evdm.configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+// Cấu hình job dọn dữ liệu: retention.chunk-size, retention.entities.<tên>.enabled/days/archive
+@Configuration
+@ConfigurationProperties(prefix = "retention")
+public class RetentionConfig {
+    private boolean enabled = true;
+    private int chunkSize = 1000;
+    private Map<String, EntityPolicy> entities = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public Map<String, EntityPolicy> getEntities() {
+        return entities;
+    }
+
+    public void setEntities(Map<String, EntityPolicy> entities) {
+        this.entities = entities;
+    }
+
+    public static class EntityPolicy {
+        private Boolean enabled;
+        private Integer days;
+        private Boolean archive;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Integer getDays() {
+            return days;
+        }
+
+        public void setDays(Integer days) {
+            this.days = days;
+        }
+
+        public Boolean getArchive() {
+            return archive;
+        }
+
+        public void setArchive(Boolean archive) {
+            this.archive = archive;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.lemon.supershop.swp391fa25evdm.contract.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,5 +22,9 @@ public interface ContractRepo extends JpaRepository<Contract, Integer> {
     @Query("SELECT c FROM Contract c JOIN c.order o WHERE o.id = :orderId")
     List<Contract> findByOrderId(@Param("orderId") int orderId);
     
+    // Hợp đồng của cả 1 trang đơn hàng trong 1 query
+    @Query("SELECT c FROM Contract c JOIN FETCH c.order o WHERE o.id IN :orderIds")
+    List<Contract> findByOrderIdIn(@Param("orderIds") Collection<Integer> orderIds);
+
     List<Contract> findByStatus(String status);
 }
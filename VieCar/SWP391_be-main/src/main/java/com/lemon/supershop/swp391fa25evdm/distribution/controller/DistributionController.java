@@ -17,6 +17,12 @@ public class DistributionController {
     @Autowired
     private DistributionService distributionService;
 
+    // Lọc theo status/dealerId/from/to, sắp xếp theo createdAt (direction) và phân trang keyset (cursorCreatedAt + cursorId)
+    @GetMapping
+    public ResponseEntity<DistributionPageRes> searchDistributions(DistributionSearchReq request) {
+        return ResponseEntity.ok(distributionService.searchDistributions(request));
+    }
+
     @GetMapping("/listDistributions")
     public ResponseEntity<List<DistributionRes>> getAllDistributions() {
         List<DistributionRes> distributions = distributionService.getAllDistributions();
@@ -32,6 +38,12 @@ public class DistributionController {
         }
     }
 
+    // Lịch sử chuyển trạng thái (append-only)
+    @GetMapping("/{id}/transitions")
+    public ResponseEntity<List<DistributionTransitionRes>> getDistributionTransitions(@PathVariable int id) {
+        return ResponseEntity.ok(distributionService.getDistributionTransitions(id));
+    }
+
     // ❌ Xóa endpoint không dùng
     // @GetMapping("/search/category/{categoryId}")
     // public ResponseEntity<List<DistributionRes>> getDistributionsByCategory(@PathVariable int categoryId) {
@@ -217,4 +229,17 @@ public class DistributionController {
             ));
         }
     }
+
+    // Tạo đơn bổ sung cho tất cả đơn gốc còn thiếu hàng của 1 dealer
+    @PostMapping("/dealer/{dealerId}/create-supplementary")
+    public ResponseEntity<?> createSupplementaryDistributionsForDealer(@PathVariable int dealerId) {
+        try {
+            List<DistributionRes> response = distributionService.createSupplementaryDistributionsForDealer(dealerId);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(java.util.Map.of(
+                    "message", e.getMessage() != null ? e.getMessage() : "Bad Request"
+            ));
+        }
+    }
 }
@@ -12,6 +12,7 @@ public class DistributionItemRes {
     private String color;
     private Integer quantity;
     private Integer approvedQuantity; // Số lượng EVM duyệt
+    private Integer shortfallQuantity; // Số lượng thiếu chưa tạo đơn bổ sung
     private BigDecimal dealerPrice;
 
     public DistributionItemRes() {}
@@ -56,6 +57,14 @@ public class DistributionItemRes {
         this.approvedQuantity = approvedQuantity;
     }
 
+    public Integer getShortfallQuantity() {
+        return shortfallQuantity;
+    }
+
+    public void setShortfallQuantity(Integer shortfallQuantity) {
+        this.shortfallQuantity = shortfallQuantity;
+    }
+
     public BigDecimal getDealerPrice() {
         return dealerPrice;
     }
@@ -0,0 +1,46 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.model.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// 1 trang kết quả keyset: gửi lại nextCursorCreatedAt + nextCursorId để lấy trang tiếp theo
+public class DistributionPageRes {
+    private List<DistributionRes> content;
+    private boolean hasNext;
+    private LocalDateTime nextCursorCreatedAt;
+    private Integer nextCursorId;
+
+    public DistributionPageRes() {}
+
+    public List<DistributionRes> getContent() {
+        return content;
+    }
+
+    public void setContent(List<DistributionRes> content) {
+        this.content = content;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    public LocalDateTime getNextCursorCreatedAt() {
+        return nextCursorCreatedAt;
+    }
+
+    public void setNextCursorCreatedAt(LocalDateTime nextCursorCreatedAt) {
+        this.nextCursorCreatedAt = nextCursorCreatedAt;
+    }
+
+    public Integer getNextCursorId() {
+        return nextCursorId;
+    }
+
+    public void setNextCursorId(Integer nextCursorId) {
+        this.nextCursorId = nextCursorId;
+    }
+}
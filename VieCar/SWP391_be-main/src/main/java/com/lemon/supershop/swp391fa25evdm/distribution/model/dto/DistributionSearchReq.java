@@ -0,0 +1,91 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.model.dto;
+
+import java.time.LocalDateTime;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+// Query params cho GET /api/distributions (lọc + keyset pagination trên (createdAt, id))
+public class DistributionSearchReq {
+    private String status;
+    private Integer dealerId;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from; // createdAt >= from
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;   // createdAt < to
+
+    private String direction = "DESC"; // DESC (mới nhất trước) hoặc ASC
+    private Integer size = 20;
+
+    // Cursor = (createdAt, id) của dòng cuối trang trước; bỏ trống để lấy trang đầu
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime cursorCreatedAt;
+    private Integer cursorId;
+
+    public DistributionSearchReq() {}
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getDealerId() {
+        return dealerId;
+    }
+
+    public void setDealerId(Integer dealerId) {
+        this.dealerId = dealerId;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+
+    public String getDirection() {
+        return direction;
+    }
+
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+
+    public LocalDateTime getCursorCreatedAt() {
+        return cursorCreatedAt;
+    }
+
+    public void setCursorCreatedAt(LocalDateTime cursorCreatedAt) {
+        this.cursorCreatedAt = cursorCreatedAt;
+    }
+
+    public Integer getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(Integer cursorId) {
+        this.cursorId = cursorId;
+    }
+}
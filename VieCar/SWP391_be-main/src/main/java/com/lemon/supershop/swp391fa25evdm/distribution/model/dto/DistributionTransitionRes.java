@@ -0,0 +1,53 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.model.dto;
+
+import java.time.LocalDateTime;
+
+public class DistributionTransitionRes {
+    private String fromStatus;
+    private String toStatus;
+    private long version;
+    private String note;
+    private LocalDateTime createdAt;
+
+    public DistributionTransitionRes() {}
+
+    public String getFromStatus() {
+        return fromStatus;
+    }
+
+    public void setFromStatus(String fromStatus) {
+        this.fromStatus = fromStatus;
+    }
+
+    public String getToStatus() {
+        return toStatus;
+    }
+
+    public void setToStatus(String toStatus) {
+        this.toStatus = toStatus;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
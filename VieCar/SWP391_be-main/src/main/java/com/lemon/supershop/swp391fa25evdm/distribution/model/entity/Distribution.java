@@ -10,7 +10,12 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "distribution")
+@Table(name = "distribution", indexes = {
+        // Keyset pagination trên (CreatedAt, Id) + các filter thường dùng trên dashboard
+        @Index(name = "IX_distribution_created_id", columnList = "CreatedAt, Id"),
+        @Index(name = "IX_distribution_dealer_created", columnList = "DealerId, CreatedAt, Id"),
+        @Index(name = "IX_distribution_status_created", columnList = "Status, CreatedAt, Id")
+})
 public class Distribution {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -20,6 +25,11 @@ public class Distribution {
     @Column(name = "Status", columnDefinition = "VARCHAR(20)")
     private String status; // INVITED, ACCEPTED, DECLINED, PENDING, CONFIRMED, CANCELED, PRICE_SENT, PRICE_ACCEPTED, PRICE_REJECTED, PLANNED, COMPLETED
 
+    // Optimistic lock - mọi UPDATE đều kèm WHERE Version = ? (xem DistributionStateMachine)
+    @Version
+    @Column(name = "Version", columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private long version;
+
     @Column(name = "ManufacturerPrice")
     private Double manufacturerPrice; // Giá hãng gửi cho dealer
 
@@ -131,6 +141,10 @@ public class Distribution {
         return status;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public void setStatus(String status) {
         this.status = status;
     }
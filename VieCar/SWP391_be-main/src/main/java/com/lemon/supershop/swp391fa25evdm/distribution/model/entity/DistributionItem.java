@@ -33,6 +33,10 @@ public class DistributionItem {
     @Column(name = "ApprovedQuantity", columnDefinition = "INT")
     private Integer approvedQuantity;
 
+    // Số lượng thiếu (quantity - approvedQuantity) chưa được tạo đơn bổ sung; về 0 sau khi tạo đơn bổ sung
+    @Column(name = "ShortfallQuantity", columnDefinition = "INT")
+    private Integer shortfallQuantity;
+
     // Dealer Price per line (đơn giá hãng bán cho đại lý)
     @Column(name = "DealerPrice", precision = 18, scale = 2)
     private BigDecimal dealerPrice;
@@ -87,6 +91,21 @@ public class DistributionItem {
         this.approvedQuantity = approvedQuantity;
     }
 
+    public Integer getShortfallQuantity() {
+        return shortfallQuantity;
+    }
+
+    public void setShortfallQuantity(Integer shortfallQuantity) {
+        this.shortfallQuantity = shortfallQuantity;
+    }
+
+    // Cập nhật số lượng duyệt và số lượng thiếu tương ứng
+    public void approve(int approved) {
+        this.approvedQuantity = approved;
+        int requested = this.quantity != null ? this.quantity : 0;
+        this.shortfallQuantity = Math.max(0, requested - approved);
+    }
+
     public BigDecimal getDealerPrice() {
         return dealerPrice;
     }
@@ -0,0 +1,78 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+// Log chỉ ghi thêm (append-only) cho mỗi lần đổi trạng thái distribution
+@Entity
+@Table(name = "distribution_transition", indexes = {
+        @Index(name = "IX_distribution_transition_distribution", columnList = "DistributionId, Id")
+})
+public class DistributionTransition {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id", columnDefinition = "BIGINT")
+    private long id;
+
+    @Column(name = "DistributionId", nullable = false, updatable = false)
+    private int distributionId;
+
+    @Column(name = "FromStatus", columnDefinition = "VARCHAR(20)", updatable = false)
+    private String fromStatus; // null khi distribution vừa được tạo
+
+    @Column(name = "ToStatus", columnDefinition = "VARCHAR(20)", nullable = false, updatable = false)
+    private String toStatus;
+
+    @Column(name = "Version", updatable = false)
+    private long version; // version của distribution sau khi chuyển trạng thái
+
+    @Column(name = "Note", columnDefinition = "NVARCHAR(500)", updatable = false)
+    private String note;
+
+    @Column(name = "CreatedAt", columnDefinition = "DATETIME2", updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public DistributionTransition() {}
+
+    public DistributionTransition(int distributionId, String fromStatus, String toStatus, long version, String note) {
+        this.distributionId = distributionId;
+        this.fromStatus = fromStatus;
+        this.toStatus = toStatus;
+        this.version = version;
+        this.note = note;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getDistributionId() {
+        return distributionId;
+    }
+
+    public String getFromStatus() {
+        return fromStatus;
+    }
+
+    public String getToStatus() {
+        return toStatus;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,44 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.model.enums;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+// Vòng đời distribution: INVITED → ACCEPTED → PENDING → PRICE_SENT ⇄ PRICE_REJECTED → CONFIRMED → PLANNED → COMPLETED
+public enum DistributionStatus {
+    INVITED,
+    ACCEPTED,
+    DECLINED,
+    PENDING,
+    PRICE_SENT,
+    PRICE_REJECTED,
+    CONFIRMED,
+    PLANNED,
+    COMPLETED,
+    CANCELED;
+
+    public Set<DistributionStatus> next() {
+        return switch (this) {
+            case INVITED -> EnumSet.of(ACCEPTED, DECLINED);
+            case ACCEPTED -> EnumSet.of(PENDING);
+            case PENDING -> EnumSet.of(PRICE_SENT, CANCELED, DECLINED);
+            case PRICE_SENT -> EnumSet.of(CONFIRMED, PRICE_REJECTED);
+            case PRICE_REJECTED -> EnumSet.of(PRICE_SENT);
+            case CONFIRMED -> EnumSet.of(PLANNED);
+            case PLANNED -> EnumSet.of(COMPLETED);
+            default -> EnumSet.noneOf(DistributionStatus.class);
+        };
+    }
+
+    public boolean canTransitionTo(DistributionStatus target) {
+        return next().contains(target);
+    }
+
+    // Giá trị từ request (response / decision) - không hợp lệ → IllegalArgumentException (400)
+    public static DistributionStatus from(String status) {
+        try {
+            return DistributionStatus.valueOf(status);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid distribution status: " + status);
+        }
+    }
+}
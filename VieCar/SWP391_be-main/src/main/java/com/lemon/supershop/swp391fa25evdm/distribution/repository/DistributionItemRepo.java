@@ -0,0 +1,39 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionItem;
+
+@Repository
+public interface DistributionItemRepo extends JpaRepository<DistributionItem, Integer> {
+
+    // Số lượng thiếu còn lại = ShortfallQuantity; dòng cũ (chưa có cột) tính từ Quantity - ApprovedQuantity
+    String REMAINING_SHORTFALL = "COALESCE(di.shortfallQuantity, di.quantity - di.approvedQuantity)";
+
+    @Query("SELECT di FROM DistributionItem di LEFT JOIN FETCH di.product " +
+           "WHERE di.distribution.id = :distributionId AND " + REMAINING_SHORTFALL + " > 0 " +
+           "ORDER BY di.id")
+    List<DistributionItem> findShortfallItems(@Param("distributionId") int distributionId);
+
+    // Tất cả dòng còn thiếu của 1 dealer (chỉ các đơn gốc đã được duyệt) - dùng cho tạo đơn bổ sung hàng loạt
+    @Query("SELECT di FROM DistributionItem di JOIN FETCH di.distribution d LEFT JOIN FETCH di.product " +
+           "WHERE d.dealer.id = :dealerId AND d.status IN :statuses " +
+           "AND " + REMAINING_SHORTFALL + " > 0 " +
+           "ORDER BY d.id, di.id")
+    List<DistributionItem> findShortfallItemsByDealer(@Param("dealerId") int dealerId,
+                                                      @Param("statuses") Collection<String> statuses);
+
+    // Nhận các dòng còn thiếu để tạo đơn bổ sung: chỉ dòng chưa được nhận mới bị đổi,
+    // số dòng trả về < số id → request khác đã nhận trước (tránh tạo trùng)
+    @Modifying
+    @Query("UPDATE DistributionItem di SET di.shortfallQuantity = 0 " +
+           "WHERE di.id IN :ids AND " + REMAINING_SHORTFALL + " > 0")
+    int clearShortfall(@Param("ids") Collection<Integer> ids);
+}
@@ -2,17 +2,27 @@ package com.lemon.supershop.swp391fa25evdm.distribution.repository;
 
 import java.util.List;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
 
 @Repository
-public interface DistributionRepo extends JpaRepository<Distribution, Integer> {
+public interface DistributionRepo extends JpaRepository<Distribution, Integer>, JpaSpecificationExecutor<Distribution> {
 
     // ❌ Xóa query không dùng
     // List<Distribution> findByCategoryId(int categoryId);
 
+    // Load dealer + items + product của item trong 1 query (tránh N+1 khi build DistributionRes).
+    // installmentPlan của product (OneToOne phía mappedBy, luôn eager) cũng phải join, nếu không sẽ query từng xe
+    @EntityGraph(attributePaths = {"dealer", "items", "items.product", "items.product.installmentPlan"})
+    @Query("SELECT d FROM Distribution d")
+    List<Distribution> findAllWithItems();
+
+    @EntityGraph(attributePaths = {"dealer", "items", "items.product", "items.product.installmentPlan"})
     List<Distribution> findByDealerId(int dealerId);
 
     // ❌ Xóa query không dùng Contract
@@ -0,0 +1,43 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
+
+// Điều kiện lọc cho DistributionRepo - chỉ thêm predicate khi có giá trị để SQL Server dùng đúng index
+public final class DistributionSpecs {
+
+    private DistributionSpecs() {}
+
+    public static Specification<Distribution> hasStatus(String status) {
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Distribution> hasDealer(int dealerId) {
+        return (root, query, cb) -> cb.equal(root.get("dealer").get("id"), dealerId);
+    }
+
+    public static Specification<Distribution> createdFrom(LocalDateTime from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("createdAt"), from);
+    }
+
+    public static Specification<Distribution> createdBefore(LocalDateTime to) {
+        return (root, query, cb) -> cb.lessThan(root.get("createdAt"), to);
+    }
+
+    // Keyset: các dòng đứng sau (createdAt, id) theo thứ tự đang sắp xếp
+    public static Specification<Distribution> after(LocalDateTime createdAt, int id, boolean ascending) {
+        return (root, query, cb) -> {
+            if (ascending) {
+                return cb.or(
+                        cb.greaterThan(root.get("createdAt"), createdAt),
+                        cb.and(cb.equal(root.get("createdAt"), createdAt), cb.greaterThan(root.get("id"), id)));
+            }
+            return cb.or(
+                    cb.lessThan(root.get("createdAt"), createdAt),
+                    cb.and(cb.equal(root.get("createdAt"), createdAt), cb.lessThan(root.get("id"), id)));
+        };
+    }
+}
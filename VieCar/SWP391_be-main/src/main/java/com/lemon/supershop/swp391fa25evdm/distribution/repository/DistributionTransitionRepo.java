@@ -0,0 +1,14 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionTransition;
+
+@Repository
+public interface DistributionTransitionRepo extends JpaRepository<DistributionTransition, Long> {
+
+    List<DistributionTransition> findByDistributionIdOrderByIdAsc(int distributionId);
+}
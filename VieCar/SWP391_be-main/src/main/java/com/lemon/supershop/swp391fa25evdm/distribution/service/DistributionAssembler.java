@@ -0,0 +1,155 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.dto.CategoryRes;
+import com.lemon.supershop.swp391fa25evdm.category.service.CategoryService;
+import com.lemon.supershop.swp391fa25evdm.dealer.model.dto.DealerRes;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionItemRes;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionRes;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionItem;
+import com.lemon.supershop.swp391fa25evdm.product.model.dto.ProductRes;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.service.ProductService;
+
+/**
+ * Build DistributionRes cho cả 1 trang distribution.
+ * Category của các item đặt theo categoryId được load 1 lần (IN query) cho cả trang,
+ * sau đó map trong bộ nhớ - không query theo từng dòng.
+ */
+@Component
+public class DistributionAssembler {
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private CategoryService categoryService;
+
+    public DistributionRes toRes(Distribution distribution) {
+        return toRes(List.of(distribution)).get(0);
+    }
+
+    public List<DistributionRes> toRes(List<Distribution> distributions) {
+        Set<Integer> categoryIds = new HashSet<>();
+        for (Distribution distribution : distributions) {
+            if (distribution.getItems() != null) {
+                for (DistributionItem di : distribution.getItems()) {
+                    if (di.getCategoryId() != null) {
+                        categoryIds.add(di.getCategoryId());
+                    }
+                }
+            }
+        }
+        Map<Integer, CategoryRes> categories = categoryService.getCategoriesByIds(categoryIds);
+
+        List<DistributionRes> result = new ArrayList<>(distributions.size());
+        for (Distribution distribution : distributions) {
+            result.add(convert(distribution, categories));
+        }
+        return result;
+    }
+
+    private DistributionRes convert(Distribution distribution, Map<Integer, CategoryRes> categories) {
+        DistributionRes res = new DistributionRes();
+        res.setId(distribution.getId());
+
+        // Generate mã phân phối cố định từ ID: PP{year}-{hash4} (ví dụ: PP2025-7K3M)
+        // Mã không đổi mỗi lần load vì hash từ ID
+        int year = java.time.Year.now().getValue();
+        String hashCode = generateCodeFromId(distribution.getId());
+        String code = String.format("PP%d-%s", year, hashCode);
+        res.setCode(code);
+
+        res.setStatus(distribution.getStatus());
+
+        // Convert Dealer
+        if (distribution.getDealer() != null) {
+            DealerRes dealerRes = new DealerRes();
+            dealerRes.setId(distribution.getDealer().getId());
+            dealerRes.setName(distribution.getDealer().getName());
+            res.setDealer(dealerRes);
+        }
+
+        // Convert Products (legacy)
+        if (distribution.getProducts() != null && !distribution.getProducts().isEmpty()) {
+            List<ProductRes> productResList = new ArrayList<>();
+            for (Product product : distribution.getProducts()) {
+                productResList.add(productService.convertToRes(product));
+            }
+            res.setProducts(productResList);
+        }
+        // Convert Items (new)
+        if (distribution.getItems() != null && !distribution.getItems().isEmpty()) {
+            List<DistributionItemRes> itemResList = new ArrayList<>();
+            for (DistributionItem di : distribution.getItems()) {
+                DistributionItemRes ir = new DistributionItemRes();
+                ir.setId(di.getId());
+                if (di.getProduct() != null) {
+                    ir.setProduct(productService.convertToRes(di.getProduct()));
+                }
+                ir.setCategoryId(di.getCategoryId()); // ✅ Set categoryId (có thể null)
+                if (di.getCategoryId() != null) {
+                    ir.setCategory(categories.get(di.getCategoryId()));
+                }
+                ir.setColor(di.getColor());
+                ir.setQuantity(di.getQuantity());
+                ir.setApprovedQuantity(di.getApprovedQuantity());
+                ir.setShortfallQuantity(di.getShortfallQuantity());
+                ir.setDealerPrice(di.getDealerPrice());
+                itemResList.add(ir);
+            }
+            res.setItems(itemResList);
+        }
+
+        // Set messages/notes
+        res.setInvitationMessage(distribution.getInvitationMessage());
+        res.setDealerNotes(distribution.getDealerNotes());
+        res.setEvmNotes(distribution.getEvmNotes());
+        res.setFeedback(distribution.getFeedback());
+
+        // Set timeline
+        res.setCreatedAt(distribution.getCreatedAt());
+        res.setInvitedAt(distribution.getInvitedAt());
+
+        // Set dates
+        res.setDeadline(distribution.getDeadline());
+        res.setRequestedDeliveryDate(distribution.getRequestedDeliveryDate());
+        res.setEstimatedDeliveryDate(distribution.getEstimatedDeliveryDate());
+        res.setActualDeliveryDate(distribution.getActualDeliveryDate());
+
+        // Set quantities
+        res.setRequestedQuantity(distribution.getRequestedQuantity());
+        res.setReceivedQuantity(distribution.getReceivedQuantity());
+
+        res.setManufacturerPrice(distribution.getManufacturerPrice());
+
+        // Set supplementary fields
+        res.setParentDistributionId(distribution.getParentDistributionId());
+        res.setIsSupplementary(distribution.getIsSupplementary());
+
+        return res;
+    }
+
+    // Generate mã cố định từ ID (hash deterministic - không đổi khi load lại)
+    // Ví dụ: ID=13 → luôn ra "7K3M", ID=42 → luôn ra "G9X2"
+    private String generateCodeFromId(int id) {
+        String chars = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        // Dùng ID làm seed để hash thành 4 ký tự
+        int hash = id * 31 + 12345; // Prime multiplier cho distribution tốt
+        StringBuilder sb = new StringBuilder(4);
+        for (int i = 0; i < 4; i++) {
+            hash = hash * 1103515245 + 12345; // Linear congruential generator
+            int index = Math.abs(hash) % chars.length();
+            sb.append(chars.charAt(index));
+        }
+        return sb.toString();
+    }
+}
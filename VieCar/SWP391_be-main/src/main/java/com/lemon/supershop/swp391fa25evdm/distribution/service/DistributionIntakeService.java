@@ -0,0 +1,292 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.service;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryRepository;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionCompletionReq;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionReceivedItemReq;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionItem;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus;
+import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
+import com.lemon.supershop.swp391fa25evdm.product.service.VehicleCodeAllocator;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Nhập kho hàng loạt khi dealer xác nhận nhận hàng (confirmReceived).
+ *
+ * - Category / product mẫu được load 1 lần cho mỗi categoryId khác nhau (IN query)
+ * - Mã VIN/ENG được cấp theo block cho cả lần nhận hàng
+ * - Product được insert theo lô (hibernate.jdbc.batch_size) trong cùng transaction
+ */
+@Service
+public class DistributionIntakeService {
+
+    // Khớp với spring.jpa.properties.hibernate.jdbc.batch_size
+    static final int BATCH_SIZE = 50;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private ProductRepo productRepo;
+    @Autowired
+    private VehicleCodeAllocator vehicleCodeAllocator;
+
+    /**
+     * Tạo Product cho toàn bộ số lượng nhận được của distribution.
+     *
+     * @return tổng số xe đã nhận (tính từ các dòng trong request)
+     */
+    @Transactional
+    public int receiveItems(Distribution distribution, DistributionCompletionReq req) {
+        long startedAt = System.currentTimeMillis();
+
+        Map<Integer, DistributionItem> orderMap = new HashMap<>();
+        for (DistributionItem di : distribution.getItems()) {
+            orderMap.put(di.getId(), di);
+        }
+
+        // 1. Validate toàn bộ request trước khi tạo bất kỳ product nào
+        List<DistributionReceivedItemReq> receivedLines = new ArrayList<>();
+        Set<Integer> categoryIds = new HashSet<>();
+        int totalReceived = 0;
+        for (DistributionReceivedItemReq ir : req.getItems()) {
+            if (ir == null || ir.getDistributionItemId() == null) {
+                continue;
+            }
+            DistributionItem orderedItem = orderMap.get(ir.getDistributionItemId());
+            if (orderedItem == null) {
+                throw new RuntimeException("Distribution item not found: " + ir.getDistributionItemId() +
+                                           ". Available IDs: " + orderMap.keySet());
+            }
+            int orderedQty = orderedItem.getQuantity() != null ? orderedItem.getQuantity() : 0;
+            int recv = ir.getReceivedQuantity() != null ? ir.getReceivedQuantity() : 0;
+            if (recv < 0) recv = 0;
+            if (recv > orderedQty) {
+                throw new RuntimeException("Số lượng nhận vượt quá số đã đặt cho dòng: " + orderedItem.getId());
+            }
+            totalReceived += recv;
+            if (recv > 0) {
+                receivedLines.add(ir);
+                if (orderedItem.getProduct() == null && orderedItem.getCategoryId() != null) {
+                    categoryIds.add(orderedItem.getCategoryId());
+                }
+            }
+        }
+        if (receivedLines.isEmpty()) {
+            return totalReceived;
+        }
+
+        // 2. Load category + product mẫu 1 lần cho tất cả categoryId khác nhau
+        Map<Integer, Category> categories = new HashMap<>();
+        Map<Integer, Product> templates = new HashMap<>();
+        if (!categoryIds.isEmpty()) {
+            for (Category category : categoryRepository.findAllById(categoryIds)) {
+                categories.put(category.getId(), category);
+            }
+            for (Integer categoryId : categoryIds) {
+                if (!categories.containsKey(categoryId)) {
+                    throw new RuntimeException("Category không tồn tại với ID: " + categoryId);
+                }
+            }
+            for (Product template : productRepo.findTemplatesByCategoryIds(categoryIds)) {
+                templates.put(template.getCategory().getId(), template);
+            }
+        }
+
+        // 3. Cấp mã VIN/ENG theo block cho toàn bộ lần nhận hàng
+        List<String> codes = vehicleCodeAllocator.nextCodes(totalReceived);
+        int codeIdx = 0;
+
+        Date stockIn = (req.getActualDeliveryDate() != null)
+                ? Date.from(req.getActualDeliveryDate().atZone(ZoneId.systemDefault()).toInstant())
+                : new Date();
+        Date manufactureDate = new Date();
+
+        // 4. Insert theo lô
+        List<Product> batch = new ArrayList<>(BATCH_SIZE);
+        int created = 0;
+        for (DistributionReceivedItemReq ir : receivedLines) {
+            DistributionItem orderedItem = orderMap.get(ir.getDistributionItemId());
+
+            Product template = orderedItem.getProduct();
+            Category category = null;
+            if (template == null && orderedItem.getCategoryId() != null) {
+                category = categories.get(orderedItem.getCategoryId());
+                template = templates.get(orderedItem.getCategoryId());
+            }
+
+            long manufacturerPriceValue = resolveManufacturerPrice(distribution, orderedItem, ir, category, template);
+
+            int recv = ir.getReceivedQuantity();
+            for (int i = 0; i < recv; i++) {
+                Product p = buildProduct(template, category, manufacturerPriceValue);
+                p.setDistribution(distribution);
+                p.setColor(orderedItem.getColor());
+                String uniqueCode = codes.get(codeIdx++);
+                p.setVinNum("VIN-" + uniqueCode);
+                p.setEngineNum("ENG-" + uniqueCode);
+                p.setManufacture_date(manufactureDate);
+                p.setStockInDate(stockIn);
+                // Set INACTIVE khi nhập kho - Dealer staff sẽ đăng lên showroom sau
+                p.setStatus(ProductStatus.INACTIVE);
+                batch.add(p);
+
+                if (batch.size() == BATCH_SIZE) {
+                    created += flushBatch(batch);
+                }
+            }
+        }
+        created += flushBatch(batch);
+
+        System.out.println("📦 Intake distribution #" + distribution.getId() + ": " + created +
+                           " products in " + (System.currentTimeMillis() - startedAt) + " ms");
+        return totalReceived;
+    }
+
+    // Xác định giá HÃNG - Ưu tiên: giá lúc nhận hàng > giá từng item > giá chung > basePrice của category
+    private long resolveManufacturerPrice(Distribution distribution, DistributionItem orderedItem,
+                                          DistributionReceivedItemReq ir, Category category, Product template) {
+        if (ir.getDealerPrice() != null) {
+            return ir.getDealerPrice().longValue();
+        } else if (orderedItem.getDealerPrice() != null) {
+            return orderedItem.getDealerPrice().longValue();
+        } else if (distribution.getManufacturerPrice() != null) {
+            return distribution.getManufacturerPrice().longValue();
+        } else if (category != null) {
+            return category.getBasePrice();
+        } else if (template != null && template.getCategory() != null) {
+            return template.getCategory().getBasePrice();
+        }
+        return 0L;
+    }
+
+    private Product buildProduct(Product template, Category category, long manufacturerPriceValue) {
+        Product p = new Product();
+        if (template != null) {
+            p.setName(template.getName());
+            p.setBattery(Math.max(0, template.getBattery()));
+            p.setHp(Math.max(0, template.getHp()));
+            p.setTorque(Math.max(0, template.getTorque()));
+            p.setRange(Math.max(0, template.getRange()));
+            p.setImage(template.getImage());
+            p.setDescription(template.getDescription());
+            if (template.getCategory() != null) {
+                p.setCategory(template.getCategory());
+            }
+        } else if (category != null) {
+            // Không có template → tạo từ category
+            p.setName(category.getName());
+            p.setCategory(category);
+            setDefaultSpecsByProductName(p, category.getName());
+        }
+
+        if (manufacturerPriceValue > 0) {
+            // Giá hãng chỉ set 1 lần duy nhất; giá bán lẻ mặc định = giá hãng (dealer có thể update sau)
+            p.setManufacturerPrice(manufacturerPriceValue);
+            p.setRetailPrice(manufacturerPriceValue);
+        }
+        // Legacy dealer price (backward compatibility)
+        p.setDealerPrice(manufacturerPriceValue);
+        return p;
+    }
+
+    // Flush lô hiện tại xuống DB (1 JDBC batch) rồi detach để persistence context không phình to
+    private int flushBatch(List<Product> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int size = batch.size();
+        productRepo.saveAll(batch);
+        entityManager.flush();
+        for (Product p : batch) {
+            entityManager.detach(p);
+        }
+        batch.clear();
+        return size;
+    }
+
+    /**
+     * ✅ TỰ ĐỘNG SET THÔNG SỐ KỸ THUẬT cho sản phẩm dựa trên tên xe
+     * Dữ liệu dựa trên thông số thực tế của VinFast
+     */
+    private void setDefaultSpecsByProductName(Product product, String productName) {
+        if (productName == null) return;
+
+        String nameLower = productName.toLowerCase().trim();
+
+        // VinFast VF3 - Mini City Car
+        if (nameLower.contains("vf3") || nameLower.contains("vf 3")) {
+            product.setBattery(19); // kWh
+            product.setRange(210); // km
+            product.setHp(43); // HP
+            product.setTorque(110); // Nm
+        }
+        // VinFast VF5 - Compact SUV
+        else if (nameLower.contains("vf5") || nameLower.contains("vf 5")) {
+            product.setBattery(37); // kWh
+            product.setRange(326); // km
+            product.setHp(134); // HP
+            product.setTorque(135); // Nm
+        }
+        // VinFast VF6 - Mid-size SUV
+        else if (nameLower.contains("vf6") || nameLower.contains("vf 6")) {
+            product.setBattery(59); // kWh
+            product.setRange(388); // km
+            product.setHp(174); // HP
+            product.setTorque(250); // Nm
+        }
+        // VinFast VF7 - Mid-size SUV
+        else if (nameLower.contains("vf7") || nameLower.contains("vf 7")) {
+            product.setBattery(75); // kWh
+            product.setRange(450); // km
+            product.setHp(201); // HP
+            product.setTorque(310); // Nm
+        }
+        // VinFast VF8 - Full-size SUV
+        else if (nameLower.contains("vf8") || nameLower.contains("vf 8")) {
+            product.setBattery(87); // kWh
+            product.setRange(471); // km
+            product.setHp(402); // HP (Dual motor)
+            product.setTorque(620); // Nm
+        }
+        // VinFast VF9 - Premium Full-size SUV
+        else if (nameLower.contains("vf9") || nameLower.contains("vf 9")) {
+            product.setBattery(123); // kWh
+            product.setRange(594); // km
+            product.setHp(402); // HP (Dual motor)
+            product.setTorque(640); // Nm
+        }
+        // VinFast VF e34 - Compact Electric SUV
+        else if (nameLower.contains("e34") || nameLower.contains("vfe34")) {
+            product.setBattery(42); // kWh
+            product.setRange(318); // km
+            product.setHp(147); // HP
+            product.setTorque(242); // Nm
+        }
+        // Default fallback - nếu không match dòng xe nào
+        else {
+            product.setBattery(50); // kWh
+            product.setRange(350); // km
+            product.setHp(150); // HP
+            product.setTorque(250); // Nm
+        }
+    }
+}
@@ -1,31 +1,35 @@
 package com.lemon.supershop.swp391fa25evdm.distribution.service;
 
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 
 import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryPriceAggregateRepository;
 import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryRepository;
-import com.lemon.supershop.swp391fa25evdm.category.service.CategoryService;
-import com.lemon.supershop.swp391fa25evdm.dealer.model.dto.DealerRes;
 import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
 import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.*;
-import com.lemon.supershop.swp391fa25evdm.product.model.dto.ProductRes;
 import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
 import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
-import com.lemon.supershop.swp391fa25evdm.product.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 // ❌ Xóa CategoryRepository import - không dùng
 // import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryRepository;
 import com.lemon.supershop.swp391fa25evdm.dealer.repository.DealerRepo;
 import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
 import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionItem;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.enums.DistributionStatus;
+import com.lemon.supershop.swp391fa25evdm.distribution.repository.DistributionItemRepo;
 import com.lemon.supershop.swp391fa25evdm.distribution.repository.DistributionRepo;
+import com.lemon.supershop.swp391fa25evdm.distribution.repository.DistributionSpecs;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
 
 @Service
 public class DistributionService {
@@ -40,13 +44,22 @@ public class DistributionService {
     @Autowired
     private ProductRepo productRepo;
     @Autowired
-    private ProductService productService;
+    private DistributionIntakeService distributionIntakeService;
     @Autowired
-    private CategoryService categoryService;
+    private DistributionAssembler distributionAssembler;
+    @Autowired
+    private DistributionStateMachine distributionStateMachine;
+    @Autowired
+    private DistributionItemRepo distributionItemRepo;
+    @Autowired
+    private CategoryPriceAggregateRepository categoryPriceAggregateRepository;
+
+    private static final int MAX_PAGE_SIZE = 100;
 
     // ===== WORKFLOW METHODS =====
 
     // Step 1: EVM Staff gửi lời mời
+    @Transactional
     public DistributionRes sendInvitation(DistributionInvitationReq req) {
         Distribution distribution = new Distribution();
         
@@ -63,14 +76,14 @@ public class DistributionService {
         // Set invitation details
         distribution.setInvitationMessage(req.getInvitationMessage());
         distribution.setDeadline(req.getDeadline());
-        distribution.setStatus("INVITED");
         distribution.setInvitedAt(LocalDateTime.now());
         
-        distributionRepo.save(distribution);
+        distribution = distributionStateMachine.start(distribution, DistributionStatus.INVITED, null);
         return convertToRes(distribution);
     }
 
     // Step 2: Dealer Manager phản hồi lời mời
+    @Transactional
     public DistributionRes respondToInvitation(int id, DistributionResponseReq req) {
         Optional<Distribution> opt = distributionRepo.findById(id);
         if (!opt.isPresent()) {
@@ -85,16 +98,16 @@ public class DistributionService {
         }
         
         // Update status based on response
-        distribution.setStatus(req.getResponse()); // "ACCEPTED" or "DECLINED"
         distribution.setDealerNotes(req.getDealerNotes());
         // ❌ Xóa: distribution.setRespondedAt(LocalDateTime.now());
         
-        distributionRepo.save(distribution);
+        distributionStateMachine.transition(distribution, DistributionStatus.from(req.getResponse()), req.getDealerNotes()); // "ACCEPTED" or "DECLINED"
         return convertToRes(distribution);
     }
 
     // LUỒNG MỚI: Dealer Manager tạo yêu cầu xe trực tiếp (Pull Model)
     // Bỏ qua bước invitation, trực tiếp tạo distribution với status PENDING
+    @Transactional
     public DistributionRes createDealerRequest(DistributionOrderReq req) {
         // Validate dealerId
         if (req.getDealerId() == null) {
@@ -110,7 +123,6 @@ public class DistributionService {
         // Create new distribution
         Distribution distribution = new Distribution();
         distribution.setDealer(dealer.get());
-        distribution.setStatus("PENDING"); // Directly set to PENDING (bypass invitation flow)
         distribution.setInvitedAt(LocalDateTime.now());
 
         // Build items and aggregate quantity
@@ -184,12 +196,13 @@ public class DistributionService {
         distribution.setRequestedDeliveryDate(req.getRequestedDeliveryDate());
         distribution.setDealerNotes(req.getDealerNotes());
 
-        // Save and return
-        distributionRepo.save(distribution);
+        // Save and return - Directly set to PENDING (bypass invitation flow)
+        distribution = distributionStateMachine.start(distribution, DistributionStatus.PENDING, req.getDealerNotes());
         return convertToRes(distribution);
     }
 
     // Step 3: Dealer Manager tạo đơn hàng (nếu đã ACCEPTED)
+    @Transactional
     public DistributionRes submitOrder(int id, DistributionOrderReq req) {
         Optional<Distribution> opt = distributionRepo.findById(id);
         if (!opt.isPresent()) {
@@ -278,13 +291,13 @@ public class DistributionService {
         if (req.getDealerNotes() != null) {
             distribution.setDealerNotes(req.getDealerNotes());
         }
-        distribution.setStatus("PENDING");
         
-        distributionRepo.save(distribution);
+        distributionStateMachine.transition(distribution, DistributionStatus.PENDING, req.getDealerNotes());
         return convertToRes(distribution);
     }
 
     // Step 4: EVM Staff duyệt đơn
+    @Transactional
     public DistributionRes approveOrder(int id, DistributionApprovalReq req) {
         Optional<Distribution> opt = distributionRepo.findById(id);
         if (!opt.isPresent()) {
@@ -332,7 +345,7 @@ public class DistributionService {
                                 // quantity = số lượng yêu cầu ban đầu (giữ nguyên)
                                 // approvedQuantity = số lượng EVM duyệt (có thể là 0)
                                 if (itemPrice.getApprovedQuantity() != null) {
-                                    dItem.setApprovedQuantity(itemPrice.getApprovedQuantity());
+                                    dItem.approve(itemPrice.getApprovedQuantity());
                                     System.out.println("   ✅ Updated approved quantity to: " + dItem.getApprovedQuantity());
                                 }
                                 break;
@@ -345,27 +358,27 @@ public class DistributionService {
                 System.out.println("💾 Saved distribution items with updated prices and quantities");
             }
             
-            // Update category base price with manufacturer price (giá cao nhất để tham khảo)
-            updateCategoryBasePriceFromDistribution(distribution, req.getManufacturerPrice());
-            
-            // Always send price to dealer for confirmation (regardless of quantity match)
-            // Dealer must accept the price before proceeding to delivery planning
-            distribution.setStatus("PRICE_SENT");
-            
             // Giá chung (sẽ là giá cao nhất hoặc giá trung bình để tham khảo)
             distribution.setManufacturerPrice(req.getManufacturerPrice());
             distribution.setEvmNotes(req.getEvmNotes());
+
+            // Update category base price with manufacturer price (giá cao nhất để tham khảo)
+            updateCategoryBasePriceFromDistribution(distribution);
+
+            // Always send price to dealer for confirmation (regardless of quantity match)
+            // Dealer must accept the price before proceeding to delivery planning
+            distributionStateMachine.transition(distribution, DistributionStatus.PRICE_SENT, req.getEvmNotes());
         } else {
             // CANCELED
-            distribution.setStatus(req.getDecision());
             distribution.setEvmNotes(req.getEvmNotes());
+            distributionStateMachine.transition(distribution, DistributionStatus.from(req.getDecision()), req.getEvmNotes());
         }
         
-        distributionRepo.save(distribution);
         return convertToRes(distribution);
     }
 
     // Step 4b: EVM Staff gửi lại giá mới (khi dealer từ chối giá cũ)
+    @Transactional
     public DistributionRes resendPrice(int id, DistributionApprovalReq req) {
         Optional<Distribution> opt = distributionRepo.findById(id);
         if (!opt.isPresent()) {
@@ -399,7 +412,7 @@ public class DistributionService {
                             }
                             // Update approved quantity (lưu vào field approvedQuantity, không phải quantity)
                             if (itemPrice.getApprovedQuantity() != null) {
-                                dItem.setApprovedQuantity(itemPrice.getApprovedQuantity());
+                                dItem.approve(itemPrice.getApprovedQuantity());
                             }
                             break;
                         }
@@ -409,8 +422,11 @@ public class DistributionService {
             distributionRepo.save(distribution);
         }
         
+        // Gửi lại giá mới cho dealer (set trước để câu UPDATE giá category dùng làm fallback)
+        distribution.setManufacturerPrice(req.getManufacturerPrice());
+
         // Update category base price
-        updateCategoryBasePriceFromDistribution(distribution, req.getManufacturerPrice());
+        updateCategoryBasePriceFromDistribution(distribution);
         
         // 🔥 GIỮ NGUYÊN phần "Duyệt theo dòng" gốc, chỉ cập nhật GIÁ mới
         String existingEvmNotes = distribution.getEvmNotes();
@@ -448,15 +464,12 @@ public class DistributionService {
             distribution.setEvmNotes(newEvmNotes);
         }
         
-        // Gửi lại giá mới cho dealer
-        distribution.setStatus("PRICE_SENT");
-        distribution.setManufacturerPrice(req.getManufacturerPrice());
-        
-        distributionRepo.save(distribution);
+        distributionStateMachine.transition(distribution, DistributionStatus.PRICE_SENT, req.getEvmNotes());
         return convertToRes(distribution);
     }
 
     // Step 4a: Dealer Manager phản hồi về giá hãng (chấp nhận hoặc từ chối)
+    @Transactional
     public DistributionRes respondToPrice(int id, String decision, String dealerNotes) {
         Optional<Distribution> opt = distributionRepo.findById(id);
         if (!opt.isPresent()) {
@@ -470,10 +483,11 @@ public class DistributionService {
             throw new RuntimeException("Invalid status. Expected PRICE_SENT, got: " + distribution.getStatus());
         }
         
+        DistributionStatus target;
         if ("PRICE_ACCEPTED".equals(decision)) {
-            distribution.setStatus("CONFIRMED");
+            target = DistributionStatus.CONFIRMED;
         } else if ("PRICE_REJECTED".equals(decision)) {
-            distribution.setStatus("PRICE_REJECTED");
+            target = DistributionStatus.PRICE_REJECTED;
         } else {
             throw new RuntimeException("Invalid decision. Expected PRICE_ACCEPTED or PRICE_REJECTED");
         }
@@ -483,11 +497,12 @@ public class DistributionService {
             distribution.setDealerNotes(existing != null ? existing + " | " + dealerNotes : dealerNotes);
         }
         
-        distributionRepo.save(distribution);
+        distributionStateMachine.transition(distribution, target, dealerNotes);
         return convertToRes(distribution);
     }
 
     // Step 5: EVM Staff lên kế hoạch giao hàng
+    @Transactional
     public DistributionRes planDelivery(int id, DistributionPlanningReq req) {
         Optional<Distribution> opt = distributionRepo.findById(id);
         if (!opt.isPresent()) {
@@ -507,14 +522,14 @@ public class DistributionService {
         if (req.getEvmNotes() != null) {
             distribution.setEvmNotes(req.getEvmNotes());
         }
-        distribution.setStatus("PLANNED");
         // ❌ Xóa: distribution.setPlannedAt(LocalDateTime.now());
         
-        distributionRepo.save(distribution);
+        distributionStateMachine.transition(distribution, DistributionStatus.PLANNED, req.getEvmNotes());
         return convertToRes(distribution);
     }
 
     // Step 6: Dealer Manager xác nhận nhận hàng
+    @Transactional
     public DistributionRes confirmReceived(int id, DistributionCompletionReq req) {
         Optional<Distribution> opt = distributionRepo.findById(id);
         if (!opt.isPresent()) {
@@ -534,190 +549,34 @@ public class DistributionService {
         if (!"PLANNED".equals(distribution.getStatus())) {
             throw new RuntimeException("Invalid status. Expected PLANNED, got: " + distribution.getStatus());
         }
+
+        // Chiếm trạng thái COMPLETED trước khi tạo product: request song song thứ 2 sẽ fail ngay tại đây
+        distributionStateMachine.transition(distribution, DistributionStatus.COMPLETED, req.getFeedback());
         
         // Ensure received quantities and auto create products if item breakdown provided
         int totalReceived = req.getReceivedQuantity() != null ? req.getReceivedQuantity() : 0;
         if (req.getItems() != null && distribution.getItems() != null) {
-            // Build map for quick lookup of order quantities by distributionItemId
-            java.util.Map<Integer, DistributionItem> orderMap = new java.util.HashMap<>();
-            System.out.println("📦 Building orderMap from distribution items:");
-            for (DistributionItem di : distribution.getItems()) {
-                if (di.getId() == 0) {
-                    System.err.println("   ⚠️ WARNING: DistributionItem has ID = 0! This will cause lookup failure.");
-                    System.err.println("      Item details: Qty=" + di.getQuantity() + ", Color=" + di.getColor() + 
-                                     ", CategoryId=" + di.getCategoryId() + 
-                                     ", ProductId=" + (di.getProduct() != null ? di.getProduct().getId() : "null"));
-                }
-                orderMap.put(di.getId(), di);
-                System.out.println("   - Item ID: " + di.getId() + " | Qty: " + di.getQuantity() + 
-                                 " | Color: " + di.getColor() + " | CategoryId: " + di.getCategoryId());
-            }
-
-            // Validate and sum received, and auto-create products
-            int calcSum = 0;
-            System.out.println("📦 Processing received items from request:");
-            for (DistributionReceivedItemReq ir : req.getItems()) {
-                if (ir == null || ir.getDistributionItemId() == null) {
-                    System.out.println("   ⏭️ Skipping null item or null distributionItemId");
-                    continue;
-                }
-                System.out.println("   🔍 Looking up DistributionItemId: " + ir.getDistributionItemId());
-                DistributionItem orderedItem = orderMap.get(ir.getDistributionItemId());
-                if (orderedItem == null) {
-                    System.err.println("   ❌ ERROR: Distribution item not found: " + ir.getDistributionItemId());
-                    System.err.println("      Available IDs in orderMap: " + orderMap.keySet());
-                    throw new RuntimeException("Distribution item not found: " + ir.getDistributionItemId() + 
-                                             ". Available IDs: " + orderMap.keySet());
-                }
-                System.out.println("   ✅ Found item: ID=" + orderedItem.getId() + " | Qty=" + orderedItem.getQuantity());
-                int orderedQty = orderedItem.getQuantity() != null ? orderedItem.getQuantity() : 0;
-                int recv = ir.getReceivedQuantity() != null ? ir.getReceivedQuantity() : 0;
-                if (recv < 0) recv = 0;
-                if (recv > orderedQty) {
-                    throw new RuntimeException("Số lượng nhận vượt quá số đã đặt cho dòng: " + orderedItem.getId());
-                }
-                calcSum += recv;
-
-                if (recv > 0) {
-                    System.out.println("   ✅ Creating " + recv + " products for item ID: " + orderedItem.getId());
-                    
-                    // Lấy template từ item.product HOẶC tìm từ categoryId
-                    Product template = orderedItem.getProduct();
-                    Category category = null;
-                    
-                    if (template == null && orderedItem.getCategoryId() != null) {
-                        // Item đặt theo categoryId (không có product template)
-                        Optional<Category> catOpt = categoryRepository.findById(orderedItem.getCategoryId());
-                        if (catOpt.isPresent()) {
-                            category = catOpt.get();
-                            
-                            // Tìm product mẫu trong category (nếu có) để copy thông tin
-                            List<Product> productsInCategory = productRepo.findByCategoryId(orderedItem.getCategoryId());
-                            if (!productsInCategory.isEmpty()) {
-                                template = productsInCategory.get(0);
-                            }
-                        } else {
-                            throw new RuntimeException("Category không tồn tại với ID: " + orderedItem.getCategoryId());
-                        }
-                    }
-                    
-                    // Xác định giá HÃNG (manufacturer price) - Ưu tiên:
-                    // 1. Giá từ DistributionReceivedItemReq (dealer có thể cập nhật khi nhận hàng)
-                    // 2. Giá từ DistributionItem (giá đã set cho từng item)
-                    // 3. Giá chung từ Distribution.manufacturerPrice (fallback)
-                    // 4. Giá từ Category basePrice (fallback cuối)
-                    long manufacturerPriceValue = 0L;
-                    if (ir.getDealerPrice() != null) {
-                        manufacturerPriceValue = ir.getDealerPrice().longValue();
-                    } else if (orderedItem.getDealerPrice() != null) {
-                        manufacturerPriceValue = orderedItem.getDealerPrice().longValue();
-                    } else if (distribution.getManufacturerPrice() != null) {
-                        manufacturerPriceValue = distribution.getManufacturerPrice().longValue();
-                    } else if (category != null) {
-                        manufacturerPriceValue = category.getBasePrice();
-                    } else if (template != null && template.getCategory() != null) {
-                        manufacturerPriceValue = template.getCategory().getBasePrice();
-                    }
-                    
-                    for (int i = 0; i < recv; i++) {
-                        Product p = new Product();
-                        
-                        // Copy basics from template if available
-                        if (template != null) {
-                            p.setName(template.getName());
-                            p.setBattery(Math.max(0, template.getBattery()));
-                            p.setHp(Math.max(0, template.getHp()));
-                            p.setTorque(Math.max(0, template.getTorque()));
-                            p.setRange(Math.max(0, template.getRange()));
-                            p.setImage(template.getImage());
-                            p.setDescription(template.getDescription());
-                            if (template.getCategory() != null) {
-                                p.setCategory(template.getCategory());
-                            }
-                        } else if (category != null) {
-                            // Không có template → tạo từ category
-                            p.setName(category.getName());
-                            p.setCategory(category);
-                            // ✅ TỰ ĐỘNG SET THÔNG SỐ KỸ THUẬT dựa trên tên xe
-                            setDefaultSpecsByProductName(p, category.getName());
-                        }
-                        
-                        // ✅ SET MANUFACTURER PRICE (chỉ set 1 lần duy nhất, không được đổi)
-                        if (manufacturerPriceValue > 0) {
-                            p.setManufacturerPrice(manufacturerPriceValue);
-                        }
-                        
-                        // ✅ SET RETAIL PRICE = MANUFACTURER PRICE (dealer có thể update sau)
-                        if (manufacturerPriceValue > 0) {
-                            p.setRetailPrice(manufacturerPriceValue);
-                        }
-                        
-                        // Legacy dealer price (backward compatibility)
-                        p.setDealerPrice(manufacturerPriceValue);
-                        
-                        // Link to this distribution and set color from item
-                        p.setDistribution(distribution);
-                        p.setColor(orderedItem.getColor());
-                        // Defaults requested: VIN/Engine auto in SAME pattern as UI, range 0, manufacture date today, status ACTIVE
-                        String uniqueCode = generateUniqueCode();
-                        p.setVinNum("VIN-" + uniqueCode);
-                        p.setEngineNum("ENG-" + uniqueCode);
-                        // Manufacture date giữ nguyên theo template hoặc set hôm nay
-                        p.setManufacture_date(new java.util.Date());
-                        // Tự động set ngày nhập kho = actualDeliveryDate (nếu có) hoặc ngày hiện tại
-                        java.util.Date stockIn = (req.getActualDeliveryDate() != null)
-                                ? java.util.Date.from(req.getActualDeliveryDate().atZone(ZoneId.systemDefault()).toInstant())
-                                : new java.util.Date();
-                        p.setStockInDate(stockIn);
-                        // 🔧 SỬA: Set INACTIVE khi nhập kho - Dealer staff sẽ đăng lên showroom sau
-                        p.setStatus(com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus.INACTIVE);
-                        Product savedProduct = productRepo.save(p);
-                        System.out.println("      ✅ Saved Product ID: " + savedProduct.getId() + " | VIN: " + savedProduct.getVinNum());
-                    }
-                }
-            }
-            totalReceived = calcSum; // derive total from items to avoid mismatch
+            // derive total from items to avoid mismatch
+            totalReceived = distributionIntakeService.receiveItems(distribution, req);
         }
 
         // Set completion details using derived totals
         distribution.setReceivedQuantity(totalReceived > 0 ? totalReceived : null);
         distribution.setActualDeliveryDate(req.getActualDeliveryDate());
         distribution.setFeedback(req.getFeedback());
-        distribution.setStatus("COMPLETED");
         // ❌ Xóa: distribution.setCompletedAt(LocalDateTime.now());
 
         distributionRepo.save(distribution);
         
         // ✅ Cập nhật Category basePrice = GIÁ CAO NHẤT từ các items (kể cả khác màu)
         updateCategoryPriceFromDistributionItems(distribution);
+        // ✅ Cộng dồn thống kê giá theo (category, màu)
+        int aggregated = categoryPriceAggregateRepository.mergeFromDistribution(distribution.getId());
+        System.out.println("📊 Price aggregate: " + aggregated + " (category, color) rows merged");
         
         return convertToRes(distribution);
     }
 
-    private static final Random RNG = new Random();
-
-    // Match UI pattern: VIN-<timestamp><3-digit-random> and ENG- same suffix
-    private String generateUniqueCode() {
-        long ts = System.currentTimeMillis();
-        int rnd = RNG.nextInt(1000); // 0..999
-        return String.valueOf(ts) + String.format("%03d", rnd);
-    }
-
-    // Generate mã cố định từ ID (hash deterministic - không đổi khi load lại)
-    // Ví dụ: ID=13 → luôn ra "7K3M", ID=42 → luôn ra "G9X2"
-    private String generateCodeFromId(int id) {
-        String chars = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        // Dùng ID làm seed để hash thành 4 ký tự
-        int hash = id * 31 + 12345; // Prime multiplier cho distribution tốt
-        StringBuilder sb = new StringBuilder(4);
-        for (int i = 0; i < 4; i++) {
-            hash = hash * 1103515245 + 12345; // Linear congruential generator
-            int index = Math.abs(hash) % chars.length();
-            sb.append(chars.charAt(index));
-        }
-        return sb.toString();
-    }
-
     /**
      * Helper: Cập nhật giá tham khảo của Category từ Distribution
      * 
@@ -727,52 +586,19 @@ public class DistributionService {
      * - Product.dealerPrice: Giá thực tế của từng xe khi nhập kho (copy từ DistributionItem)
      * 
      * => MỖI XE CÓ GIÁ RIÊNG, Category.basePrice chỉ để tham khảo (lấy giá cao nhất)!
+     * Giá item fallback về distribution.manufacturerPrice → phải set manufacturerPrice trước khi gọi.
      */
-    private void updateCategoryBasePriceFromDistribution(Distribution distribution, Double manufacturerPrice) {
+    private void updateCategoryBasePriceFromDistribution(Distribution distribution) {
         if (distribution.getItems() == null || distribution.getItems().isEmpty()) {
             return; // No items, cannot determine category
         }
-        
-        // ✅ TÌM GIÁ CAO NHẤT từ các DistributionItem
-        long maxPrice = 0L;
-        Category targetCategory = null;
-        
-        for (DistributionItem item : distribution.getItems()) {
-            if (item.getProduct() != null && item.getProduct().getCategory() != null) {
-                if (targetCategory == null) {
-                    targetCategory = item.getProduct().getCategory();
-                }
-                
-                // Lấy giá từ DistributionItem (ưu tiên) hoặc manufacturerPrice (fallback)
-                long itemPrice = 0L;
-                if (item.getDealerPrice() != null) {
-                    itemPrice = item.getDealerPrice().longValue();
-                } else if (manufacturerPrice != null) {
-                    itemPrice = manufacturerPrice.longValue();
-                }
-                
-                // Cập nhật giá cao nhất
-                if (itemPrice > maxPrice) {
-                    maxPrice = itemPrice;
-                }
-            }
-        }
-        
-        // Cập nhật Category basePrice = giá cao nhất
-        if (targetCategory != null && maxPrice > 0) {
-            long oldBasePrice = targetCategory.getBasePrice();
-            targetCategory.setBasePrice(maxPrice);
-            categoryRepository.save(targetCategory);
-            
-            // Log the update với giá cũ và mới
-            System.out.println("✅ Updated Category ID " + targetCategory.getId() + " (" + targetCategory.getName() + ")");
-            System.out.println("   Old basePrice: " + oldBasePrice);
-            System.out.println("   New basePrice: " + maxPrice + " (GIÁ CAO NHẤT từ distribution items)");
-        }
+        // 1 câu UPDATE ... FROM cho tất cả category trong distribution
+        int updated = categoryPriceAggregateRepository.setBasePriceFromDistribution(distribution.getId());
+        System.out.println("✅ Updated basePrice of " + updated + " categories (GIÁ CAO NHẤT từ distribution #" + distribution.getId() + ")");
     }
 
     /**
-     * ✅ PHƯƠNG THỨC MỚI: Cập nhật giá Category từ các DistributionItem khi confirmReceived
+     * ✅ Cập nhật giá Category từ các DistributionItem khi confirmReceived
      * - Tìm GIÁ CAO NHẤT từ tất cả các items (kể cả khác màu)
      * - Cập nhật Category.basePrice nếu giá mới cao hơn giá hiện tại
      */
@@ -780,57 +606,9 @@ public class DistributionService {
         if (distribution.getItems() == null || distribution.getItems().isEmpty()) {
             return;
         }
-        
-        // Group items by category
-        java.util.Map<Integer, Long> categoryMaxPrices = new java.util.HashMap<>();
-        
-        for (DistributionItem item : distribution.getItems()) {
-            Integer categoryId = null;
-            
-            // Lấy categoryId từ product hoặc trực tiếp từ item
-            if (item.getProduct() != null && item.getProduct().getCategory() != null) {
-                categoryId = item.getProduct().getCategory().getId();
-            } else if (item.getCategoryId() != null) {
-                categoryId = item.getCategoryId();
-            }
-            
-            if (categoryId != null) {
-                // Lấy giá từ item
-                long itemPrice = 0L;
-                if (item.getDealerPrice() != null) {
-                    itemPrice = item.getDealerPrice().longValue();
-                } else if (distribution.getManufacturerPrice() != null) {
-                    itemPrice = distribution.getManufacturerPrice().longValue();
-                }
-                
-                // Cập nhật giá cao nhất cho category này
-                if (itemPrice > 0) {
-                    categoryMaxPrices.put(categoryId, 
-                        Math.max(categoryMaxPrices.getOrDefault(categoryId, 0L), itemPrice));
-                }
-            }
-        }
-        
-        // Cập nhật basePrice cho từng category (chỉ cập nhật nếu giá mới cao hơn)
-        for (java.util.Map.Entry<Integer, Long> entry : categoryMaxPrices.entrySet()) {
-            Integer categoryId = entry.getKey();
-            Long maxPrice = entry.getValue();
-            
-            Optional<Category> catOpt = categoryRepository.findById(categoryId);
-            if (catOpt.isPresent()) {
-                Category category = catOpt.get();
-                long currentPrice = category.getBasePrice();
-                
-                // Chỉ cập nhật nếu giá mới cao hơn giá hiện tại
-                if (maxPrice > currentPrice) {
-                    category.setBasePrice(maxPrice);
-                    categoryRepository.save(category);
-                    
-                    System.out.println("✅ Updated Category #" + categoryId + " (" + category.getName() + ")");
-                    System.out.println("   Old basePrice: " + currentPrice);
-                    System.out.println("   New basePrice: " + maxPrice + " (GIÁ CAO NHẤT từ items, kể cả khác màu)");
-                }
-            }
+        int updated = categoryPriceAggregateRepository.raiseBasePriceFromDistribution(distribution.getId());
+        if (updated > 0) {
+            System.out.println("✅ Raised basePrice of " + updated + " categories (GIÁ CAO NHẤT từ items, kể cả khác màu)");
         }
     }
 
@@ -838,8 +616,55 @@ public class DistributionService {
 
 
     public List<DistributionRes> getAllDistributions() {
-        List<Distribution> distributions = distributionRepo.findAll();
-        return distributions.stream().map(this::convertToRes).toList();
+        List<Distribution> distributions = distributionRepo.findAllWithItems();
+        return distributionAssembler.toRes(distributions);
+    }
+
+    // GET /api/distributions: lọc theo status/dealer/khoảng ngày + keyset pagination trên (createdAt, id)
+    public DistributionPageRes searchDistributions(DistributionSearchReq req) {
+        int size = req.getSize() != null ? Math.min(Math.max(req.getSize(), 1), MAX_PAGE_SIZE) : 20;
+        boolean ascending = "ASC".equalsIgnoreCase(req.getDirection());
+        Sort.Direction direction = ascending ? Sort.Direction.ASC : Sort.Direction.DESC;
+
+        Specification<Distribution> spec = (root, query, cb) -> cb.conjunction();
+        if (req.getStatus() != null && !req.getStatus().isBlank()) {
+            spec = spec.and(DistributionSpecs.hasStatus(req.getStatus()));
+        }
+        if (req.getDealerId() != null) {
+            spec = spec.and(DistributionSpecs.hasDealer(req.getDealerId()));
+        }
+        if (req.getFrom() != null) {
+            spec = spec.and(DistributionSpecs.createdFrom(req.getFrom()));
+        }
+        if (req.getTo() != null) {
+            spec = spec.and(DistributionSpecs.createdBefore(req.getTo()));
+        }
+        if (req.getCursorCreatedAt() != null && req.getCursorId() != null) {
+            spec = spec.and(DistributionSpecs.after(req.getCursorCreatedAt(), req.getCursorId(), ascending));
+        }
+
+        // Lấy dư 1 dòng để biết còn trang sau hay không (không cần COUNT)
+        Sort sort = Sort.by(direction, "createdAt").and(Sort.by(direction, "id"));
+        List<Distribution> rows = distributionRepo.findBy(spec, q -> q.sortBy(sort).limit(size + 1).all());
+
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
+        }
+
+        DistributionPageRes page = new DistributionPageRes();
+        page.setContent(distributionAssembler.toRes(rows));
+        page.setHasNext(hasNext);
+        if (hasNext) {
+            Distribution last = rows.get(rows.size() - 1);
+            page.setNextCursorCreatedAt(last.getCreatedAt());
+            page.setNextCursorId(last.getId());
+        }
+        return page;
+    }
+
+    public List<DistributionTransitionRes> getDistributionTransitions(int id) {
+        return distributionStateMachine.getTransitions(id);
     }
 
     public DistributionRes getDistributionById(int id) {
@@ -856,7 +681,7 @@ public class DistributionService {
 
     public List<DistributionRes> getDistributionsByDealerId(int dealerId) {
         List<Distribution> distributions = distributionRepo.findByDealerId(dealerId);
-        return distributions.stream().map(this::convertToRes).toList();
+        return distributionAssembler.toRes(distributions);
     }
 
     // ❌ Xóa method không dùng Contract
@@ -930,116 +755,23 @@ public class DistributionService {
     }
 
     private DistributionRes convertToRes(Distribution distribution) {
-        DistributionRes res = new DistributionRes();
-        res.setId(distribution.getId());
-        
-        // Generate mã phân phối cố định từ ID: PP{year}-{hash4} (ví dụ: PP2025-7K3M)
-        // Mã không đổi mỗi lần load vì hash từ ID
-        int year = java.time.Year.now().getValue();
-        String hashCode = generateCodeFromId(distribution.getId());
-        String code = String.format("PP%d-%s", year, hashCode);
-        res.setCode(code);
-        
-        res.setStatus(distribution.getStatus());
-        
-        // ❌ Xóa Category conversion - không dùng
-        // if (distribution.getCategory() != null) {
-        //     CategoryRes categoryRes = new CategoryRes();
-        //     categoryRes.setId(distribution.getCategory().getId());
-        //     categoryRes.setName(distribution.getCategory().getName());
-        //     res.setCategory(categoryRes);
-        // }
-        
-        // Convert Dealer
-        if (distribution.getDealer() != null) {
-            DealerRes dealerRes = new DealerRes();
-            dealerRes.setId(distribution.getDealer().getId());
-            dealerRes.setName(distribution.getDealer().getName());
-            res.setDealer(dealerRes);
-        }
-        
-        // Convert Products (legacy)
-        if (distribution.getProducts() != null && !distribution.getProducts().isEmpty()) {
-            List<ProductRes> productResList = new ArrayList<>();
-            for (Product product : distribution.getProducts()) {
-                ProductRes productRes = productService.convertToRes(product);
-                productResList.add(productRes);
-            }
-            res.setProducts(productResList);
-        }
-        // Convert Items (new)
-        if (distribution.getItems() != null && !distribution.getItems().isEmpty()) {
-            List<DistributionItemRes> itemResList = new ArrayList<>();
-            for (DistributionItem di : distribution.getItems()) {
-                DistributionItemRes ir = new DistributionItemRes();
-                ir.setId(di.getId());
-                if (di.getProduct() != null) {
-                    ProductRes pr = productService.convertToRes(di.getProduct());
-                    ir.setProduct(pr);
-                }
-                ir.setCategoryId(di.getCategoryId()); // ✅ Set categoryId (có thể null)
-                
-                // ✅ Populate category object nếu có categoryId
-                if (di.getCategoryId() != null) {
-                    var categoryRes = categoryService.getCategoryById(di.getCategoryId());
-                    ir.setCategory(categoryRes);
-                }
-                
-                ir.setColor(di.getColor());
-                ir.setQuantity(di.getQuantity());
-                ir.setApprovedQuantity(di.getApprovedQuantity()); // 🔥 SET APPROVED QUANTITY
-                ir.setDealerPrice(di.getDealerPrice()); // 🔥 SET DEALER PRICE
-                itemResList.add(ir);
-            }
-            res.setItems(itemResList);
-        }
-        
-        // Set messages/notes
-        res.setInvitationMessage(distribution.getInvitationMessage());
-        res.setDealerNotes(distribution.getDealerNotes());
-        res.setEvmNotes(distribution.getEvmNotes());
-        res.setFeedback(distribution.getFeedback());
-        
-        // Set timeline - CHỈ 2 FIELD ĐANG DÙNG
-        res.setCreatedAt(distribution.getCreatedAt());
-        res.setInvitedAt(distribution.getInvitedAt());
-        // ❌ Xóa 5 timeline fields không dùng
-        // res.setRespondedAt(distribution.getRespondedAt());
-        // res.setSubmittedAt(distribution.getSubmittedAt());
-        // res.setApprovedAt(distribution.getApprovedAt());
-        // res.setPlannedAt(distribution.getPlannedAt());
-        // res.setCompletedAt(distribution.getCompletedAt());
-        
-        // Set dates
-        res.setDeadline(distribution.getDeadline());
-        res.setRequestedDeliveryDate(distribution.getRequestedDeliveryDate());
-        res.setEstimatedDeliveryDate(distribution.getEstimatedDeliveryDate());
-        res.setActualDeliveryDate(distribution.getActualDeliveryDate());
-        
-        // Set quantities - CHỈ 2 FIELD ĐANG DÙNG
-        res.setRequestedQuantity(distribution.getRequestedQuantity());
-        res.setReceivedQuantity(distribution.getReceivedQuantity());
-        // ❌ Xóa 2 quantity fields không dùng
-        // res.setApprovedQuantity(distribution.getApprovedQuantity());
-        // res.setActualQuantity(distribution.getActualQuantity());
-        
-        res.setManufacturerPrice(distribution.getManufacturerPrice());
-        
-        // Set supplementary fields
-        res.setParentDistributionId(distribution.getParentDistributionId());
-        res.setIsSupplementary(distribution.getIsSupplementary());
-        
-        return res;
+        return distributionAssembler.toRes(distribution);
     }
 
     // ===== SUPPLEMENTARY DISTRIBUTION =====
+    // Đơn gốc phải được duyệt (PRICE_SENT trở đi) mới tạo được đơn bổ sung
+    private static final List<String> SUPPLEMENTABLE_STATUSES =
+            List.of("PRICE_SENT", "CONFIRMED", "PLANNED", "COMPLETED");
+
     /**
      * Tạo đơn phân phối bổ sung cho số lượng thiếu
      * Được gọi khi EVM Staff duyệt đơn với số lượng < yêu cầu
+     * Số lượng thiếu lấy từ DistributionItem.shortfallQuantity (set khi duyệt), không parse evmNotes
      * 
      * @param parentDistributionId ID của đơn gốc
      * @return Đơn bổ sung mới được tạo với status PENDING
      */
+    @Transactional
     public DistributionRes createSupplementaryDistribution(int parentDistributionId) {
         // 1. Lấy distribution gốc
         Optional<Distribution> parentOpt = distributionRepo.findById(parentDistributionId);
@@ -1049,286 +781,96 @@ public class DistributionService {
         Distribution parent = parentOpt.get();
 
         // 2. Validate: Chỉ tạo bổ sung nếu đơn gốc đã được duyệt (PRICE_SENT, CONFIRMED, hoặc sau đó)
-        if (!"PRICE_SENT".equals(parent.getStatus()) && 
-            !"PRICE_ACCEPTED".equals(parent.getStatus()) &&
-            !"CONFIRMED".equals(parent.getStatus()) && 
-            !"PLANNED".equals(parent.getStatus()) &&
-            !"COMPLETED".equals(parent.getStatus())) {
+        if (!SUPPLEMENTABLE_STATUSES.contains(parent.getStatus())) {
             throw new RuntimeException("Chỉ có thể tạo đơn bổ sung khi đơn gốc đã được duyệt (status: PRICE_SENT trở đi)");
         }
 
-        // 3. Kiểm tra evmNotes để parse số lượng đã duyệt
-        // QUAN TRỌNG: evmNotes phải có format "Duyệt theo dòng: ..." để biết số yêu cầu ban đầu
-        if (parent.getEvmNotes() == null || !parent.getEvmNotes().contains("Duyệt theo dòng:")) {
-            throw new RuntimeException("Không thể tạo đơn bổ sung: Đơn gốc chưa được duyệt với chi tiết số lượng từng item. " +
-                                     "Vui lòng đảm bảo EVM Staff đã duyệt đơn với ghi chú chi tiết 'Duyệt theo dòng: ...'");
-        }
-        
-        // Tính số lượng thiếu từ items của đơn gốc
-        if (parent.getItems() == null || parent.getItems().isEmpty()) {
-            throw new RuntimeException("Đơn gốc không có items để tạo đơn bổ sung");
+        // 3. Các dòng còn thiếu - tính trong 1 query
+        List<DistributionItem> shortfallItems = distributionItemRepo.findShortfallItems(parentDistributionId);
+        if (shortfallItems.isEmpty()) {
+            throw new RuntimeException("Không có items thiếu để tạo đơn bổ sung cho đơn #" + parentDistributionId);
         }
 
-        int totalShortage = 0;
-        List<DistributionItem> supplementaryItems = new ArrayList<>();
+        claimShortfall(shortfallItems);
+        Distribution supplementary = buildSupplementary(parent, shortfallItems);
+        return convertToRes(supplementary);
+    }
 
-        // Parse evmNotes để lấy số lượng đã duyệt cho từng item
-        // Format: "Duyệt theo dòng: vf3 (Đen): 5/10 xe @ 10.000 VND; vf3 (Xanh): 3/5 xe @ 20.000 VND | Ghi chú: ..."
-        java.util.Map<String, Integer> approvedQuantitiesMap = new java.util.HashMap<>();
-        java.util.Map<String, Integer> requestedQuantitiesMap = new java.util.HashMap<>(); // Lưu requested từ evmNotes
-        boolean parsedFromEvmNotes = false;
-        
-        // Parse evmNotes - BẮT BUỘC phải thành công
-        if (parent.getEvmNotes() != null && parent.getEvmNotes().contains("Duyệt theo dòng:")) {
-            try {
-                String evmNotes = parent.getEvmNotes();
-                int startIdx = evmNotes.indexOf("Duyệt theo dòng:") + "Duyệt theo dòng:".length();
-                int endIdx = evmNotes.indexOf("|", startIdx);
-                if (endIdx == -1) endIdx = evmNotes.length();
-                
-                String itemsText = evmNotes.substring(startIdx, endIdx).trim();
-                String[] itemParts = itemsText.split(";");
-                
-                for (String part : itemParts) {
-                    part = part.trim();
-                    if (part.isEmpty()) continue;
-                    
-                    // Parse: "vf3 (Đen): 5/10 xe @ 10.000 VND" hoặc "vf3 (Đen): 5/10 xe"
-                    java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("^(.+?):\\s*(\\d+)/(\\d+)\\s*xe");
-                    java.util.regex.Matcher matcher = pattern.matcher(part);
-                    
-                    if (matcher.find()) {
-                        String itemKey = matcher.group(1).trim(); // "vf3 (Đen)"
-                        int approved = Integer.parseInt(matcher.group(2)); // 5
-                        int requested = Integer.parseInt(matcher.group(3)); // 10
-                        approvedQuantitiesMap.put(itemKey, approved);
-                        requestedQuantitiesMap.put(itemKey, requested);
-                        parsedFromEvmNotes = true;
-                        
-                        System.out.println("📊 Parsed evmNotes: " + itemKey + " = " + approved + "/" + requested + " xe");
-                    }
-                }
-                
-                // Nếu parse được nhưng không có item nào match
-                if (!parsedFromEvmNotes) {
-                    throw new RuntimeException("Không thể parse số lượng từ evmNotes. Format: 'Duyệt theo dòng: Tên (Màu): X/Y xe; ...'");
-                }
-                
-            } catch (Exception e) {
-                System.err.println("⚠️ Lỗi khi parse evmNotes: " + e.getMessage());
-                throw new RuntimeException("Không thể parse số lượng từ evmNotes: " + e.getMessage() + 
-                                         ". Vui lòng đảm bảo format đúng: 'Duyệt theo dòng: Tên (Màu): X/Y xe; ...'");
-            }
+    /**
+     * Tạo đơn bổ sung cho TẤT CẢ đơn gốc còn thiếu hàng của 1 dealer (1 query + 1 UPDATE cho cả dealer)
+     */
+    @Transactional
+    public List<DistributionRes> createSupplementaryDistributionsForDealer(int dealerId) {
+        List<DistributionItem> shortfallItems =
+                distributionItemRepo.findShortfallItemsByDealer(dealerId, SUPPLEMENTABLE_STATUSES);
+        if (shortfallItems.isEmpty()) {
+            return List.of();
         }
 
-        // Tạo supplementary items với số lượng = số lượng thiếu
-        System.out.println("🔍 Creating supplementary items from parent items (count: " + parent.getItems().size() + ")");
-        for (DistributionItem parentItem : parent.getItems()) {
-            // Tìm số lượng đã duyệt từ evmNotes
-            // Ưu tiên Product name, fallback về Category name (load từ categoryId)
-            String itemName = "Unknown";
-            if (parentItem.getProduct() != null && parentItem.getProduct().getName() != null) {
-                itemName = parentItem.getProduct().getName();
-            } else if (parentItem.getCategoryId() != null) {
-                // Nếu chỉ có categoryId, cố gắng load category name
-                try {
-                    Optional<Category> catOpt = categoryRepository.findById(parentItem.getCategoryId());
-                    if (catOpt.isPresent()) {
-                        itemName = catOpt.get().getName();
-                    }
-                } catch (Exception e) {
-                    System.err.println("⚠️ Cannot load category for categoryId: " + parentItem.getCategoryId());
-                }
-            }
-            
-            String itemKey = itemName + (parentItem.getColor() != null ? " (" + parentItem.getColor() + ")" : "");
-            
-            System.out.println("🔍 Checking item: " + itemKey + " (Product: " + 
-                             (parentItem.getProduct() != null ? parentItem.getProduct().getName() : "null") + 
-                             ", CategoryId: " + parentItem.getCategoryId() + ")");
-            
-            // BẮT BUỘC phải có trong parsed map
-            if (!requestedQuantitiesMap.containsKey(itemKey)) {
-                throw new RuntimeException("Không tìm thấy thông tin số lượng cho item: " + itemKey + 
-                                         " trong evmNotes. Vui lòng kiểm tra lại ghi chú duyệt đơn. " +
-                                         "Available keys: " + requestedQuantitiesMap.keySet());
-            }
-            
-            int requested = requestedQuantitiesMap.get(itemKey);
-            int approved = approvedQuantitiesMap.get(itemKey);
-            int shortage = requested - approved;
-            
-            System.out.println("🔍 Item: " + itemKey + " → Requested=" + requested + ", Approved=" + approved + ", Shortage=" + shortage);
-            
-            if (shortage > 0) {
-                // Clone item với số lượng = số lượng thiếu
-                DistributionItem suppItem = new DistributionItem();
-                suppItem.setProduct(parentItem.getProduct());
-                suppItem.setCategoryId(parentItem.getCategoryId());
-                suppItem.setColor(parentItem.getColor());
-                suppItem.setQuantity(shortage);
-                suppItem.setDealerPrice(parentItem.getDealerPrice());
-                supplementaryItems.add(suppItem);
-                totalShortage += shortage;
-                
-                System.out.println("   ➕ Added supplementary item: " + itemKey + " | Shortage: " + shortage + 
-                                 " | ProductID: " + (parentItem.getProduct() != null ? parentItem.getProduct().getId() : "null") +
-                                 " | CategoryID: " + parentItem.getCategoryId() +
-                                 " | DealerPrice: " + (parentItem.getDealerPrice() != null ? parentItem.getDealerPrice() : "null"));
-            }
+        // Group theo đơn gốc (query đã ORDER BY distribution id)
+        Map<Distribution, List<DistributionItem>> byParent = new LinkedHashMap<>();
+        for (DistributionItem item : shortfallItems) {
+            byParent.computeIfAbsent(item.getDistribution(), d -> new ArrayList<>()).add(item);
         }
 
-        if (supplementaryItems.isEmpty()) {
-            // Debug: In ra thông tin chi tiết để biết tại sao không có items thiếu
-            System.err.println("❌ Không tạo được đơn bổ sung - Chi tiết:");
-            System.err.println("   Parent Distribution ID: " + parentDistributionId);
-            System.err.println("   Parent Status: " + parent.getStatus());
-            System.err.println("   Requested Quantity: " + parent.getRequestedQuantity());
-            System.err.println("   Received Quantity: " + parent.getReceivedQuantity());
-            System.err.println("   Total Items: " + (parent.getItems() != null ? parent.getItems().size() : 0));
-            System.err.println("   Parsed from evmNotes: " + parsedFromEvmNotes);
-            System.err.println("   EvmNotes: " + (parent.getEvmNotes() != null ? parent.getEvmNotes() : "null"));
-            
-            if (parent.getItems() != null) {
-                for (DistributionItem item : parent.getItems()) {
-                    String name = (item.getProduct() != null && item.getProduct().getName() != null) 
-                                ? item.getProduct().getName() : "Unknown";
-                    String color = item.getColor() != null ? item.getColor() : "null";
-                    int qty = item.getQuantity() != null ? item.getQuantity() : 0;
-                    System.err.println("   - Item: " + name + " (" + color + ") → Quantity: " + qty);
-                }
-            }
-            
-            throw new RuntimeException("Không có items thiếu để tạo đơn bổ sung. Kiểm tra console logs để biết chi tiết.");
+        claimShortfall(shortfallItems);
+        List<Distribution> created = new ArrayList<>(byParent.size());
+        for (Map.Entry<Distribution, List<DistributionItem>> entry : byParent.entrySet()) {
+            created.add(buildSupplementary(entry.getKey(), entry.getValue()));
         }
+        return distributionAssembler.toRes(created);
+    }
 
-        // 4. Tạo distribution bổ sung
+    // Nhận các dòng thiếu trước khi tạo đơn bổ sung (UPDATE có điều kiện giữ khóa dòng đến hết transaction).
+    // Request đồng thời đã nhận trước 1 phần → ném lỗi để rollback, không tạo đơn bổ sung trùng
+    private void claimShortfall(List<DistributionItem> shortfallItems) {
+        List<Integer> ids = shortfallItems.stream().map(DistributionItem::getId).toList();
+        int claimed = distributionItemRepo.clearShortfall(ids);
+        if (claimed != ids.size()) {
+            throw new ConflictException("Đơn bổ sung cho các dòng thiếu này vừa được tạo bởi yêu cầu khác, vui lòng tải lại");
+        }
+    }
+
+    // Tạo và lưu đơn bổ sung (PENDING) với items = số lượng thiếu của từng dòng đơn gốc
+    private Distribution buildSupplementary(Distribution parent, List<DistributionItem> shortfallItems) {
         Distribution supplementary = new Distribution();
         supplementary.setDealer(parent.getDealer());
-        supplementary.setStatus("PENDING"); // Đơn bổ sung bắt đầu ở PENDING
         supplementary.setInvitedAt(LocalDateTime.now());
-        
-        // Set supplementary fields
-        supplementary.setParentDistributionId(parentDistributionId);
+        supplementary.setParentDistributionId(parent.getId());
         supplementary.setIsSupplementary(true);
-        
-        // Set quantities
+
+        int totalShortage = 0;
+        List<DistributionItem> supplementaryItems = new ArrayList<>(shortfallItems.size());
+        for (DistributionItem parentItem : shortfallItems) {
+            int shortage = parentItem.getShortfallQuantity() != null
+                    ? parentItem.getShortfallQuantity()
+                    : parentItem.getQuantity() - parentItem.getApprovedQuantity();
+
+            // Clone item với số lượng = số lượng thiếu
+            DistributionItem suppItem = new DistributionItem();
+            suppItem.setDistribution(supplementary);
+            suppItem.setProduct(parentItem.getProduct());
+            suppItem.setCategoryId(parentItem.getCategoryId());
+            suppItem.setColor(parentItem.getColor());
+            suppItem.setQuantity(shortage);
+            suppItem.setDealerPrice(parentItem.getDealerPrice());
+            supplementaryItems.add(suppItem);
+            totalShortage += shortage;
+        }
+        supplementary.setItems(supplementaryItems);
         supplementary.setRequestedQuantity(totalShortage);
-        
+
         // Copy thông tin từ đơn gốc
         supplementary.setManufacturerPrice(parent.getManufacturerPrice());
         supplementary.setRequestedDeliveryDate(parent.getRequestedDeliveryDate());
-        
-        // Set notes
-        String suppNote = "Đơn bổ sung cho đơn gốc #" + parentDistributionId + " (" + totalShortage + " xe thiếu)";
+
+        String suppNote = "Đơn bổ sung cho đơn gốc #" + parent.getId() + " (" + totalShortage + " xe thiếu)";
         supplementary.setEvmNotes(suppNote);
-        
-        // ✅ QUAN TRỌNG: Save distribution TRƯỚC để có ID, sau đó mới set items
-        distributionRepo.save(supplementary);
-        
-        // Set items AFTER distribution has been saved (to avoid foreign key issues)
-        for (DistributionItem item : supplementaryItems) {
-            item.setDistribution(supplementary);
-        }
-        supplementary.setItems(supplementaryItems);
-        
-        // Save again to persist items AND flush to ensure IDs are generated
-        supplementary = distributionRepo.saveAndFlush(supplementary);
-        
-        System.out.println("✅ Tạo đơn bổ sung thành công: ID=" + supplementary.getId() + 
-                         ", Parent=" + parentDistributionId + ", Shortage=" + totalShortage + " xe");
-        System.out.println("   Items persisted: " + (supplementary.getItems() != null ? supplementary.getItems().size() : 0));
-        
-        // ✅ LOG: Verify items have IDs
-        if (supplementary.getItems() != null) {
-            for (DistributionItem item : supplementary.getItems()) {
-                System.out.println("   📦 Item ID: " + item.getId() + " | Qty: " + item.getQuantity() + 
-                                 " | Color: " + item.getColor() + 
-                                 " | CategoryId: " + item.getCategoryId() + 
-                                 " | ProductId: " + (item.getProduct() != null ? item.getProduct().getId() : "null"));
-            }
-        }
-        
-        // ✅ VERIFY: Load lại từ DB để đảm bảo items đã được lưu
-        Distribution verifyDist = distributionRepo.findById(supplementary.getId()).orElse(null);
-        if (verifyDist != null && verifyDist.getItems() != null) {
-            System.out.println("   ✅ VERIFIED: Distribution has " + verifyDist.getItems().size() + " items in DB");
-            for (DistributionItem item : verifyDist.getItems()) {
-                System.out.println("      - Item ID: " + item.getId() + " | Qty: " + item.getQuantity() + 
-                                 " | ProductID: " + (item.getProduct() != null ? item.getProduct().getId() : "null") +
-                                 " | CategoryID: " + item.getCategoryId());
-            }
-        } else {
-            System.err.println("   ❌ WARNING: Items NOT found in DB after save!");
-        }
-        
-        return convertToRes(supplementary);
-    }
-    
-    /**
-     * ✅ TỰ ĐỘNG SET THÔNG SỐ KỸ THUẬT cho sản phẩm dựa trên tên xe
-     * Dữ liệu dựa trên thông số thực tế của VinFast
-     */
-    private void setDefaultSpecsByProductName(Product product, String productName) {
-        if (productName == null) return;
-        
-        String nameLower = productName.toLowerCase().trim();
-        
-        // VinFast VF3 - Mini City Car
-        if (nameLower.contains("vf3") || nameLower.contains("vf 3")) {
-            product.setBattery(19); // kWh
-            product.setRange(210); // km
-            product.setHp(43); // HP
-            product.setTorque(110); // Nm
-        }
-        // VinFast VF5 - Compact SUV
-        else if (nameLower.contains("vf5") || nameLower.contains("vf 5")) {
-            product.setBattery(37); // kWh
-            product.setRange(326); // km
-            product.setHp(134); // HP
-            product.setTorque(135); // Nm
-        }
-        // VinFast VF6 - Mid-size SUV
-        else if (nameLower.contains("vf6") || nameLower.contains("vf 6")) {
-            product.setBattery(59); // kWh
-            product.setRange(388); // km
-            product.setHp(174); // HP
-            product.setTorque(250); // Nm
-        }
-        // VinFast VF7 - Mid-size SUV
-        else if (nameLower.contains("vf7") || nameLower.contains("vf 7")) {
-            product.setBattery(75); // kWh
-            product.setRange(450); // km
-            product.setHp(201); // HP
-            product.setTorque(310); // Nm
-        }
-        // VinFast VF8 - Full-size SUV
-        else if (nameLower.contains("vf8") || nameLower.contains("vf 8")) {
-            product.setBattery(87); // kWh
-            product.setRange(471); // km
-            product.setHp(402); // HP (Dual motor)
-            product.setTorque(620); // Nm
-        }
-        // VinFast VF9 - Premium Full-size SUV
-        else if (nameLower.contains("vf9") || nameLower.contains("vf 9")) {
-            product.setBattery(123); // kWh
-            product.setRange(594); // km
-            product.setHp(402); // HP (Dual motor)
-            product.setTorque(640); // Nm
-        }
-        // VinFast VF e34 - Compact Electric SUV
-        else if (nameLower.contains("e34") || nameLower.contains("vfe34")) {
-            product.setBattery(42); // kWh
-            product.setRange(318); // km
-            product.setHp(147); // HP
-            product.setTorque(242); // Nm
-        }
-        // Default fallback - nếu không match dòng xe nào
-        else {
-            product.setBattery(50); // kWh
-            product.setRange(350); // km
-            product.setHp(150); // HP
-            product.setTorque(250); // Nm
-        }
+
+        // Items được cascade insert cùng distribution trong cùng transaction
+        supplementary = distributionStateMachine.start(supplementary, DistributionStatus.PENDING, suppNote);
+        System.out.println("✅ Tạo đơn bổ sung thành công: ID=" + supplementary.getId() +
+                         ", Parent=" + parent.getId() + ", Shortage=" + totalShortage + " xe");
+        return supplementary;
     }
 }
@@ -0,0 +1,74 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionTransitionRes;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionTransition;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.enums.DistributionStatus;
+import com.lemon.supershop.swp391fa25evdm.distribution.repository.DistributionRepo;
+import com.lemon.supershop.swp391fa25evdm.distribution.repository.DistributionTransitionRepo;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+
+/**
+ * Chuyển trạng thái distribution theo {@link DistributionStatus#next()}.
+ *
+ * Mỗi lần chuyển được flush ngay: UPDATE ... WHERE Id = ? AND Version = ? (optimistic lock qua @Version).
+ * Nếu 2 thao tác EVM/dealer chạy song song trên cùng distribution, bên đến sau nhận
+ * ObjectOptimisticLockingFailureException và toàn bộ transaction của nó bị rollback
+ * (kể cả product đã tạo trong confirmReceived) - không cần khóa bi quan.
+ */
+@Component
+public class DistributionStateMachine {
+
+    @Autowired
+    private DistributionRepo distributionRepo;
+    @Autowired
+    private DistributionTransitionRepo distributionTransitionRepo;
+
+    // Distribution mới tạo: lưu với trạng thái ban đầu và ghi log (null → initial)
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Distribution start(Distribution distribution, DistributionStatus initial, String note) {
+        distribution.setStatus(initial.name());
+        Distribution saved = distributionRepo.saveAndFlush(distribution);
+        distributionTransitionRepo.save(new DistributionTransition(
+                saved.getId(), null, initial.name(), saved.getVersion(), note));
+        return saved;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Distribution transition(Distribution distribution, DistributionStatus target, String note) {
+        DistributionStatus current;
+        try {
+            current = DistributionStatus.valueOf(distribution.getStatus());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            // Dữ liệu trong DB sai, không phải lỗi của request
+            throw new IllegalStateException("Unknown stored distribution status: " + distribution.getStatus());
+        }
+        if (!current.canTransitionTo(target)) {
+            throw new ConflictException("Invalid status transition: " + current + " -> " + target);
+        }
+        distribution.setStatus(target.name());
+        Distribution saved = distributionRepo.saveAndFlush(distribution);
+        distributionTransitionRepo.save(new DistributionTransition(
+                saved.getId(), current.name(), target.name(), saved.getVersion(), note));
+        return saved;
+    }
+
+    public List<DistributionTransitionRes> getTransitions(int distributionId) {
+        return distributionTransitionRepo.findByDistributionIdOrderByIdAsc(distributionId).stream().map(t -> {
+            DistributionTransitionRes res = new DistributionTransitionRes();
+            res.setFromStatus(t.getFromStatus());
+            res.setToStatus(t.getToStatus());
+            res.setVersion(t.getVersion());
+            res.setNote(t.getNote());
+            res.setCreatedAt(t.getCreatedAt());
+            return res;
+        }).toList();
+    }
+}
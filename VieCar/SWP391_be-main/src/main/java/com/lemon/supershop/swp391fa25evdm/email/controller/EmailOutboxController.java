@@ -0,0 +1,53 @@
+package com.lemon.supershop.swp391fa25evdm.email.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.lemon.supershop.swp391fa25evdm.email.model.entity.EmailOutbox;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailOutboxService;
+
+@RestController
+@RequestMapping("/api/email-outbox")
+@CrossOrigin(origins = "*")
+public class EmailOutboxController {
+
+    @Autowired
+    private EmailOutboxService outboxService;
+
+    // Số email theo trạng thái
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Long>> getStats() {
+        Map<String, Long> stats = new HashMap<>();
+        for (String status : List.of("PENDING", "SENDING", "SENT", "DEAD")) {
+            stats.put(status, outboxService.countByStatus(status));
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    // Email đã gửi thất bại quá số lần cho phép (dead-letter)
+    @GetMapping("/dead")
+    public ResponseEntity<List<EmailOutbox>> getDeadLetters(@RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(outboxService.getDeadLetters(limit));
+    }
+
+    @PostMapping("/{id}/retry")
+    public ResponseEntity<?> retry(@PathVariable long id) {
+        try {
+            outboxService.requeue(id);
+            return ResponseEntity.ok("Email đã được đưa lại vào hàng đợi");
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
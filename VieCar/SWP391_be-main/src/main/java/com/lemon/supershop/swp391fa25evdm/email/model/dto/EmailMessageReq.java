@@ -0,0 +1,51 @@
+package com.lemon.supershop.swp391fa25evdm.email.model.dto;
+
+// 1 email trong yêu cầu gửi hàng loạt (EmailService.sendAll)
+public class EmailMessageReq {
+    private String to;
+    private String subject;
+    private String body;
+    private boolean html;
+
+    public EmailMessageReq() {
+    }
+
+    public EmailMessageReq(String to, String subject, String body, boolean html) {
+        this.to = to;
+        this.subject = subject;
+        this.body = body;
+        this.html = html;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public boolean isHtml() {
+        return html;
+    }
+
+    public void setHtml(boolean html) {
+        this.html = html;
+    }
+}
@@ -0,0 +1,135 @@
+package com.lemon.supershop.swp391fa25evdm.email.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+// Outbox email: ghi cùng transaction với nghiệp vụ, dispatcher gửi SMTP ở background
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "IX_email_outbox_status_next", columnList = "Status, NextAttemptAt"),
+        @Index(name = "IX_email_outbox_lease", columnList = "LeaseToken")
+})
+public class EmailOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id", columnDefinition = "BIGINT")
+    private long id;
+
+    @Column(name = "Recipient", columnDefinition = "VARCHAR(255)", nullable = false)
+    private String recipient;
+
+    @Column(name = "Subject", columnDefinition = "NVARCHAR(255)")
+    private String subject;
+
+    @Column(name = "Body", columnDefinition = "NVARCHAR(MAX)")
+    private String body;
+
+    @Column(name = "Html", nullable = false)
+    private boolean html;
+
+    @Column(name = "Status", columnDefinition = "VARCHAR(20)", nullable = false)
+    private String status; // PENDING, SENDING, SENT, DEAD
+
+    @Column(name = "Attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "NextAttemptAt", columnDefinition = "DATETIME2", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "LeaseOwner", columnDefinition = "VARCHAR(100)")
+    private String leaseOwner;
+
+    @Column(name = "LeaseToken", columnDefinition = "VARCHAR(36)")
+    private String leaseToken;
+
+    @Column(name = "LeaseUntil", columnDefinition = "DATETIME2")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "SentAt", columnDefinition = "DATETIME2")
+    private LocalDateTime sentAt;
+
+    @Column(name = "LastError", columnDefinition = "NVARCHAR(500)")
+    private String lastError;
+
+    @Column(name = "CreatedAt", columnDefinition = "DATETIME2", updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = this.createdAt;
+        }
+    }
+
+    public EmailOutbox() {}
+
+    public EmailOutbox(String recipient, String subject, String body, boolean html) {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.html = html;
+        this.status = "PENDING";
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public boolean isHtml() {
+        return html;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public String getLeaseToken() {
+        return leaseToken;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,76 @@
+package com.lemon.supershop.swp391fa25evdm.email.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.lemon.supershop.swp391fa25evdm.email.model.entity.EmailOutbox;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    List<EmailOutbox> findByLeaseToken(String leaseToken);
+
+    List<EmailOutbox> findByStatusOrderByIdDesc(String status, Pageable pageable);
+
+    long countByStatus(String status);
+
+    /**
+     * Nhận (lease) tối đa batchSize email đến lượt gửi cho node hiện tại.
+     * UPDLOCK + READPAST: node khác bỏ qua dòng đang bị khóa (tương đương SKIP LOCKED).
+     * Email SENDING quá hạn lease (node chết giữa chừng) được nhận lại - không mất mail.
+     */
+    @Modifying
+    @Query(value =
+            "WITH due AS (" +
+            "    SELECT TOP (:batchSize) * FROM email_outbox WITH (UPDLOCK, READPAST, ROWLOCK) " +
+            "    WHERE (status = 'PENDING' AND next_attempt_at <= :now) " +
+            "       OR (status = 'SENDING' AND lease_until < :now) " +
+            "    ORDER BY next_attempt_at" +
+            ") " +
+            "UPDATE due SET status = 'SENDING', lease_owner = :owner, lease_token = :token, " +
+            "    lease_until = :leaseUntil, attempts = attempts + 1",
+            nativeQuery = true)
+    int claimDue(@Param("token") String token,
+                 @Param("owner") String owner,
+                 @Param("now") LocalDateTime now,
+                 @Param("leaseUntil") LocalDateTime leaseUntil,
+                 @Param("batchSize") int batchSize);
+
+    // Chỉ ghi kết quả nếu lease vẫn còn thuộc về lần nhận này
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = 'SENT', e.sentAt = :now, e.leaseToken = NULL, e.leaseUntil = NULL, " +
+           "e.lastError = NULL WHERE e.id = :id AND e.leaseToken = :token")
+    int markSent(@Param("id") long id, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    // Ghi SENT cho cả lô đã gửi thành công (cùng lease token)
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = 'SENT', e.sentAt = :now, e.leaseToken = NULL, e.leaseUntil = NULL, " +
+           "e.lastError = NULL WHERE e.id IN :ids AND e.leaseToken = :token")
+    int markSentBatch(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    // Lỗi → PENDING với lần thử kế tiếp lùi dần; quá maxAttempts → DEAD (dead-letter)
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET " +
+           "e.status = CASE WHEN e.attempts >= :maxAttempts THEN 'DEAD' ELSE 'PENDING' END, " +
+           "e.nextAttemptAt = :retryAt, e.lastError = :error, e.leaseToken = NULL, e.leaseUntil = NULL " +
+           "WHERE e.id = :id AND e.leaseToken = :token")
+    int markFailed(@Param("id") long id,
+                   @Param("token") String token,
+                   @Param("error") String error,
+                   @Param("retryAt") LocalDateTime retryAt,
+                   @Param("maxAttempts") int maxAttempts);
+
+    // Đưa email DEAD về hàng đợi (thử lại từ đầu)
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = 'PENDING', e.attempts = 0, e.nextAttemptAt = :now " +
+           "WHERE e.id = :id AND e.status = 'DEAD'")
+    int requeueDead(@Param("id") long id, @Param("now") LocalDateTime now);
+}
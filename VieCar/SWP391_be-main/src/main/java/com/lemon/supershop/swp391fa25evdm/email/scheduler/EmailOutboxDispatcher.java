@@ -0,0 +1,224 @@
+package com.lemon.supershop.swp391fa25evdm.email.scheduler;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.lemon.supershop.swp391fa25evdm.email.model.entity.EmailOutbox;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailOutboxService;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailOutboxService.EmailQueuedEvent;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailRateLimiter;
+import com.lemon.supershop.swp391fa25evdm.email.service.SmtpTransportPool;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Gửi email từ outbox email_outbox qua SMTP, ngoài luồng HTTP.
+ *
+ * - Chạy khi có email mới được commit (EmailQueuedEvent) và định kỳ để nhặt email đến hạn thử lại
+ * - Nhiều lần đánh thức dồn lại thành 1 lượt chạy trên 1 thread riêng
+ * - Mỗi lượt nhận từng lô (lease), gom theo domain người nhận, mỗi domain gửi qua 1 kết nối SMTP
+ *   giữ sống trong {@link SmtpTransportPool} với giới hạn tốc độ theo domain
+ * - Kết quả SENT / thử lại / DEAD ghi vào DB
+ */
+@Service
+public class EmailOutboxDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    @Autowired
+    private EmailOutboxService outboxService;
+    @Autowired
+    private JavaMailSender mailSender;
+    @Autowired
+    private SmtpTransportPool transportPool;
+
+    @Value("${app.email.from}")
+    private String fromEmail;
+    @Value("${app.email.from-name}")
+    private String fromName;
+    @Value("${app.email.outbox.batch-size:50}")
+    private int batchSize;
+    @Value("${app.email.outbox.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+    @Value("${app.email.outbox.lease-seconds:300}")
+    private int leaseSeconds;
+
+    private String nodeId;
+    private ExecutorService worker;
+    private ExecutorService sendPool;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    @PostConstruct
+    void init() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "email-outbox");
+            t.setDaemon(true);
+            return t;
+        });
+        // Mỗi thread gửi 1 nhóm domain tại 1 thời điểm, số thread = số kết nối SMTP trong pool
+        AtomicInteger threadCount = new AtomicInteger();
+        sendPool = Executors.newFixedThreadPool(transportPool.getPoolSize(), r -> {
+            Thread t = new Thread(r, "email-outbox-send-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        worker.shutdown();
+        sendPool.shutdown();
+    }
+
+    // Email mới đã commit → gửi ngay (nếu không có transaction thì chạy luôn)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailQueued(EmailQueuedEvent event) {
+        wakeUp();
+    }
+
+    // Nhặt email đến hạn thử lại / lease hết hạn của node khác
+    @Scheduled(fixedDelayString = "${app.email.outbox.poll-interval-ms:15000}", initialDelayString = "${app.email.outbox.initial-delay-ms:10000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    public void wakeUp() {
+        // Đã có 1 lượt đang chờ chạy thì lượt đó sẽ nhặt luôn email mới
+        if (pending.compareAndSet(false, true)) {
+            try {
+                worker.execute(this::drain);
+            } catch (Exception e) {
+                pending.set(false);
+                logger.warn("Email outbox dispatcher not available: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void drain() {
+        pending.set(false);
+        int sent = 0;
+        int failed = 0;
+        long startedAt = System.currentTimeMillis();
+        try {
+            for (int batchNo = 0; batchNo < maxBatchesPerRun; batchNo++) {
+                List<EmailOutbox> batch = outboxService.claimDue(nodeId, batchSize, leaseSeconds);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                // Gom theo domain người nhận: mỗi nhóm 1 kết nối SMTP, các domain gửi song song
+                Map<String, List<EmailOutbox>> byDomain = new LinkedHashMap<>();
+                for (EmailOutbox email : batch) {
+                    byDomain.computeIfAbsent(EmailRateLimiter.domainOf(email.getRecipient()), d -> new ArrayList<>()).add(email);
+                }
+                // Domain lớn (gmail.com...) được chia cho nhiều kết nối; tốc độ vẫn do EmailRateLimiter chung khống chế
+                int connections = transportPool.getPoolSize();
+                List<Future<int[]>> results = new ArrayList<>();
+                for (Map.Entry<String, List<EmailOutbox>> group : byDomain.entrySet()) {
+                    List<EmailOutbox> emails = group.getValue();
+                    int chunkSize = Math.max(1, (emails.size() + connections - 1) / connections);
+                    for (int from = 0; from < emails.size(); from += chunkSize) {
+                        List<EmailOutbox> chunk = emails.subList(from, Math.min(emails.size(), from + chunkSize));
+                        results.add(sendPool.submit(() -> deliverGroup(group.getKey(), chunk)));
+                    }
+                }
+                for (Future<int[]> result : results) {
+                    int[] counts = result.get();
+                    sent += counts[0];
+                    failed += counts[1];
+                }
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Error in email outbox dispatcher: {}", e.getMessage(), e);
+        }
+        if (sent > 0 || failed > 0) {
+            logger.info("Email outbox [{}]: {} sent, {} failed in {} ms", nodeId, sent, failed, System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    // Gửi 1 nhóm email cùng domain qua 1 kết nối trong pool và ghi kết quả; lỗi 1 email không làm hỏng cả nhóm
+    private int[] deliverGroup(String domain, List<EmailOutbox> emails) {
+        List<EmailOutbox> toSend = new ArrayList<>(emails.size());
+        List<MimeMessage> messages = new ArrayList<>(emails.size());
+        int failed = 0;
+        for (EmailOutbox email : emails) {
+            try {
+                messages.add(buildMessage(email));
+                toSend.add(email);
+            } catch (Exception e) {
+                recordFailure(email, e);
+                failed++;
+            }
+        }
+
+        Exception[] errors = transportPool.sendAll(domain, messages);
+        List<EmailOutbox> sent = new ArrayList<>(toSend.size());
+        for (int i = 0; i < toSend.size(); i++) {
+            if (errors[i] == null) {
+                sent.add(toSend.get(i));
+            } else {
+                recordFailure(toSend.get(i), errors[i]);
+                failed++;
+            }
+        }
+        try {
+            outboxService.markSent(sent);
+        } catch (Exception e) {
+            // Không ghi được SENT → lease hết hạn sẽ gửi lại (at-least-once)
+            logger.error("Failed to record {} sent emails for {}: {}", sent.size(), domain, e.getMessage());
+        }
+        return new int[] { sent.size(), failed };
+    }
+
+    private MimeMessage buildMessage(EmailOutbox email) throws Exception {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, email.isHtml(), "UTF-8");
+        helper.setFrom(fromEmail, fromName);
+        helper.setTo(email.getRecipient());
+        helper.setSubject(email.getSubject());
+        helper.setText(email.getBody() != null ? email.getBody() : "", email.isHtml());
+        return message;
+    }
+
+    private void recordFailure(EmailOutbox email, Exception error) {
+        logger.error("Failed to send email #{} (attempt {}): {}", email.getId(), email.getAttempts(), error.getMessage());
+        try {
+            outboxService.markFailed(email, error.getMessage());
+        } catch (Exception markError) {
+            // Lease hết hạn sẽ tự được nhận lại
+            logger.error("Failed to record email #{} failure: {}", email.getId(), markError.getMessage());
+        }
+    }
+}
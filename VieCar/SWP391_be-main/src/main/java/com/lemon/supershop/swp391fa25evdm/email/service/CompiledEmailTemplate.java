@@ -0,0 +1,118 @@
+package com.lemon.supershop.swp391fa25evdm.email.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template email đã biên dịch sẵn thành danh sách đoạn: chữ cố định xen kẽ biến.
+ *
+ * Cú pháp: {{ten}} → giá trị được escape HTML (nếu template là .html), {{{ten}}} → chèn nguyên văn.
+ * Render chỉ là nối các đoạn vào 1 StringBuilder dùng lại theo thread, không parse / format lại.
+ */
+public final class CompiledEmailTemplate {
+
+    private final String name;
+    private final String[] literals;   // literals[i] đứng trước biến i; phần tử cuối là đuôi template
+    private final String[] variables;
+    private final boolean[] raw;
+    private final boolean escapeHtml;
+    private final int literalLength;
+
+    // Buffer dùng lại cho mỗi thread (dispatcher / request thread)
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private CompiledEmailTemplate(String name, List<String> literals, List<String> variables, List<Boolean> raw, boolean escapeHtml) {
+        this.name = name;
+        this.literals = literals.toArray(new String[0]);
+        this.variables = variables.toArray(new String[0]);
+        this.raw = new boolean[raw.size()];
+        for (int i = 0; i < raw.size(); i++) {
+            this.raw[i] = raw.get(i);
+        }
+        this.escapeHtml = escapeHtml;
+        int length = 0;
+        for (String literal : this.literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static CompiledEmailTemplate compile(String name, String source, boolean escapeHtml) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        List<Boolean> raw = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            boolean isRaw = source.startsWith("{{{", open);
+            String closeToken = isRaw ? "}}}" : "}}";
+            int start = open + (isRaw ? 3 : 2);
+            int close = source.indexOf(closeToken, start);
+            if (close < 0) {
+                throw new IllegalArgumentException("Template " + name + ": thiếu '" + closeToken + "' tại vị trí " + open);
+            }
+            String variable = source.substring(start, close).trim();
+            if (variable.isEmpty()) {
+                throw new IllegalArgumentException("Template " + name + ": tên biến rỗng tại vị trí " + open);
+            }
+            literals.add(source.substring(pos, open));
+            variables.add(variable);
+            raw.add(isRaw);
+            pos = close + closeToken.length();
+        }
+        literals.add(source.substring(pos));
+        return new CompiledEmailTemplate(name, literals, variables, raw, escapeHtml);
+    }
+
+    public String render(Map<String, ?> model) {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        sb.ensureCapacity(literalLength + variables.length * 32);
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(literals[i]);
+            Object value = model.get(variables[i]);
+            if (value == null) {
+                continue;
+            }
+            if (escapeHtml && !raw[i]) {
+                appendEscaped(sb, value.toString());
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append(literals[literals.length - 1]);
+        String result = sb.toString();
+        // Không giữ buffer quá lớn sau 1 email bất thường
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getVariables() {
+        return List.of(variables);
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '&' -> sb.append("&amp;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&#39;");
+                default -> sb.append(c);
+            }
+        }
+    }
+}
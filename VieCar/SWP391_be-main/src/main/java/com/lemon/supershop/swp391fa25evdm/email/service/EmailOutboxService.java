@@ -0,0 +1,144 @@
+package com.lemon.supershop.swp391fa25evdm.email.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lemon.supershop.swp391fa25evdm.email.model.dto.EmailMessageReq;
+import com.lemon.supershop.swp391fa25evdm.email.model.entity.EmailOutbox;
+import com.lemon.supershop.swp391fa25evdm.email.repository.EmailOutboxRepository;
+
+/**
+ * Outbox email (bảng email_outbox).
+ *
+ * - {@link #enqueue} ghi email trong transaction của nghiệp vụ gọi tới → rollback thì email cũng không gửi,
+ *   commit rồi thì node chết cũng không mất mail
+ * - Sau commit phát {@link EmailQueuedEvent} để dispatcher gửi ngay, không phải chờ lượt poll
+ * - Gửi lỗi được thử lại với backoff tăng dần, quá maxAttempts chuyển DEAD (dead-letter)
+ */
+@Service
+public class EmailOutboxService {
+
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final int ENQUEUE_BATCH_SIZE = 500;
+
+    @Value("${app.email.outbox.max-attempts:6}")
+    private int maxAttempts;
+    @Value("${app.email.outbox.backoff-seconds:30}")
+    private long backoffSeconds;
+    @Value("${app.email.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    // Người nhận phải được kiểm tra trước (EmailService) để lỗi validate không rollback transaction nghiệp vụ
+    @Transactional
+    public long enqueue(String to, String subject, String body, boolean html) {
+        EmailOutbox email = outboxRepository.save(new EmailOutbox(to.trim(), subject, body, html));
+        eventPublisher.publishEvent(new EmailQueuedEvent(email.getId()));
+        return email.getId();
+    }
+
+    /**
+     * Ghi nhiều email vào outbox bằng 1 JDBC batch (cùng transaction của nghiệp vụ gọi tới).
+     */
+    @Transactional
+    public int enqueueAll(List<EmailMessageReq> emails) {
+        if (emails.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO email_outbox (recipient, subject, body, html, status, attempts, next_attempt_at, created_at) " +
+                "VALUES (?, ?, ?, ?, 'PENDING', 0, ?, ?)",
+                emails, ENQUEUE_BATCH_SIZE, (ps, email) -> {
+                    ps.setString(1, email.getTo().trim());
+                    ps.setString(2, email.getSubject());
+                    ps.setString(3, email.getBody());
+                    ps.setBoolean(4, email.isHtml());
+                    ps.setTimestamp(5, now);
+                    ps.setTimestamp(6, now);
+                });
+        eventPublisher.publishEvent(new EmailQueuedEvent(0));
+        return emails.size();
+    }
+
+    /**
+     * Nhận 1 lô email đến lượt gửi cho node owner (lease leaseSeconds giây).
+     */
+    @Transactional
+    public List<EmailOutbox> claimDue(String owner, int batchSize, int leaseSeconds) {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        if (outboxRepository.claimDue(token, owner, now, now.plusSeconds(leaseSeconds), batchSize) == 0) {
+            return List.of();
+        }
+        return outboxRepository.findByLeaseToken(token);
+    }
+
+    @Transactional
+    public void markSent(EmailOutbox email) {
+        outboxRepository.markSent(email.getId(), email.getLeaseToken(), LocalDateTime.now());
+    }
+
+    @Transactional
+    public void markSent(List<EmailOutbox> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        // Các email trong 1 lô nhận chung lease token
+        Map<String, List<Long>> idsByToken = new HashMap<>();
+        for (EmailOutbox email : emails) {
+            idsByToken.computeIfAbsent(email.getLeaseToken(), k -> new ArrayList<>()).add(email.getId());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<String, List<Long>> entry : idsByToken.entrySet()) {
+            outboxRepository.markSentBatch(entry.getValue(), entry.getKey(), now);
+        }
+    }
+
+    // Lần thử thứ n chờ backoffSeconds * 2^(n-1), tối đa maxBackoffSeconds
+    @Transactional
+    public void markFailed(EmailOutbox email, String error) {
+        String message = error == null ? "Unknown error" : (error.length() > 500 ? error.substring(0, 500) : error);
+        int shift = Math.min(Math.max(email.getAttempts() - 1, 0), 20);
+        long delay = Math.min(backoffSeconds * (1L << shift), maxBackoffSeconds);
+        LocalDateTime retryAt = LocalDateTime.now().plusSeconds(delay);
+        outboxRepository.markFailed(email.getId(), email.getLeaseToken(), message, retryAt, maxAttempts);
+    }
+
+    public List<EmailOutbox> getDeadLetters(int limit) {
+        return outboxRepository.findByStatusOrderByIdDesc("DEAD", PageRequest.of(0, Math.max(1, Math.min(limit, 500))));
+    }
+
+    public long countByStatus(String status) {
+        return outboxRepository.countByStatus(status);
+    }
+
+    @Transactional
+    public void requeue(long id) {
+        if (outboxRepository.requeueDead(id, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("Không tìm thấy email DEAD với ID: " + id);
+        }
+        eventPublisher.publishEvent(new EmailQueuedEvent(id));
+    }
+
+    // Phát ra khi có email mới vào outbox (dispatcher nghe sau khi transaction commit); emailId = 0 với lô nhiều email
+    public record EmailQueuedEvent(long emailId) {}
+}
@@ -0,0 +1,89 @@
+package com.lemon.supershop.swp391fa25evdm.email.service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Giới hạn tốc độ gửi theo domain người nhận (gmail.com, yahoo.com...) để không bị nhà cung cấp chặn.
+ *
+ * Mỗi domain 1 token bucket: app.email.rate.default-per-second, ghi đè từng domain bằng
+ * app.email.rate.overrides=gmail.com:20,yahoo.com:10 (0 = không giới hạn).
+ */
+@Component
+public class EmailRateLimiter {
+
+    @Value("${app.email.rate.default-per-second:50}")
+    private double defaultPerSecond;
+    @Value("${app.email.rate.overrides:}")
+    private String overrides;
+
+    private final Map<String, Double> domainRates = new HashMap<>();
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        if (overrides == null || overrides.isBlank()) {
+            return;
+        }
+        for (String entry : overrides.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length == 2 && !parts[0].isBlank()) {
+                domainRates.put(parts[0].trim().toLowerCase(Locale.ROOT), Double.parseDouble(parts[1].trim()));
+            }
+        }
+    }
+
+    public static String domainOf(String email) {
+        if (email == null) {
+            return "";
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Chờ (nếu cần) cho tới khi được phép gửi permits email tới domain.
+     */
+    public void acquire(String domain, int permits) throws InterruptedException {
+        double rate = domainRates.getOrDefault(domain, defaultPerSecond);
+        if (rate <= 0 || permits <= 0) {
+            return;
+        }
+        Bucket bucket = buckets.computeIfAbsent(domain, d -> new Bucket(rate));
+        long waitNanos = bucket.reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Token bucket dung lượng = 1 giây gửi; reserve trả về thời gian phải chờ
+    private static final class Bucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double ratePerSecond) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, ratePerSecond);
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private synchronized long reserve(int permits) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+            tokens -= permits; // có thể âm: các lần sau phải chờ phần nợ
+            return tokens >= 0 ? 0 : (long) (-tokens / ratePerNano);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.lemon.supershop.swp391fa25evdm.email.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Nạp và cache template email từ classpath:email-templates/.
+ *
+ * - Mỗi template chỉ đọc + biên dịch 1 lần (theo tên + ngôn ngữ), các lần gửi sau chỉ render
+ * - Bản địa hóa: tìm {ten}_{ngon-ngu}.{ext} (vd. vehicle-ready_en.html), không có thì dùng {ten}.{ext} (tiếng Việt)
+ * - Template .html escape giá trị biến, .txt chèn nguyên văn
+ */
+@Component
+public class EmailTemplateEngine {
+
+    private static final String BASE_PATH = "email-templates/";
+
+    @Value("${app.email.default-locale:vi}")
+    private String defaultLanguage;
+
+    private final Map<String, CompiledEmailTemplate> cache = new ConcurrentHashMap<>();
+
+    public String render(String fileName, Map<String, ?> model) {
+        return render(fileName, null, model);
+    }
+
+    public String render(String fileName, Locale locale, Map<String, ?> model) {
+        return getTemplate(fileName, locale).render(model);
+    }
+
+    public CompiledEmailTemplate getTemplate(String fileName, Locale locale) {
+        String language = locale != null && !locale.getLanguage().isEmpty() ? locale.getLanguage() : defaultLanguage;
+        return cache.computeIfAbsent(fileName + "|" + language, key -> load(fileName, language));
+    }
+
+    // Xóa cache (vd. sau khi sửa template lúc dev)
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private CompiledEmailTemplate load(String fileName, String language) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            throw new IllegalArgumentException("Tên template phải có phần mở rộng: " + fileName);
+        }
+        String baseName = fileName.substring(0, dot);
+        String extension = fileName.substring(dot);
+
+        ClassPathResource resource = null;
+        if (language != null && !language.isBlank() && !language.equalsIgnoreCase(defaultLanguage)) {
+            ClassPathResource localized = new ClassPathResource(BASE_PATH + baseName + "_" + language.toLowerCase(Locale.ROOT) + extension);
+            if (localized.exists()) {
+                resource = localized;
+            }
+        }
+        if (resource == null) {
+            resource = new ClassPathResource(BASE_PATH + fileName);
+        }
+        if (!resource.exists()) {
+            throw new IllegalArgumentException("Không tìm thấy template email: " + fileName);
+        }
+
+        try (InputStream in = resource.getInputStream()) {
+            String source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return CompiledEmailTemplate.compile(resource.getPath(), source, ".html".equalsIgnoreCase(extension));
+        } catch (IOException e) {
+            throw new RuntimeException("Không đọc được template email " + fileName + ": " + e.getMessage(), e);
+        }
+    }
+}
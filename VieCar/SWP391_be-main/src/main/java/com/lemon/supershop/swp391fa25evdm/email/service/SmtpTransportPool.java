@@ -0,0 +1,203 @@
+package com.lemon.supershop.swp391fa25evdm.email.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Pool kết nối SMTP giữ sống giữa các lần gửi.
+ *
+ * JavaMailSender.send() mở 1 phiên SMTP (connect + EHLO + STARTTLS + AUTH) cho mỗi lần gọi;
+ * pool này mượn 1 Transport đã đăng nhập, gửi cả lô qua nó rồi trả lại để lô sau dùng tiếp.
+ * Kết nối nhàn rỗi quá app.email.smtp.max-idle-ms bị đóng; lỗi kết nối thì bỏ transport và mở lại.
+ */
+@Component
+public class SmtpTransportPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    @Autowired
+    private JavaMailSender mailSender;
+    @Autowired
+    private EmailRateLimiter rateLimiter;
+
+    @Value("${app.email.smtp.pool-size:4}")
+    private int poolSize;
+    @Value("${app.email.smtp.max-idle-ms:60000}")
+    private long maxIdleMs;
+    // Nhàn rỗi lâu hơn mức này thì kiểm tra lại kết nối (NOOP) trước khi gửi
+    @Value("${app.email.smtp.validate-after-idle-ms:5000}")
+    private long validateAfterIdleMs;
+
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private volatile Semaphore permits;
+
+    public int getPoolSize() {
+        return Math.max(1, poolSize);
+    }
+
+    /**
+     * Gửi lần lượt các message (cùng domain người nhận) qua 1 kết nối trong pool, giữ đúng giới hạn tốc độ của domain.
+     *
+     * @return lỗi theo đúng vị trí message (null = gửi thành công)
+     */
+    public Exception[] sendAll(String domain, List<MimeMessage> messages) {
+        Exception[] errors = new Exception[messages.size()];
+        if (messages.isEmpty()) {
+            return errors;
+        }
+        if (!(mailSender instanceof JavaMailSenderImpl impl)) {
+            // Không phải JavaMailSenderImpl (vd. mock) → gửi từng message như cũ
+            for (int i = 0; i < messages.size(); i++) {
+                try {
+                    rateLimiter.acquire(domain, 1);
+                    mailSender.send(messages.get(i));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Arrays.fill(errors, i, errors.length, e);
+                    break;
+                } catch (Exception e) {
+                    errors[i] = e;
+                }
+            }
+            return errors;
+        }
+
+        Semaphore semaphore = permits();
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Arrays.fill(errors, e);
+            return errors;
+        }
+        PooledTransport pooled = idle.pollFirst();
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                MimeMessage message = messages.get(i);
+                try {
+                    rateLimiter.acquire(domain, 1);
+                    pooled = ensureConnected(impl, pooled);
+                    if (message.getSentDate() == null) {
+                        message.setSentDate(new Date());
+                    }
+                    message.saveChanges();
+                    pooled.transport.sendMessage(message, message.getAllRecipients());
+                    pooled.lastUsed = System.currentTimeMillis();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Arrays.fill(errors, i, errors.length, e);
+                    break;
+                } catch (Exception e) {
+                    errors[i] = e;
+                    // Người nhận bị từ chối không ảnh hưởng kết nối; lỗi khác → bỏ kết nối, message sau mở lại
+                    if (!(e instanceof SendFailedException) && pooled != null) {
+                        close(pooled);
+                        pooled = null;
+                    }
+                }
+            }
+        } finally {
+            if (pooled != null) {
+                idle.offerFirst(pooled);
+            }
+            semaphore.release();
+        }
+        return errors;
+    }
+
+    // Đóng các kết nối nhàn rỗi quá lâu (server SMTP thường tự ngắt sau vài phút)
+    @Scheduled(fixedDelayString = "${app.email.smtp.evict-interval-ms:30000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<PooledTransport> keep = new ArrayList<>();
+        PooledTransport pooled;
+        while ((pooled = idle.pollLast()) != null) {
+            if (now - pooled.lastUsed > maxIdleMs) {
+                close(pooled);
+            } else {
+                keep.add(pooled);
+            }
+        }
+        for (PooledTransport p : keep) {
+            idle.offerFirst(p);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled);
+        }
+    }
+
+    private Semaphore permits() {
+        Semaphore semaphore = permits;
+        if (semaphore == null) {
+            synchronized (this) {
+                if (permits == null) {
+                    permits = new Semaphore(getPoolSize());
+                }
+                semaphore = permits;
+            }
+        }
+        return semaphore;
+    }
+
+    private PooledTransport ensureConnected(JavaMailSenderImpl impl, PooledTransport pooled) throws MessagingException {
+        long now = System.currentTimeMillis();
+        if (pooled != null) {
+            long idleFor = now - pooled.lastUsed;
+            if (idleFor > maxIdleMs) {
+                close(pooled);
+                pooled = null;
+            } else if (idleFor > validateAfterIdleMs && !pooled.transport.isConnected()) {
+                close(pooled);
+                pooled = null;
+            }
+        }
+        if (pooled == null) {
+            Transport transport = impl.getSession().getTransport(impl.getProtocol() != null ? impl.getProtocol() : "smtp");
+            transport.connect(impl.getHost(), impl.getPort(), impl.getUsername(), impl.getPassword());
+            pooled = new PooledTransport(transport);
+        }
+        return pooled;
+    }
+
+    private void close(PooledTransport pooled) {
+        try {
+            pooled.transport.close();
+        } catch (Exception e) {
+            logger.debug("Error closing SMTP transport: {}", e.getMessage());
+        }
+    }
+
+    private static final class PooledTransport {
+        private final Transport transport;
+        private volatile long lastUsed;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
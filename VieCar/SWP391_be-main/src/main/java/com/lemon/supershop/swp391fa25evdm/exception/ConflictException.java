@@ -0,0 +1,8 @@
+package com.lemon.supershop.swp391fa25evdm.exception;
+
+// Xung đột với trạng thái hiện tại của dữ liệu (chuyển trạng thái sai, xe đã bị giữ, ...) → 409
+public class ConflictException extends IllegalStateException {
+    public ConflictException(String message) {
+        super(message);
+    }
+}
@@ -2,6 +2,7 @@ package com.lemon.supershop.swp391fa25evdm.order.controller;
 
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.DeliveryReq;
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.OrderReq;
+import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.OrderSearchReq;
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.UpdateOrderReq;
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.response.OrderRes;
 import com.lemon.supershop.swp391fa25evdm.order.service.OrderService;
@@ -10,6 +11,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -32,11 +34,42 @@ public class OrderController {
     }
 
     @GetMapping("/search/dealer/{dealerId}")
-    public ResponseEntity<List<OrderRes>> searchOrdersByDealer(@PathVariable int dealerId) {
-        List<OrderRes> orders = orderService.ListOrderbyDealerId(dealerId);
+    public ResponseEntity<List<OrderRes>> searchOrdersByDealer(@PathVariable int dealerId,
+                                                               @RequestParam(required = false) String status) {
+        List<OrderRes> orders = orderService.ListOrderbyDealerId(dealerId, status);
         return ResponseEntity.ok(orders);
     }
 
+    // Danh sách phân trang + lọc (userId, dealerId, status, from, to, sort, direction)
+    // GET /api/orders/page?dealerId=1&status=PENDING,DEPOSIT_PAID&from=2025-11-01T00:00:00&page=0&size=20
+    @GetMapping("/page")
+    public ResponseEntity<?> searchOrders(OrderSearchReq request) {
+        try {
+            return ResponseEntity.ok(orderService.searchOrders(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Cùng bộ lọc như /page nhưng cố định theo khách hàng / đại lý
+    @GetMapping("/search/user/{userId}/page")
+    public ResponseEntity<?> searchOrderPageByUser(@PathVariable int userId, OrderSearchReq request) {
+        request.setUserId(userId);
+        return searchOrders(request);
+    }
+
+    @GetMapping("/search/dealer/{dealerId}/page")
+    public ResponseEntity<?> searchOrderPageByDealer(@PathVariable int dealerId, OrderSearchReq request) {
+        request.setDealerId(dealerId);
+        return searchOrders(request);
+    }
+
+    // Số đơn theo trạng thái cho dashboard: GET /api/orders/status-counts?dealerId=1
+    @GetMapping("/status-counts")
+    public ResponseEntity<Map<String, Long>> countOrdersByStatus(@RequestParam(required = false) Integer dealerId) {
+        return ResponseEntity.ok(orderService.countOrdersByStatus(dealerId));
+    }
+
     @GetMapping("/search/id/{orderId}")
     public ResponseEntity<OrderRes> searchOrderById(@PathVariable int orderId) {
         OrderRes order = orderService.getOrderById(orderId);
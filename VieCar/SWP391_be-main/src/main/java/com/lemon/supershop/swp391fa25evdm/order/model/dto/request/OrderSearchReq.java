@@ -0,0 +1,97 @@
+package com.lemon.supershop.swp391fa25evdm.order.model.dto.request;
+
+import java.time.LocalDateTime;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+// Query params cho GET /api/orders/page (lọc + phân trang theo orderDate)
+public class OrderSearchReq {
+    private Integer userId;
+    private Integer dealerId;
+    private String status; // 1 hoặc nhiều trạng thái (mã hoặc nhãn), cách nhau bởi dấu phẩy (VD: PENDING,DEPOSIT_PAID)
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from; // orderDate >= from
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;   // orderDate < to
+
+    private String sort = "orderDate"; // orderDate, deliveryDate, total, id
+    private String direction = "DESC"; // DESC (đơn mới nhất trước) hoặc ASC
+    private Integer page = 0;
+    private Integer size = 20;
+
+    public OrderSearchReq() {}
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Integer getDealerId() {
+        return dealerId;
+    }
+
+    public void setDealerId(Integer dealerId) {
+        this.dealerId = dealerId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public String getDirection() {
+        return direction;
+    }
+
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
+    public Integer getPage() {
+        return page;
+    }
+
+    public void setPage(Integer page) {
+        this.page = page;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+}
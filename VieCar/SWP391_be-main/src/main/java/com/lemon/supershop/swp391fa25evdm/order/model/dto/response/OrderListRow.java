@@ -0,0 +1,34 @@
+package com.lemon.supershop.swp391fa25evdm.order.model.dto.response;
+
+import java.util.Date;
+
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+
+/**
+ * 1 dòng danh sách đơn hàng - đúng các cột OrderRes cần, đọc bằng constructor expression
+ * (orders LEFT JOIN users / product / dealer) trong 1 câu SELECT, không load entity.
+ * Quan hệ LEFT JOIN có thể null nên dùng kiểu wrapper.
+ */
+public record OrderListRow(
+        int orderId,
+        Integer dealerId,
+        String customerName,
+        String customerEmail,
+        String customerPhone,
+        String customerAddress,
+        String productName,
+        String productImage,
+        String productVin,
+        String productEngine,
+        Double productBattery,
+        Integer productRange,
+        Integer productHP,
+        Integer productTorque,
+        String productColor,
+        double totalPrice,
+        OrderStatus status,
+        Date orderDate,
+        Date deliveryDate,
+        Date shipAt,
+        String notes) {
+}
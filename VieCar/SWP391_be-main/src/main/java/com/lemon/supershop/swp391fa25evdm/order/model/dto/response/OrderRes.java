@@ -23,7 +23,8 @@ public class OrderRes {
     private String productColor;
     private List<Contract> contracts;
     private double totalPrice;
-    private String status;
+    private String status;     // Nhãn tiếng Việt (frontend hiển thị / so sánh)
+    private String statusCode; // Mã OrderStatus (PENDING, DEPOSIT_PAID, ...)
     private Date orderDate;
     private Date deliveryDate;
     private String notes;
@@ -86,6 +87,14 @@ public class OrderRes {
         return status;
     }
 
+    public String getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(String statusCode) {
+        this.statusCode = statusCode;
+    }
+
     public Date getOrderDate() {
         return orderDate;
     }
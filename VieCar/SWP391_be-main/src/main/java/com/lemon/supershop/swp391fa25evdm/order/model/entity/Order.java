@@ -7,6 +7,8 @@ import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.lemon.supershop.swp391fa25evdm.contract.model.entity.Contract;
 import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatusConverter;
 import com.lemon.supershop.swp391fa25evdm.payment.model.entity.Payment;
 import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
 import com.lemon.supershop.swp391fa25evdm.promotion.model.entity.Promotion;
@@ -15,7 +17,13 @@ import com.lemon.supershop.swp391fa25evdm.user.model.entity.User;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "IX_orders_product_status", columnList = "ProductId, Status"),
+        @Index(name = "IX_orders_status", columnList = "Status"),
+        @Index(name = "IX_orders_dealer_status", columnList = "DealerId, Status"),
+        @Index(name = "IX_orders_dealer_orderdate", columnList = "DealerId, OrderDate"),
+        @Index(name = "IX_orders_user_orderdate", columnList = "UserId, OrderDate")
+})
 public class Order {
 
     @Id
@@ -23,8 +31,9 @@ public class Order {
     @Column(name = "Id", columnDefinition = "BIGINT")
     private int id;
 
-    @Column(name = "Status", columnDefinition = "NVARCHAR(50)")
-    private String status;
+    @Column(name = "Status", columnDefinition = "VARCHAR(20)")
+    @Convert(converter = OrderStatusConverter.class)
+    private OrderStatus status;
 
     @Column(name = "Total", columnDefinition = "DECIMAL(18,2)")
     private double total;
@@ -99,11 +108,11 @@ public class Order {
         this.orderDate = order_date;
     }
 
-    public String getStatus() {
+    public OrderStatus getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
+    public void setStatus(OrderStatus status) {
         this.status = status;
     }
 
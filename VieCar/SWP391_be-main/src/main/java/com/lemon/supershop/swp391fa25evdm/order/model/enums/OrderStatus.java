@@ -0,0 +1,85 @@
+package com.lemon.supershop.swp391fa25evdm.order.model.enums;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// Vòng đời đơn hàng: PENDING → AWAITING_DEPOSIT → DEPOSIT_PAID → VEHICLE_REQUESTED → READY_FOR_DELIVERY → DELIVERED
+// DB lưu name() (VARCHAR), API vẫn trả / nhận nhãn tiếng Việt mà frontend đang dùng
+public enum OrderStatus {
+    PENDING("Chờ xử lý"),
+    APPROVED("Đã duyệt"),
+    AWAITING_DEPOSIT("Chưa đặt cọc"),
+    DEPOSIT_PAID("Đã đặt cọc"),
+    VEHICLE_REQUESTED("Đã yêu cầu đại lý"),
+    PREPARING("Đang chuẩn bị xe"),
+    READY_FOR_DELIVERY("Sẵn sàng giao xe"),
+    DELIVERED("Đã giao"),
+    REJECTED("Đã từ chối"),
+    CANCELLED("Đã hủy");
+
+    private final String label;
+
+    OrderStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Set<OrderStatus> next() {
+        return switch (this) {
+            case PENDING -> EnumSet.of(APPROVED, AWAITING_DEPOSIT, DEPOSIT_PAID, REJECTED, CANCELLED);
+            case APPROVED -> EnumSet.of(AWAITING_DEPOSIT, DEPOSIT_PAID, VEHICLE_REQUESTED, REJECTED, CANCELLED);
+            case AWAITING_DEPOSIT -> EnumSet.of(DEPOSIT_PAID, VEHICLE_REQUESTED, REJECTED, CANCELLED);
+            case DEPOSIT_PAID -> EnumSet.of(VEHICLE_REQUESTED, PREPARING, READY_FOR_DELIVERY, CANCELLED);
+            case VEHICLE_REQUESTED -> EnumSet.of(PREPARING, READY_FOR_DELIVERY, CANCELLED);
+            case PREPARING -> EnumSet.of(READY_FOR_DELIVERY, CANCELLED);
+            case READY_FOR_DELIVERY -> EnumSet.of(DELIVERED, CANCELLED);
+            default -> EnumSet.noneOf(OrderStatus.class);
+        };
+    }
+
+    public boolean canTransitionTo(OrderStatus target) {
+        return next().contains(target);
+    }
+
+    public boolean isTerminal() {
+        return next().isEmpty();
+    }
+
+    // name() của các trạng thái kết thúc - dùng cho native query
+    public static List<String> terminalNames() {
+        List<String> names = new ArrayList<>();
+        for (OrderStatus status : values()) {
+            if (status.isTerminal()) {
+                names.add(status.name());
+            }
+        }
+        return names;
+    }
+
+    // Nhận cả mã (DELIVERED) lẫn nhãn tiếng Việt ("Đã giao"); null nếu không khớp
+    public static OrderStatus parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String v = value.trim();
+        for (OrderStatus status : values()) {
+            if (status.name().equalsIgnoreCase(v) || status.label.equals(v)) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    public static OrderStatus from(String value) {
+        OrderStatus status = parse(value);
+        if (status == null) {
+            throw new IllegalArgumentException("Trạng thái đơn hàng không hợp lệ: " + value);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,19 @@
+package com.lemon.supershop.swp391fa25evdm.order.model.enums;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Ghi mã enum; đọc được cả nhãn tiếng Việt cũ (dòng chưa được OrderStatusMachine chuẩn hóa lúc khởi động)
+@Converter
+public class OrderStatusConverter implements AttributeConverter<OrderStatus, String> {
+
+    @Override
+    public String convertToDatabaseColumn(OrderStatus status) {
+        return status != null ? status.name() : null;
+    }
+
+    @Override
+    public OrderStatus convertToEntityAttribute(String value) {
+        return OrderStatus.parse(value);
+    }
+}
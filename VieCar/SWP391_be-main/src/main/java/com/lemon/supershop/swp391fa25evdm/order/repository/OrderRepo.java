@@ -1,11 +1,18 @@
 package com.lemon.supershop.swp391fa25evdm.order.repository;
 
+import com.lemon.supershop.swp391fa25evdm.order.model.dto.response.OrderListRow;
 import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Repository
@@ -15,4 +22,67 @@ public interface OrderRepo extends JpaRepository<Order, Integer> {
     // ⭐ Fix: Query theo dealer.id thay vì dealerId
     @Query("SELECT o FROM Order o WHERE o.dealer.id = :dealerId")
     List<Order> findByDealerId(@Param("dealerId") int dealerId);
+
+    // Lọc / đếm theo trạng thái (IX_orders_status, IX_orders_dealer_status)
+    List<Order> findByStatus(OrderStatus status);
+
+    @Query("SELECT o.status, COUNT(o) FROM Order o GROUP BY o.status")
+    List<Object[]> countByStatus();
+
+    @Query("SELECT o.status, COUNT(o) FROM Order o WHERE o.dealer.id = :dealerId GROUP BY o.status")
+    List<Object[]> countByStatusForDealer(@Param("dealerId") int dealerId);
+
+    /**
+     * Danh sách đơn phân trang: 1 câu SELECT lấy đúng các cột OrderRes (không load entity / quan hệ lazy).
+     * Tham số null = bỏ qua điều kiện; anyStatus = true bỏ qua lọc trạng thái, includeNullStatus gộp đơn cũ chưa có trạng thái.
+     * Sort của Pageable áp lên alias o (orderDate, deliveryDate, total, id).
+     */
+    @Query(value =
+            "SELECT new com.lemon.supershop.swp391fa25evdm.order.model.dto.response.OrderListRow(" +
+            "    o.id, d.id, u.username, u.email, u.phone, u.address, " +
+            "    p.name, p.image, p.vinNum, p.engineNum, p.battery, p.range, p.hp, p.torque, p.Color, " +
+            "    o.total, o.status, o.orderDate, o.deliveryDate, o.shipAt, o.shipAddress) " +
+            "FROM Order o LEFT JOIN o.user u LEFT JOIN o.product p LEFT JOIN o.dealer d " +
+            "WHERE (:userId IS NULL OR u.id = :userId) " +
+            "AND (:dealerId IS NULL OR d.id = :dealerId) " +
+            "AND (:anyStatus = true OR o.status IN :statuses OR (:includeNullStatus = true AND o.status IS NULL)) " +
+            "AND (:from IS NULL OR o.orderDate >= :from) " +
+            "AND (:to IS NULL OR o.orderDate < :to)",
+            countQuery =
+            "SELECT COUNT(o) FROM Order o " +
+            "WHERE (:userId IS NULL OR o.user.id = :userId) " +
+            "AND (:dealerId IS NULL OR o.dealer.id = :dealerId) " +
+            "AND (:anyStatus = true OR o.status IN :statuses OR (:includeNullStatus = true AND o.status IS NULL)) " +
+            "AND (:from IS NULL OR o.orderDate >= :from) " +
+            "AND (:to IS NULL OR o.orderDate < :to)")
+    Page<OrderListRow> searchRows(@Param("userId") Integer userId,
+                                  @Param("dealerId") Integer dealerId,
+                                  @Param("anyStatus") boolean anyStatus,
+                                  @Param("statuses") Collection<OrderStatus> statuses,
+                                  @Param("includeNullStatus") boolean includeNullStatus,
+                                  @Param("from") Date from,
+                                  @Param("to") Date to,
+                                  Pageable pageable);
+
+    /**
+     * Hủy hàng loạt các đơn khác đang giữ cùng xe (trùng VIN hoặc số máy) khi 1 đơn đã giao.
+     * 1 câu UPDATE join product (Vin/Engine unique) + IX_orders_product_status, OUTPUT trả về Id các đơn bị hủy.
+     * Đơn đã ở trạng thái kết thúc (terminalStatuses: DELIVERED / REJECTED / CANCELLED) giữ nguyên.
+     */
+    @Transactional
+    @Query(value =
+            "UPDATE o SET o.status = 'CANCELLED', " +
+            "    o.ship_address = CASE WHEN o.ship_address IS NULL OR o.ship_address = '' THEN :note " +
+            "                          ELSE LEFT(o.ship_address + N' | ' + :note, 255) END " +
+            "OUTPUT CAST(inserted.id AS INT) " +
+            "FROM orders o JOIN product p ON p.id = o.product_id " +
+            "WHERE o.id <> :orderId " +
+            "AND (p.vin = :vinNum OR p.engine = :engineNum) " +
+            "AND (o.status IS NULL OR o.status NOT IN (:terminalStatuses))",
+            nativeQuery = true)
+    List<Integer> cancelOtherOrdersForVehicle(@Param("orderId") int orderId,
+                                              @Param("vinNum") String vinNum,
+                                              @Param("engineNum") String engineNum,
+                                              @Param("note") String note,
+                                              @Param("terminalStatuses") Collection<String> terminalStatuses);
 }
@@ -1,35 +1,54 @@
 package com.lemon.supershop.swp391fa25evdm.order.service;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PagedModel;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.lemon.supershop.swp391fa25evdm.contract.model.entity.Contract;
 import com.lemon.supershop.swp391fa25evdm.contract.repository.ContractRepo;
 import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
 import com.lemon.supershop.swp391fa25evdm.dealer.repository.DealerRepo;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.DeliveryReq;
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.OrderReq;
+import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.OrderSearchReq;
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.request.UpdateOrderReq;
+import com.lemon.supershop.swp391fa25evdm.order.model.dto.response.OrderListRow;
 import com.lemon.supershop.swp391fa25evdm.order.model.dto.response.OrderRes;
 import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
 import com.lemon.supershop.swp391fa25evdm.order.repository.OrderRepo;
 import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
-import com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus;
 import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
-import com.lemon.supershop.swp391fa25evdm.promotion.model.entity.Promotion;
-import com.lemon.supershop.swp391fa25evdm.promotion.repository.PromotionRepo;
+import com.lemon.supershop.swp391fa25evdm.product.service.InventoryReservationService;
+import com.lemon.supershop.swp391fa25evdm.promotion.service.PromotionEngine;
 import com.lemon.supershop.swp391fa25evdm.user.model.entity.User;
 import com.lemon.supershop.swp391fa25evdm.user.repository.UserRepo;
-import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
 
 @Service
 public class OrderService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int CONTRACT_CHUNK = 1000;
+    private static final Set<String> SORTABLE_FIELDS = Set.of("orderDate", "deliveryDate", "total", "id");
+
     @Autowired
     private OrderRepo orderRepo;
 
@@ -46,17 +65,18 @@ public class OrderService {
     private ContractRepo contractRepo;
 
     @Autowired
-    private PromotionRepo promotionRepo;
+    private PromotionEngine promotionEngine;
+
+    @Autowired
+    private OrderStatusMachine orderStatusMachine;
 
     @Autowired
-    private EmailService emailService;
+    private InventoryReservationService inventoryReservationService;
 
     public List<OrderRes> ListOrderbyUserId(int userId) {
         User user = userRepo.findById(userId).get();
         if (user != null){
-            return orderRepo.findByUserId(user.getId()).stream().map(order -> {
-                return convertOrderToOrderRes(order);
-            }).collect(Collectors.toList());
+            return listOrders(user.getId(), null, EnumSet.noneOf(OrderStatus.class));
         }else {
             return null;
         }
@@ -65,14 +85,94 @@ public class OrderService {
     public List<OrderRes> ListOrderbyDealerId(int dealerId) {
         Optional<Dealer> dealer = dealerRepo.findById(dealerId);
         if (dealer.isPresent()){
-            return orderRepo.findByDealerId(dealerId).stream().map(order -> {
-                return convertOrderToOrderRes(order);
-            }).collect(Collectors.toList());
+            return listOrders(null, dealerId, EnumSet.noneOf(OrderStatus.class));
         }else {
             return new ArrayList<>();
         }
     }
 
+    // Đơn của đại lý theo trạng thái (mã hoặc nhãn tiếng Việt, nhiều giá trị cách nhau bởi dấu phẩy)
+    public List<OrderRes> ListOrderbyDealerId(int dealerId, String status) {
+        if (status == null || status.isBlank()) {
+            return ListOrderbyDealerId(dealerId);
+        }
+        return listOrders(null, dealerId, parseStatuses(status));
+    }
+
+    // Số đơn theo từng trạng thái (mã OrderStatus → số lượng, đủ mọi trạng thái) cho dashboard
+    public Map<String, Long> countOrdersByStatus(Integer dealerId) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (OrderStatus status : OrderStatus.values()) {
+            counts.put(status.name(), 0L);
+        }
+        List<Object[]> rows = dealerId != null ? orderRepo.countByStatusForDealer(dealerId) : orderRepo.countByStatus();
+        for (Object[] row : rows) {
+            if (row[0] != null) {
+                counts.put(((OrderStatus) row[0]).name(), (Long) row[1]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Danh sách đơn phân trang + lọc (userId, dealerId, status, from, to).
+     * Đọc projection OrderListRow trong 1 query (+ 1 query IN cho hợp đồng của các đơn trong trang),
+     * không load entity Order / User / Product / Dealer.
+     */
+    public PagedModel<OrderRes> searchOrders(OrderSearchReq req) {
+        int page = req.getPage() != null ? Math.max(req.getPage(), 0) : 0;
+        int size = req.getSize() != null ? Math.min(Math.max(req.getSize(), 1), MAX_PAGE_SIZE) : 20;
+        Sort.Direction direction = "ASC".equalsIgnoreCase(req.getDirection()) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        String sortField = req.getSort() != null && !req.getSort().isBlank() ? req.getSort().trim() : "orderDate";
+        if (!SORTABLE_FIELDS.contains(sortField)) {
+            throw new IllegalArgumentException("Không hỗ trợ sắp xếp theo: " + sortField + ". Hỗ trợ: " + SORTABLE_FIELDS);
+        }
+        if (req.getFrom() != null && req.getTo() != null && !req.getFrom().isBefore(req.getTo())) {
+            throw new IllegalArgumentException("Khoảng thời gian không hợp lệ: from phải trước to");
+        }
+
+        Set<OrderStatus> statuses = parseStatuses(req.getStatus());
+        Sort sort = Sort.by(direction, sortField);
+        if (!"id".equals(sortField)) {
+            sort = sort.and(Sort.by(direction, "id")); // thứ tự ổn định giữa các trang
+        }
+
+        return new PagedModel<>(findOrders(req.getUserId(), req.getDealerId(), statuses,
+                req.getFrom() != null ? Timestamp.valueOf(req.getFrom()) : null,
+                req.getTo() != null ? Timestamp.valueOf(req.getTo()) : null,
+                PageRequest.of(page, size, sort)));
+    }
+
+    // Danh sách không phân trang (các API cũ) - cùng projection, giữ thứ tự theo Id như findAll trước đây
+    private List<OrderRes> listOrders(Integer userId, Integer dealerId, Set<OrderStatus> statuses) {
+        return findOrders(userId, dealerId, statuses, null, null, Pageable.unpaged(Sort.by("id"))).getContent();
+    }
+
+    private Page<OrderRes> findOrders(Integer userId, Integer dealerId, Set<OrderStatus> statuses,
+                                      Date from, Date to, Pageable pageable) {
+        boolean anyStatus = statuses.isEmpty();
+        Page<OrderListRow> rows = orderRepo.searchRows(
+                userId,
+                dealerId,
+                anyStatus,
+                anyStatus ? EnumSet.allOf(OrderStatus.class) : statuses, // IN không nhận danh sách rỗng
+                statuses.contains(OrderStatus.PENDING),                 // đơn cũ status null được hiển thị là PENDING
+                from,
+                to,
+                pageable);
+
+        // Hợp đồng của cả trang: 1 query IN cho mỗi CONTRACT_CHUNK đơn (SQL Server giới hạn ~2100 tham số)
+        Map<Integer, List<Contract>> contractsByOrder = new HashMap<>();
+        List<Integer> orderIds = rows.getContent().stream().map(OrderListRow::orderId).toList();
+        for (int i = 0; i < orderIds.size(); i += CONTRACT_CHUNK) {
+            List<Integer> chunk = orderIds.subList(i, Math.min(i + CONTRACT_CHUNK, orderIds.size()));
+            for (Contract contract : contractRepo.findByOrderIdIn(chunk)) {
+                contractsByOrder.computeIfAbsent(contract.getOrder().getId(), id -> new ArrayList<>()).add(contract);
+            }
+        }
+        return rows.map(row -> convertRowToOrderRes(row, contractsByOrder.get(row.orderId())));
+    }
+
     public OrderRes getOrderById(int orderId) {
         Optional<Order> order = orderRepo.findById(orderId);
         if (order.isPresent()){
@@ -82,11 +182,11 @@ public class OrderService {
     }
 
     public List<OrderRes> ListAllOrders() {
-            return orderRepo.findAll().stream().map(order -> {
-                return convertOrderToOrderRes(order);
-            }).collect(Collectors.toList());
+        return listOrders(null, null, EnumSet.noneOf(OrderStatus.class));
     }
 
+    // Đơn và giữ xe trong cùng 1 transaction: xe đã bị đơn khác giữ → rollback, trả 409
+    @Transactional
     public OrderRes createOrder(int userId, OrderReq dto) {
         Optional<User> user = userRepo.findById(userId);
         if (user.isPresent()){
@@ -94,13 +194,12 @@ public class OrderService {
             order.setUser(user.get());
             
             // Set default status
-            order.setStatus("Chờ xử lý");
+            order.setStatus(OrderStatus.PENDING);
             
             if (dto.getProductId() > 0 ){
                 Optional<Product> product  = productRepo.findById(dto.getProductId());
                 if (product.isPresent()){
                     order.setProduct(product.orElse(null));
-                    order.setTotal(product.get().getDealerPrice());
                 }
             }
             if (dto.getContractId() > 0){
@@ -115,13 +214,14 @@ public class OrderService {
                 Optional<Dealer> dealer = dealerRepo.findById(dto.getDealerId());
                 if (dealer.isPresent()){
                     order.setDealer(dealer.orElse(null));
-                    List<Promotion> promotions = promotionRepo.findByDealer_Id(dealer.get().getId());
-                    if (promotions != null){
-                        order.setPromotions(promotions);
-                    }
                 }
             }
+            // Giá đơn = giá sau khuyến mãi đang áp dụng của đại lý (PromotionEngine)
+            if (order.getProduct() != null) {
+                order.setTotal(promotionEngine.quote(order.getProduct(), dealerIdOf(order)).getFinalPrice());
+            }
             orderRepo.save(order);
+            inventoryReservationService.reserve(order.getProduct(), order);
             return convertOrderToOrderRes(order);
         }
         return null;
@@ -146,195 +246,21 @@ public class OrderService {
         return null;
     }
 
+    // Đổi trạng thái + giữ / nhả xe trong cùng 1 transaction: xe đã về đơn khác → rollback, trả 409
+    @Transactional
     public OrderRes updateOrder(int orderId, UpdateOrderReq dto) {
         Optional<Order> order = orderRepo.findById(orderId);
         if (order.isPresent()){
-            String oldStatus = order.get().getStatus();
-            
             // Prevent updating orders that have been delivered (completed)
-            if ("Đã giao".equals(oldStatus)) {
-                throw new IllegalStateException("Không thể chỉnh sửa đơn hàng đã giao. Đơn hàng này đã hoàn tất.");
+            if (order.get().getStatus() == OrderStatus.DELIVERED) {
+                throw new ConflictException("Không thể chỉnh sửa đơn hàng đã giao. Đơn hàng này đã hoàn tất.");
             }
             
-            // Update status if provided
+            // Update status if provided - kiểm tra theo bảng chuyển trạng thái, side effect chạy sau khi lưu
+            OrderStatusChange statusChange = null;
             if (dto.getStatus() != null && !dto.getStatus().isEmpty()) {
-                order.get().setStatus(dto.getStatus());
-                
-                // Update product status in showroom when deposit is confirmed
-                if (("Đã đặt cọc".equals(dto.getStatus()) || "Đã yêu cầu đại lý".equals(dto.getStatus())) 
-                    && !dto.getStatus().equals(oldStatus)) {
-                    try {
-                        Product product = order.get().getProduct();
-                        if (product != null) {
-                            product.setStatus(ProductStatus.RESERVED); // Đánh dấu xe đã được đặt cọc
-                            productRepo.save(product);
-                            System.out.println("Updated product status to RESERVED for product ID: " + product.getId());
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Failed to update product status: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                }
-                
-                // Update product status to SOLDOUT when vehicle is delivered
-                if ("Đã giao".equals(dto.getStatus()) && !dto.getStatus().equals(oldStatus)) {
-                    try {
-                        Product product = order.get().getProduct();
-                        User customer = order.get().getUser();
-                        if (product != null) {
-                            product.setStatus(ProductStatus.SOLDOUT); // Đánh dấu xe đã bán
-                            productRepo.save(product);
-                            System.out.println("Updated product status to SOLDOUT for product ID: " + product.getId());
-                            
-                            // Send congratulations email to customer
-                            if (customer != null && customer.getEmail() != null) {
-                                try {
-                                    String customerName = customer.getUsername();
-                                    String customerEmail = customer.getEmail();
-                                    String productName = product.getName() != null ? product.getName() : "N/A";
-                                    String vinNum = product.getVinNum() != null ? product.getVinNum() : "N/A";
-                                    String color = product.getColor() != null ? product.getColor() : "N/A";
-                                    double totalPrice = order.get().getTotal();
-                                    String formattedPrice = String.format("%,.0f", totalPrice);
-                                    
-                                    String subject = "🎉 Chúc mừng bạn đã mua xe thành công - VinFast";
-                                    String body = String.format(
-                                        "Kính gửi quý khách %s,\n\n" +
-                                        "Chúc mừng bạn đã hoàn tất thủ tục mua xe tại VinFast!\n\n" +
-                                        "📋 THÔNG TIN XE:\n" +
-                                        "- Mẫu xe: %s\n" +
-                                        "- Màu sắc: %s\n" +
-                                        "- Số khung (VIN): %s\n" +
-                                        "- Tổng giá trị: %s VNĐ\n\n" +
-                                        "✅ XÁC NHẬN THANH TOÁN:\n" +
-                                        "Chúng tôi xác nhận đã nhận đủ số tiền thanh toán cho xe của quý khách.\n\n" +
-                                        "🎊 CẢM ƠN QUÝ KHÁCH:\n" +
-                                        "Cảm ơn quý khách đã tin tưởng và lựa chọn sản phẩm của VinFast. " +
-                                        "Chúng tôi tin rằng chiếc xe này sẽ đồng hành cùng quý khách trên mọi hành trình.\n\n" +
-                                        "💼 HỖ TRỢ SAU BÁN HÀNG:\n" +
-                                        "Nếu cần hỗ trợ hoặc tư vấn thêm về bảo hành, bảo dưỡng, vui lòng liên hệ với chúng tôi bất cứ lúc nào.\n\n" +
-                                        "Chúc quý khách lái xe an toàn và may mắn!\n\n" +
-                                        "Trân trọng,\n" +
-                                        "Đội ngũ VinFast",
-                                        customerName,
-                                        productName,
-                                        color,
-                                        vinNum,
-                                        formattedPrice
-                                    );
-                                    
-                                    emailService.sendSimpleEmail(customerEmail, subject, body);
-                                    System.out.println("Congratulations email sent to: " + customerEmail);
-                                } catch (Exception emailEx) {
-                                    System.err.println("Failed to send congratulations email: " + emailEx.getMessage());
-                                    emailEx.printStackTrace();
-                                    // Don't throw - allow order update to succeed even if email fails
-                                }
-                            }
-                            
-                            // Cancel all other orders with the same VIN/Engine number (in separate try-catch)
-                            try {
-                                String vinNum = product.getVinNum();
-                                String engineNum = product.getEngineNum();
-                                if (vinNum != null || engineNum != null) {
-                                    List<Order> allOrders = orderRepo.findAll();
-                                    List<Order> otherOrders = new ArrayList<>();
-                                    
-                                    for (Order o : allOrders) {
-                                        if (o.getId() == orderId) continue; // Skip current order
-                                        if (o.getProduct() == null) continue;
-                                        
-                                        Product p = o.getProduct();
-                                        boolean sameVin = vinNum != null && vinNum.equals(p.getVinNum());
-                                        boolean sameEngine = engineNum != null && engineNum.equals(p.getEngineNum());
-                                        
-                                        if (sameVin || sameEngine) {
-                                            String status = o.getStatus();
-                                            if (!"Đã giao".equals(status) && !"Đã hủy".equals(status)) {
-                                                otherOrders.add(o);
-                                            }
-                                        }
-                                    }
-                                    
-                                    for (Order otherOrder : otherOrders) {
-                                        otherOrder.setStatus("Đã hủy");
-                                        String cancelNote = "Xe đã được bán cho khách hàng khác (VIN: " + vinNum + ", Số máy: " + engineNum + ")";
-                                        if (otherOrder.getShipAddress() != null && !otherOrder.getShipAddress().isEmpty()) {
-                                            otherOrder.setShipAddress(otherOrder.getShipAddress() + " | " + cancelNote);
-                                        } else {
-                                            otherOrder.setShipAddress(cancelNote);
-                                        }
-                                        orderRepo.save(otherOrder);
-                                        System.out.println("Auto-cancelled order ID " + otherOrder.getId() + " due to vehicle being sold");
-                                    }
-                                    
-                                    if (!otherOrders.isEmpty()) {
-                                        System.out.println("Auto-cancelled " + otherOrders.size() + " order(s) with same VIN/Engine");
-                                    }
-                                }
-                            } catch (Exception cancelEx) {
-                                System.err.println("Failed to auto-cancel other orders: " + cancelEx.getMessage());
-                                cancelEx.printStackTrace();
-                                // Don't throw - allow main order update to succeed
-                            }
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Failed to update product status to SOLDOUT: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                }
-                
-                // Send email notification when status changes to "Sẵn sàng giao xe"
-                if ("Sẵn sàng giao xe".equals(dto.getStatus()) && !dto.getStatus().equals(oldStatus)) {
-                    try {
-                        User customer = order.get().getUser();
-                        if (customer != null && customer.getEmail() != null) {
-                            String customerName = customer.getUsername();
-                            String customerEmail = customer.getEmail();
-                            String productName = order.get().getProduct() != null ? order.get().getProduct().getName() : "N/A";
-                            String dealerName = order.get().getDealer() != null ? order.get().getDealer().getName() : "N/A";
-                            String dealerAddress = order.get().getDealer() != null ? order.get().getDealer().getAddress() : "N/A";
-                            double totalPrice = order.get().getTotal();
-                            double depositPaid = totalPrice * 0.3;
-                            double remainingAmount = totalPrice * 0.7;
-                            
-                            // Get expected delivery date from DTO or from notes (backward compatibility)
-                            String expectedDeliveryDate = "N/A";
-                            if (dto.getDeliveryDate() != null) {
-                                // Format the date from DTO
-                                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
-                                expectedDeliveryDate = sdf.format(dto.getDeliveryDate());
-                            } else if (dto.getNotes() != null && dto.getNotes().contains("Ngày giao dự kiến:")) {
-                                // Fallback: Extract from notes for backward compatibility
-                                try {
-                                    int startIndex = dto.getNotes().indexOf("Ngày giao dự kiến:") + "Ngày giao dự kiến:".length();
-                                    int endIndex = dto.getNotes().indexOf(".", startIndex);
-                                    if (endIndex == -1) endIndex = dto.getNotes().length();
-                                    expectedDeliveryDate = dto.getNotes().substring(startIndex, endIndex).trim();
-                                } catch (Exception e) {
-                                    expectedDeliveryDate = "Sớm nhất có thể";
-                                }
-                            }
-                            
-                            // Send vehicle ready notification email
-                            emailService.sendVehicleReadyNotification(
-                                customerEmail,
-                                customerName,
-                                productName,
-                                dealerName,
-                                dealerAddress,
-                                totalPrice,
-                                depositPaid,
-                                remainingAmount,
-                                expectedDeliveryDate
-                            );
-                        }
-                    } catch (Exception e) {
-                        // Log error but don't fail the order update
-                        System.err.println("Failed to send vehicle ready notification email: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                }
+                statusChange = orderStatusMachine.apply(order.get(), OrderStatus.from(dto.getStatus()),
+                        dto.getDeliveryDate(), dto.getNotes());
             }
             
             // Update delivery date if provided
@@ -343,11 +269,17 @@ public class OrderService {
                 System.out.println("Updated delivery date to: " + dto.getDeliveryDate());
             }
             
+            boolean reprice = false;
             if (dto.getProductId() > 0 ){
                 Optional<Product> product  = productRepo.findById(dto.getProductId());
                 if (product.isPresent()){
+                    // Đổi xe: giữ xe mới trước (xe đã bị đơn khác giữ → ConflictException)
+                    Product current = order.get().getProduct();
+                    if (current == null || current.getId() != product.get().getId()) {
+                        inventoryReservationService.reassign(order.get(), current, product.get());
+                        reprice = true;
+                    }
                     order.get().setProduct(product.orElse(null));
-                    order.get().setTotal(product.get().getDealerPrice());
                 }
             }
             if (dto.getContractId() > 0 ){
@@ -359,14 +291,20 @@ public class OrderService {
             if (dto.getDealerId() > 0){
                 Optional<Dealer> dealer = dealerRepo.findById(dto.getDealerId());
                 if (dealer.isPresent()){
-                    order.get().setDealer(dealer.orElse(null));
-                    List<Promotion> promotions = promotionRepo.findByDealer_Id(dealer.get().getId());
-                    if (promotions != null){
-                        order.get().setPromotions(promotions);
+                    Integer currentDealerId = dealerIdOf(order.get());
+                    if (currentDealerId == null || currentDealerId != dealer.get().getId()) {
+                        reprice = true;
                     }
+                    order.get().setDealer(dealer.orElse(null));
                 }
             }
+            // Chỉ tính lại giá khi đổi xe / đại lý - giữ nguyên giá đã chốt nếu không đổi
+            if (reprice && order.get().getProduct() != null) {
+                order.get().setTotal(promotionEngine.quote(order.get().getProduct(), dealerIdOf(order.get())).getFinalPrice());
+            }
+            orderStatusMachine.prepare(statusChange);
             orderRepo.save(order.get());
+            orderStatusMachine.fire(statusChange);
             return convertOrderToOrderRes(order.get());
         }
         return null;
@@ -393,7 +331,7 @@ public class OrderService {
     public boolean deleteOrder(int orderId) {
         Optional<Order> order = orderRepo.findById(orderId);
         if (order.isPresent()){
-            productRepo.save(order.get().getProduct());
+            inventoryReservationService.release(order.get());
             order.get().getDealer().getOrders().remove(order);
             dealerRepo.save(order.get().getDealer());
             order.get().getUser().getOrders().remove(order);
@@ -416,6 +354,57 @@ public class OrderService {
         return false;
     }
 
+    // Cùng cách map như convertOrderToOrderRes nhưng từ projection
+    private OrderRes convertRowToOrderRes(OrderListRow row, List<Contract> contracts) {
+        OrderRes orderRes = new OrderRes();
+        orderRes.setOrderId(row.orderId());
+        if (row.dealerId() != null) {
+            orderRes.setDealerId(row.dealerId());
+        }
+        orderRes.setCustomerName(row.customerName());
+        orderRes.setCustomerEmail(row.customerEmail());
+        orderRes.setCustomerPhone(row.customerPhone());
+        orderRes.setCustomerAddress(row.customerAddress());
+        orderRes.setContracts(contracts != null ? contracts : new ArrayList<>());
+        orderRes.setProductName(row.productName());
+        orderRes.setProductImage(row.productImage());
+        orderRes.setProductVin(row.productVin());
+        orderRes.setProductEngine(row.productEngine());
+        orderRes.setProductBattery(row.productBattery());
+        orderRes.setProductRange(row.productRange());
+        orderRes.setProductHP(row.productHP());
+        orderRes.setProductTorque(row.productTorque());
+        orderRes.setProductColor(row.productColor());
+        if (row.totalPrice() >= 0) {
+            orderRes.setTotalPrice(row.totalPrice());
+        }
+        OrderStatus status = row.status() != null ? row.status() : OrderStatus.PENDING;
+        orderRes.setStatus(status.getLabel());
+        orderRes.setStatusCode(status.name());
+        orderRes.setOrderDate(row.orderDate());
+        orderRes.setDeliveryDate(row.deliveryDate() != null ? row.deliveryDate() : row.shipAt());
+        orderRes.setNotes(row.notes());
+        return orderRes;
+    }
+
+    // "PENDING,Đã đặt cọc" → {PENDING, DEPOSIT_PAID}; trạng thái không hợp lệ → IllegalArgumentException
+    private Set<OrderStatus> parseStatuses(String status) {
+        if (status == null || status.isBlank()) {
+            return EnumSet.noneOf(OrderStatus.class);
+        }
+        Set<OrderStatus> statuses = EnumSet.noneOf(OrderStatus.class);
+        Arrays.stream(status.split(","))
+                .map(String::trim)
+                .filter(st -> !st.isEmpty())
+                .map(OrderStatus::from)
+                .forEach(statuses::add);
+        return statuses;
+    }
+
+    private Integer dealerIdOf(Order order) {
+        return order.getDealer() != null ? order.getDealer().getId() : null;
+    }
+
     public OrderRes convertOrderToOrderRes(Order order) {
         OrderRes orderRes = new OrderRes();
         if (order != null){
@@ -452,11 +441,9 @@ public class OrderService {
             if (order.getTotal() >= 0){
                 orderRes.setTotalPrice(order.getTotal());
             }
-            if (order.getStatus() != null){
-                orderRes.setStatus(order.getStatus());
-            } else {
-                orderRes.setStatus("Chờ xử lý");
-            }
+            OrderStatus status = order.getStatus() != null ? order.getStatus() : OrderStatus.PENDING;
+            orderRes.setStatus(status.getLabel());
+            orderRes.setStatusCode(status.name());
             if (order.getOrderDate() != null){
                 orderRes.setOrderDate(order.getOrderDate());
             }
@@ -0,0 +1,9 @@
+package com.lemon.supershop.swp391fa25evdm.order.service;
+
+import java.util.Date;
+
+import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+
+// 1 lần chuyển trạng thái đơn hàng (kèm ngày giao / ghi chú từ request nếu có) - truyền cho các OrderStatusHandler
+public record OrderStatusChange(Order order, OrderStatus from, OrderStatus to, Date deliveryDate, String notes) {}
@@ -0,0 +1,8 @@
+package com.lemon.supershop.swp391fa25evdm.order.service;
+
+// Side effect khi đơn chuyển sang trạng thái mới: bước bắt buộc (OrderStatusMachine#registerStep, trước khi lưu)
+// hoặc handler phụ (OrderStatusMachine#register, sau khi lưu)
+@FunctionalInterface
+public interface OrderStatusHandler {
+    void handle(OrderStatusChange change);
+}
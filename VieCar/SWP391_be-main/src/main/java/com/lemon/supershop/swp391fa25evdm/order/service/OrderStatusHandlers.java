@@ -0,0 +1,143 @@
+package com.lemon.supershop.swp391fa25evdm.order.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
+import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+import com.lemon.supershop.swp391fa25evdm.order.repository.OrderRepo;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.service.InventoryReservationService;
+import com.lemon.supershop.swp391fa25evdm.user.model.entity.User;
+
+import jakarta.annotation.PostConstruct;
+
+// Side effect theo trạng thái đơn hàng (trước đây nằm rải rác trong OrderService.updateOrder)
+@Component
+public class OrderStatusHandlers {
+
+    @Autowired
+    private OrderStatusMachine orderStatusMachine;
+    @Autowired
+    private OrderRepo orderRepo;
+    @Autowired
+    private InventoryReservationService inventoryReservationService;
+    @Autowired
+    private EmailService emailService;
+
+    @PostConstruct
+    void registerHandlers() {
+        // Giữ / nhả / bán xe: chạy trước khi lưu đơn, lỗi rollback cả lần chuyển trạng thái
+        orderStatusMachine.registerStep(OrderStatus.AWAITING_DEPOSIT, this::holdForDeposit);
+        orderStatusMachine.registerStep(OrderStatus.DEPOSIT_PAID, this::confirmReservation);
+        orderStatusMachine.registerStep(OrderStatus.VEHICLE_REQUESTED, this::confirmReservation);
+        orderStatusMachine.registerStep(OrderStatus.DELIVERED, this::markProductSold);
+        orderStatusMachine.registerStep(OrderStatus.DELIVERED, this::cancelOtherOrdersForVehicle);
+        orderStatusMachine.registerStep(OrderStatus.REJECTED, this::releaseReservation);
+        orderStatusMachine.registerStep(OrderStatus.CANCELLED, this::releaseReservation);
+
+        // Email: sau khi lưu đơn, lỗi chỉ được log
+        orderStatusMachine.register(OrderStatus.READY_FOR_DELIVERY, this::notifyVehicleReady);
+        orderStatusMachine.register(OrderStatus.DELIVERED, this::notifyDelivered);
+    }
+
+    // Đại lý duyệt đơn → bắt đầu hạn đặt cọc
+    private void holdForDeposit(OrderStatusChange change) {
+        inventoryReservationService.holdForDeposit(change.order());
+    }
+
+    // Đã đặt cọc → giữ xe đến khi giao
+    private void confirmReservation(OrderStatusChange change) {
+        inventoryReservationService.confirm(change.order());
+    }
+
+    // Đánh dấu xe đã bán
+    private void markProductSold(OrderStatusChange change) {
+        inventoryReservationService.markSold(change.order());
+    }
+
+    // Đơn bị hủy / từ chối → mở bán lại xe
+    private void releaseReservation(OrderStatusChange change) {
+        inventoryReservationService.release(change.order());
+    }
+
+    // Email chúc mừng khách nhận xe
+    private void notifyDelivered(OrderStatusChange change) {
+        Order order = change.order();
+        Product product = order.getProduct();
+        User customer = order.getUser();
+        if (product == null || customer == null || customer.getEmail() == null) {
+            return;
+        }
+        String productName = product.getName() != null ? product.getName() : "N/A";
+        String vinNum = product.getVinNum() != null ? product.getVinNum() : "N/A";
+        String color = product.getColor() != null ? product.getColor() : "N/A";
+        emailService.sendOrderDeliveredEmail(customer.getEmail(), customer.getUsername(), productName, color, vinNum, order.getTotal());
+        System.out.println("Congratulations email sent to: " + customer.getEmail());
+    }
+
+    // Hủy các đơn khác cùng VIN / số máy (1 câu UPDATE)
+    private void cancelOtherOrdersForVehicle(OrderStatusChange change) {
+        Product product = change.order().getProduct();
+        if (product == null) {
+            return;
+        }
+        String vinNum = product.getVinNum();
+        String engineNum = product.getEngineNum();
+        if (vinNum != null || engineNum != null) {
+            String cancelNote = "Xe đã được bán cho khách hàng khác (VIN: " + vinNum + ", Số máy: " + engineNum + ")";
+            List<Integer> cancelledIds = orderRepo.cancelOtherOrdersForVehicle(change.order().getId(), vinNum, engineNum, cancelNote,
+                    OrderStatus.terminalNames());
+            if (!cancelledIds.isEmpty()) {
+                System.out.println("Auto-cancelled " + cancelledIds.size() + " order(s) with same VIN/Engine: " + cancelledIds);
+            }
+        }
+    }
+
+    // Email báo xe sẵn sàng giao (30% đã cọc, 70% còn lại)
+    private void notifyVehicleReady(OrderStatusChange change) {
+        Order order = change.order();
+        User customer = order.getUser();
+        if (customer == null || customer.getEmail() == null) {
+            return;
+        }
+        String productName = order.getProduct() != null ? order.getProduct().getName() : "N/A";
+        String dealerName = order.getDealer() != null ? order.getDealer().getName() : "N/A";
+        String dealerAddress = order.getDealer() != null ? order.getDealer().getAddress() : "N/A";
+        double totalPrice = order.getTotal();
+        double depositPaid = totalPrice * 0.3;
+        double remainingAmount = totalPrice * 0.7;
+
+        // Ngày giao dự kiến từ request, hoặc trích từ ghi chú (tương thích ngược)
+        String expectedDeliveryDate = "N/A";
+        String notes = change.notes();
+        if (change.deliveryDate() != null) {
+            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
+            expectedDeliveryDate = sdf.format(change.deliveryDate());
+        } else if (notes != null && notes.contains("Ngày giao dự kiến:")) {
+            try {
+                int startIndex = notes.indexOf("Ngày giao dự kiến:") + "Ngày giao dự kiến:".length();
+                int endIndex = notes.indexOf(".", startIndex);
+                if (endIndex == -1) endIndex = notes.length();
+                expectedDeliveryDate = notes.substring(startIndex, endIndex).trim();
+            } catch (Exception e) {
+                expectedDeliveryDate = "Sớm nhất có thể";
+            }
+        }
+
+        emailService.sendVehicleReadyNotification(
+            customer.getEmail(),
+            customer.getUsername(),
+            productName,
+            dealerName,
+            dealerAddress,
+            totalPrice,
+            depositPaid,
+            remainingAmount,
+            expectedDeliveryDate
+        );
+    }
+}
@@ -0,0 +1,116 @@
+package com.lemon.supershop.swp391fa25evdm.order.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+
+/**
+ * Chuyển trạng thái đơn hàng theo {@link OrderStatus#next()}.
+ *
+ * - {@link #apply} kiểm tra bước chuyển hợp lệ và set trạng thái mới (chưa lưu)
+ * - Trước khi lưu đơn, {@link #prepare} chạy các bước bắt buộc ({@link #registerStep}: giữ xe, SOLDOUT, ...).
+ *   Lỗi được ném ra để transaction của người gọi rollback cả việc đổi trạng thái
+ * - Sau khi đơn được lưu, {@link #fire} chạy các handler phụ ({@link #register}: email, ...).
+ *   Lỗi của 1 handler chỉ được log - không làm hỏng việc cập nhật đơn
+ */
+@Component
+public class OrderStatusMachine {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<OrderStatus, List<OrderStatusHandler>> steps = new EnumMap<>(OrderStatus.class);
+    private final Map<OrderStatus, List<OrderStatusHandler>> handlers = new EnumMap<>(OrderStatus.class);
+
+    // Bước bắt buộc khi vào trạng thái target - lỗi làm hỏng cả lần chuyển
+    public synchronized void registerStep(OrderStatus target, OrderStatusHandler step) {
+        steps.computeIfAbsent(target, k -> new ArrayList<>()).add(step);
+    }
+
+    // Side effect không bắt buộc (email, thông báo) - lỗi chỉ được log
+    public synchronized void register(OrderStatus target, OrderStatusHandler handler) {
+        handlers.computeIfAbsent(target, k -> new ArrayList<>()).add(handler);
+    }
+
+    /**
+     * Set trạng thái mới cho đơn nếu bước chuyển hợp lệ.
+     *
+     * @return thông tin lần chuyển, null nếu trạng thái không đổi
+     * @throws ConflictException bước chuyển không nằm trong bảng chuyển trạng thái
+     */
+    public OrderStatusChange apply(Order order, OrderStatus target, Date deliveryDate, String notes) {
+        OrderStatus current = order.getStatus();
+        if (target == null || target == current) {
+            return null;
+        }
+        // Đơn cũ không rõ trạng thái: cho phép đặt lại trạng thái bất kỳ
+        if (current != null && !current.canTransitionTo(target)) {
+            throw new ConflictException("Không thể chuyển đơn hàng từ '" + current.getLabel() +
+                                        "' sang '" + target.getLabel() + "'");
+        }
+        order.setStatus(target);
+        return new OrderStatusChange(order, current, target, deliveryDate, notes);
+    }
+
+    /**
+     * Chạy các bước bắt buộc của trạng thái đích - gọi trong transaction, trước khi lưu đơn.
+     *
+     * @throws ConflictException VD: xe đã được đơn khác giữ
+     */
+    public void prepare(OrderStatusChange change) {
+        if (change == null) {
+            return;
+        }
+        List<OrderStatusHandler> targetSteps;
+        synchronized (this) {
+            targetSteps = List.copyOf(steps.getOrDefault(change.to(), List.of()));
+        }
+        for (OrderStatusHandler step : targetSteps) {
+            step.handle(change);
+        }
+    }
+
+    // Chạy các handler phụ của trạng thái đích - gọi sau khi đơn đã được lưu
+    public void fire(OrderStatusChange change) {
+        if (change == null) {
+            return;
+        }
+        List<OrderStatusHandler> targetHandlers;
+        synchronized (this) {
+            targetHandlers = List.copyOf(handlers.getOrDefault(change.to(), List.of()));
+        }
+        for (OrderStatusHandler handler : targetHandlers) {
+            try {
+                handler.handle(change);
+            } catch (Exception e) {
+                System.err.println("Order #" + change.order().getId() + " " + change.from() + " -> " + change.to() +
+                                   ": handler failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Chuẩn hóa nhãn tiếng Việt cũ trong orders.Status sang mã enum để lọc / đếm theo index
+    @EventListener(ApplicationReadyEvent.class)
+    public void normalizeLegacyStatuses() {
+        int total = 0;
+        for (OrderStatus status : OrderStatus.values()) {
+            total += jdbcTemplate.update("UPDATE orders SET status = ? WHERE status = ?", status.name(), status.getLabel());
+        }
+        if (total > 0) {
+            System.out.println("🔄 Normalized " + total + " legacy order status value(s)");
+        }
+    }
+}
@@ -1,19 +1,15 @@
 package com.lemon.supershop.swp391fa25evdm.otp.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
+
 @Service
 public class OtpEmailService {
     
     @Autowired
-    private JavaMailSender mailSender;
-    
-    @Value("${app.email.from:noreply@evdm.com}")
-    private String fromEmail;
+    private EmailService emailService;
     
     public void sendOtpEmail(String toEmail, String otp, String type) {
         // Log OTP to console for development/testing
@@ -24,34 +20,35 @@ public class OtpEmailService {
         System.out.println("Type: " + type);
         System.out.println("=====================================");
         
-        // Try to send actual email in background, but don't block/fail if email has issues
+        // Email được ghi vào outbox (cùng transaction tạo OTP) và gửi ở background - không block request
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(toEmail);
+            String subject;
+            String body;
             
             if ("REGISTER".equals(type)) {
-                message.setSubject("Xác thực tài khoản - Mã OTP");
-                message.setText("Xin chào,\n\n" +
+                subject = "Xác thực tài khoản - Mã OTP";
+                body = "Xin chào,\n\n" +
                         "Cảm ơn bạn đã đăng ký tài khoản tại hệ thống của chúng tôi.\n\n" +
                         "Mã OTP của bạn là: " + otp + "\n\n" +
                         "Mã này sẽ hết hiệu lực sau 10 phút.\n\n" +
                         "Nếu bạn không thực hiện yêu cầu này, vui lòng bỏ qua email này.\n\n" +
                         "Trân trọng,\n" +
-                        "Đội ngũ hỗ trợ");
+                        "Đội ngũ hỗ trợ";
             } else if ("FORGOT_PASSWORD".equals(type)) {
-                message.setSubject("Khôi phục mật khẩu - Mã OTP");
-                message.setText("Xin chào,\n\n" +
+                subject = "Khôi phục mật khẩu - Mã OTP";
+                body = "Xin chào,\n\n" +
                         "Chúng tôi đã nhận được yêu cầu khôi phục mật khẩu của bạn.\n\n" +
                         "Mã OTP của bạn là: " + otp + "\n\n" +
                         "Mã này sẽ hết hiệu lực sau 10 phút.\n\n" +
                         "Nếu bạn không thực hiện yêu cầu này, vui lòng bỏ qua email này và đảm bảo tài khoản của bạn được bảo mật.\n\n" +
                         "Trân trọng,\n" +
-                        "Đội ngũ hỗ trợ");
+                        "Đội ngũ hỗ trợ";
+            } else {
+                return;
             }
             
-            mailSender.send(message);
-            System.out.println("✅ Email sent successfully!");
+            emailService.sendSimpleEmail(toEmail, subject, body);
+            System.out.println("✅ Email queued successfully!");
         } catch (Exception emailEx) {
             // Log error but don't fail - OTP is logged to console for testing
             System.err.println("⚠️ Could not send email: " + emailEx.getMessage());
@@ -1,6 +1,8 @@
 package com.lemon.supershop.swp391fa25evdm.product.Controller;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -81,6 +83,15 @@ public class ProductController {
         return ResponseEntity.ok(products);
     }
 
+    // Số xe còn bán được của đại lý: GET /api/products/dealer/1/available-count
+    @GetMapping("/dealer/{dealerId}/available-count")
+    public ResponseEntity<Map<String, Integer>> getAvailableStockByDealer(@PathVariable int dealerId) {
+        Map<String, Integer> res = new LinkedHashMap<>();
+        res.put("dealerId", dealerId);
+        res.put("available", productService.getAvailableStockByDealerId(dealerId));
+        return ResponseEntity.ok(res);
+    }
+
     @PostMapping("/addProduct")
     public ResponseEntity<ProductRes> addProduct(@RequestBody ProductReq productReq) {
         ProductRes createdProduct = productService.createProduct(productReq);
@@ -11,15 +11,21 @@ import com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
 import jakarta.persistence.*;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 @Entity
-@Table(name = "product")
+@Table(name = "product", indexes = {
+        @Index(name = "IX_product_dealercategory_status", columnList = "DealerCategoryId, Status"),
+        @Index(name = "IX_product_status_reserved_until", columnList = "Status, ReservedUntil")
+})
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // Sequence cấp trước 50 id/lần để Hibernate có thể batch insert (IDENTITY sẽ tắt batching)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     @Column(name = "Id", columnDefinition = "BIGINT")
     private int id;
 
@@ -76,6 +82,18 @@ public class Product {
     @Enumerated(EnumType.STRING)
     private ProductStatus status;
 
+    // Giữ xe cho 1 đơn hàng (status = RESERVED) - chỉ đổi qua câu UPDATE có điều kiện trong ProductRepo
+    @Column(name = "ReservedOrderId")
+    private Integer reservedOrderId;
+
+    // Hết hạn giữ xe nếu chưa đặt cọc; null = giữ vô thời hạn (đã đặt cọc)
+    @Column(name = "ReservedUntil", columnDefinition = "DATETIME2")
+    private LocalDateTime reservedUntil;
+
+    @Version
+    @Column(name = "Version", columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long version;
+
     @ManyToOne
     @JoinColumn(name = "CategoryId")
     @JsonIgnore
@@ -303,4 +321,28 @@ public class Product {
     public void setTestDrives(List<TestDrive> testDrives) {
         this.testDrives = testDrives;
     }
+
+    public Integer getReservedOrderId() {
+        return reservedOrderId;
+    }
+
+    public void setReservedOrderId(Integer reservedOrderId) {
+        this.reservedOrderId = reservedOrderId;
+    }
+
+    public LocalDateTime getReservedUntil() {
+        return reservedUntil;
+    }
+
+    public void setReservedUntil(LocalDateTime reservedUntil) {
+        this.reservedUntil = reservedUntil;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
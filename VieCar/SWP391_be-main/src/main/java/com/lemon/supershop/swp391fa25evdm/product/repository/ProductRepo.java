@@ -2,11 +2,16 @@ package com.lemon.supershop.swp391fa25evdm.product.repository;
 
 import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
 import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 @Repository
@@ -16,6 +21,11 @@ public interface ProductRepo extends JpaRepository<Product, Integer> {
     List<Product> findByEngineNumContainingIgnoreCase(String engineNum);
     List<Product> findByNameContainingIgnoreCase(String name);
     List<Product> findByCategoryId(int id);
+
+    // Product mẫu (id nhỏ nhất) của mỗi category - dùng khi nhập kho hàng loạt theo categoryId
+    @Query("SELECT p FROM Product p WHERE p.id IN " +
+           "(SELECT MIN(p2.id) FROM Product p2 WHERE p2.category.id IN :categoryIds GROUP BY p2.category.id)")
+    List<Product> findTemplatesByCategoryIds(@Param("categoryIds") Collection<Integer> categoryIds);
     
     // Find products by dealer category ID
     @Query("SELECT p FROM Product p WHERE p.dealerCategory.id = :dealerCategoryId")
@@ -25,6 +35,11 @@ public interface ProductRepo extends JpaRepository<Product, Integer> {
     @Query("SELECT p FROM Product p WHERE p.dealerCategory.dealer.id = :dealerId")
     List<Product> findByDealerId(@Param("dealerId") int dealerId);
     
+    // Xe lái thử (TEST_DRIVE) của 1 đại lý - dùng cho lịch trống nhiều ngày
+    @Query("SELECT p FROM Product p WHERE p.status = 'TEST_DRIVE' " +
+           "AND p.dealerCategory.dealer.id = :dealerId ORDER BY p.id")
+    List<Product> findTestDriveProductsByDealerId(@Param("dealerId") int dealerId);
+    
     // Find available products (TEST_DRIVE status and not currently in use)
     @Query("SELECT p FROM Product p WHERE p.status = 'TEST_DRIVE' " +
            "AND p.id NOT IN :inUseProductIds")
@@ -45,4 +60,77 @@ public interface ProductRepo extends JpaRepository<Product, Integer> {
     List<Product> findAvailableTestDriveProductsByDealerCategory(
         @Param("dealerCategoryId") int dealerCategoryId,
         @Param("inUseProductIds") List<Integer> inUseProductIds);
+
+    // ===== Giữ xe cho đơn hàng (InventoryReservationService) =====
+    // Mọi thay đổi trạng thái giữ xe đi qua 1 câu UPDATE có điều kiện → 2 đơn không thể cùng giữ 1 xe
+
+    // [status, version, reservedOrderId, reservedUntil] hiện tại - đọc lại khi UPDATE giữ xe không khớp
+    @Query("SELECT p.status, p.version, p.reservedOrderId, p.reservedUntil FROM Product p WHERE p.id = :productId")
+    List<Object[]> findStockState(@Param("productId") int productId);
+
+    // Giữ xe: chỉ thành công khi xe còn available và chưa bị sửa kể từ lúc đọc (version)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.status = :reserved, p.reservedOrderId = :orderId, p.reservedUntil = :until, " +
+           "p.version = p.version + 1 " +
+           "WHERE p.id = :productId AND p.status = :available AND p.version = :version")
+    int reserve(@Param("productId") int productId,
+                @Param("version") long version,
+                @Param("orderId") int orderId,
+                @Param("until") LocalDateTime until,
+                @Param("available") ProductStatus available,
+                @Param("reserved") ProductStatus reserved);
+
+    // Đổi hạn giữ xe của đúng đơn đang giữ (until = null: đã đặt cọc, giữ đến khi giao / hủy)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.reservedUntil = :until, p.version = p.version + 1 " +
+           "WHERE p.id = :productId AND p.status = :reserved AND p.reservedOrderId = :orderId " +
+           "AND p.reservedUntil IS NOT NULL")
+    int extendReservation(@Param("productId") int productId,
+                          @Param("orderId") int orderId,
+                          @Param("until") LocalDateTime until,
+                          @Param("reserved") ProductStatus reserved);
+
+    // Nhả xe về available nếu đơn vẫn đang giữ
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.status = :available, p.reservedOrderId = null, p.reservedUntil = null, " +
+           "p.version = p.version + 1 " +
+           "WHERE p.id = :productId AND p.status = :reserved AND p.reservedOrderId = :orderId")
+    int release(@Param("productId") int productId,
+                @Param("orderId") int orderId,
+                @Param("available") ProductStatus available,
+                @Param("reserved") ProductStatus reserved);
+
+    // Nhả xe hết hạn - điều kiện reservedUntil < now tránh nhả nhầm xe vừa được gia hạn / đặt cọc
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.status = :available, p.reservedOrderId = null, p.reservedUntil = null, " +
+           "p.version = p.version + 1 " +
+           "WHERE p.id = :productId AND p.status = :reserved AND p.reservedOrderId = :orderId " +
+           "AND p.reservedUntil < :now")
+    int releaseExpired(@Param("productId") int productId,
+                       @Param("orderId") int orderId,
+                       @Param("now") LocalDateTime now,
+                       @Param("available") ProductStatus available,
+                       @Param("reserved") ProductStatus reserved);
+
+    // Xe đã giao: SOLDOUT, xóa thông tin giữ xe
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.status = :soldout, p.reservedOrderId = null, p.reservedUntil = null, " +
+           "p.version = p.version + 1 " +
+           "WHERE p.id = :productId AND p.status <> :soldout")
+    int markSold(@Param("productId") int productId, @Param("soldout") ProductStatus soldout);
+
+    // [productId, orderId, dealerId] các xe giữ quá hạn (IX_product_status_reserved_until)
+    @Query("SELECT p.id, p.reservedOrderId, d.id FROM Product p " +
+           "LEFT JOIN p.dealerCategory dc LEFT JOIN dc.dealer d " +
+           "WHERE p.status = :reserved AND p.reservedUntil < :now")
+    List<Object[]> findExpiredReservations(@Param("now") LocalDateTime now, @Param("reserved") ProductStatus reserved);
+
+    // Số xe theo trạng thái của 1 đại lý (IX_product_dealercategory_status)
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.dealerCategory.dealer.id = :dealerId AND p.status = :status")
+    long countByDealerIdAndStatus(@Param("dealerId") int dealerId, @Param("status") ProductStatus status);
 }
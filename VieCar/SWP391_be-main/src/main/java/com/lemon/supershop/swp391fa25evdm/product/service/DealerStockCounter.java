@@ -0,0 +1,55 @@
+package com.lemon.supershop.swp391fa25evdm.product.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus;
+import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
+
+/**
+ * Số xe còn bán được (ACTIVE) theo đại lý, giữ trong bộ nhớ.
+ *
+ * - Đếm từ DB lần đầu được hỏi (COUNT theo IX_product_dealercategory_status)
+ * - Giữ / nhả / bán xe cộng trừ trực tiếp, không query lại
+ * - Sửa xe thủ công → invalidate; định kỳ xóa toàn bộ để sửa lệch (VD: nhiều instance)
+ */
+@Component
+public class DealerStockCounter {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    private final Map<Integer, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    public int available(int dealerId) {
+        return counts.computeIfAbsent(dealerId,
+                id -> new AtomicInteger((int) productRepo.countByDealerIdAndStatus(id, ProductStatus.ACTIVE))).get();
+    }
+
+    // Đại lý chưa được đếm thì bỏ qua - lần đọc sau sẽ đếm lại từ DB
+    public void adjust(Integer dealerId, int delta) {
+        if (dealerId == null) {
+            return;
+        }
+        AtomicInteger count = counts.get(dealerId);
+        if (count != null) {
+            count.updateAndGet(c -> Math.max(0, c + delta));
+        }
+    }
+
+    public void invalidate(Integer dealerId) {
+        if (dealerId != null) {
+            counts.remove(dealerId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.stock-counter.refresh-ms:300000}")
+    public void refresh() {
+        counts.clear();
+    }
+}
@@ -0,0 +1,301 @@
+package com.lemon.supershop.swp391fa25evdm.product.service;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+import com.lemon.supershop.swp391fa25evdm.order.repository.OrderRepo;
+import com.lemon.supershop.swp391fa25evdm.order.service.OrderStatusChange;
+import com.lemon.supershop.swp391fa25evdm.order.service.OrderStatusMachine;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus;
+import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
+
+/**
+ * Giữ xe cho đơn hàng - mỗi xe chỉ được 1 đơn giữ tại một thời điểm.
+ *
+ * - Tạo đơn: ACTIVE → RESERVED bằng UPDATE có điều kiện (status + version); xe đã bị giữ → 409 ngay lúc đặt
+ * - Chờ duyệt: giữ không thời hạn đến khi đại lý xử lý (duyệt / từ chối)
+ * - Chờ đặt cọc: giữ có hạn (deposit-window-minutes), tạo link VNPay gia hạn đủ hết phiên thanh toán
+ * - Đã đặt cọc: giữ vô thời hạn đến khi giao (SOLDOUT) hoặc hủy / từ chối (về ACTIVE)
+ * - Job định kỳ nhả xe quá hạn đặt cọc và hủy đơn "Chưa đặt cọc" tương ứng
+ */
+@Service
+public class InventoryReservationService {
+
+    // Trạng thái đơn giữ xe có hạn - quá hạn thì nhả xe và hủy đơn
+    private static final Set<OrderStatus> AWAITING_PAYMENT = EnumSet.of(OrderStatus.AWAITING_DEPOSIT);
+    private static final int MAX_RESERVE_ATTEMPTS = 3;
+
+    @Autowired
+    private ProductRepo productRepo;
+    @Autowired
+    private OrderRepo orderRepo;
+    @Autowired
+    private OrderStatusMachine orderStatusMachine;
+    @Autowired
+    private DealerStockCounter dealerStockCounter;
+
+    @Value("${inventory.reservation.deposit-window-minutes:120}")
+    private int depositWindowMinutes;
+    @Value("${inventory.reservation.payment-grace-minutes:5}")
+    private int paymentGraceMinutes;
+    @Value("${vnpay.expire_minutes:15}")
+    private int vnpayExpireMinutes;
+
+    /**
+     * Giữ xe cho đơn (hạn giữ theo trạng thái đơn). Đơn đang giữ chính xe này → bỏ qua.
+     *
+     * @throws ConflictException xe đã được giữ / đã bán / không mở bán
+     */
+    public void reserve(Product product, Order order) {
+        if (product == null) {
+            return;
+        }
+        reserve(product.getId(), order.getId(), untilFor(order.getStatus()), dealerIdOf(product));
+    }
+
+    // Đơn chuyển sang "Chưa đặt cọc": khách có depositWindowMinutes để thanh toán (kể cả khi đang giữ không thời hạn)
+    public void holdForDeposit(Order order) {
+        if (order.getProduct() != null) {
+            hold(order.getProduct(), order.getId(), LocalDateTime.now().plusMinutes(depositWindowMinutes), true);
+        }
+    }
+
+    /**
+     * Trước khi tạo link VNPay đặt cọc: giữ xe ít nhất tới khi link hết hạn (+ thời gian chờ callback).
+     * Giữ chỗ đã hết hạn nhưng xe vẫn còn → giữ lại; xe đã về đơn khác → không cho thanh toán.
+     *
+     * @throws ConflictException xe không còn giữ được cho đơn này
+     */
+    public void holdForPayment(Order order) {
+        if (order.getProduct() != null) {
+            hold(order.getProduct(), order.getId(),
+                    LocalDateTime.now().plusMinutes(vnpayExpireMinutes + paymentGraceMinutes), false);
+        }
+    }
+
+    // Đã đặt cọc: bỏ hạn giữ xe
+    public void confirm(Order order) {
+        Product product = order.getProduct();
+        if (product == null) {
+            return;
+        }
+        if (productRepo.extendReservation(product.getId(), order.getId(), null, ProductStatus.RESERVED) > 0) {
+            System.out.println("🔒 Reservation confirmed: product " + product.getId() + " → order " + order.getId());
+            return;
+        }
+        StockState state = loadState(product.getId());
+        if (state.isReservedBy(order.getId())) {
+            return; // đã xác nhận trước đó
+        }
+        // Đơn cũ chưa từng giữ xe
+        reserve(product.getId(), order.getId(), null, dealerIdOf(product));
+    }
+
+    // Hủy / từ chối / xóa đơn: trả xe về ACTIVE nếu đơn đang giữ
+    public void release(Order order) {
+        Product product = order.getProduct();
+        if (product == null) {
+            return;
+        }
+        if (productRepo.release(product.getId(), order.getId(), ProductStatus.ACTIVE, ProductStatus.RESERVED) > 0) {
+            adjustStock(dealerIdOf(product), +1);
+            System.out.println("🔓 Reservation released: product " + product.getId() + " (order " + order.getId() + ")");
+        }
+    }
+
+    // Đã giao xe
+    public void markSold(Order order) {
+        Product product = order.getProduct();
+        if (product == null) {
+            return;
+        }
+        StockState before = loadState(product.getId());
+        if (productRepo.markSold(product.getId(), ProductStatus.SOLDOUT) > 0) {
+            if (before.status() == ProductStatus.ACTIVE) {
+                adjustStock(dealerIdOf(product), -1);
+            }
+            System.out.println("Updated product status to SOLDOUT for product ID: " + product.getId());
+        }
+    }
+
+    // Đổi xe của đơn: giữ xe mới trước, thành công mới nhả xe cũ
+    public void reassign(Order order, Product oldProduct, Product newProduct) {
+        reserve(newProduct, order);
+        if (oldProduct != null) {
+            if (productRepo.release(oldProduct.getId(), order.getId(), ProductStatus.ACTIVE, ProductStatus.RESERVED) > 0) {
+                adjustStock(dealerIdOf(oldProduct), +1);
+            }
+        }
+    }
+
+    public int availableStock(int dealerId) {
+        return dealerStockCounter.available(dealerId);
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval-ms:60000}")
+    public void expireReservations() {
+        LocalDateTime now = LocalDateTime.now();
+        int released = 0;
+        for (Object[] row : productRepo.findExpiredReservations(now, ProductStatus.RESERVED)) {
+            int productId = ((Number) row[0]).intValue();
+            Integer orderId = row[1] != null ? ((Number) row[1]).intValue() : null;
+            Integer dealerId = row[2] != null ? ((Number) row[2]).intValue() : null;
+            if (orderId == null) {
+                continue;
+            }
+            try {
+                if (expire(productId, orderId, dealerId, now)) {
+                    released++;
+                }
+            } catch (Exception e) {
+                System.err.println("❌ Failed to expire reservation of product " + productId + ": " + e.getMessage());
+            }
+        }
+        if (released > 0) {
+            System.out.println("🧹 Inventory reservations: released " + released + " expired reservation(s)");
+        }
+    }
+
+    private boolean expire(int productId, int orderId, Integer dealerId, LocalDateTime now) {
+        Optional<Order> orderOpt = orderRepo.findById(orderId);
+        if (orderOpt.isPresent() && !AWAITING_PAYMENT.contains(orderOpt.get().getStatus())) {
+            // Đơn chưa tới bước đặt cọc / đã đặt cọc / đã kết thúc nhưng vẫn còn hạn giữ: không hủy đơn
+            OrderStatus status = orderOpt.get().getStatus();
+            if (status == OrderStatus.DELIVERED) {
+                markSold(orderOpt.get());
+            } else if (status != null && status.isTerminal()) {
+                release(orderOpt.get());
+            } else {
+                productRepo.extendReservation(productId, orderId, null, ProductStatus.RESERVED);
+            }
+            return false;
+        }
+        if (productRepo.releaseExpired(productId, orderId, now, ProductStatus.ACTIVE, ProductStatus.RESERVED) == 0) {
+            return false; // vừa được gia hạn / đặt cọc
+        }
+        adjustStock(dealerId, +1);
+
+        if (orderOpt.isPresent()) {
+            Order order = orderOpt.get();
+            String note = "Đơn tự hủy do quá hạn đặt cọc, xe đã được mở bán lại";
+            OrderStatusChange change = orderStatusMachine.apply(order, OrderStatus.CANCELLED, null, note);
+            String notes = order.getShipAddress();
+            order.setShipAddress(notes == null || notes.isBlank() ? note : truncate(notes + " | " + note, 255));
+            orderStatusMachine.prepare(change);
+            orderRepo.save(order);
+            orderStatusMachine.fire(change);
+        }
+        System.out.println("⏰ Reservation expired: product " + productId + " (order " + orderId + " cancelled)");
+        return true;
+    }
+
+    // Đơn đang giữ xe → đổi hạn (startWindow: đặt hạn mới cả khi đang giữ không thời hạn); chưa giữ → giữ mới với hạn này
+    private void hold(Product product, int orderId, LocalDateTime until, boolean startWindow) {
+        StockState state = loadState(product.getId());
+        if (state.isReservedBy(orderId)) {
+            if (startWindow || (state.reservedUntil() != null && state.reservedUntil().isBefore(until))) {
+                productRepo.extendReservation(product.getId(), orderId, until, ProductStatus.RESERVED);
+            }
+            return;
+        }
+        reserve(product.getId(), orderId, until, dealerIdOf(product));
+    }
+
+    private void reserve(int productId, int orderId, LocalDateTime until, Integer dealerId) {
+        StockState state = loadState(productId);
+        for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+            if (state.isReservedBy(orderId)) {
+                return;
+            }
+            if (state.status() != ProductStatus.ACTIVE) {
+                throw new ConflictException(unavailableMessage(state.status()));
+            }
+            if (productRepo.reserve(productId, state.version(), orderId, until,
+                    ProductStatus.ACTIVE, ProductStatus.RESERVED) > 0) {
+                adjustStock(dealerId, -1);
+                System.out.println("🔒 Product " + productId + " reserved for order " + orderId +
+                                   (until != null ? " until " + until : ""));
+                return;
+            }
+            // Xe vừa bị sửa hoặc bị đơn khác giữ - đọc lại rồi thử tiếp
+            state = loadState(productId);
+        }
+        throw new ConflictException("Xe đang được cập nhật, vui lòng thử lại");
+    }
+
+    // Chỉ đơn "Chưa đặt cọc" có hạn giữ; chờ duyệt / đã đặt cọc giữ không thời hạn
+    private LocalDateTime untilFor(OrderStatus status) {
+        if (status == OrderStatus.AWAITING_DEPOSIT) {
+            return LocalDateTime.now().plusMinutes(depositWindowMinutes);
+        }
+        return null;
+    }
+
+    private StockState loadState(int productId) {
+        List<Object[]> rows = productRepo.findStockState(productId);
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Không tìm thấy xe với ID: " + productId);
+        }
+        Object[] row = rows.get(0);
+        return new StockState(
+                (ProductStatus) row[0],
+                row[1] != null ? ((Number) row[1]).longValue() : 0L,
+                row[2] != null ? ((Number) row[2]).intValue() : null,
+                (LocalDateTime) row[3]);
+    }
+
+    private String unavailableMessage(ProductStatus status) {
+        if (status == ProductStatus.RESERVED) {
+            return "Xe đã được khách hàng khác đặt, vui lòng chọn xe khác";
+        }
+        if (status == ProductStatus.SOLDOUT) {
+            return "Xe đã được bán, vui lòng chọn xe khác";
+        }
+        return "Xe hiện không mở bán";
+    }
+
+    // Counter trong bộ nhớ chỉ đổi khi transaction của đơn commit - rollback (VD: ConflictException) thì giữ nguyên
+    private void adjustStock(Integer dealerId, int delta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dealerStockCounter.adjust(dealerId, delta);
+                }
+            });
+        } else {
+            dealerStockCounter.adjust(dealerId, delta);
+        }
+    }
+
+    private Integer dealerIdOf(Product product) {
+        if (product.getDealerCategory() != null && product.getDealerCategory().getDealer() != null) {
+            return product.getDealerCategory().getDealer().getId();
+        }
+        return null;
+    }
+
+    private String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private record StockState(ProductStatus status, long version, Integer reservedOrderId, LocalDateTime reservedUntil) {
+        boolean isReservedBy(int orderId) {
+            return status == ProductStatus.RESERVED && reservedOrderId != null && reservedOrderId == orderId;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
 import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryRepository;
 import com.lemon.supershop.swp391fa25evdm.category.repository.DealerCategoryRepository;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
 import com.lemon.supershop.swp391fa25evdm.product.model.dto.ProductReq;
 import com.lemon.supershop.swp391fa25evdm.product.model.dto.ProductRes;
 import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
@@ -27,6 +28,9 @@ public class ProductService {
 
     @Autowired
     private DealerCategoryRepository dealerCategoryRepository;
+
+    @Autowired
+    private DealerStockCounter dealerStockCounter;
     
     @Autowired
     private com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository testDriveRepository;
@@ -54,6 +58,7 @@ public class ProductService {
         Product product = new Product();
         Product newProduct = convertReqToEntity(product, productReq);
         productRepo.save(newProduct);
+        dealerStockCounter.invalidate(dealerIdOf(newProduct));
         return convertToRes(newProduct);
     }
 
@@ -64,16 +69,36 @@ public class ProductService {
             
             // Prevent updating products that have been sold
             if (ProductStatus.SOLDOUT.equals(existingProduct.getStatus())) {
-                throw new IllegalStateException("Không thể cập nhật thông tin xe đã bán");
+                throw new ConflictException("Không thể cập nhật thông tin xe đã bán");
             }
             
+            // Xe đang được giữ cho đơn hàng: trạng thái chỉ đổi theo luồng đơn (giao / hủy)
+            if (existingProduct.getReservedOrderId() != null && productReq.getStatus() != null
+                    && productReq.getStatus() != existingProduct.getStatus()) {
+                throw new ConflictException("Xe đang được giữ cho đơn hàng #" + existingProduct.getReservedOrderId() +
+                                             ", không thể đổi trạng thái thủ công");
+            }
+            Integer dealerBefore = dealerIdOf(existingProduct);
+            
             Product updatedProduct = convertReqToEntity(existingProduct, productReq);
             productRepo.save(updatedProduct);
+            dealerStockCounter.invalidate(dealerBefore);
+            dealerStockCounter.invalidate(dealerIdOf(updatedProduct));
             return convertToRes(updatedProduct);
         }
         return null;
     }
 
+    // Số xe còn bán được (ACTIVE, chưa bị đơn nào giữ) của đại lý
+    public int getAvailableStockByDealerId(int dealerId) {
+        return dealerStockCounter.available(dealerId);
+    }
+
+    private Integer dealerIdOf(Product product) {
+        DealerCategory dealerCategory = product.getDealerCategory();
+        return dealerCategory != null && dealerCategory.getDealer() != null ? dealerCategory.getDealer().getId() : null;
+    }
+
     public List<ProductRes> getProductByCategoryId(Integer categoryId){
         List<Product> products = productRepo.findByCategoryId(categoryId);
         return products.stream().map(this::convertToRes).toList();
@@ -203,21 +228,18 @@ public class ProductService {
                 productRes.setManufacturerPrice(product.getManufacturerPrice());
             }
             
+            // Category / DealerCategory đã được load cùng product - không findById lại
             if (product.getCategory() != null) {
-                Optional<Category> category = categoryRepository.findById(product.getCategory().getId());
-                if (category.isPresent()) {
-                    productRes.setCategoryId(category.get().getId());
-                    productRes.setSpecial(category.get().isSpecial());
-                }
+                Category category = product.getCategory();
+                productRes.setCategoryId(category.getId());
+                productRes.setSpecial(category.isSpecial());
             }
             if (product.getDealerCategory() != null) {
-                Optional<DealerCategory> category = dealerCategoryRepository.findById(product.getDealerCategory().getId());
-                if (category.isPresent()) {
-                    productRes.setDealerCategoryId(category.get().getId());
-                    // Set dealerId from DealerCategory
-                    if (category.get().getDealer() != null) {
-                        productRes.setDealerId(category.get().getDealer().getId());
-                    }
+                DealerCategory category = product.getDealerCategory();
+                productRes.setDealerCategoryId(category.getId());
+                // Set dealerId from DealerCategory
+                if (category.getDealer() != null) {
+                    productRes.setDealerId(category.getDealer().getId());
                 }
             }
             return productRes;
@@ -0,0 +1,75 @@
+package com.lemon.supershop.swp391fa25evdm.product.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cấp mã VIN/ENG duy nhất cho xe nhập kho.
+ *
+ * Mỗi node giữ 1 block {@link #BLOCK_SIZE} số liên tiếp lấy từ sequence vehicle_code_seq
+ * (INCREMENT BY {@link #BLOCK_SIZE}), nên 2 node / 2 lần nhận hàng song song không bao giờ trùng mã.
+ * Trong block, mỗi lần cấp chỉ là 1 phép getAndIncrement - chỉ khi hết block mới vào DB.
+ */
+@Component
+public class VehicleCodeAllocator {
+
+    // Phải khớp INCREMENT BY của vehicle_code_seq (xem DatabaseInitializer)
+    public static final int BLOCK_SIZE = 1000;
+
+    private static final String NEXT_BLOCK_SQL = "SELECT NEXT VALUE FOR vehicle_code_seq";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile Block current = new Block(0, 0);
+
+    // Mã dạng 16 chữ số (cùng độ dài với pattern cũ <timestamp><3 số>) - dùng chung cho VIN- và ENG-
+    public String nextCode() {
+        return String.format("%016d", nextValue());
+    }
+
+    public List<String> nextCodes(int count) {
+        List<String> codes = new ArrayList<>(Math.max(count, 0));
+        for (int i = 0; i < count; i++) {
+            codes.add(nextCode());
+        }
+        return codes;
+    }
+
+    long nextValue() {
+        while (true) {
+            Block block = current;
+            long value = block.cursor.getAndIncrement();
+            if (value < block.end) {
+                return value;
+            }
+            refill(block);
+        }
+    }
+
+    private synchronized void refill(Block exhausted) {
+        if (current != exhausted) {
+            return; // thread khác đã lấy block mới
+        }
+        Long start = jdbcTemplate.queryForObject(NEXT_BLOCK_SQL, Long.class);
+        if (start == null) {
+            throw new IllegalStateException("vehicle_code_seq returned no value");
+        }
+        current = new Block(start, start + BLOCK_SIZE);
+    }
+
+    private static final class Block {
+        private final AtomicLong cursor;
+        private final long end; // exclusive
+
+        private Block(long start, long end) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
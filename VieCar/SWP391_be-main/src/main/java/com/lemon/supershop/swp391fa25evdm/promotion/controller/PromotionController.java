@@ -0,0 +1,34 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionQuoteRes;
+import com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionRule;
+import com.lemon.supershop.swp391fa25evdm.promotion.service.PromotionEngine;
+
+@RestController
+@RequestMapping("/api/promotions")
+@CrossOrigin("*")
+public class PromotionController {
+
+    @Autowired
+    private PromotionEngine promotionEngine;
+
+    // Báo giá sau khuyến mãi cho 1 xe (productId) hoặc 1 dòng xe (categoryId)
+    @GetMapping("/quote")
+    public ResponseEntity<PromotionQuoteRes> quote(@RequestParam(required = false) Integer dealerId,
+                                                   @RequestParam(required = false) Integer productId,
+                                                   @RequestParam(required = false) Integer categoryId) {
+        return ResponseEntity.ok(promotionEngine.quote(dealerId, productId, categoryId));
+    }
+
+    @GetMapping("/active")
+    public ResponseEntity<List<PromotionRule>> getActivePromotions(@RequestParam(required = false) Integer dealerId,
+                                                                   @RequestParam(required = false) Integer categoryId) {
+        return ResponseEntity.ok(promotionEngine.activePromotions(dealerId, categoryId));
+    }
+}
@@ -0,0 +1,160 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.model.dto;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class PromotionQuoteRes {
+    private Integer dealerId;
+    private Integer productId;
+    private Integer categoryId;
+    private long listPrice;
+    private long discount;
+    private long finalPrice;
+    private List<Line> applied = new ArrayList<>();
+    private List<Line> gifts = new ArrayList<>();
+
+    public PromotionQuoteRes() {}
+
+    public Integer getDealerId() {
+        return dealerId;
+    }
+
+    public void setDealerId(Integer dealerId) {
+        this.dealerId = dealerId;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public long getListPrice() {
+        return listPrice;
+    }
+
+    public void setListPrice(long listPrice) {
+        this.listPrice = listPrice;
+    }
+
+    public long getDiscount() {
+        return discount;
+    }
+
+    public void setDiscount(long discount) {
+        this.discount = discount;
+    }
+
+    public long getFinalPrice() {
+        return finalPrice;
+    }
+
+    public void setFinalPrice(long finalPrice) {
+        this.finalPrice = finalPrice;
+    }
+
+    public List<Line> getApplied() {
+        return applied;
+    }
+
+    public void setApplied(List<Line> applied) {
+        this.applied = applied;
+    }
+
+    public List<Line> getGifts() {
+        return gifts;
+    }
+
+    public void setGifts(List<Line> gifts) {
+        this.gifts = gifts;
+    }
+
+    // 1 khuyến mãi trong báo giá: amount = số tiền được giảm (giá) hoặc trị giá quà (quà tặng)
+    public static class Line {
+        private int id;
+        private String name;
+        private String description;
+        private String type;
+        private double value;
+        private long amount;
+        private Date startDate;
+        private Date endDate;
+
+        public Line() {}
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public void setValue(double value) {
+            this.value = value;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public void setAmount(long amount) {
+            this.amount = amount;
+        }
+
+        public Date getStartDate() {
+            return startDate;
+        }
+
+        public void setStartDate(Date startDate) {
+            this.startDate = startDate;
+        }
+
+        public Date getEndDate() {
+            return endDate;
+        }
+
+        public void setEndDate(Date endDate) {
+            this.endDate = endDate;
+        }
+    }
+}
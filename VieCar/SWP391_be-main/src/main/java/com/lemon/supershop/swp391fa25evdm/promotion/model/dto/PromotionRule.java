@@ -0,0 +1,42 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.model.dto;
+
+import java.util.Date;
+import java.util.Set;
+
+import com.lemon.supershop.swp391fa25evdm.promotion.model.enums.PromotionType;
+
+/**
+ * Bản chụp 1 khuyến mãi trong PromotionCache (đọc bằng constructor expression, không giữ entity).
+ * dealerId / categoryId null = áp dụng cho mọi đại lý / mọi dòng xe.
+ */
+public record PromotionRule(
+        int id,
+        String name,
+        String description,
+        PromotionType type,
+        double value,
+        Date startDate,
+        Date endDate,
+        String status,
+        Integer categoryId,
+        Integer dealerId) {
+
+    // Trạng thái coi như đã tắt; null / giá trị khác = đang áp dụng
+    private static final Set<String> DISABLED_STATUSES = Set.of("INACTIVE", "DISABLED", "EXPIRED", "CANCELLED", "DELETED");
+
+    // Dùng cho JPQL: cột Type là chuỗi tự do
+    public PromotionRule(int id, String name, String description, String type, double value,
+                         Date startDate, Date endDate, String status, Integer categoryId, Integer dealerId) {
+        this(id, name, description, PromotionType.from(type), value, startDate, endDate, status, categoryId, dealerId);
+    }
+
+    public boolean isEnabled() {
+        return status == null || !DISABLED_STATUSES.contains(status.trim().toUpperCase());
+    }
+
+    public boolean isActiveAt(long now) {
+        return isEnabled()
+                && (startDate == null || startDate.getTime() <= now)
+                && (endDate == null || now < endDate.getTime());
+    }
+}
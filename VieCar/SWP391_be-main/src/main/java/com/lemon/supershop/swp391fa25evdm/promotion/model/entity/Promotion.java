@@ -5,6 +5,7 @@ import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
 import com.lemon.supershop.swp391fa25evdm.category.model.entity.DealerCategory;
 import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
 import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.promotion.service.PromotionChangeListener;
 import jakarta.persistence.*;
 
 import java.util.ArrayList;
@@ -12,7 +13,10 @@ import java.util.Date;
 import java.util.List;
 
 @Entity
-@Table(name = "promotion")
+@Table(name = "promotion", indexes = {
+        @Index(name = "IX_promotion_end_date", columnList = "EndDate")
+})
+@EntityListeners(PromotionChangeListener.class)
 public class Promotion {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
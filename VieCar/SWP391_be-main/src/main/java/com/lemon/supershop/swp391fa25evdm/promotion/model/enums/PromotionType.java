@@ -0,0 +1,28 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.model.enums;
+
+import java.text.Normalizer;
+
+// Promotion.type lưu dạng chuỗi tự do ("quà hay giá") - quy về 3 loại khi tính giá
+public enum PromotionType {
+    GIFT,    // Tặng quà: value = trị giá quà, không trừ vào giá xe
+    PERCENT, // Giảm theo %: value = phần trăm trên giá niêm yết
+    AMOUNT;  // Giảm thẳng: value = số tiền (VND)
+
+    public static PromotionType from(String value) {
+        if (value == null || value.isBlank()) {
+            return AMOUNT;
+        }
+        // "Quà tặng" → "QUA TANG"
+        String v = Normalizer.normalize(value.trim(), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('đ', 'd').replace('Đ', 'D')
+                .toUpperCase();
+        if (v.contains("GIFT") || v.contains("QUA")) {
+            return GIFT;
+        }
+        if (v.contains("PERCENT") || v.contains("%") || v.contains("PHAN TRAM")) {
+            return PERCENT;
+        }
+        return AMOUNT;
+    }
+}
@@ -1,12 +1,24 @@
 package com.lemon.supershop.swp391fa25evdm.promotion.repository;
 
+import com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionRule;
 import com.lemon.supershop.swp391fa25evdm.promotion.model.entity.Promotion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
 
 @Repository
 public interface PromotionRepo extends JpaRepository<Promotion, Integer> {
     List<Promotion> findByDealer_Id(int id);
+
+    // Toàn bộ khuyến mãi chưa kết thúc (đang / sắp áp dụng) cho PromotionCache - 1 query, không load entity
+    @Query("SELECT new com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionRule(" +
+           "    p.id, p.name, p.description, p.type, p.value, p.startDate, p.endDate, p.status, c.id, d.id) " +
+           "FROM Promotion p LEFT JOIN p.category c LEFT JOIN p.dealer d " +
+           "WHERE p.endDate IS NULL OR p.endDate > :now " +
+           "ORDER BY p.id")
+    List<PromotionRule> findUnexpiredRules(@Param("now") Date now);
 }
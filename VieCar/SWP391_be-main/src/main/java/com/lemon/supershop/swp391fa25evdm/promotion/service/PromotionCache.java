@@ -0,0 +1,119 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionRule;
+import com.lemon.supershop.swp391fa25evdm.promotion.repository.PromotionRepo;
+
+/**
+ * Khuyến mãi đang áp dụng theo đại lý + dòng xe, giữ trong bộ nhớ.
+ *
+ * - Load 1 lần toàn bộ khuyến mãi chưa kết thúc (PromotionRepo.findUnexpiredRules)
+ * - Index [dealerId][categoryId] chỉ chứa khuyến mãi đang hiệu lực; tự dựng lại (không query) khi
+ *   tới mốc bắt đầu / kết thúc gần nhất
+ * - Thêm / sửa / xóa Promotion → PromotionChangeListener invalidate; định kỳ invalidate để sửa lệch (VD: nhiều instance)
+ */
+@Component
+public class PromotionCache {
+
+    // Key cho khuyến mãi không gắn đại lý / dòng xe
+    private static final int ALL = 0;
+
+    @Autowired
+    private PromotionRepo promotionRepo;
+
+    private volatile boolean dirty = true;
+    private volatile List<PromotionRule> rules = List.of();
+    private volatile ActiveIndex index;
+
+    private record ActiveIndex(Map<Integer, Map<Integer, List<PromotionRule>>> byDealer, long validUntil) {
+    }
+
+    // Khuyến mãi áp dụng cho đại lý + dòng xe: riêng [D][C], cả đại lý [D][ALL], toàn hệ thống [ALL][C] / [ALL][ALL]
+    public List<PromotionRule> activeFor(Integer dealerId, Integer categoryId) {
+        ActiveIndex current = current();
+        int dealerKey = dealerId != null ? dealerId : ALL;
+        int categoryKey = categoryId != null ? categoryId : ALL;
+
+        List<PromotionRule> result = new ArrayList<>();
+        collect(result, current, dealerKey, categoryKey);
+        if (categoryKey != ALL) {
+            collect(result, current, dealerKey, ALL);
+        }
+        if (dealerKey != ALL) {
+            collect(result, current, ALL, categoryKey);
+            if (categoryKey != ALL) {
+                collect(result, current, ALL, ALL);
+            }
+        }
+        return result;
+    }
+
+    public void invalidate() {
+        dirty = true;
+    }
+
+    @Scheduled(fixedDelayString = "${promotion.cache.refresh-ms:300000}")
+    public void refresh() {
+        invalidate();
+    }
+
+    private void collect(List<PromotionRule> result, ActiveIndex current, int dealerKey, int categoryKey) {
+        Map<Integer, List<PromotionRule>> byCategory = current.byDealer().get(dealerKey);
+        if (byCategory == null) {
+            return;
+        }
+        List<PromotionRule> list = byCategory.get(categoryKey);
+        if (list != null) {
+            result.addAll(list);
+        }
+    }
+
+    private synchronized ActiveIndex current() {
+        long now = System.currentTimeMillis();
+        if (dirty) {
+            // Hạ cờ trước khi load: thay đổi commit trong lúc đang load sẽ bật lại cờ, không bị mất
+            dirty = false;
+            rules = promotionRepo.findUnexpiredRules(new Date(now));
+            index = null;
+            System.out.println("🎁 Promotion cache reloaded: " + rules.size() + " promotion(s)");
+        }
+        ActiveIndex current = index;
+        if (current == null || now >= current.validUntil()) {
+            current = build(rules, now);
+            index = current;
+        }
+        return current;
+    }
+
+    private static ActiveIndex build(List<PromotionRule> rules, long now) {
+        Map<Integer, Map<Integer, List<PromotionRule>>> byDealer = new HashMap<>();
+        long validUntil = Long.MAX_VALUE;
+        for (PromotionRule rule : rules) {
+            // Mốc gần nhất làm thay đổi tập đang hiệu lực
+            if (rule.startDate() != null && rule.startDate().getTime() > now) {
+                validUntil = Math.min(validUntil, rule.startDate().getTime());
+            }
+            if (rule.endDate() != null && rule.endDate().getTime() > now) {
+                validUntil = Math.min(validUntil, rule.endDate().getTime());
+            }
+            if (!rule.isActiveAt(now)) {
+                continue;
+            }
+            int dealerKey = rule.dealerId() != null ? rule.dealerId() : ALL;
+            int categoryKey = rule.categoryId() != null ? rule.categoryId() : ALL;
+            byDealer.computeIfAbsent(dealerKey, k -> new HashMap<>())
+                    .computeIfAbsent(categoryKey, k -> new ArrayList<>())
+                    .add(rule);
+        }
+        return new ActiveIndex(byDealer, validUntil);
+    }
+}
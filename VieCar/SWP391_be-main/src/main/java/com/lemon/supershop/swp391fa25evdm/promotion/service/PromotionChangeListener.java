@@ -0,0 +1,36 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.lemon.supershop.swp391fa25evdm.promotion.model.entity.Promotion;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+// Entity listener của Promotion (Spring bean qua SpringBeanContainer): thêm / sửa / xóa → PromotionCache load lại sau commit
+@Component
+public class PromotionChangeListener {
+
+    @Autowired
+    private PromotionCache promotionCache;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Promotion promotion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    promotionCache.invalidate();
+                }
+            });
+        } else {
+            promotionCache.invalidate();
+        }
+    }
+}
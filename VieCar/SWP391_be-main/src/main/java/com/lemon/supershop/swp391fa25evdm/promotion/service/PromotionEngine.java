@@ -0,0 +1,116 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.DealerCategory;
+import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryRepository;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
+import com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionQuoteRes;
+import com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionRule;
+import com.lemon.supershop.swp391fa25evdm.promotion.model.enums.PromotionType;
+
+/**
+ * Tính báo giá sau khuyến mãi từ PromotionCache (không query khuyến mãi mỗi lần).
+ *
+ * - Giá gốc của xe: dealerPrice (cùng giá gốc với đơn hàng, đặt cọc VNPay, trả góp), hoặc basePrice của dòng xe
+ * - PERCENT / AMOUNT cộng dồn trên giá gốc, tổng giảm không vượt giá gốc
+ * - GIFT chỉ liệt kê kèm trị giá, không trừ vào giá
+ */
+@Service
+public class PromotionEngine {
+
+    @Autowired
+    private PromotionCache promotionCache;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    public PromotionQuoteRes quote(Integer dealerId, Integer productId, Integer categoryId) {
+        if (productId != null) {
+            Product product = productRepo.findById(productId)
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found"));
+            return quote(product, dealerId);
+        }
+        if (categoryId != null) {
+            Category category = categoryRepository.findById(categoryId)
+                    .orElseThrow(() -> new IllegalArgumentException("Category not found"));
+            PromotionQuoteRes res = evaluate(dealerId, categoryId, category.getBasePrice());
+            res.setCategoryId(categoryId);
+            return res;
+        }
+        throw new IllegalArgumentException("productId or categoryId is required");
+    }
+
+    // Dùng khi tạo / sửa đơn hàng: dealerId null → lấy theo đại lý đang giữ xe
+    public PromotionQuoteRes quote(Product product, Integer dealerId) {
+        DealerCategory dealerCategory = product.getDealerCategory();
+        if (dealerId == null && dealerCategory != null && dealerCategory.getDealer() != null) {
+            dealerId = dealerCategory.getDealer().getId();
+        }
+        Category category = product.getCategory();
+        if (category == null && dealerCategory != null) {
+            category = dealerCategory.getCategory();
+        }
+        Integer categoryId = category != null ? category.getId() : null;
+
+        PromotionQuoteRes res = evaluate(dealerId, categoryId, listPrice(product));
+        res.setProductId(product.getId());
+        res.setCategoryId(categoryId);
+        return res;
+    }
+
+    public List<PromotionRule> activePromotions(Integer dealerId, Integer categoryId) {
+        return promotionCache.activeFor(dealerId, categoryId);
+    }
+
+    private PromotionQuoteRes evaluate(Integer dealerId, Integer categoryId, long listPrice) {
+        PromotionQuoteRes res = new PromotionQuoteRes();
+        res.setDealerId(dealerId);
+        res.setListPrice(listPrice);
+
+        long discount = 0;
+        for (PromotionRule rule : promotionCache.activeFor(dealerId, categoryId)) {
+            if (rule.type() == PromotionType.GIFT) {
+                res.getGifts().add(toLine(rule, Math.round(rule.value())));
+                continue;
+            }
+            long amount = rule.type() == PromotionType.PERCENT
+                    ? Math.round(listPrice * rule.value() / 100)
+                    : Math.round(rule.value());
+            // Không giảm quá phần giá còn lại
+            amount = Math.max(0, Math.min(amount, listPrice - discount));
+            discount += amount;
+            res.getApplied().add(toLine(rule, amount));
+        }
+
+        res.setDiscount(discount);
+        res.setFinalPrice(listPrice - discount);
+        return res;
+    }
+
+    // Giữ dealerPrice làm giá gốc: InsplanService / InsPaymentService cũng tính trên dealerPrice
+    private long listPrice(Product product) {
+        return product.getDealerPrice();
+    }
+
+    private PromotionQuoteRes.Line toLine(PromotionRule rule, long amount) {
+        PromotionQuoteRes.Line line = new PromotionQuoteRes.Line();
+        line.setId(rule.id());
+        line.setName(rule.name());
+        line.setDescription(rule.description());
+        line.setType(rule.type().name());
+        line.setValue(rule.value());
+        line.setAmount(amount);
+        line.setStartDate(rule.startDate());
+        line.setEndDate(rule.endDate());
+        return line;
+    }
+}
@@ -0,0 +1,38 @@
+package com.lemon.supershop.swp391fa25evdm.retention.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.lemon.supershop.swp391fa25evdm.retention.model.dto.RetentionRunRes;
+import com.lemon.supershop.swp391fa25evdm.retention.service.RetentionService;
+
+@RestController
+@RequestMapping("/api/retention")
+@CrossOrigin(origins = "*")
+public class RetentionController {
+
+    @Autowired
+    private RetentionService retentionService;
+
+    // Tiến độ / kết quả lần chạy gần nhất
+    @GetMapping("/status")
+    public ResponseEntity<RetentionRunRes> getStatus() {
+        return ResponseEntity.ok(retentionService.getStatus());
+    }
+
+    // Chạy job dọn dữ liệu ngay (đồng bộ)
+    @PostMapping("/run")
+    public ResponseEntity<?> run() {
+        try {
+            return ResponseEntity.ok(retentionService.runAll());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.lemon.supershop.swp391fa25evdm.retention.model.dto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Kết quả / tiến độ 1 lần chạy job retention
+public class RetentionRunRes {
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private boolean running;
+    private List<TargetStats> targets = new ArrayList<>();
+
+    public RetentionRunRes() {
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    public List<TargetStats> getTargets() {
+        return targets;
+    }
+
+    public void setTargets(List<TargetStats> targets) {
+        this.targets = targets;
+    }
+
+    public static class TargetStats {
+        private String entity;
+        private LocalDateTime cutoff;
+        private boolean archive;
+        private long minId;
+        private long maxId;
+        private long lastProcessedId;
+        private int chunks;
+        private long archived;
+        private long deleted;
+        private long durationMs;
+        private String error;
+
+        public TargetStats() {
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public void setEntity(String entity) {
+            this.entity = entity;
+        }
+
+        public LocalDateTime getCutoff() {
+            return cutoff;
+        }
+
+        public void setCutoff(LocalDateTime cutoff) {
+            this.cutoff = cutoff;
+        }
+
+        public boolean isArchive() {
+            return archive;
+        }
+
+        public void setArchive(boolean archive) {
+            this.archive = archive;
+        }
+
+        public long getMinId() {
+            return minId;
+        }
+
+        public void setMinId(long minId) {
+            this.minId = minId;
+        }
+
+        public long getMaxId() {
+            return maxId;
+        }
+
+        public void setMaxId(long maxId) {
+            this.maxId = maxId;
+        }
+
+        public long getLastProcessedId() {
+            return lastProcessedId;
+        }
+
+        public void setLastProcessedId(long lastProcessedId) {
+            this.lastProcessedId = lastProcessedId;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public void setChunks(int chunks) {
+            this.chunks = chunks;
+        }
+
+        public long getArchived() {
+            return archived;
+        }
+
+        public void setArchived(long archived) {
+            this.archived = archived;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+
+        public void setDeleted(long deleted) {
+            this.deleted = deleted;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        public void setDurationMs(long durationMs) {
+            this.durationMs = durationMs;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
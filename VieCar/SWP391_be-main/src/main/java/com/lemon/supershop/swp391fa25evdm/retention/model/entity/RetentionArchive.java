@@ -0,0 +1,51 @@
+package com.lemon.supershop.swp391fa25evdm.retention.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+// Bản lưu trữ (JSON của cả dòng) các bản ghi đã bị job retention xóa khỏi bảng chính
+@Entity
+@Table(name = "retention_archive", indexes = {
+        @Index(name = "IX_retention_archive_entity_source", columnList = "EntityName, SourceId")
+})
+public class RetentionArchive {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id", columnDefinition = "BIGINT")
+    private long id;
+
+    @Column(name = "EntityName", columnDefinition = "VARCHAR(50)", nullable = false)
+    private String entityName;
+
+    @Column(name = "SourceId", columnDefinition = "BIGINT", nullable = false)
+    private long sourceId;
+
+    @Column(name = "Payload", columnDefinition = "NVARCHAR(MAX)")
+    private String payload;
+
+    @Column(name = "ArchivedAt", columnDefinition = "DATETIME2", nullable = false)
+    private LocalDateTime archivedAt;
+
+    public RetentionArchive() {}
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public long getSourceId() {
+        return sourceId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+}
@@ -0,0 +1,198 @@
+package com.lemon.supershop.swp391fa25evdm.retention.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.lemon.supershop.swp391fa25evdm.configuration.RetentionConfig;
+import com.lemon.supershop.swp391fa25evdm.retention.model.dto.RetentionRunRes;
+import com.lemon.supershop.swp391fa25evdm.retention.model.dto.RetentionRunRes.TargetStats;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Job dọn dữ liệu cũ (thay cho cleanupOldReminders quét findAll()).
+ *
+ * - Mỗi bảng được xử lý theo từng khoảng Id cố định (retention.chunk-size), mỗi khoảng 1 transaction ngắn
+ * - Với bảng cần lưu trữ: INSERT ... SELECT (FOR JSON) vào retention_archive rồi DELETE cùng điều kiện
+ * - Khoảng Id rỗng được bỏ qua bằng cách nhảy tới Id đủ điều kiện kế tiếp
+ * - Tiến độ / kết quả lần chạy gần nhất xem qua GET /api/retention/status
+ */
+@Service
+public class RetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetentionService.class);
+
+    // Các bảng được dọn; điều kiện dùng alias t và đúng 1 tham số cutoff
+    private static final List<Target> TARGETS = List.of(
+            // Lịch lái thử đã kết thúc, không có feedback (feedback giữ FK tới testdrive)
+            new Target("testdrive", "testdrive",
+                    "t.status IN ('DONE', 'REJECTED', 'CANCELLED') AND t.schedule_date < ?"
+                    + " AND NOT EXISTS (SELECT 1 FROM testdrive_feedback f WHERE f.test_drive_id = t.id)",
+                    365, true),
+            // OTP đã hết hạn - không cần lưu trữ
+            new Target("otp", "otp_tokens", "t.expires_at < ?", 1, false),
+            // Thanh toán thất bại / đã hủy
+            new Target("payment", "payment",
+                    "t.paid_status IN ('FAILED', 'CANCELED') AND COALESCE(t.update_at, t.paid_at) < ?",
+                    90, true),
+            // Reminder đã xử lý xong trong outbox
+            new Target("testdrive-reminder", "testdrive_reminder",
+                    "t.status IN ('SENT', 'CANCELLED', 'FAILED') AND t.created_at < ?", 30, false)
+    );
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private RetentionConfig retentionConfig;
+
+    private TransactionTemplate chunkTx;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile RetentionRunRes lastRun;
+
+    @PostConstruct
+    void init() {
+        chunkTx = new TransactionTemplate(transactionManager);
+        // INSERT archive và DELETE phải thấy cùng 1 tập dòng trong khoảng Id
+        chunkTx.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+    }
+
+    @Scheduled(cron = "${retention.cron:0 0 3 * * *}")
+    public void scheduledRun() {
+        if (!retentionConfig.isEnabled()) {
+            return;
+        }
+        try {
+            runAll();
+        } catch (IllegalStateException e) {
+            logger.warn("Retention job skipped: {}", e.getMessage());
+        }
+    }
+
+    public RetentionRunRes runAll() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Job dọn dữ liệu đang chạy");
+        }
+        RetentionRunRes run = new RetentionRunRes();
+        run.setStartedAt(LocalDateTime.now());
+        run.setRunning(true);
+        lastRun = run;
+        try {
+            for (Target target : TARGETS) {
+                TargetStats stats = new TargetStats();
+                stats.setEntity(target.name());
+                run.getTargets().add(stats);
+                if (!isEnabled(target)) {
+                    continue;
+                }
+                try {
+                    runTarget(target, stats);
+                } catch (Exception e) {
+                    // Lỗi 1 bảng không chặn các bảng còn lại; các chunk đã commit vẫn giữ nguyên
+                    stats.setError(e.getMessage());
+                    logger.error("Retention [{}] failed after id {}: {}", target.name(), stats.getLastProcessedId(), e.getMessage(), e);
+                }
+            }
+        } finally {
+            run.setFinishedAt(LocalDateTime.now());
+            run.setRunning(false);
+            running.set(false);
+        }
+        return run;
+    }
+
+    public RetentionRunRes getStatus() {
+        RetentionRunRes run = lastRun;
+        return run != null ? run : new RetentionRunRes();
+    }
+
+    private void runTarget(Target target, TargetStats stats) {
+        long startedAt = System.currentTimeMillis();
+        int chunkSize = Math.max(1, retentionConfig.getChunkSize());
+        boolean archive = isArchive(target);
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays(target)));
+        stats.setCutoff(cutoff.toLocalDateTime());
+        stats.setArchive(archive);
+
+        // Chốt khoảng Id lúc bắt đầu - dòng mới phát sinh sau đó để lần chạy sau
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT MIN(t.id) AS min_id, MAX(t.id) AS max_id FROM " + target.table() + " t WHERE " + target.predicate(),
+                cutoff);
+        if (bounds.get("min_id") == null) {
+            stats.setDurationMs(System.currentTimeMillis() - startedAt);
+            return;
+        }
+        long maxId = ((Number) bounds.get("max_id")).longValue();
+        Long lo = ((Number) bounds.get("min_id")).longValue();
+        stats.setMinId(lo);
+        stats.setMaxId(maxId);
+
+        String archiveSql = "INSERT INTO retention_archive (entity_name, source_id, payload, archived_at)"
+                + " SELECT ?, t.id, (SELECT t.* FOR JSON PATH, WITHOUT_ARRAY_WRAPPER), SYSDATETIME()"
+                + " FROM " + target.table() + " t WHERE t.id BETWEEN ? AND ? AND " + target.predicate();
+        String deleteSql = "DELETE t FROM " + target.table() + " t WHERE t.id BETWEEN ? AND ? AND " + target.predicate();
+        String nextIdSql = "SELECT MIN(t.id) FROM " + target.table() + " t WHERE t.id > ? AND t.id <= ? AND " + target.predicate();
+
+        while (lo != null && lo <= maxId) {
+            long from = lo;
+            long to = Math.min(maxId, from + chunkSize - 1);
+            int[] counts = chunkTx.execute(status -> {
+                int archived = archive ? jdbcTemplate.update(archiveSql, target.name(), from, to, cutoff) : 0;
+                int deleted = jdbcTemplate.update(deleteSql, from, to, cutoff);
+                if (archive && archived != deleted) {
+                    throw new IllegalStateException("Số dòng lưu trữ (" + archived + ") khác số dòng xóa (" + deleted + ")");
+                }
+                return new int[] { archived, deleted };
+            });
+            stats.setChunks(stats.getChunks() + 1);
+            stats.setArchived(stats.getArchived() + counts[0]);
+            stats.setDeleted(stats.getDeleted() + counts[1]);
+            stats.setLastProcessedId(to);
+            logger.info("Retention [{}] ids {}-{}: {} archived, {} deleted", target.name(), from, to, counts[0], counts[1]);
+
+            // Nhảy qua các khoảng Id không còn dòng đủ điều kiện
+            lo = jdbcTemplate.queryForObject(nextIdSql, Long.class, to, maxId, cutoff);
+        }
+
+        stats.setDurationMs(System.currentTimeMillis() - startedAt);
+        logger.info("Retention [{}] done: {} chunks, {} archived, {} deleted in {} ms",
+                target.name(), stats.getChunks(), stats.getArchived(), stats.getDeleted(), stats.getDurationMs());
+    }
+
+    private RetentionConfig.EntityPolicy policy(Target target) {
+        return retentionConfig.getEntities().get(target.name());
+    }
+
+    private boolean isEnabled(Target target) {
+        RetentionConfig.EntityPolicy policy = policy(target);
+        return policy == null || policy.getEnabled() == null || policy.getEnabled();
+    }
+
+    private boolean isArchive(Target target) {
+        RetentionConfig.EntityPolicy policy = policy(target);
+        return policy != null && policy.getArchive() != null ? policy.getArchive() : target.defaultArchive();
+    }
+
+    private int retentionDays(Target target) {
+        RetentionConfig.EntityPolicy policy = policy(target);
+        int days = policy != null && policy.getDays() != null ? policy.getDays() : target.defaultDays();
+        return Math.max(days, 1);
+    }
+
+    private record Target(String name, String table, String predicate, int defaultDays, boolean defaultArchive) {}
+}
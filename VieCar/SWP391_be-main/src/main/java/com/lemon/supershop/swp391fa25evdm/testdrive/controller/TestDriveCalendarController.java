@@ -0,0 +1,53 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.controller;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveCalendarFeedService;
+import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveCalendarFeedService.FeedVersion;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+// Feed lịch lái thử để đăng ký (subscribe) trên Google Calendar / Outlook / Apple Calendar
+@RestController
+@RequestMapping("/api/calendar")
+@CrossOrigin(origins = "*")
+public class TestDriveCalendarController {
+
+    @Autowired
+    private TestDriveCalendarFeedService calendarFeedService;
+
+    @GetMapping("/user/{id}.ics")
+    public void getUserFeed(@PathVariable int id, ServletWebRequest request, HttpServletResponse response) throws IOException {
+        writeFeed(TestDriveCalendarFeedService.USER, id, request, response);
+    }
+
+    @GetMapping("/dealer/{id}.ics")
+    public void getDealerFeed(@PathVariable int id, ServletWebRequest request, HttpServletResponse response) throws IOException {
+        writeFeed(TestDriveCalendarFeedService.DEALER, id, request, response);
+    }
+
+    private void writeFeed(String kind, int id, ServletWebRequest request, HttpServletResponse response) throws IOException {
+        FeedVersion version = calendarFeedService.getVersion(kind, id);
+        // If-None-Match / If-Modified-Since khớp → 304, không đụng DB
+        if (request.checkNotModified(version.etag(), version.lastModified())) {
+            return;
+        }
+        response.setContentType("text/calendar; charset=utf-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("Content-Disposition", "inline; filename=test-drive-" + kind + "-" + id + ".ics");
+        Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), 8192);
+        calendarFeedService.writeFeed(kind, id, out);
+    }
+}
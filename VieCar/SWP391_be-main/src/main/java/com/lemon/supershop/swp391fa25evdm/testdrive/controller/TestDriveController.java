@@ -3,12 +3,16 @@ package com.lemon.supershop.swp391fa25evdm.testdrive.controller;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.SlotHoldReq;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveReq;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveRes;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveSearchReq;
 import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveService;
+import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveSlotHoldService;
 
 @RestController
 @RequestMapping("/api/testdrives")
@@ -17,6 +21,8 @@ public class TestDriveController {
 
     @Autowired
     private TestDriveService testDriveService;
+    @Autowired
+    private TestDriveSlotHoldService testDriveSlotHoldService;
     
     @GetMapping("/listTestDrives")
     public ResponseEntity<List<TestDriveRes>> getAllTestDrives() {
@@ -24,6 +30,30 @@ public class TestDriveController {
         return ResponseEntity.ok(testDrives);
     }
 
+    // Danh sách phân trang + lọc (userId, dealerId, status, productId, escortStaffId, categoryId, from, to)
+    // GET /api/testdrives/page?dealerId=1&status=PENDING,ASSIGNING&from=2025-11-01T00:00:00&page=0&size=20
+    @GetMapping("/page")
+    public ResponseEntity<?> searchTestDrives(TestDriveSearchReq request) {
+        try {
+            return ResponseEntity.ok(testDriveService.searchTestDrives(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Cùng bộ lọc như /page nhưng cố định theo khách hàng / đại lý
+    @GetMapping("/search/user/{userId}/page")
+    public ResponseEntity<?> getTestDrivePageByUserId(@PathVariable int userId, TestDriveSearchReq request) {
+        request.setUserId(userId);
+        return searchTestDrives(request);
+    }
+
+    @GetMapping("/search/dealer/{dealerId}/page")
+    public ResponseEntity<?> getTestDrivePageByDealerId(@PathVariable int dealerId, TestDriveSearchReq request) {
+        request.setDealerId(dealerId);
+        return searchTestDrives(request);
+    }
+
     @GetMapping("/search/id/{id}")
     public ResponseEntity<TestDriveRes> getTestDriveById(@PathVariable int id) {
         TestDriveRes testDrive = testDriveService.getTestDriveById(id);
@@ -75,16 +105,38 @@ public class TestDriveController {
     public ResponseEntity<?> checkAvailability(
             @RequestParam int productId,
             @RequestParam String scheduleDate,
-            @RequestParam(defaultValue = "2") int durationHours) {
+            @RequestParam(defaultValue = "2") int durationHours,
+            @RequestParam(required = false) Integer userId) {
         try {
             java.time.LocalDateTime dateTime = java.time.LocalDateTime.parse(scheduleDate);
-            var result = testDriveService.checkAvailability(productId, dateTime, durationHours);
+            var result = testDriveService.checkAvailability(productId, dateTime, durationHours, userId);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Invalid date format. Use ISO format: yyyy-MM-ddTHH:mm:ss");
         }
     }
 
+    // Giữ chỗ tạm 1 khung giờ của xe trong lúc khách điền form (hết hạn sau testdrive.hold.minutes)
+    // POST /api/testdrives/holds {"productId": 5, "userId": 12, "scheduleDate": "2025-11-03T10:00:00"}
+    @PostMapping("/holds")
+    public ResponseEntity<?> holdSlot(@RequestBody SlotHoldReq req) {
+        try {
+            return ResponseEntity.ok(testDriveSlotHoldService.hold(req.getProductId(), req.getScheduleDate(), req.getUserId()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/holds/{token}")
+    public ResponseEntity<String> releaseSlot(@PathVariable String token) {
+        if (testDriveSlotHoldService.release(token)) {
+            return ResponseEntity.ok("Slot hold released");
+        }
+        return ResponseEntity.notFound().build();
+    }
+
     @GetMapping("/available-slots")
     public ResponseEntity<?> getAvailableSlots(
             @RequestParam int productId,
@@ -97,6 +149,46 @@ public class TestDriveController {
         }
     }
 
+    // Lịch trống nhiều ngày cho tất cả xe lái thử của đại lý
+    // GET /api/testdrives/availability?dealerId=1&from=2025-11-03&days=7&categoryId=2
+    @GetMapping("/availability")
+    public ResponseEntity<?> getAvailabilityCalendar(
+            @RequestParam int dealerId,
+            @RequestParam String from,
+            @RequestParam(defaultValue = "7") int days,
+            @RequestParam(required = false) Integer categoryId) {
+        java.time.LocalDate fromDate;
+        try {
+            fromDate = java.time.LocalDate.parse(from);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Invalid date format. Use format: yyyy-MM-dd");
+        }
+        try {
+            return ResponseEntity.ok(testDriveService.getAvailabilityCalendar(dealerId, fromDate, days, categoryId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Nhân viên hộ tống rảnh, ít lịch nhất trong ngày cho 1 khung giờ
+    // GET /api/testdrives/escorts/least-loaded?dealerId=1&scheduleDate=2025-11-03T10:00:00
+    @GetMapping("/escorts/least-loaded")
+    public ResponseEntity<?> getLeastLoadedEscort(
+            @RequestParam int dealerId,
+            @RequestParam String scheduleDate) {
+        java.time.LocalDateTime dateTime;
+        try {
+            dateTime = java.time.LocalDateTime.parse(scheduleDate);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Invalid date format. Use ISO format: yyyy-MM-ddTHH:mm:ss");
+        }
+        try {
+            return ResponseEntity.ok(testDriveService.findLeastLoadedEscort(dealerId, dateTime));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/{id}/calendar.ics")
     public ResponseEntity<String> exportToCalendar(@PathVariable int id) {
         try {
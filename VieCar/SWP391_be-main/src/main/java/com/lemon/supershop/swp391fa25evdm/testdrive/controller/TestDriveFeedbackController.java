@@ -3,10 +3,12 @@ package com.lemon.supershop.swp391fa25evdm.testdrive.controller;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.web.PagedModel;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.RatingSummaryRes;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveFeedbackReq;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveFeedbackRes;
 import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveFeedbackService;
@@ -78,4 +80,61 @@ public class TestDriveFeedbackController {
         List<TestDriveFeedbackRes> feedbacks = feedbackService.getFeedbackByUserId(userId);
         return ResponseEntity.ok(feedbacks);
     }
+    
+    /**
+     * Paged feedback for a product
+     * GET /api/testdrive-feedback/product/{productId}/page?page=0&size=20
+     */
+    @GetMapping("/product/{productId}/page")
+    public ResponseEntity<PagedModel<TestDriveFeedbackRes>> getFeedbackPageByProductId(
+            @PathVariable int productId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(feedbackService.getFeedbackPageByProductId(productId, page, size));
+    }
+    
+    /**
+     * Paged feedback for a vehicle model (category)
+     * GET /api/testdrive-feedback/category/{categoryId}/page?page=0&size=20
+     */
+    @GetMapping("/category/{categoryId}/page")
+    public ResponseEntity<PagedModel<TestDriveFeedbackRes>> getFeedbackPageByCategoryId(
+            @PathVariable int categoryId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(feedbackService.getFeedbackPageByCategoryId(categoryId, page, size));
+    }
+    
+    /**
+     * Rating summaries (count, average, histogram) for many products / categories at once
+     * GET /api/testdrive-feedback/ratings?scope=PRODUCT&ids=1,2,3
+     */
+    @GetMapping("/ratings")
+    public ResponseEntity<?> getRatingSummaries(
+            @RequestParam(defaultValue = "PRODUCT") String scope,
+            @RequestParam List<Integer> ids) {
+        try {
+            List<RatingSummaryRes> summaries = feedbackService.getRatingSummaries(scope, ids);
+            return ResponseEntity.ok(summaries);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    /**
+     * Top-rated vehicle models (default) or vehicles
+     * GET /api/testdrive-feedback/top-rated?scope=CATEGORY&limit=10&minCount=3
+     */
+    @GetMapping("/top-rated")
+    public ResponseEntity<?> getTopRated(
+            @RequestParam(defaultValue = "CATEGORY") String scope,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "1") int minCount) {
+        try {
+            List<RatingSummaryRes> top = feedbackService.getTopRated(scope, limit, minCount);
+            return ResponseEntity.ok(top);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.dto;
+
+// Nhân viên hộ tống rảnh cho 1 khung giờ, kèm số lịch đã nhận trong ngày
+public class EscortCandidateRes {
+    private int staffId;
+    private String username;
+    private int bookingsThatDay;
+    private String scheduleDate;
+
+    public EscortCandidateRes() {
+    }
+
+    public EscortCandidateRes(int staffId, String username, int bookingsThatDay, String scheduleDate) {
+        this.staffId = staffId;
+        this.username = username;
+        this.bookingsThatDay = bookingsThatDay;
+        this.scheduleDate = scheduleDate;
+    }
+
+    public int getStaffId() {
+        return staffId;
+    }
+
+    public void setStaffId(int staffId) {
+        this.staffId = staffId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public int getBookingsThatDay() {
+        return bookingsThatDay;
+    }
+
+    public void setBookingsThatDay(int bookingsThatDay) {
+        this.bookingsThatDay = bookingsThatDay;
+    }
+
+    public String getScheduleDate() {
+        return scheduleDate;
+    }
+
+    public void setScheduleDate(String scheduleDate) {
+        this.scheduleDate = scheduleDate;
+    }
+}
@@ -0,0 +1,62 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.dto;
+
+// Điểm đánh giá lái thử của 1 xe / 1 mẫu xe (đọc từ bảng thống kê)
+public class RatingSummaryRes {
+    private String scopeType; // PRODUCT, CATEGORY
+    private int scopeId;
+    private String name;
+    private long ratingCount;
+    private double averageRating;
+    private long[] histogram; // số đánh giá 1..5 sao
+
+    public RatingSummaryRes() {
+    }
+
+    public String getScopeType() {
+        return scopeType;
+    }
+
+    public void setScopeType(String scopeType) {
+        this.scopeType = scopeType;
+    }
+
+    public int getScopeId() {
+        return scopeId;
+    }
+
+    public void setScopeId(int scopeId) {
+        this.scopeId = scopeId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getRatingCount() {
+        return ratingCount;
+    }
+
+    public void setRatingCount(long ratingCount) {
+        this.ratingCount = ratingCount;
+    }
+
+    public double getAverageRating() {
+        return averageRating;
+    }
+
+    public void setAverageRating(double averageRating) {
+        this.averageRating = averageRating;
+    }
+
+    public long[] getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(long[] histogram) {
+        this.histogram = histogram;
+    }
+}
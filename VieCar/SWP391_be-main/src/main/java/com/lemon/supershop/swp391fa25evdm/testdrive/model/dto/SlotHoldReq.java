@@ -0,0 +1,36 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.dto;
+
+import java.time.LocalDateTime;
+
+// Body cho POST /api/testdrives/holds
+public class SlotHoldReq {
+    private int productId;
+    private int userId;
+    private LocalDateTime scheduleDate;
+
+    public SlotHoldReq() {}
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public LocalDateTime getScheduleDate() {
+        return scheduleDate;
+    }
+
+    public void setScheduleDate(LocalDateTime scheduleDate) {
+        this.scheduleDate = scheduleDate;
+    }
+}
@@ -0,0 +1,52 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.dto;
+
+import java.time.LocalDateTime;
+
+// Token giữ chỗ - gửi kèm holdToken khi tạo lịch lái thử
+public class SlotHoldRes {
+    private String token;
+    private int productId;
+    private LocalDateTime slotStart;
+    private LocalDateTime expiresAt;
+
+    public SlotHoldRes() {}
+
+    public SlotHoldRes(String token, int productId, LocalDateTime slotStart, LocalDateTime expiresAt) {
+        this.token = token;
+        this.productId = productId;
+        this.slotStart = slotStart;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public LocalDateTime getSlotStart() {
+        return slotStart;
+    }
+
+    public void setSlotStart(LocalDateTime slotStart) {
+        this.slotStart = slotStart;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
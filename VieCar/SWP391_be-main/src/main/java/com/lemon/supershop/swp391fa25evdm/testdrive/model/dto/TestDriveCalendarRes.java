@@ -0,0 +1,124 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.dto;
+
+import java.util.List;
+
+// Lịch trống nhiều ngày cho tất cả xe lái thử của 1 đại lý
+public class TestDriveCalendarRes {
+    private int dealerId;
+    private String fromDate;
+    private int days;
+    private int slotMinutes;
+    private String openingTime;
+    private String closingTime;
+    private List<VehicleAvailability> vehicles;
+
+    public TestDriveCalendarRes() {
+    }
+
+    public int getDealerId() {
+        return dealerId;
+    }
+
+    public void setDealerId(int dealerId) {
+        this.dealerId = dealerId;
+    }
+
+    public String getFromDate() {
+        return fromDate;
+    }
+
+    public void setFromDate(String fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public void setDays(int days) {
+        this.days = days;
+    }
+
+    public int getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    public void setSlotMinutes(int slotMinutes) {
+        this.slotMinutes = slotMinutes;
+    }
+
+    public String getOpeningTime() {
+        return openingTime;
+    }
+
+    public void setOpeningTime(String openingTime) {
+        this.openingTime = openingTime;
+    }
+
+    public String getClosingTime() {
+        return closingTime;
+    }
+
+    public void setClosingTime(String closingTime) {
+        this.closingTime = closingTime;
+    }
+
+    public List<VehicleAvailability> getVehicles() {
+        return vehicles;
+    }
+
+    public void setVehicles(List<VehicleAvailability> vehicles) {
+        this.vehicles = vehicles;
+    }
+
+    public static class VehicleAvailability {
+        private int productId;
+        private String productName;
+        private String vinNum;
+        private Integer categoryId;
+        private List<AvailableSlotsRes> days;
+
+        public VehicleAvailability() {
+        }
+
+        public int getProductId() {
+            return productId;
+        }
+
+        public void setProductId(int productId) {
+            this.productId = productId;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public void setProductName(String productName) {
+            this.productName = productName;
+        }
+
+        public String getVinNum() {
+            return vinNum;
+        }
+
+        public void setVinNum(String vinNum) {
+            this.vinNum = vinNum;
+        }
+
+        public Integer getCategoryId() {
+            return categoryId;
+        }
+
+        public void setCategoryId(Integer categoryId) {
+            this.categoryId = categoryId;
+        }
+
+        public List<AvailableSlotsRes> getDays() {
+            return days;
+        }
+
+        public void setDays(List<AvailableSlotsRes> days) {
+            this.days = days;
+        }
+    }
+}
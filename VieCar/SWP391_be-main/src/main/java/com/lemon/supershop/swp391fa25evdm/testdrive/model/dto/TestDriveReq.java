@@ -18,6 +18,7 @@ public class TestDriveReq {
     private int categoryId;
     private String productModelName;
     private int escortStaffId;
+    private String holdToken; // Token giữ chỗ (POST /api/testdrives/holds) - có thì lịch được gắn luôn xe đã giữ
 
     public TestDriveReq() {
     }
@@ -101,4 +102,12 @@ public class TestDriveReq {
     public void setEscortStaffId(int escortStaffId) {
         this.escortStaffId = escortStaffId;
     }
+
+    public String getHoldToken() {
+        return holdToken;
+    }
+
+    public void setHoldToken(String holdToken) {
+        this.holdToken = holdToken;
+    }
 }
@@ -0,0 +1,115 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.dto;
+
+import java.time.LocalDateTime;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+// Query params cho GET /api/testdrives/page (lọc + phân trang theo scheduleDate)
+public class TestDriveSearchReq {
+    private Integer userId;
+    private Integer dealerId;
+    private String status; // 1 hoặc nhiều trạng thái, cách nhau bởi dấu phẩy (VD: PENDING,ASSIGNING)
+    private Integer productId;
+    private Integer escortStaffId;
+    private Integer categoryId;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from; // scheduleDate >= from
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;   // scheduleDate < to
+
+    private String direction = "DESC"; // DESC (lịch muộn nhất trước) hoặc ASC
+    private Integer page = 0;
+    private Integer size = 20;
+
+    public TestDriveSearchReq() {}
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Integer getDealerId() {
+        return dealerId;
+    }
+
+    public void setDealerId(Integer dealerId) {
+        this.dealerId = dealerId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    public Integer getEscortStaffId() {
+        return escortStaffId;
+    }
+
+    public void setEscortStaffId(Integer escortStaffId) {
+        this.escortStaffId = escortStaffId;
+    }
+
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+
+    public String getDirection() {
+        return direction;
+    }
+
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
+    public Integer getPage() {
+        return page;
+    }
+
+    public void setPage(Integer page) {
+        this.page = page;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+}
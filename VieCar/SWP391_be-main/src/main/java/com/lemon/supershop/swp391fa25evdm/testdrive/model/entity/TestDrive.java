@@ -11,7 +11,13 @@ import com.lemon.supershop.swp391fa25evdm.user.model.entity.User;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "testdrive")
+@Table(name = "testdrive", indexes = {
+        @Index(name = "IX_testdrive_product_schedule", columnList = "ProductId, schedule_date"),
+        @Index(name = "IX_testdrive_escort_schedule", columnList = "EscortStaffId, schedule_date"),
+        @Index(name = "IX_testdrive_user_status", columnList = "UserId, Status"),
+        @Index(name = "IX_testdrive_dealer_schedule", columnList = "DealerId, schedule_date"),
+        @Index(name = "IX_testdrive_status_schedule", columnList = "Status, schedule_date")
+})
 public class TestDrive {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -0,0 +1,97 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+// Thống kê đánh giá lái thử theo xe (PRODUCT) và theo mẫu xe (CATEGORY) - cộng dồn mỗi lần có feedback mới (MERGE)
+@Entity
+@Table(name = "testdrive_rating_aggregate", uniqueConstraints = {
+        @UniqueConstraint(name = "UK_testdrive_rating_aggregate_scope", columnNames = {"ScopeType", "ScopeId"})
+})
+public class TestDriveRatingAggregate {
+    public static final String PRODUCT = "PRODUCT";
+    public static final String CATEGORY = "CATEGORY";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id", columnDefinition = "BIGINT")
+    private long id;
+
+    @Column(name = "ScopeType", columnDefinition = "VARCHAR(10)", nullable = false)
+    private String scopeType; // PRODUCT, CATEGORY
+
+    @Column(name = "ScopeId", nullable = false)
+    private int scopeId;
+
+    @Column(name = "RatingCount", nullable = false)
+    private long ratingCount;
+
+    @Column(name = "RatingSum", nullable = false)
+    private long ratingSum;
+
+    // Phân bố số sao (histogram)
+    @Column(name = "Star1", nullable = false)
+    private long star1;
+
+    @Column(name = "Star2", nullable = false)
+    private long star2;
+
+    @Column(name = "Star3", nullable = false)
+    private long star3;
+
+    @Column(name = "Star4", nullable = false)
+    private long star4;
+
+    @Column(name = "Star5", nullable = false)
+    private long star5;
+
+    @Column(name = "UpdatedAt", columnDefinition = "DATETIME2")
+    private LocalDateTime updatedAt;
+
+    public TestDriveRatingAggregate() {}
+
+    public long getId() {
+        return id;
+    }
+
+    public String getScopeType() {
+        return scopeType;
+    }
+
+    public int getScopeId() {
+        return scopeId;
+    }
+
+    public long getRatingCount() {
+        return ratingCount;
+    }
+
+    public long getRatingSum() {
+        return ratingSum;
+    }
+
+    public long getStar1() {
+        return star1;
+    }
+
+    public long getStar2() {
+        return star2;
+    }
+
+    public long getStar3() {
+        return star3;
+    }
+
+    public long getStar4() {
+        return star4;
+    }
+
+    public long getStar5() {
+        return star5;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,137 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+// Outbox nhắc lịch lái thử: mỗi dòng = 1 email nhắc (24h / 1h) cho 1 lịch cụ thể
+@Entity
+@Table(name = "testdrive_reminder",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "UK_testdrive_reminder_schedule", columnNames = {"TestDriveId", "HoursBefore", "ScheduleAt"})
+        },
+        indexes = {
+                @Index(name = "IX_testdrive_reminder_status_due", columnList = "Status, DueAt"),
+                @Index(name = "IX_testdrive_reminder_lease", columnList = "LeaseToken")
+        })
+public class TestDriveReminder {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id", columnDefinition = "BIGINT")
+    private long id;
+
+    @Column(name = "TestDriveId", nullable = false, updatable = false)
+    private int testDriveId;
+
+    @Column(name = "HoursBefore", nullable = false, updatable = false)
+    private int hoursBefore;
+
+    @Column(name = "ScheduleAt", columnDefinition = "DATETIME2", nullable = false, updatable = false)
+    private LocalDateTime scheduleAt; // giờ lái thử tại thời điểm tạo reminder
+
+    @Column(name = "DueAt", columnDefinition = "DATETIME2", nullable = false)
+    private LocalDateTime dueAt;
+
+    @Column(name = "Status", columnDefinition = "VARCHAR(20)", nullable = false)
+    private String status; // PENDING, SENDING, SENT, FAILED, CANCELLED
+
+    @Column(name = "Attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "LeaseOwner", columnDefinition = "VARCHAR(100)")
+    private String leaseOwner;
+
+    @Column(name = "LeaseToken", columnDefinition = "VARCHAR(36)")
+    private String leaseToken;
+
+    @Column(name = "LeaseUntil", columnDefinition = "DATETIME2")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "SentAt", columnDefinition = "DATETIME2")
+    private LocalDateTime sentAt;
+
+    @Column(name = "LastError", columnDefinition = "NVARCHAR(500)")
+    private String lastError;
+
+    @Column(name = "CreatedAt", columnDefinition = "DATETIME2", updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public TestDriveReminder() {}
+
+    public TestDriveReminder(int testDriveId, int hoursBefore, LocalDateTime scheduleAt) {
+        this.testDriveId = testDriveId;
+        this.hoursBefore = hoursBefore;
+        this.scheduleAt = scheduleAt;
+        this.dueAt = scheduleAt.minusHours(hoursBefore);
+        this.status = "PENDING";
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getTestDriveId() {
+        return testDriveId;
+    }
+
+    public int getHoursBefore() {
+        return hoursBefore;
+    }
+
+    public LocalDateTime getScheduleAt() {
+        return scheduleAt;
+    }
+
+    public LocalDateTime getDueAt() {
+        return dueAt;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public String getLeaseToken() {
+        return leaseToken;
+    }
+
+    public void setLeaseToken(String leaseToken) {
+        this.leaseToken = leaseToken;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
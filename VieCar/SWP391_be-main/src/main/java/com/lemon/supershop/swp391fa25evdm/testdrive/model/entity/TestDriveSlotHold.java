@@ -0,0 +1,98 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.model.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+// Giữ chỗ tạm 1 khung giờ của 1 xe trong lúc khách điền form đặt lịch (hết hạn sau testdrive.hold.minutes)
+@Entity
+@Table(name = "testdrive_slot_hold",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "UQ_testdrive_slot_hold_product_slot", columnNames = {"ProductId", "SlotStart"}),
+                @UniqueConstraint(name = "UQ_testdrive_slot_hold_token", columnNames = {"Token"})
+        },
+        indexes = {
+                @Index(name = "IX_testdrive_slot_hold_expires", columnList = "ExpiresAt")
+        })
+public class TestDriveSlotHold {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "Id", columnDefinition = "BIGINT")
+    private long id;
+
+    @Column(name = "Token", columnDefinition = "VARCHAR(36)", nullable = false)
+    private String token;
+
+    @Column(name = "ProductId", nullable = false)
+    private int productId;
+
+    @Column(name = "SlotStart", columnDefinition = "DATETIME2", nullable = false)
+    private LocalDateTime slotStart;
+
+    @Column(name = "UserId", nullable = false)
+    private int userId;
+
+    @Column(name = "ExpiresAt", columnDefinition = "DATETIME2", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "CreatedAt", columnDefinition = "DATETIME2", nullable = false)
+    private LocalDateTime createdAt;
+
+    public TestDriveSlotHold() {}
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public LocalDateTime getSlotStart() {
+        return slotStart;
+    }
+
+    public void setSlotStart(LocalDateTime slotStart) {
+        this.slotStart = slotStart;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,36 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.policy;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// Khoảng cách tối thiểu (giờ) giữa 2 lần lái thử cùng mẫu xe (0 = tắt)
+@Component
+@Order(3)
+public class CategoryCooldownPolicy implements TestDriveBookingPolicy {
+
+    private static final List<String> COOLDOWN_STATUSES = List.of("DONE", "CANCELLED");
+
+    @Value("${testdrive.policy.cooldown-hours:0}")
+    private int cooldownHours;
+
+    @Override
+    public void check(TestDriveBookingContext context) {
+        if (cooldownHours <= 0) {
+            return;
+        }
+        LocalDateTime last = context.getStats().getLastCategorySchedule(COOLDOWN_STATUSES);
+        if (last == null) {
+            return;
+        }
+        LocalDateTime earliest = last.plusHours(cooldownHours);
+        if (context.getScheduleDate().isBefore(earliest)) {
+            throw new IllegalArgumentException("Bạn vừa lái thử mẫu xe này. Có thể đặt lại từ " +
+                    earliest.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.policy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// Số lịch đang active tối đa của 1 khách hàng (mặc định 1)
+@Component
+@Order(1)
+public class MaxActiveBookingsPolicy implements TestDriveBookingPolicy {
+
+    @Value("${testdrive.policy.max-active-bookings:1}")
+    private int maxActiveBookings;
+
+    @Override
+    public void check(TestDriveBookingContext context) {
+        if (maxActiveBookings <= 0) {
+            return;
+        }
+        if (context.getStats().getActiveCount() >= maxActiveBookings) {
+            if (maxActiveBookings == 1) {
+                throw new IllegalArgumentException("Bạn chỉ có thể đặt 1 lịch lái thử tại một thời điểm. Vui lòng hoàn thành hoặc hủy lịch hiện tại trước.");
+            }
+            throw new IllegalArgumentException("Bạn chỉ có thể đặt tối đa " + maxActiveBookings +
+                    " lịch lái thử cùng lúc. Vui lòng hoàn thành hoặc hủy lịch hiện tại trước.");
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.policy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// Số lần lái thử hoàn thành tối đa cho 1 mẫu xe (0 = không giới hạn)
+@Component
+@Order(2)
+public class MaxAttemptsPerCategoryPolicy implements TestDriveBookingPolicy {
+
+    @Value("${testdrive.policy.max-attempts-per-category:0}")
+    private int maxAttemptsPerCategory;
+
+    @Override
+    public void check(TestDriveBookingContext context) {
+        if (maxAttemptsPerCategory <= 0) {
+            return;
+        }
+        if (context.getStats().getCategoryCount("DONE") >= maxAttemptsPerCategory) {
+            throw new IllegalArgumentException("Bạn đã lái thử mẫu xe này " + maxAttemptsPerCategory +
+                    " lần. Vui lòng liên hệ đại lý nếu cần hỗ trợ thêm.");
+        }
+    }
+}
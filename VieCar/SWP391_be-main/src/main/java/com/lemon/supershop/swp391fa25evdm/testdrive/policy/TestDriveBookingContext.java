@@ -0,0 +1,34 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.policy;
+
+import java.time.LocalDateTime;
+
+// Dữ liệu đầu vào cho các TestDriveBookingPolicy khi khách đặt lịch
+public class TestDriveBookingContext {
+    private final int userId;
+    private final int categoryId;
+    private final LocalDateTime scheduleDate;
+    private final TestDriveBookingStats stats;
+
+    public TestDriveBookingContext(int userId, int categoryId, LocalDateTime scheduleDate, TestDriveBookingStats stats) {
+        this.userId = userId;
+        this.categoryId = categoryId;
+        this.scheduleDate = scheduleDate;
+        this.stats = stats;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public LocalDateTime getScheduleDate() {
+        return scheduleDate;
+    }
+
+    public TestDriveBookingStats getStats() {
+        return stats;
+    }
+}
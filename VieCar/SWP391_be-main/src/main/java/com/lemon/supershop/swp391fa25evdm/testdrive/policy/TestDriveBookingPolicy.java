@@ -0,0 +1,9 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.policy;
+
+/**
+ * Luật đặt lịch lái thử. Mỗi luật là 1 @Component, engine chạy tất cả theo @Order.
+ * Vi phạm → ném IllegalArgumentException với thông báo cho khách hàng.
+ */
+public interface TestDriveBookingPolicy {
+    void check(TestDriveBookingContext context);
+}
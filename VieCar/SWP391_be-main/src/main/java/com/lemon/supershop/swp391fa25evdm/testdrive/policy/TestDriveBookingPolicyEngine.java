@@ -0,0 +1,34 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.policy;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository;
+
+/**
+ * Chạy tất cả TestDriveBookingPolicy cho 1 lần đặt lịch.
+ * Thống kê lịch cũ của khách được lấy bằng 1 query aggregate duy nhất.
+ */
+@Component
+public class TestDriveBookingPolicyEngine {
+
+    @Autowired
+    private TestDriveRepository testDriveRepository;
+
+    // Spring inject theo thứ tự @Order
+    @Autowired
+    private List<TestDriveBookingPolicy> policies;
+
+    public TestDriveBookingStats evaluate(int userId, int categoryId, LocalDateTime scheduleDate) {
+        TestDriveBookingStats stats = TestDriveBookingStats.fromRows(
+                testDriveRepository.aggregateByStatusForUser(userId, categoryId));
+        TestDriveBookingContext context = new TestDriveBookingContext(userId, categoryId, scheduleDate, stats);
+        for (TestDriveBookingPolicy policy : policies) {
+            policy.check(context);
+        }
+        return stats;
+    }
+}
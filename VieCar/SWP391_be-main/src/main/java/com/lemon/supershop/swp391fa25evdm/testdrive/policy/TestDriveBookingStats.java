@@ -0,0 +1,69 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.policy;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thống kê lịch lái thử của 1 khách hàng, dựng từ 1 query GROUP BY status
+ * (không load entity TestDrive nào).
+ */
+public class TestDriveBookingStats {
+
+    // Trạng thái đã kết thúc - các trạng thái còn lại được coi là đang active
+    public static final List<String> CLOSED_STATUSES = List.of("DONE", "REJECTED", "CANCELLED");
+
+    private final Map<String, Long> countByStatus = new HashMap<>();
+    private final Map<String, Long> categoryCountByStatus = new HashMap<>();
+    private final Map<String, LocalDateTime> lastCategoryScheduleByStatus = new HashMap<>();
+
+    /**
+     * @param rows (status, count, countOfCategory, lastScheduleDateOfCategory) - kết quả của
+     *             TestDriveRepository.aggregateByStatusForUser
+     */
+    public static TestDriveBookingStats fromRows(List<Object[]> rows) {
+        TestDriveBookingStats stats = new TestDriveBookingStats();
+        for (Object[] row : rows) {
+            String status = (String) row[0];
+            stats.countByStatus.put(status, toLong(row[1]));
+            stats.categoryCountByStatus.put(status, toLong(row[2]));
+            if (row[3] != null) {
+                stats.lastCategoryScheduleByStatus.put(status, (LocalDateTime) row[3]);
+            }
+        }
+        return stats;
+    }
+
+    public long getActiveCount() {
+        return countByStatus.entrySet().stream()
+                .filter(e -> !CLOSED_STATUSES.contains(e.getKey()))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+
+    public long getCount(String status) {
+        return countByStatus.getOrDefault(status, 0L);
+    }
+
+    public long getCategoryCount(String status) {
+        return categoryCountByStatus.getOrDefault(status, 0L);
+    }
+
+    // Lịch gần nhất của category này trong các trạng thái cho trước (null nếu chưa có)
+    public LocalDateTime getLastCategorySchedule(Collection<String> statuses) {
+        LocalDateTime last = null;
+        for (String status : statuses) {
+            LocalDateTime candidate = lastCategoryScheduleByStatus.get(status);
+            if (candidate != null && (last == null || candidate.isAfter(last))) {
+                last = candidate;
+            }
+        }
+        return last;
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+}
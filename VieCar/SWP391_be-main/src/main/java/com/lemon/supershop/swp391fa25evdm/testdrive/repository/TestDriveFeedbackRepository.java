@@ -2,6 +2,8 @@ package com.lemon.supershop.swp391fa25evdm.testdrive.repository;
 
 import java.util.List;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -24,6 +26,25 @@ public interface TestDriveFeedbackRepository extends JpaRepository<TestDriveFeed
     @Query("SELECT f FROM TestDriveFeedback f WHERE f.testDrive.product.id = :productId ORDER BY f.createAt DESC")
     List<TestDriveFeedback> findByProductId(@Param("productId") int productId);
     
+    /**
+     * Paged feedback for a product (test drive, product and customer fetched in the same query)
+     */
+    @Query(value = "SELECT f FROM TestDriveFeedback f JOIN FETCH f.testDrive td " +
+                   "LEFT JOIN FETCH td.product LEFT JOIN FETCH td.user " +
+                   "WHERE td.product.id = :productId",
+           countQuery = "SELECT COUNT(f) FROM TestDriveFeedback f WHERE f.testDrive.product.id = :productId")
+    Page<TestDriveFeedback> findPageByProductId(@Param("productId") int productId, Pageable pageable);
+    
+    /**
+     * Paged feedback for a category (vehicle model)
+     */
+    @Query(value = "SELECT f FROM TestDriveFeedback f JOIN FETCH f.testDrive td " +
+                   "LEFT JOIN FETCH td.product p LEFT JOIN FETCH td.user " +
+                   "WHERE COALESCE(td.category.id, p.category.id) = :categoryId",
+           countQuery = "SELECT COUNT(f) FROM TestDriveFeedback f JOIN f.testDrive td LEFT JOIN td.product p " +
+                        "WHERE COALESCE(td.category.id, p.category.id) = :categoryId")
+    Page<TestDriveFeedback> findPageByCategoryId(@Param("categoryId") int categoryId, Pageable pageable);
+    
     /**
      * Find all feedback by a specific customer
      */
@@ -0,0 +1,82 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveRatingAggregate;
+
+@Repository
+public interface TestDriveRatingAggregateRepository extends JpaRepository<TestDriveRatingAggregate, Long> {
+
+    // Mỗi feedback thuộc 2 phạm vi: xe cụ thể (nếu đã gán) và mẫu xe (category khách chọn, fallback category của xe)
+    String FEEDBACK_SCOPES =
+            "FROM testdrive_feedback f " +
+            "JOIN testdrive td ON td.id = f.test_drive_id " +
+            "LEFT JOIN product p ON p.id = td.product_id " +
+            "CROSS APPLY (VALUES ('PRODUCT', td.product_id), ('CATEGORY', COALESCE(td.category_id, p.category_id))) " +
+            "    AS x(scope_type, scope_id) " +
+            "WHERE x.scope_id IS NOT NULL";
+
+    String HISTOGRAM_COLUMNS =
+            "SUM(CASE WHEN f.rating = 1 THEN 1 ELSE 0 END) AS star1, " +
+            "SUM(CASE WHEN f.rating = 2 THEN 1 ELSE 0 END) AS star2, " +
+            "SUM(CASE WHEN f.rating = 3 THEN 1 ELSE 0 END) AS star3, " +
+            "SUM(CASE WHEN f.rating = 4 THEN 1 ELSE 0 END) AS star4, " +
+            "SUM(CASE WHEN f.rating = 5 THEN 1 ELSE 0 END) AS star5";
+
+    // Cộng 1 feedback vào thống kê của xe và mẫu xe - 1 câu MERGE
+    @Modifying(flushAutomatically = true)
+    @Query(value =
+            "MERGE testdrive_rating_aggregate WITH (HOLDLOCK) AS t " +
+            "USING (" +
+            "    SELECT x.scope_type, x.scope_id, COUNT(*) AS rating_count, SUM(CAST(f.rating AS BIGINT)) AS rating_sum, " +
+            "           " + HISTOGRAM_COLUMNS + " " +
+            "    " + FEEDBACK_SCOPES + " AND f.id = :feedbackId " +
+            "    GROUP BY x.scope_type, x.scope_id" +
+            ") AS s " +
+            "ON t.scope_type = s.scope_type AND t.scope_id = s.scope_id " +
+            "WHEN MATCHED THEN UPDATE SET " +
+            "    t.rating_count = t.rating_count + s.rating_count, " +
+            "    t.rating_sum = t.rating_sum + s.rating_sum, " +
+            "    t.star1 = t.star1 + s.star1, t.star2 = t.star2 + s.star2, t.star3 = t.star3 + s.star3, " +
+            "    t.star4 = t.star4 + s.star4, t.star5 = t.star5 + s.star5, " +
+            "    t.updated_at = SYSDATETIME() " +
+            "WHEN NOT MATCHED THEN INSERT (scope_type, scope_id, rating_count, rating_sum, star1, star2, star3, star4, star5, updated_at) " +
+            "    VALUES (s.scope_type, s.scope_id, s.rating_count, s.rating_sum, s.star1, s.star2, s.star3, s.star4, s.star5, SYSDATETIME());",
+            nativeQuery = true)
+    int mergeFeedback(@Param("feedbackId") int feedbackId);
+
+    @Modifying
+    @Query(value = "DELETE FROM testdrive_rating_aggregate", nativeQuery = true)
+    int deleteAllRows();
+
+    // Dựng lại toàn bộ thống kê từ testdrive_feedback (lần đầu triển khai / đối soát)
+    @Modifying(flushAutomatically = true)
+    @Query(value =
+            "INSERT INTO testdrive_rating_aggregate (scope_type, scope_id, rating_count, rating_sum, star1, star2, star3, star4, star5, updated_at) " +
+            "SELECT x.scope_type, x.scope_id, COUNT(*), SUM(CAST(f.rating AS BIGINT)), " + HISTOGRAM_COLUMNS + ", SYSDATETIME() " +
+            FEEDBACK_SCOPES + " " +
+            "GROUP BY x.scope_type, x.scope_id",
+            nativeQuery = true)
+    int insertFromFeedback();
+
+    Optional<TestDriveRatingAggregate> findByScopeTypeAndScopeId(String scopeType, int scopeId);
+
+    List<TestDriveRatingAggregate> findByScopeTypeAndScopeIdIn(String scopeType, Collection<Integer> scopeIds);
+
+    // Xếp hạng theo điểm trung bình, chỉ tính phạm vi có đủ số đánh giá
+    @Query("SELECT a FROM TestDriveRatingAggregate a " +
+           "WHERE a.scopeType = :scopeType AND a.ratingCount >= :minCount " +
+           "ORDER BY (a.ratingSum * 1.0 / a.ratingCount) DESC, a.ratingCount DESC")
+    List<TestDriveRatingAggregate> findTopRated(@Param("scopeType") String scopeType,
+                                                @Param("minCount") long minCount,
+                                                Pageable pageable);
+}
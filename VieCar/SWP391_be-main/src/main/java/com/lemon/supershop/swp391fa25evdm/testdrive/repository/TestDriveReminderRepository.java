@@ -0,0 +1,77 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveReminder;
+
+@Repository
+public interface TestDriveReminderRepository extends JpaRepository<TestDriveReminder, Long> {
+
+    // Viết JPQL: tên method derived sẽ đọc "HoursBefore" thành điều kiện Before trên property "hours"
+    @Query("SELECT COUNT(r) > 0 FROM TestDriveReminder r " +
+           "WHERE r.testDriveId = :testDriveId AND r.hoursBefore = :hoursBefore AND r.scheduleAt = :scheduleAt")
+    boolean existsReminder(@Param("testDriveId") int testDriveId,
+                           @Param("hoursBefore") int hoursBefore,
+                           @Param("scheduleAt") LocalDateTime scheduleAt);
+
+    List<TestDriveReminder> findByLeaseToken(String leaseToken);
+
+    /**
+     * Nhận (lease) tối đa batchSize reminder đến hạn cho node hiện tại.
+     * UPDLOCK + READPAST: các node khác bỏ qua dòng đang bị khóa thay vì chờ (tương đương SKIP LOCKED).
+     * Reminder SENDING quá hạn lease (node chết giữa chừng) được nhận lại.
+     */
+    @Modifying
+    @Query(value =
+            "WITH due AS (" +
+            "    SELECT TOP (:batchSize) * FROM testdrive_reminder WITH (UPDLOCK, READPAST, ROWLOCK) " +
+            "    WHERE (status = 'PENDING' AND due_at <= :now) " +
+            "       OR (status = 'SENDING' AND lease_until < :now) " +
+            "    ORDER BY due_at" +
+            ") " +
+            "UPDATE due SET status = 'SENDING', lease_owner = :owner, lease_token = :token, " +
+            "    lease_until = :leaseUntil, attempts = attempts + 1",
+            nativeQuery = true)
+    int claimDue(@Param("token") String token,
+                 @Param("owner") String owner,
+                 @Param("now") LocalDateTime now,
+                 @Param("leaseUntil") LocalDateTime leaseUntil,
+                 @Param("batchSize") int batchSize);
+
+    // Ghi SENT cho cả lô - chỉ các reminder mà lease vẫn còn thuộc về lần nhận này
+    @Modifying
+    @Query("UPDATE TestDriveReminder r SET r.status = 'SENT', r.sentAt = :now, r.leaseToken = NULL, r.leaseUntil = NULL, " +
+           "r.lastError = NULL WHERE r.id IN :ids AND r.leaseToken = :token")
+    int markSentBatch(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE TestDriveReminder r SET " +
+           "r.status = CASE WHEN r.attempts >= :maxAttempts THEN 'FAILED' ELSE 'PENDING' END, " +
+           "r.dueAt = :retryAt, r.lastError = :error, r.leaseToken = NULL, r.leaseUntil = NULL " +
+           "WHERE r.id = :id AND r.leaseToken = :token")
+    int markFailed(@Param("id") long id,
+                   @Param("token") String token,
+                   @Param("error") String error,
+                   @Param("retryAt") LocalDateTime retryAt,
+                   @Param("maxAttempts") int maxAttempts);
+
+    // Hủy các reminder chưa gửi của 1 lịch (lịch bị hủy / xóa)
+    @Modifying
+    @Query("UPDATE TestDriveReminder r SET r.status = 'CANCELLED' " +
+           "WHERE r.testDriveId = :testDriveId AND r.status = 'PENDING'")
+    int cancelPending(@Param("testDriveId") int testDriveId);
+
+    // Lịch đổi giờ: hủy các reminder chưa gửi của giờ cũ
+    @Modifying
+    @Query("UPDATE TestDriveReminder r SET r.status = 'CANCELLED' " +
+           "WHERE r.testDriveId = :testDriveId AND r.status = 'PENDING' AND r.scheduleAt <> :scheduleAt")
+    int cancelPendingExcept(@Param("testDriveId") int testDriveId, @Param("scheduleAt") LocalDateTime scheduleAt);
+}
@@ -1,24 +1,67 @@
 package com.lemon.supershop.swp391fa25evdm.testdrive.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
 
+import jakarta.persistence.QueryHint;
+
 @Repository
-public interface TestDriveRepository extends JpaRepository<TestDrive, Integer> {
+public interface TestDriveRepository extends JpaRepository<TestDrive, Integer>, JpaSpecificationExecutor<TestDrive> {
 
-    // JPA sẽ tự động implement các methods này
+    // Load sẵn user / dealer / xe / category / nhân viên hộ tống (+ role, dealer của user) cho convertToRes
+    // trong 1 query - tránh N+1 khi trả danh sách lịch lái thử.
+    // product.installmentPlan: OneToOne phía mappedBy không lazy được, không join thì Hibernate query từng xe
+    @EntityGraph(attributePaths = {"user", "user.role", "user.dealer", "dealer", "product", "product.installmentPlan",
+                                   "category", "escortStaff", "escortStaff.role", "escortStaff.dealer"})
+    @Query("SELECT td FROM TestDrive td")
+    List<TestDrive> findAllWithDetails();
+
+    @EntityGraph(attributePaths = {"user", "user.role", "user.dealer", "dealer", "product", "product.installmentPlan",
+                                   "category", "escortStaff", "escortStaff.role", "escortStaff.dealer"})
     List<TestDrive> findByUserId(int userId);
+
+    @EntityGraph(attributePaths = {"user", "user.role", "user.dealer", "dealer", "product", "product.installmentPlan",
+                                   "category", "escortStaff", "escortStaff.role", "escortStaff.dealer"})
     List<TestDrive> findByDealerId(int dealerId);
+
+    // Trang lịch lái thử theo bộ lọc (TestDriveSpecs) - quan hệ load cùng trang, COUNT không join thêm
+    @Override
+    @EntityGraph(attributePaths = {"user", "user.role", "user.dealer", "dealer", "product", "product.installmentPlan",
+                                   "category", "escortStaff", "escortStaff.role", "escortStaff.dealer"})
+    Page<TestDrive> findAll(Specification<TestDrive> spec, Pageable pageable);
+
+    // JPA sẽ tự động implement các methods này
     List<TestDrive> findByUserIdAndStatus(int userId, String status);
     List<TestDrive> findByUserIdAndProductIdAndStatus(int userId, int productId, String status);
     
+    // Đếm lịch của khách theo trạng thái (tổng / của category / lịch gần nhất của category) - 1 query cho booking policy
+    @Query("SELECT td.status, COUNT(td), " +
+           "SUM(CASE WHEN td.category.id = :categoryId THEN 1 ELSE 0 END), " +
+           "MAX(CASE WHEN td.category.id = :categoryId THEN td.scheduleDate ELSE NULL END) " +
+           "FROM TestDrive td WHERE td.user.id = :userId " +
+           "GROUP BY td.status")
+    List<Object[]> aggregateByStatusForUser(
+        @Param("userId") int userId,
+        @Param("categoryId") int categoryId
+    );
+    
     // Tìm test drives conflict với thời gian đặt - chỉ check đơn đang active
     @Query("SELECT td FROM TestDrive td WHERE td.product.id = :productId " +
            "AND td.status IN ('PENDING', 'APPROVED', 'IN_PROGRESS') " +
@@ -38,6 +81,18 @@ public interface TestDriveRepository extends JpaRepository<TestDrive, Integer> {
         @Param("date") LocalDateTime date
     );
     
+    // (productId, scheduleDate) các lịch còn hiệu lực của nhiều xe trong [from, to) - dùng để dựng TestDriveSlotIndex
+    @Query("SELECT td.product.id, td.scheduleDate FROM TestDrive td " +
+           "WHERE td.product.id IN :productIds " +
+           "AND td.status IN :statuses " +
+           "AND td.scheduleDate >= :from AND td.scheduleDate < :to")
+    List<Object[]> findActiveSchedulesByProductIds(
+        @Param("productIds") Collection<Integer> productIds,
+        @Param("from") LocalDateTime from,
+        @Param("to") LocalDateTime to,
+        @Param("statuses") Collection<String> statuses
+    );
+    
     // ❌ REMINDER QUERIES REMOVED - Status 'CONFIRMED' không tồn tại trong hệ thống
     // Frontend sử dụng: PENDING, APPROVED, IN_PROGRESS, DONE, REJECTED, CANCELLED
     
@@ -59,9 +114,61 @@ public interface TestDriveRepository extends JpaRepository<TestDrive, Integer> {
            "AND td.status = 'IN_PROGRESS'")
     List<Integer> findEscortStaffIdsInProgress();
     
+    // Lịch đang thực hiện của 1 nhân viên (dùng IX_testdrive_escort_schedule)
+    Optional<TestDrive> findFirstByEscortStaff_IdAndStatus(int staffId, String status);
+    
+    // Lịch của nhân viên có giờ bắt đầu trong (from, to), bỏ qua lịch đang phân công
+    @Query("SELECT td FROM TestDrive td " +
+           "WHERE td.escortStaff.id = :staffId " +
+           "AND td.status IN :statuses " +
+           "AND td.scheduleDate > :from AND td.scheduleDate < :to " +
+           "AND td.id <> :excludeId")
+    List<TestDrive> findEscortConflicts(
+        @Param("staffId") int staffId,
+        @Param("from") LocalDateTime from,
+        @Param("to") LocalDateTime to,
+        @Param("statuses") Collection<String> statuses,
+        @Param("excludeId") int excludeId
+    );
+    
+    // (escortStaffId, scheduleDate) của nhiều nhân viên trong [from, to) - tính tải và xung đột trong 1 query
+    @Query("SELECT td.escortStaff.id, td.scheduleDate FROM TestDrive td " +
+           "WHERE td.escortStaff.id IN :staffIds " +
+           "AND td.status IN :statuses " +
+           "AND td.scheduleDate >= :from AND td.scheduleDate < :to")
+    List<Object[]> findEscortSchedules(
+        @Param("staffIds") Collection<Integer> staffIds,
+        @Param("from") LocalDateTime from,
+        @Param("to") LocalDateTime to,
+        @Param("statuses") Collection<String> statuses
+    );
+    
     // Kiểm tra nhân viên có đang bận không
     @Query("SELECT COUNT(td) > 0 FROM TestDrive td " +
            "WHERE td.escortStaff.id = :staffId " +
            "AND td.status = 'IN_PROGRESS'")
     boolean isStaffBusy(@Param("staffId") int staffId);
+
+    // Lịch sắp tới cho feed ICS (id, giờ, trạng thái, ghi chú, tên xe, tên category, tên + địa chỉ đại lý) - đọc dạng stream
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT td.id, td.scheduleDate, td.status, td.notes, p.name, c.name, d.name, d.address " +
+           "FROM TestDrive td LEFT JOIN td.product p LEFT JOIN td.category c LEFT JOIN td.dealer d " +
+           "WHERE td.user.id = :userId AND td.scheduleDate >= :from AND td.status IN :statuses " +
+           "ORDER BY td.scheduleDate")
+    Stream<Object[]> streamCalendarByUser(
+        @Param("userId") int userId,
+        @Param("from") LocalDateTime from,
+        @Param("statuses") Collection<String> statuses
+    );
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT td.id, td.scheduleDate, td.status, td.notes, p.name, c.name, d.name, d.address " +
+           "FROM TestDrive td LEFT JOIN td.product p LEFT JOIN td.category c LEFT JOIN td.dealer d " +
+           "WHERE d.id = :dealerId AND td.scheduleDate >= :from AND td.status IN :statuses " +
+           "ORDER BY td.scheduleDate")
+    Stream<Object[]> streamCalendarByDealer(
+        @Param("dealerId") int dealerId,
+        @Param("from") LocalDateTime from,
+        @Param("statuses") Collection<String> statuses
+    );
 }
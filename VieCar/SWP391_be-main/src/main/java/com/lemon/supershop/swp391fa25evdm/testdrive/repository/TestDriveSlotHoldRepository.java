@@ -0,0 +1,45 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveSlotHold;
+
+import jakarta.transaction.Transactional;
+
+@Repository
+public interface TestDriveSlotHoldRepository extends JpaRepository<TestDriveSlotHold, Long> {
+
+    Optional<TestDriveSlotHold> findByToken(String token);
+
+    // Dọn giữ chỗ đã hết hạn của đúng (xe, khung giờ) trước khi insert giữ chỗ mới
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TestDriveSlotHold h WHERE h.productId = :productId AND h.slotStart = :slotStart " +
+           "AND h.expiresAt <= :now")
+    int deleteExpired(@Param("productId") int productId,
+                      @Param("slotStart") LocalDateTime slotStart,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TestDriveSlotHold h WHERE h.expiresAt <= :now")
+    int deleteAllExpired(@Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TestDriveSlotHold h WHERE h.token = :token")
+    int deleteByToken(@Param("token") String token);
+
+    // Gia hạn giữ chỗ (cùng khách giữ lại khung giờ đang giữ)
+    @Modifying
+    @Transactional
+    @Query("UPDATE TestDriveSlotHold h SET h.expiresAt = :expiresAt WHERE h.token = :token")
+    int extend(@Param("token") String token, @Param("expiresAt") LocalDateTime expiresAt);
+}
@@ -0,0 +1,46 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
+
+// Điều kiện lọc cho TestDriveRepository - chỉ thêm predicate khi có giá trị để SQL Server dùng đúng index
+public final class TestDriveSpecs {
+
+    private TestDriveSpecs() {}
+
+    public static Specification<TestDrive> hasUser(int userId) {
+        return (root, query, cb) -> cb.equal(root.get("user").get("id"), userId);
+    }
+
+    public static Specification<TestDrive> hasDealer(int dealerId) {
+        return (root, query, cb) -> cb.equal(root.get("dealer").get("id"), dealerId);
+    }
+
+    public static Specification<TestDrive> hasStatusIn(Collection<String> statuses) {
+        return (root, query, cb) -> root.get("status").in(statuses);
+    }
+
+    public static Specification<TestDrive> hasProduct(int productId) {
+        return (root, query, cb) -> cb.equal(root.get("product").get("id"), productId);
+    }
+
+    public static Specification<TestDrive> hasEscortStaff(int escortStaffId) {
+        return (root, query, cb) -> cb.equal(root.get("escortStaff").get("id"), escortStaffId);
+    }
+
+    public static Specification<TestDrive> hasCategory(int categoryId) {
+        return (root, query, cb) -> cb.equal(root.get("category").get("id"), categoryId);
+    }
+
+    public static Specification<TestDrive> scheduledFrom(LocalDateTime from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("scheduleDate"), from);
+    }
+
+    public static Specification<TestDrive> scheduledBefore(LocalDateTime to) {
+        return (root, query, cb) -> cb.lessThan(root.get("scheduleDate"), to);
+    }
+}
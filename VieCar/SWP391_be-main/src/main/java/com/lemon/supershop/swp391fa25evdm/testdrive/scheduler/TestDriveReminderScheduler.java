@@ -1,170 +1,99 @@
 package com.lemon.supershop.swp391fa25evdm.testdrive.scheduler;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.net.InetAddress;
 import java.util.List;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
-import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
-import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository;
+import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveReminderService;
+import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveReminderService.ReminderEmail;
 
-// ❌ DISABLED: Scheduler không hoạt động vì status không khớp
-// Frontend sử dụng: PENDING, APPROVED, IN_PROGRESS, DONE
-// Scheduler tìm kiếm: CONFIRMED (không tồn tại)
-// @Service - COMMENTED OUT
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Gửi email nhắc lịch lái thử từ outbox testdrive_reminder.
+ *
+ * - Mỗi lần chạy nhận từng lô reminder đến hạn (lease có thời hạn, nhiều node chạy song song không gửi trùng)
+ * - Cả lô được chuyển sang outbox email bằng 1 JDBC batch, cùng transaction với việc ghi SENT
+ *   (TestDriveReminderService.queueAll) - SMTP do EmailOutboxDispatcher đảm nhận
+ */
+@Service
 public class TestDriveReminderScheduler {
     
     private static final Logger logger = LoggerFactory.getLogger(TestDriveReminderScheduler.class);
     
     @Autowired
-    private TestDriveRepository testDriveRepository;
-    
-    @Autowired
-    private EmailService emailService;
-    
-    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-    private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
-    
-    /**
-     * Chạy mỗi giờ để kiểm tra và gửi reminder
-     * Cron: "0 0 * * * *" = giây 0, phút 0, mọi giờ, mọi ngày, mọi tháng, mọi năm
-     * 
-     * ❌ DISABLED: Status không khớp với frontend
-     */
-    // @Scheduled(cron = "0 0 * * * *")
-    // @Transactional
-    public void sendTestDriveReminders() {
-        /* DISABLED - Status mismatch
-        logger.info("Starting test drive reminder job at {}", LocalDateTime.now());
-        
+    private TestDriveReminderService reminderService;
+
+    @Value("${testdrive.reminder.batch-size:50}")
+    private int batchSize;
+    @Value("${testdrive.reminder.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+    @Value("${testdrive.reminder.lease-seconds:300}")
+    private int leaseSeconds;
+
+    private String nodeId;
+
+    @PostConstruct
+    void init() {
+        String host;
         try {
-            // Gửi reminder 24 giờ trước
-            send24HourReminders();
-            
-            // Gửi reminder 1 giờ trước
-            send1HourReminders();
-            
-            logger.info("Test drive reminder job completed successfully");
+            host = InetAddress.getLocalHost().getHostName();
         } catch (Exception e) {
-            logger.error("Error in test drive reminder job: {}", e.getMessage(), e);
+            host = "node";
         }
-        */
+        nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
     }
     
     /**
-     * Gửi reminder cho test drives diễn ra sau 24 giờ (23-25 giờ để có buffer)
-     * ❌ DISABLED
+     * Chạy mỗi phút: nhận các reminder đến hạn theo lô và queue cả lô vào outbox email.
      */
-    /* DISABLED
-    private void send24HourReminders() {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime start24h = now.plusHours(23);
-        LocalDateTime end24h = now.plusHours(25);
-        
-        List<TestDrive> testDrives = testDriveRepository.findTestDrivesNeedingReminder24h(start24h, end24h);
-        
-        logger.info("Found {} test drives needing 24-hour reminder", testDrives.size());
-        
-        for (TestDrive testDrive : testDrives) {
-            try {
-                sendReminder(testDrive, 24);
-                testDrive.setReminded24h(true);
-                testDriveRepository.save(testDrive);
-                logger.info("Sent 24-hour reminder for test drive ID: {}", testDrive.getId());
-            } catch (Exception e) {
-                logger.error("Failed to send 24-hour reminder for test drive ID: {}", testDrive.getId(), e);
+    @Scheduled(fixedDelayString = "${testdrive.reminder.poll-interval-ms:60000}", initialDelayString = "${testdrive.reminder.initial-delay-ms:30000}")
+    public void sendTestDriveReminders() {
+        int queued = 0;
+        int failed = 0;
+        try {
+            for (int batchNo = 0; batchNo < maxBatchesPerRun; batchNo++) {
+                List<ReminderEmail> batch = reminderService.claimDue(nodeId, batchSize, leaseSeconds);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                int count = queueBatch(batch);
+                queued += count;
+                failed += batch.size() - count;
+                if (batch.size() < batchSize) {
+                    break;
+                }
             }
+        } catch (Exception e) {
+            logger.error("Error in test drive reminder job: {}", e.getMessage(), e);
         }
-    }
-    
-    /**
-     * Gửi reminder cho test drives diễn ra sau 1 giờ (0.5-1.5 giờ để có buffer)
-     * ❌ DISABLED
-     */
-    /* DISABLED
-    private void send1HourReminders() {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime start1h = now.plusMinutes(30);
-        LocalDateTime end1h = now.plusMinutes(90);
-        
-        List<TestDrive> testDrives = testDriveRepository.findTestDrivesNeedingReminder1h(start1h, end1h);
-        
-        logger.info("Found {} test drives needing 1-hour reminder", testDrives.size());
-        
-        for (TestDrive testDrive : testDrives) {
-            try {
-                sendReminder(testDrive, 1);
-                testDrive.setReminded1h(true);
-                testDriveRepository.save(testDrive);
-                logger.info("Sent 1-hour reminder for test drive ID: {}", testDrive.getId());
-            } catch (Exception e) {
-                logger.error("Failed to send 1-hour reminder for test drive ID: {}", testDrive.getId(), e);
-            }
+        if (queued > 0 || failed > 0) {
+            logger.info("Test drive reminder job [{}]: {} queued, {} failed", nodeId, queued, failed);
         }
     }
     
-    /**
-     * Gửi email reminder cho test drive
-     * @param testDrive Test drive cần nhắc nhở
-     * @param hoursUntil Số giờ còn lại (24 hoặc 1)
-     * ❌ DISABLED
-     */
-    /* DISABLED
-    private void sendReminder(TestDrive testDrive, int hoursUntil) {
-        String customerEmail = testDrive.getUser().getEmail();
-        String customerName = testDrive.getUser().getUsername();
-        String productName = testDrive.getProduct().getName();
-        String dealerName = testDrive.getDealer().getName();
-        String dealerAddress = testDrive.getDealer().getAddress();
-        
-        String scheduleDate = testDrive.getScheduleDate().format(dateFormatter);
-        String scheduleTime = testDrive.getScheduleDate().format(timeFormatter);
-        
-        emailService.sendTestDriveReminder(
-            customerEmail,
-            customerName,
-            productName,
-            dealerName,
-            dealerAddress,
-            scheduleDate,
-            scheduleTime,
-            hoursUntil
-        );
-    }
-    */
-    
-    /**
-     * Job chạy hàng ngày lúc 9 giờ sáng để cleanup reminders cũ
-     * Reset reminder flags cho test drives đã qua để tránh database phình to
-     * ❌ DISABLED
-     */
-    // @Scheduled(cron = "0 0 9 * * *")
-    // @Transactional
-    public void cleanupOldReminders() {
-        /* DISABLED
-        logger.info("Starting reminder cleanup job at {}", LocalDateTime.now());
-        
+    // Queue 1 lô; lỗi → cả lô rollback, từng reminder được ghi FAILED / thử lại
+    private int queueBatch(List<ReminderEmail> batch) {
         try {
-            LocalDateTime yesterday = LocalDateTime.now().minusDays(1);
-            
-            // Không cần cleanup vì database tự quản lý, nhưng có thể log statistics
-            long completedCount = testDriveRepository.findAll().stream()
-                .filter(td -> td.getScheduleDate().isBefore(yesterday))
-                .filter(td -> "COMPLETED".equals(td.getStatus()) || "CANCELED".equals(td.getStatus()))
-                .count();
-            
-            logger.info("Found {} completed/canceled test drives from yesterday or earlier", completedCount);
-            logger.info("Reminder cleanup job completed");
+            return reminderService.queueAll(batch);
         } catch (Exception e) {
-            logger.error("Error in reminder cleanup job: {}", e.getMessage(), e);
+            logger.error("Failed to queue {} reminder(s): {}", batch.size(), e.getMessage());
+            for (ReminderEmail email : batch) {
+                try {
+                    reminderService.markFailed(email, e.getMessage());
+                } catch (Exception markError) {
+                    // Lease hết hạn sẽ tự được nhận lại
+                    logger.error("Failed to record reminder #{} failure: {}", email.reminderId(), markError.getMessage());
+                }
+            }
+            return 0;
         }
-        */
     }
 }
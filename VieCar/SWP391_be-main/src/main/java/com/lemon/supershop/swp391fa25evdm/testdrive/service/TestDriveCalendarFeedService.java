@@ -0,0 +1,117 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository;
+
+/**
+ * Feed iCalendar lịch lái thử sắp tới của 1 khách hàng / 1 đại lý.
+ *
+ * - Mỗi feed có 1 phiên bản trong bộ nhớ (ETag + Last-Modified), tăng khi lịch của khách / đại lý thay đổi
+ *   → client lịch poll vài phút/lần nhận 304 mà không cần query DB
+ * - Phiên bản chỉ được tin trong testdrive.calendar.max-stale-seconds (thay đổi từ node khác sẽ thấy sau tối đa chừng đó)
+ * - Nội dung được stream thẳng từ DB ra response, không dựng cả file trong bộ nhớ
+ */
+@Service
+public class TestDriveCalendarFeedService {
+
+    public static final String USER = "user";
+    public static final String DEALER = "dealer";
+
+    @Autowired
+    private TestDriveRepository testDriveRepository;
+
+    @Value("${testdrive.calendar.max-stale-seconds:600}")
+    private long maxStaleSeconds;
+
+    // Phân biệt ETag giữa các lần khởi động (seq bắt đầu lại từ 0)
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, FeedVersion> versions = new ConcurrentHashMap<>();
+
+    public FeedVersion getVersion(String kind, int id) {
+        long now = System.currentTimeMillis();
+        return versions.compute(kind + ":" + id, (key, current) ->
+                current != null && current.validUntil() > now ? current : newVersion(kind, id, now, current));
+    }
+
+    /**
+     * Đánh dấu feed của khách và đại lý đã thay đổi (sau khi transaction hiện tại commit).
+     */
+    public void touch(Integer userId, Integer dealerId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump(userId, dealerId);
+                }
+            });
+        } else {
+            bump(userId, dealerId);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void writeFeed(String kind, int id, Writer out) throws IOException {
+        LocalDateTime from = LocalDate.now().atStartOfDay();
+        String dtStamp = TestDriveIcsWriter.formatTimestamp(LocalDateTime.now());
+        boolean dealerFeed = DEALER.equals(kind);
+
+        TestDriveIcsWriter.writeCalendarStart(out, dealerFeed ? "EVDM Test Drive - Đại lý" : "EVDM Test Drive");
+        try (Stream<Object[]> rows = dealerFeed
+                ? testDriveRepository.streamCalendarByDealer(id, from, TestDriveSlotIndex.ACTIVE_STATUSES)
+                : testDriveRepository.streamCalendarByUser(id, from, TestDriveSlotIndex.ACTIVE_STATUSES)) {
+            rows.forEach(row -> {
+                // id, scheduleDate, status, notes, productName, categoryName, dealerName, dealerAddress
+                String vehicleName = row[4] != null ? (String) row[4] : (String) row[5];
+                try {
+                    TestDriveIcsWriter.writeEvent(out, (Integer) row[0], (LocalDateTime) row[1], (String) row[2],
+                            (String) row[3], vehicleName, (String) row[6], (String) row[7], dtStamp);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        TestDriveIcsWriter.writeCalendarEnd(out);
+        out.flush();
+    }
+
+    private void bump(Integer userId, Integer dealerId) {
+        long now = System.currentTimeMillis();
+        if (userId != null) {
+            versions.compute(USER + ":" + userId, (key, current) -> newVersion(USER, userId, now, current));
+        }
+        if (dealerId != null) {
+            versions.compute(DEALER + ":" + dealerId, (key, current) -> newVersion(DEALER, dealerId, now, current));
+        }
+    }
+
+    private FeedVersion newVersion(String kind, int id, long now, FeedVersion previous) {
+        // Last-Modified theo giây (HTTP date không có mili giây) và luôn tăng, kể cả 2 thay đổi trong cùng 1 giây
+        long lastModified = now / 1000 * 1000;
+        if (previous != null && lastModified <= previous.lastModified()) {
+            lastModified = previous.lastModified() + 1000;
+        }
+        String etag = "\"td-" + kind + "-" + id + "-" + bootId + "-" + sequence.incrementAndGet() + "\"";
+        return new FeedVersion(etag, lastModified, now + maxStaleSeconds * 1000);
+    }
+
+    public record FeedVersion(String etag, long lastModified, long validUntil) {}
+}
@@ -1,17 +1,35 @@
 package com.lemon.supershop.swp391fa25evdm.testdrive.service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PagedModel;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.category.repository.CategoryRepository;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.RatingSummaryRes;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveFeedbackReq;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveFeedbackRes;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveFeedback;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveRatingAggregate;
 import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveFeedbackRepository;
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRatingAggregateRepository;
 import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository;
 
 @Service
@@ -23,10 +41,27 @@ public class TestDriveFeedbackService {
     @Autowired
     private TestDriveRepository testDriveRepository;
     
+    @Autowired
+    private TestDriveRatingAggregateRepository ratingAggregateRepository;
+    
+    @Autowired
+    private CategoryRepository categoryRepository;
+    
+    @Autowired
+    private ProductRepo productRepo;
+    
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_RATING_IDS = 200;
+    
     /**
-     * Create feedback for a test drive
+     * Create feedback for a test drive (rating aggregates updated in the same transaction)
      */
+    @Transactional
     public TestDriveFeedbackRes createFeedback(TestDriveFeedbackReq req) {
+        if (req.getRating() < 1 || req.getRating() > 5) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5");
+        }
+
         // Validate test drive exists
         Optional<TestDrive> testDriveOpt = testDriveRepository.findById(req.getTestDriveId());
         if (!testDriveOpt.isPresent()) {
@@ -52,6 +87,8 @@ public class TestDriveFeedbackService {
         feedback.setComment(req.getComment());
         
         TestDriveFeedback saved = feedbackRepository.save(feedback);
+        // Cộng vào thống kê của xe + mẫu xe (1 câu MERGE)
+        ratingAggregateRepository.mergeFeedback(saved.getId());
         return convertToRes(saved);
     }
     
@@ -76,11 +113,112 @@ public class TestDriveFeedbackService {
     }
     
     /**
-     * Get average rating for a product
+     * Paged feedback for a product, newest first
+     */
+    @Transactional(readOnly = true)
+    public PagedModel<TestDriveFeedbackRes> getFeedbackPageByProductId(int productId, int page, int size) {
+        return new PagedModel<>(feedbackRepository.findPageByProductId(productId, pageRequest(page, size))
+                .map(this::convertToRes));
+    }
+    
+    /**
+     * Paged feedback for a category (vehicle model), newest first
+     */
+    @Transactional(readOnly = true)
+    public PagedModel<TestDriveFeedbackRes> getFeedbackPageByCategoryId(int categoryId, int page, int size) {
+        return new PagedModel<>(feedbackRepository.findPageByCategoryId(categoryId, pageRequest(page, size))
+                .map(this::convertToRes));
+    }
+    
+    /**
+     * Get average rating for a product (from the aggregate table, no AVG query)
      */
     public Double getAverageRatingByProductId(int productId) {
-        Double avg = feedbackRepository.getAverageRatingByProductId(productId);
-        return avg != null ? Math.round(avg * 10.0) / 10.0 : 0.0;
+        return ratingAggregateRepository.findByScopeTypeAndScopeId(TestDriveRatingAggregate.PRODUCT, productId)
+                .map(this::averageOf)
+                .orElse(0.0);
+    }
+    
+    /**
+     * Rating summaries for many products / categories in 1 query (showroom listing)
+     */
+    public List<RatingSummaryRes> getRatingSummaries(String scopeType, List<Integer> ids) {
+        String scope = normalizeScope(scopeType);
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        Set<Integer> uniqueIds = new LinkedHashSet<>(ids);
+        if (uniqueIds.size() > MAX_RATING_IDS) {
+            throw new IllegalArgumentException("Too many ids (max " + MAX_RATING_IDS + ")");
+        }
+        Map<Integer, TestDriveRatingAggregate> byId = new HashMap<>();
+        for (TestDriveRatingAggregate aggregate : ratingAggregateRepository.findByScopeTypeAndScopeIdIn(scope, uniqueIds)) {
+            byId.put(aggregate.getScopeId(), aggregate);
+        }
+        List<RatingSummaryRes> result = new ArrayList<>(uniqueIds.size());
+        for (Integer id : uniqueIds) {
+            TestDriveRatingAggregate aggregate = byId.get(id);
+            if (aggregate != null) {
+                result.add(convertToSummary(aggregate, null));
+            } else {
+                // Chưa có đánh giá
+                RatingSummaryRes empty = new RatingSummaryRes();
+                empty.setScopeType(scope);
+                empty.setScopeId(id);
+                empty.setHistogram(new long[5]);
+                result.add(empty);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Top-rated vehicle models (categories) or vehicles, only counting those with at least minCount ratings
+     */
+    public List<RatingSummaryRes> getTopRated(String scopeType, int limit, int minCount) {
+        String scope = normalizeScope(scopeType);
+        List<TestDriveRatingAggregate> top = ratingAggregateRepository.findTopRated(
+                scope, Math.max(1, minCount), PageRequest.of(0, Math.max(1, Math.min(limit, MAX_PAGE_SIZE))));
+        
+        // Tên category / xe lấy 1 lần bằng IN query
+        List<Integer> ids = top.stream().map(TestDriveRatingAggregate::getScopeId).collect(Collectors.toList());
+        Map<Integer, String> names = new HashMap<>();
+        if (!ids.isEmpty()) {
+            if (TestDriveRatingAggregate.CATEGORY.equals(scope)) {
+                for (Category category : categoryRepository.findAllById(ids)) {
+                    names.put(category.getId(), category.getName());
+                }
+            } else {
+                for (Product product : productRepo.findAllById(ids)) {
+                    names.put(product.getId(), product.getName());
+                }
+            }
+        }
+        return top.stream()
+                .map(aggregate -> convertToSummary(aggregate, names.get(aggregate.getScopeId())))
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Dựng lại bảng thống kê từ toàn bộ feedback
+     */
+    @Transactional
+    public int rebuildRatingAggregates() {
+        ratingAggregateRepository.deleteAllRows();
+        return ratingAggregateRepository.insertFromFeedback();
+    }
+    
+    // Lần đầu triển khai: bảng thống kê rỗng nhưng đã có feedback → dựng 1 lần
+    @EventListener(ApplicationReadyEvent.class)
+    public void initRatingAggregates() {
+        try {
+            if (ratingAggregateRepository.count() == 0 && feedbackRepository.count() > 0) {
+                int rows = rebuildRatingAggregates();
+                System.out.println("✅ Built " + rows + " test drive rating aggregates");
+            }
+        } catch (Exception e) {
+            System.out.println("⚠️ Could not build test drive rating aggregates: " + e.getMessage());
+        }
     }
     
     /**
@@ -93,6 +231,43 @@ public class TestDriveFeedbackService {
                 .collect(Collectors.toList());
     }
     
+    private PageRequest pageRequest(int page, int size) {
+        return PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_PAGE_SIZE)),
+                Sort.by(Sort.Direction.DESC, "createAt"));
+    }
+    
+    private String normalizeScope(String scopeType) {
+        if (scopeType == null || scopeType.isBlank()) {
+            return TestDriveRatingAggregate.CATEGORY;
+        }
+        String scope = scopeType.trim().toUpperCase();
+        if (!TestDriveRatingAggregate.CATEGORY.equals(scope) && !TestDriveRatingAggregate.PRODUCT.equals(scope)) {
+            throw new IllegalArgumentException("Scope must be PRODUCT or CATEGORY");
+        }
+        return scope;
+    }
+    
+    private double averageOf(TestDriveRatingAggregate aggregate) {
+        if (aggregate.getRatingCount() == 0) {
+            return 0.0;
+        }
+        double avg = (double) aggregate.getRatingSum() / aggregate.getRatingCount();
+        return Math.round(avg * 10.0) / 10.0;
+    }
+    
+    private RatingSummaryRes convertToSummary(TestDriveRatingAggregate aggregate, String name) {
+        RatingSummaryRes res = new RatingSummaryRes();
+        res.setScopeType(aggregate.getScopeType());
+        res.setScopeId(aggregate.getScopeId());
+        res.setName(name);
+        res.setRatingCount(aggregate.getRatingCount());
+        res.setAverageRating(averageOf(aggregate));
+        res.setHistogram(new long[] {
+            aggregate.getStar1(), aggregate.getStar2(), aggregate.getStar3(), aggregate.getStar4(), aggregate.getStar5()
+        });
+        return res;
+    }
+    
     /**
      * Convert entity to response DTO
      */
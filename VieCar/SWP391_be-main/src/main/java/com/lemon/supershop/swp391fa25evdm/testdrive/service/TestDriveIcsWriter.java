@@ -0,0 +1,86 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Ghi nội dung iCalendar (RFC 5545) cho lịch lái thử trực tiếp ra Writer.
+ * Dùng chung cho file .ics 1 lịch và feed .ics của khách / đại lý.
+ */
+public final class TestDriveIcsWriter {
+
+    private static final DateTimeFormatter ICS_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final String CRLF = "\r\n";
+    // Thời lượng mặc định 1 buổi lái thử
+    private static final int DEFAULT_DURATION_HOURS = 2;
+
+    private TestDriveIcsWriter() {
+    }
+
+    public static void writeCalendarStart(Writer out, String calendarName) throws IOException {
+        out.write("BEGIN:VCALENDAR" + CRLF);
+        out.write("VERSION:2.0" + CRLF);
+        out.write("PRODID:-//EVDM//Test Drive Calendar//EN" + CRLF);
+        out.write("CALSCALE:GREGORIAN" + CRLF);
+        out.write("METHOD:PUBLISH" + CRLF);
+        out.write("X-WR-CALNAME:" + escape(calendarName) + CRLF);
+        out.write("X-WR-TIMEZONE:Asia/Ho_Chi_Minh" + CRLF);
+    }
+
+    public static void writeCalendarEnd(Writer out) throws IOException {
+        out.write("END:VCALENDAR" + CRLF);
+    }
+
+    public static void writeEvent(Writer out, int testDriveId, LocalDateTime scheduleDate, String status, String notes,
+                                  String vehicleName, String dealerName, String dealerAddress, String dtStamp) throws IOException {
+        String vehicle = vehicleName != null ? vehicleName : "Test Drive";
+        String dealer = dealerName != null ? dealerName : "";
+        String address = dealerAddress != null ? dealerAddress : "";
+
+        out.write("BEGIN:VEVENT" + CRLF);
+        out.write("UID:testdrive-" + testDriveId + "@evdm.com" + CRLF);
+        out.write("DTSTAMP:" + dtStamp + CRLF);
+        out.write("DTSTART:" + scheduleDate.format(ICS_FORMATTER) + CRLF);
+        out.write("DTEND:" + scheduleDate.plusHours(DEFAULT_DURATION_HOURS).format(ICS_FORMATTER) + CRLF);
+        out.write("SUMMARY:" + escape("Lái thử " + vehicle) + CRLF);
+        out.write("LOCATION:" + escape(dealer + ", " + address) + CRLF);
+
+        StringBuilder desc = new StringBuilder();
+        desc.append("Lái thử xe: ").append(vehicle).append("\n");
+        desc.append("Đại lý: ").append(dealer).append("\n");
+        desc.append("Địa chỉ: ").append(address).append("\n");
+        if (notes != null && !notes.isEmpty()) {
+            desc.append("Ghi chú: ").append(notes).append("\n");
+        }
+        desc.append("\nTrạng thái: ").append(status);
+        out.write("DESCRIPTION:" + escape(desc.toString()) + CRLF);
+        // Lịch chưa được đại lý duyệt hiển thị dạng tạm thời
+        boolean tentative = "PENDING".equals(status) || "ASSIGNING".equals(status);
+        out.write("STATUS:" + (tentative ? "TENTATIVE" : "CONFIRMED") + CRLF);
+        out.write("SEQUENCE:0" + CRLF);
+
+        // Nhắc trước 30 phút
+        out.write("BEGIN:VALARM" + CRLF);
+        out.write("TRIGGER:-PT30M" + CRLF);
+        out.write("ACTION:DISPLAY" + CRLF);
+        out.write("DESCRIPTION:" + escape("Nhắc nhở: Lái thử " + vehicle + " sau 30 phút nữa") + CRLF);
+        out.write("END:VALARM" + CRLF);
+
+        out.write("END:VEVENT" + CRLF);
+    }
+
+    public static String formatTimestamp(LocalDateTime time) {
+        return time.format(ICS_FORMATTER);
+    }
+
+    public static String escape(String text) {
+        if (text == null) return "";
+        return text.replace("\\", "\\\\")
+                .replace(",", "\\,")
+                .replace(";", "\\;")
+                .replace("\n", "\\n")
+                .replace("\r", "");
+    }
+}
@@ -0,0 +1,181 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lemon.supershop.swp391fa25evdm.email.model.dto.EmailMessageReq;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveReminder;
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveReminderRepository;
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository;
+
+/**
+ * Outbox nhắc lịch lái thử.
+ *
+ * - Reminder được tạo ngay khi đặt / đổi lịch ({@link #sync}), không quét bảng testdrive lúc gửi
+ * - Scheduler nhận từng lô reminder đến hạn ({@link #claimDue}), queue email + ghi SENT cùng 1 transaction ({@link #queueAll})
+ */
+@Service
+public class TestDriveReminderService {
+
+    // Chỉ nhắc các lịch còn hiệu lực
+    private static final List<String> REMINDABLE_STATUSES = List.of("PENDING", "ASSIGNING", "APPROVED");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    @Autowired
+    private TestDriveReminderRepository reminderRepository;
+    @Autowired
+    private TestDriveRepository testDriveRepository;
+    @Autowired
+    private EmailService emailService;
+
+    @Value("${testdrive.reminder.hours-before:24,1}")
+    private int[] hoursBefore;
+    @Value("${testdrive.reminder.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${testdrive.reminder.retry-delay-minutes:5}")
+    private int retryDelayMinutes;
+
+    /**
+     * Đồng bộ reminder với trạng thái / giờ hiện tại của lịch:
+     * lịch đã đóng → hủy reminder chưa gửi; đổi giờ → hủy reminder giờ cũ và tạo cho giờ mới.
+     */
+    @Transactional
+    public void sync(TestDrive testDrive) {
+        if (testDrive == null || testDrive.getScheduleDate() == null) {
+            return;
+        }
+        if (!REMINDABLE_STATUSES.contains(testDrive.getStatus())) {
+            reminderRepository.cancelPending(testDrive.getId());
+            return;
+        }
+        LocalDateTime scheduleAt = testDrive.getScheduleDate();
+        reminderRepository.cancelPendingExcept(testDrive.getId(), scheduleAt);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int hours : hoursBefore) {
+            if (scheduleAt.minusHours(hours).isAfter(now)
+                    && !reminderRepository.existsReminder(testDrive.getId(), hours, scheduleAt)) {
+                reminderRepository.save(new TestDriveReminder(testDrive.getId(), hours, scheduleAt));
+            }
+        }
+    }
+
+    @Transactional
+    public void cancel(int testDriveId) {
+        reminderRepository.cancelPending(testDriveId);
+    }
+
+    /**
+     * Nhận 1 lô reminder đến hạn và dựng sẵn nội dung email (để thread gửi không cần DB session).
+     * Reminder của lịch đã đóng / đã qua được chuyển CANCELLED ngay tại đây.
+     */
+    @Transactional
+    public List<ReminderEmail> claimDue(String owner, int batchSize, int leaseSeconds) {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        if (reminderRepository.claimDue(token, owner, now, now.plusSeconds(leaseSeconds), batchSize) == 0) {
+            return List.of();
+        }
+        List<TestDriveReminder> reminders = reminderRepository.findByLeaseToken(token);
+
+        Map<Integer, TestDrive> testDrives = new HashMap<>();
+        for (TestDrive td : testDriveRepository.findAllById(reminders.stream().map(TestDriveReminder::getTestDriveId).distinct().toList())) {
+            testDrives.put(td.getId(), td);
+        }
+
+        List<ReminderEmail> emails = new ArrayList<>();
+        for (TestDriveReminder reminder : reminders) {
+            TestDrive td = testDrives.get(reminder.getTestDriveId());
+            String skipReason = null;
+            if (td == null) {
+                skipReason = "Test drive không còn tồn tại";
+            } else if (!REMINDABLE_STATUSES.contains(td.getStatus())) {
+                skipReason = "Trạng thái lịch: " + td.getStatus();
+            } else if (!reminder.getScheduleAt().equals(td.getScheduleDate()) || td.getScheduleDate().isBefore(now)) {
+                skipReason = "Lịch đã đổi giờ hoặc đã qua";
+            } else if (td.getUser() == null || td.getUser().getEmail() == null || td.getUser().getEmail().isEmpty()) {
+                skipReason = "Khách hàng không có email";
+            }
+            if (skipReason != null) {
+                reminder.setStatus("CANCELLED");
+                reminder.setLeaseToken(null);
+                reminder.setLastError(skipReason);
+                continue;
+            }
+            String productName = td.getProduct() != null
+                    ? td.getProduct().getName()
+                    : (td.getCategory() != null ? td.getCategory().getName() : "Xe điện");
+            emails.add(new ReminderEmail(
+                    reminder.getId(), token, reminder.getAttempts(),
+                    td.getUser().getEmail(), td.getUser().getUsername(), productName,
+                    td.getDealer() != null ? td.getDealer().getName() : "Đại lý",
+                    td.getDealer() != null ? td.getDealer().getAddress() : "",
+                    td.getScheduleDate().format(DATE_FORMATTER), td.getScheduleDate().format(TIME_FORMATTER),
+                    reminder.getHoursBefore()));
+        }
+        return emails;
+    }
+
+    /**
+     * Queue email cho cả lô reminder đã nhận và ghi SENT trong cùng 1 transaction:
+     * email vào outbox ⇔ reminder SENT, crash giữa chừng không thể làm gửi trùng.
+     * Lease của lô đã bị node khác nhận lại → rollback cả lô (node kia sẽ gửi).
+     *
+     * @return số reminder đã queue
+     */
+    @Transactional
+    public int queueAll(List<ReminderEmail> batch) {
+        List<EmailMessageReq> messages = new ArrayList<>(batch.size());
+        Map<String, List<Long>> idsByToken = new HashMap<>();
+        for (ReminderEmail email : batch) {
+            try {
+                messages.add(emailService.buildTestDriveReminder(email.to(), email.customerName(), email.productName(),
+                        email.dealerName(), email.dealerAddress(), email.scheduleDate(), email.scheduleTime(),
+                        email.hoursBefore(), null));
+                idsByToken.computeIfAbsent(email.leaseToken(), k -> new ArrayList<>()).add(email.reminderId());
+            } catch (Exception e) {
+                // Lỗi dựng nội dung chỉ hỏng email này
+                markFailed(email, e.getMessage());
+            }
+        }
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        emailService.sendAll(messages);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<String, List<Long>> entry : idsByToken.entrySet()) {
+            if (reminderRepository.markSentBatch(entry.getValue(), entry.getKey(), now) != entry.getValue().size()) {
+                throw new ConflictException("Reminder lease expired before the batch was queued");
+            }
+        }
+        return messages.size();
+    }
+
+    // Gửi lỗi → thử lại sau retryDelayMinutes * số lần thử, quá maxAttempts thì FAILED
+    @Transactional
+    public void markFailed(ReminderEmail email, String error) {
+        String message = error == null ? "Unknown error" : (error.length() > 500 ? error.substring(0, 500) : error);
+        LocalDateTime retryAt = LocalDateTime.now().plusMinutes((long) retryDelayMinutes * Math.max(1, email.attempt()));
+        reminderRepository.markFailed(email.reminderId(), email.leaseToken(), message, retryAt, maxAttempts);
+    }
+
+    // Nội dung 1 email nhắc đã dựng sẵn, kèm lease token để ghi kết quả
+    public record ReminderEmail(long reminderId, String leaseToken, int attempt, String to, String customerName,
+                                String productName, String dealerName, String dealerAddress,
+                                String scheduleDate, String scheduleTime, int hoursBefore) {}
+}
@@ -1,5 +1,6 @@
 package com.lemon.supershop.swp391fa25evdm.testdrive.service;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,17 +15,30 @@ import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
 import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.AvailabilityCheckRes;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.AvailableSlotsRes;
-import com.lemon.supershop.swp391fa25evdm.user.model.dto.UserRes;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.EscortCandidateRes;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveCalendarRes;
 import com.lemon.supershop.swp391fa25evdm.user.model.entity.User;
+import com.lemon.supershop.swp391fa25evdm.user.service.DealerStaffRosterCache;
 import com.lemon.supershop.swp391fa25evdm.user.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.web.PagedModel;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.lemon.supershop.swp391fa25evdm.dealer.repository.DealerRepo;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveReq;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveRes;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveSearchReq;
 import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
+import com.lemon.supershop.swp391fa25evdm.testdrive.policy.TestDriveBookingPolicyEngine;
+import com.lemon.supershop.swp391fa25evdm.testdrive.policy.TestDriveBookingStats;
 import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository;
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveSpecs;
 import com.lemon.supershop.swp391fa25evdm.user.repository.UserRepo;
 
 @Service
@@ -46,12 +60,72 @@ public class TestDriveService {
     private UserService userService;
     @Autowired
     private EmailService emailService;
+    @Autowired
+    private TestDriveSlotIndex testDriveSlotIndex;
+    @Autowired
+    private DealerStaffRosterCache dealerStaffRosterCache;
+    @Autowired
+    private TestDriveBookingPolicyEngine testDriveBookingPolicyEngine;
+    @Autowired
+    private TestDriveReminderService testDriveReminderService;
+    @Autowired
+    private TestDriveCalendarFeedService testDriveCalendarFeedService;
+    @Autowired
+    private TestDriveSlotHoldService testDriveSlotHoldService;
+
+    // Số ngày tối đa của 1 lần xem lịch trống
+    private static final int MAX_CALENDAR_DAYS = 31;
+    // Các trạng thái mà nhân viên hộ tống đang giữ lịch
+    private static final List<String> ESCORT_ACTIVE_STATUSES = List.of("APPROVED", "IN_PROGRESS");
+    // Kích thước trang tối đa cho danh sách lịch lái thử
+    private static final int MAX_PAGE_SIZE = 100;
 
     public List<TestDriveRes> getAllTestDrive() {
-        List<TestDrive> testDrives = testDriveRepository.findAll();
+        List<TestDrive> testDrives = testDriveRepository.findAllWithDetails();
         return testDrives.stream().map(this::convertToRes).toList();
     }
 
+    // GET /api/testdrives/page: lọc theo user/dealer/status/xe/nhân viên/category/khoảng ngày, sắp xếp theo (scheduleDate, id)
+    public PagedModel<TestDriveRes> searchTestDrives(TestDriveSearchReq req) {
+        int page = req.getPage() != null ? Math.max(req.getPage(), 0) : 0;
+        int size = req.getSize() != null ? Math.min(Math.max(req.getSize(), 1), MAX_PAGE_SIZE) : 20;
+        Sort.Direction direction = "ASC".equalsIgnoreCase(req.getDirection()) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        if (req.getFrom() != null && req.getTo() != null && !req.getFrom().isBefore(req.getTo())) {
+            throw new IllegalArgumentException("Khoảng thời gian không hợp lệ: from phải trước to");
+        }
+
+        Specification<TestDrive> spec = (root, query, cb) -> cb.conjunction();
+        if (req.getUserId() != null) {
+            spec = spec.and(TestDriveSpecs.hasUser(req.getUserId()));
+        }
+        if (req.getDealerId() != null) {
+            spec = spec.and(TestDriveSpecs.hasDealer(req.getDealerId()));
+        }
+        List<String> statuses = parseStatuses(req.getStatus());
+        if (!statuses.isEmpty()) {
+            spec = spec.and(TestDriveSpecs.hasStatusIn(statuses));
+        }
+        if (req.getProductId() != null) {
+            spec = spec.and(TestDriveSpecs.hasProduct(req.getProductId()));
+        }
+        if (req.getEscortStaffId() != null) {
+            spec = spec.and(TestDriveSpecs.hasEscortStaff(req.getEscortStaffId()));
+        }
+        if (req.getCategoryId() != null) {
+            spec = spec.and(TestDriveSpecs.hasCategory(req.getCategoryId()));
+        }
+        if (req.getFrom() != null) {
+            spec = spec.and(TestDriveSpecs.scheduledFrom(req.getFrom()));
+        }
+        if (req.getTo() != null) {
+            spec = spec.and(TestDriveSpecs.scheduledBefore(req.getTo()));
+        }
+
+        Sort sort = Sort.by(direction, "scheduleDate").and(Sort.by(direction, "id"));
+        return new PagedModel<>(testDriveRepository.findAll(spec, PageRequest.of(page, size, sort))
+                .map(this::convertToRes));
+    }
+
     public TestDriveRes getTestDriveById(int id) {
         TestDrive testDrive = testDriveRepository.findById(id)
             .orElseThrow(() -> new RuntimeException("TestDrive not found with id: " + id));
@@ -68,6 +142,8 @@ public class TestDriveService {
         return testDrives.stream().map(this::convertToRes).toList();
     }
 
+    // Lịch + reminder outbox commit cùng nhau; slot index / feed ICS cập nhật sau commit
+    @Transactional
     public TestDriveRes createTestDrive(TestDriveReq req) {
         // 1️⃣ Validate User exists
         if (req.getUserId() <= 0) {
@@ -100,24 +176,33 @@ public class TestDriveService {
             throw new IllegalArgumentException("Không thể đặt lịch lái thử trong quá khứ");
         }
         
-        // 5️⃣ Check if user already has an active test drive
-        List<TestDrive> activeTestDrives = testDriveRepository.findByUserId(req.getUserId())
-            .stream()
-            .filter(td -> !"DONE".equals(td.getStatus()) && !"REJECTED".equals(td.getStatus()) && !"CANCELLED".equals(td.getStatus()))
-            .toList();
-        if (!activeTestDrives.isEmpty()) {
-            throw new IllegalArgumentException("Bạn chỉ có thể đặt 1 lịch lái thử tại một thời điểm. Vui lòng hoàn thành hoặc hủy lịch hiện tại trước.");
-        }
+        // 5️⃣ Booking policies (số lịch active, số lần / mẫu xe, cooldown) - 1 query aggregate
+        TestDriveBookingStats bookingStats =
+            testDriveBookingPolicyEngine.evaluate(req.getUserId(), req.getCategoryId(), scheduleDateTime);
         
         // 6️⃣ Count completed attempts for this category
-        long completedAttempts = testDriveRepository.findByUserId(req.getUserId())
-            .stream()
-            .filter(td -> "DONE".equals(td.getStatus()) &&
-                    td.getCategory() != null &&
-                    td.getCategory().getId() == req.getCategoryId())
-            .count();
+        long completedAttempts = bookingStats.getCategoryCount("DONE");
         
-        // 7️⃣ Create new TestDrive
+        // 7️⃣ Khách đã giữ chỗ 1 xe cụ thể → gắn luôn xe đó vào lịch
+        Product heldProduct = null;
+        String holdToken = req.getHoldToken() != null && !req.getHoldToken().isBlank() ? req.getHoldToken().trim() : null;
+        if (holdToken != null) {
+            int heldProductId = testDriveSlotHoldService.requireHold(holdToken, req.getUserId(), scheduleDateTime);
+            heldProduct = productRepo.findById(heldProductId)
+                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy xe với ID: " + heldProductId));
+            if (heldProduct.getCategory() == null || heldProduct.getCategory().getId() != category.getId()) {
+                throw new IllegalArgumentException("Xe đã giữ chỗ không thuộc mẫu xe '" + category.getName() + "'");
+            }
+            if (heldProduct.getStatus() != ProductStatus.TEST_DRIVE) {
+                throw new IllegalArgumentException("Xe '" + heldProduct.getName() + "' không có trạng thái 'Lái thử'");
+            }
+            if (!testDriveRepository.findConflictingTestDrives(
+                    heldProductId, scheduleDateTime.minusMinutes(1), scheduleDateTime.plusMinutes(1)).isEmpty()) {
+                throw new IllegalArgumentException("Xe đã được đặt trong khung giờ này, vui lòng chọn giờ khác");
+            }
+        }
+        
+        // 8️⃣ Create new TestDrive
         TestDrive testDrive = new TestDrive();
         testDrive.setUser(user);
         testDrive.setDealer(dealer);
@@ -127,8 +212,19 @@ public class TestDriveService {
         testDrive.setNotes(req.getNotes());
         testDrive.setProductModelName(req.getProductModelName());
         testDrive.setAttemptNumber((int) completedAttempts + 1);
+        if (heldProduct != null) {
+            testDrive.setProduct(heldProduct);
+            testDrive.setSpecificVIN(heldProduct.getVinNum());
+        }
         
         TestDrive savedTestDrive = testDriveRepository.save(testDrive);
+        updateSlotIndex(null, null, null, savedTestDrive);
+        if (holdToken != null) {
+            // Nhả hold sau commit (cùng lúc slot index nhận lịch) - trước đó slot vẫn được hold giữ
+            afterCommit(() -> testDriveSlotHoldService.release(holdToken));
+        }
+        testDriveReminderService.sync(savedTestDrive);
+        touchCalendarFeeds(savedTestDrive);
         
         // Không gửi email ngay - chờ staff xác nhận
         // Email sẽ được gửi khi staff confirm (PENDING → ASSIGNING)
@@ -136,12 +232,21 @@ public class TestDriveService {
         return convertToRes(savedTestDrive);
     }
 
+    @Transactional
     public TestDriveRes updateTestDrive(int id, TestDriveReq req) {
         Optional<TestDrive> testDrive = testDriveRepository.findById(id);
         if (testDrive.isPresent()) {
             String oldStatus = testDrive.get().getStatus();
+            Integer oldProductId = testDrive.get().getProduct() != null ? testDrive.get().getProduct().getId() : null;
+            java.time.LocalDateTime oldScheduleDate = testDrive.get().getScheduleDate();
+            Integer oldUserId = testDrive.get().getUser() != null ? testDrive.get().getUser().getId() : null;
+            Integer oldDealerId = testDrive.get().getDealer() != null ? testDrive.get().getDealer().getId() : null;
             TestDrive testDrive1 = convertToEntity(testDrive.orElse(null), req);
             testDriveRepository.save(testDrive1);
+            updateSlotIndex(oldProductId, oldScheduleDate, oldStatus, testDrive1);
+            testDriveReminderService.sync(testDrive1);
+            testDriveCalendarFeedService.touch(oldUserId, oldDealerId);
+            touchCalendarFeeds(testDrive1);
 
             // Send status update email if status changed
             if (req.getStatus() != null && !req.getStatus().equals(oldStatus)) {
@@ -187,6 +292,7 @@ public class TestDriveService {
         return null;
     }
 
+    @Transactional
     public TestDriveRes assignVehicleAndStaff(int testDriveId, int productId, int escortStaffId) {
         TestDrive testDrive = testDriveRepository.findById(testDriveId)
                 .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy yêu cầu lái thử với ID: " + testDriveId));
@@ -195,6 +301,8 @@ public class TestDriveService {
         if (!("ASSIGNING".equals(testDrive.getStatus()))) {
             throw new IllegalArgumentException("Chỉ có thể phân công xe cho yêu cầu đang ở trạng thái 'Đang chờ phân công'. Vui lòng xác nhận đơn trước.");
         }
+        String oldStatus = testDrive.getStatus();
+        Integer oldProductId = testDrive.getProduct() != null ? testDrive.getProduct().getId() : null;
 
         // Check for conflicting bookings BEFORE assigning product
         // (same product, same time slot ±1 minute, exclude current test drive)
@@ -233,6 +341,11 @@ public class TestDriveService {
                 );
             }
             
+            int customerId = testDrive.getUser() != null ? testDrive.getUser().getId() : 0;
+            if (testDriveSlotHoldService.isHeldByOther(productId, scheduleDateTime, scheduleDateTime, customerId)) {
+                throw new IllegalArgumentException("Xe này đang được khách khác giữ chỗ trong khung giờ này. Vui lòng chọn xe khác.");
+            }
+            
             System.out.println("✅ [CONFLICT CHECK] No conflicts found, proceeding with assignment");
             
             // If no conflict, assign the product
@@ -260,14 +373,11 @@ public class TestDriveService {
             Optional<User> escortStaff = userRepo.findById(escortStaffId);
             if (escortStaff.isPresent()) {
                 // Check if staff is currently busy with another test drive
-                List<TestDrive> staffActiveTestDrives = testDriveRepository.findAll().stream()
-                    .filter(td -> td.getEscortStaff() != null && 
-                                  td.getEscortStaff().getId() == escortStaffId &&
-                                  "IN_PROGRESS".equals(td.getStatus()))
-                    .toList();
+                Optional<TestDrive> staffActiveTestDrive =
+                        testDriveRepository.findFirstByEscortStaff_IdAndStatus(escortStaffId, "IN_PROGRESS");
                 
-                if (!staffActiveTestDrives.isEmpty()) {
-                    TestDrive activeTD = staffActiveTestDrives.get(0);
+                if (staffActiveTestDrive.isPresent()) {
+                    TestDrive activeTD = staffActiveTestDrive.get();
                     String customerName = activeTD.getUser() != null ? activeTD.getUser().getUsername() : "khách hàng";
                     throw new IllegalArgumentException(
                         "Nhân viên " + escortStaff.get().getUsername() + 
@@ -276,6 +386,21 @@ public class TestDriveService {
                     );
                 }
                 
+                // Check if staff already escorts another test drive in the same time window
+                java.time.LocalDateTime scheduleDateTime = testDrive.getScheduleDate();
+                long slotMinutes = testDriveSlotIndex.getSlotMinutes();
+                List<TestDrive> overlapping = testDriveRepository.findEscortConflicts(
+                        escortStaffId, scheduleDateTime.minusMinutes(slotMinutes), scheduleDateTime.plusMinutes(slotMinutes),
+                        ESCORT_ACTIVE_STATUSES, testDriveId);
+                if (!overlapping.isEmpty()) {
+                    java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+                    throw new IllegalArgumentException(
+                        "Nhân viên " + escortStaff.get().getUsername() +
+                        " đã có lịch hộ tống lúc " + overlapping.get(0).getScheduleDate().format(formatter) +
+                        " (đơn #" + overlapping.get(0).getId() + "). Vui lòng chọn nhân viên khác."
+                    );
+                }
+                
                 testDrive.setEscortStaff(escortStaff.get());
                 testDrive.setStatus("APPROVED"); // Auto-approve when assigned
             } else {
@@ -283,6 +408,9 @@ public class TestDriveService {
             }
         }
         TestDrive savedTestDrive = testDriveRepository.save(testDrive);
+        updateSlotIndex(oldProductId, savedTestDrive.getScheduleDate(), oldStatus, savedTestDrive);
+        testDriveReminderService.sync(savedTestDrive);
+        touchCalendarFeeds(savedTestDrive);
 
         // Send assignment email to customer
         try {
@@ -294,13 +422,79 @@ public class TestDriveService {
         return convertToRes(savedTestDrive);
     }
 
+    /**
+     * Nhân viên hộ tống rảnh và ít lịch nhất trong ngày cho khung giờ scheduleDate.
+     * Roster lấy từ cache, lịch của cả đại lý trong ngày lấy bằng 1 query.
+     */
+    public EscortCandidateRes findLeastLoadedEscort(int dealerId, java.time.LocalDateTime scheduleDate) {
+        List<DealerStaffRosterCache.StaffEntry> roster = dealerStaffRosterCache.getActiveStaff(dealerId);
+        if (roster.isEmpty()) {
+            throw new IllegalArgumentException("Đại lý chưa có nhân viên nào đang hoạt động");
+        }
+
+        long slotMinutes = testDriveSlotIndex.getSlotMinutes();
+        java.time.LocalDateTime dayStart = scheduleDate.toLocalDate().atStartOfDay();
+        java.time.LocalDateTime dayEnd = dayStart.plusDays(1);
+        java.time.LocalDateTime windowStart = scheduleDate.minusMinutes(slotMinutes);
+        java.time.LocalDateTime windowEnd = scheduleDate.plusMinutes(slotMinutes);
+        java.time.LocalDateTime from = windowStart.isBefore(dayStart) ? windowStart : dayStart;
+        java.time.LocalDateTime to = windowEnd.isAfter(dayEnd) ? windowEnd : dayEnd;
+
+        List<Integer> staffIds = roster.stream().map(DealerStaffRosterCache.StaffEntry::id).toList();
+        java.util.Map<Integer, Integer> load = new java.util.HashMap<>();
+        java.util.Set<Integer> unavailable = new java.util.HashSet<>(testDriveRepository.findEscortStaffIdsInProgress());
+        for (Object[] row : testDriveRepository.findEscortSchedules(staffIds, from, to, ESCORT_ACTIVE_STATUSES)) {
+            Integer staffId = (Integer) row[0];
+            java.time.LocalDateTime booked = (java.time.LocalDateTime) row[1];
+            if (!booked.isBefore(dayStart) && booked.isBefore(dayEnd)) {
+                load.merge(staffId, 1, Integer::sum);
+            }
+            if (booked.isAfter(windowStart) && booked.isBefore(windowEnd)) {
+                unavailable.add(staffId);
+            }
+        }
+
+        DealerStaffRosterCache.StaffEntry best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (DealerStaffRosterCache.StaffEntry staff : roster) {
+            if (unavailable.contains(staff.id())) {
+                continue;
+            }
+            int staffLoad = load.getOrDefault(staff.id(), 0);
+            if (staffLoad < bestLoad || (staffLoad == bestLoad && staff.id() < best.id())) {
+                best = staff;
+                bestLoad = staffLoad;
+            }
+        }
+        if (best == null) {
+            throw new IllegalArgumentException("Không còn nhân viên nào rảnh trong khung giờ này");
+        }
+        return new EscortCandidateRes(best.id(), best.username(), bestLoad, scheduleDate.toString());
+    }
+
     // Check availability for a specific time
     public AvailabilityCheckRes checkAvailability(
             int productId, java.time.LocalDateTime scheduleDate, int durationHours) {
+        return checkAvailability(productId, scheduleDate, durationHours, null);
+    }
+
+    // userId: khách đang xem - giữ chỗ của chính khách đó không tính là bận
+    public AvailabilityCheckRes checkAvailability(
+            int productId, java.time.LocalDateTime scheduleDate, int durationHours, Integer userId) {
 
         java.time.LocalDateTime startTime = scheduleDate.minusHours(durationHours);
         java.time.LocalDateTime endTime = scheduleDate.plusHours(durationHours);
 
+        // Giữ chỗ tạm của khách khác (chỉ đọc bộ nhớ)
+        if (testDriveSlotHoldService.isHeldByOther(productId, startTime, endTime, userId != null ? userId : 0)) {
+            return new AvailabilityCheckRes(false, "Khung giờ này đang được khách khác giữ chỗ");
+        }
+
+        // Fast path: mọi khung giờ giao với [startTime, endTime] đều trống trong index → khỏi query
+        if (isFreeInSlotIndex(productId, startTime, endTime)) {
+            return new AvailabilityCheckRes(true, "Xe khả dụng cho thời gian này");
+        }
+
         List<TestDrive> conflicts = testDriveRepository.findConflictingTestDrives(
                 productId, startTime, endTime
         );
@@ -337,43 +531,128 @@ public class TestDriveService {
 
         try {
             java.time.LocalDate date = java.time.LocalDate.parse(dateStr);
-            java.time.LocalDateTime dateTime = date.atStartOfDay();
-
-            // Get all test drives for this product on this date
-            List<TestDrive> bookedSlots = testDriveRepository.findByProductAndDate(productId, dateTime);
+            return buildDaySlots(date,
+                    testDriveSlotHoldService.withHeldSlots(productId, date, testDriveSlotIndex.getDay(productId, date)));
+        } catch (Exception e) {
+            return new AvailableSlotsRes(dateStr, new java.util.ArrayList<>());
+        }
+    }
 
-            // Define time slots (8AM - 6PM, 2 hour slots)
-            List<AvailableSlotsRes.TimeSlot> slots = new java.util.ArrayList<>();
+    // Lịch trống nhiều ngày cho tất cả xe lái thử của đại lý (lọc theo mẫu xe nếu có) - 2 query cho cả tuần
+    public TestDriveCalendarRes getAvailabilityCalendar(int dealerId, java.time.LocalDate from, int days, Integer categoryId) {
+        if (days <= 0 || days > MAX_CALENDAR_DAYS) {
+            throw new IllegalArgumentException("Số ngày phải từ 1 đến " + MAX_CALENDAR_DAYS);
+        }
+        List<Product> vehicles = productRepo.findTestDriveProductsByDealerId(dealerId).stream()
+                .filter(p -> categoryId == null || (p.getCategory() != null && p.getCategory().getId() == categoryId))
+                .toList();
+
+        java.util.Map<Integer, java.util.Map<java.time.LocalDate, java.util.BitSet>> occupancy =
+                testDriveSlotIndex.getOccupancy(vehicles.stream().map(Product::getId).toList(), from, days);
+
+        List<TestDriveCalendarRes.VehicleAvailability> vehicleRes = new java.util.ArrayList<>();
+        for (Product vehicle : vehicles) {
+            TestDriveCalendarRes.VehicleAvailability va = new TestDriveCalendarRes.VehicleAvailability();
+            va.setProductId(vehicle.getId());
+            va.setProductName(vehicle.getName());
+            va.setVinNum(vehicle.getVinNum());
+            va.setCategoryId(vehicle.getCategory() != null ? vehicle.getCategory().getId() : null);
+            List<AvailableSlotsRes> dayRes = new java.util.ArrayList<>();
+            for (int d = 0; d < days; d++) {
+                java.time.LocalDate date = from.plusDays(d);
+                dayRes.add(buildDaySlots(date,
+                        testDriveSlotHoldService.withHeldSlots(vehicle.getId(), date, occupancy.get(vehicle.getId()).get(date))));
+            }
+            va.setDays(dayRes);
+            vehicleRes.add(va);
+        }
 
-            for (int hour = 8; hour < 18; hour += 2) {
-                java.time.LocalDateTime slotStart = date.atTime(hour, 0);
-                java.time.LocalDateTime slotEnd = slotStart.plusHours(2);
+        TestDriveCalendarRes res = new TestDriveCalendarRes();
+        res.setDealerId(dealerId);
+        res.setFromDate(from.toString());
+        res.setDays(days);
+        res.setSlotMinutes(testDriveSlotIndex.getSlotMinutes());
+        res.setOpeningTime(testDriveSlotIndex.getOpeningTime().toString());
+        res.setClosingTime(testDriveSlotIndex.getClosingTime().toString());
+        res.setVehicles(vehicleRes);
+        return res;
+    }
 
-                // Check if this slot is booked
-                boolean isBooked = bookedSlots.stream().anyMatch(td -> {
-                    java.time.LocalDateTime tdTime = td.getScheduleDate();
-                    return !tdTime.isBefore(slotStart) && tdTime.isBefore(slotEnd);
-                });
+    private AvailableSlotsRes buildDaySlots(java.time.LocalDate date, java.util.BitSet occupied) {
+        java.time.format.DateTimeFormatter labelFormatter = java.time.format.DateTimeFormatter.ofPattern("HH:mm");
+        List<AvailableSlotsRes.TimeSlot> slots = new java.util.ArrayList<>();
+        for (int slot = 0; slot < testDriveSlotIndex.getSlotCount(); slot++) {
+            java.time.LocalDateTime slotStart = testDriveSlotIndex.slotStart(date, slot);
+            java.time.LocalDateTime slotEnd = slotStart.plusMinutes(testDriveSlotIndex.getSlotMinutes());
+            String label = slotStart.format(labelFormatter) + " - " + slotEnd.format(labelFormatter);
+            slots.add(new AvailableSlotsRes.TimeSlot(
+                    slotStart.toString(),
+                    slotEnd.toString(),
+                    !occupied.get(slot),
+                    label
+            ));
+        }
+        return new AvailableSlotsRes(date.toString(), slots);
+    }
 
-                String label = String.format("%02d:00 - %02d:00", hour, hour + 2);
-                slots.add(new AvailableSlotsRes.TimeSlot(
-                        slotStart.toString(),
-                        slotEnd.toString(),
-                        !isBooked,
-                        label
-                ));
-            }
+    // true nếu [startTime, endTime] nằm trong giờ mở cửa của 1 ngày và không khung giờ nào bị chiếm
+    private boolean isFreeInSlotIndex(int productId, java.time.LocalDateTime startTime, java.time.LocalDateTime endTime) {
+        if (!startTime.toLocalDate().equals(endTime.toLocalDate())) {
+            return false;
+        }
+        int firstSlot = testDriveSlotIndex.slotOf(startTime);
+        int lastSlot = endTime.toLocalTime().equals(testDriveSlotIndex.getClosingTime())
+                ? testDriveSlotIndex.getSlotCount() - 1
+                : testDriveSlotIndex.slotOf(endTime);
+        if (firstSlot < 0 || lastSlot < 0) {
+            return false; // Ngoài giờ mở cửa → index không bao phủ, dùng query
+        }
+        java.util.BitSet occupied = testDriveSlotIndex.getDay(productId, startTime.toLocalDate());
+        int next = occupied.nextSetBit(firstSlot);
+        return next < 0 || next > lastSlot;
+    }
 
-            return new AvailableSlotsRes(dateStr, slots);
+    // Đồng bộ slot index sau khi lịch được commit (rollback thì index giữ nguyên)
+    private void updateSlotIndex(Integer oldProductId, java.time.LocalDateTime oldScheduleDate, String oldStatus, TestDrive saved) {
+        Integer newProductId = saved.getProduct() != null ? saved.getProduct().getId() : null;
+        java.time.LocalDateTime newScheduleDate = saved.getScheduleDate();
+        String newStatus = saved.getStatus();
+        afterCommit(() -> testDriveSlotIndex.move(oldProductId, oldScheduleDate, oldStatus,
+                newProductId, newScheduleDate, newStatus));
+    }
 
-        } catch (Exception e) {
-            return new AvailableSlotsRes(dateStr, new java.util.ArrayList<>());
+    // Chạy action sau khi transaction hiện tại commit (không có transaction → chạy ngay)
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
         }
     }
 
+    // Feed ICS của khách và đại lý cần ETag mới
+    private void touchCalendarFeeds(TestDrive testDrive) {
+        testDriveCalendarFeedService.touch(
+                testDrive.getUser() != null ? testDrive.getUser().getId() : null,
+                testDrive.getDealer() != null ? testDrive.getDealer().getId() : null);
+    }
+
+    @Transactional
     public boolean deleteTestDrive(int id) {
-        if (testDriveRepository.findById(id).isPresent()) {
+        Optional<TestDrive> testDrive = testDriveRepository.findById(id);
+        if (testDrive.isPresent()) {
+            Integer productId = testDrive.get().getProduct() != null ? testDrive.get().getProduct().getId() : null;
+            java.time.LocalDateTime scheduleDate = testDrive.get().getScheduleDate();
+            String status = testDrive.get().getStatus();
             testDriveRepository.deleteById(id);
+            afterCommit(() -> testDriveSlotIndex.move(productId, scheduleDate, status, null, null, null));
+            testDriveReminderService.cancel(id);
+            touchCalendarFeeds(testDrive.get());
             return true;
         }
         return false;
@@ -402,7 +681,7 @@ public class TestDriveService {
         }
 
         // Update user - only if provided (skip if 0 or negative)
-        if (req.getUserId() > 0) {
+        if (req.getUserId() > 0 && !hasRelationId(testDrive.getUser() != null ? testDrive.getUser().getId() : null, req.getUserId())) {
             Optional<User> user = userRepo.findById(req.getUserId());
             if (user.isPresent()) {
                 testDrive.setUser(user.get());
@@ -413,7 +692,7 @@ public class TestDriveService {
         // Don't update if not provided (userId = 0 means skip)
 
         // Update dealer - only if provided (skip if 0 or negative)
-        if (req.getDealerId() > 0) {
+        if (req.getDealerId() > 0 && !hasRelationId(testDrive.getDealer() != null ? testDrive.getDealer().getId() : null, req.getDealerId())) {
             Optional<Dealer> dealer = dealerRepo.findById(req.getDealerId());
             if (dealer.isPresent()) {
                 testDrive.setDealer(dealer.get());
@@ -424,7 +703,7 @@ public class TestDriveService {
         // Don't update if not provided (dealerId = 0 means skip)
 
         // Update category - only if provided (skip if 0 or negative)
-        if (req.getCategoryId() > 0) {
+        if (req.getCategoryId() > 0 && !hasRelationId(testDrive.getCategory() != null ? testDrive.getCategory().getId() : null, req.getCategoryId())) {
             Optional<Category> category = categoryRepository.findById(req.getCategoryId());
             if (category.isPresent()) {
                 testDrive.setCategory(category.get());
@@ -459,7 +738,7 @@ public class TestDriveService {
         }
 
         // Update escort staff if provided
-        if (req.getEscortStaffId() > 0) {
+        if (req.getEscortStaffId() > 0 && !hasRelationId(testDrive.getEscortStaff() != null ? testDrive.getEscortStaff().getId() : null, req.getEscortStaffId())) {
             Optional<User> escortStaff = userRepo.findById(req.getEscortStaffId());
             if (escortStaff.isPresent()) {
                 testDrive.setEscortStaff(escortStaff.get());
@@ -469,6 +748,24 @@ public class TestDriveService {
         return testDrive;
     }
 
+    // "PENDING, assigning" -> [PENDING, ASSIGNING]
+    private List<String> parseStatuses(String status) {
+        if (status == null || status.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(status.split(","))
+                .map(String::trim)
+                .filter(st -> !st.isEmpty())
+                .map(String::toUpperCase)
+                .distinct()
+                .toList();
+    }
+
+    // Quan hệ đã trỏ đúng id thì bỏ qua findById (getId() trên proxy lazy không phát sinh query)
+    private boolean hasRelationId(Integer currentId, int requestedId) {
+        return currentId != null && currentId == requestedId;
+    }
+
     //lambda expression: (parameters) -> expression
     //cần thêm logic VD: user.getId()
     private TestDriveRes convertToRes(TestDrive testDrive) {
@@ -484,27 +781,18 @@ public class TestDriveService {
             if (testDrive.getNotes() != null) {
                 res.setNotes(testDrive.getNotes());
             }
+            // Quan hệ đã được load sẵn (EntityGraph) hoặc lazy-load trong cùng session - không query lại theo id
             if (testDrive.getUser() != null) {
-                Optional<User> user = userRepo.findById(testDrive.getUser().getId());
-                if (user.isPresent()){
-                    UserRes userRes = userService.convertUsertoUserRes(user.get());
-                    res.setUser(userRes);
-                }
+                res.setUser(userService.convertUsertoUserRes(testDrive.getUser()));
             }
             if (testDrive.getDealer() != null) {
-                Optional<Dealer> dealer = dealerRepo.findById(testDrive.getDealer().getId());
-                if (dealer.isPresent()){
-                    DealerRes dealerRes = dealerService.convertDealertoDealerRes(dealer.get());
-                    res.setDealer(dealerRes);
-                    res.setLocation(dealerRes.getAddress());
-                }
+                DealerRes dealerRes = dealerService.convertDealertoDealerRes(testDrive.getDealer());
+                res.setDealer(dealerRes);
+                res.setLocation(dealerRes.getAddress());
             }
             if (testDrive.getProduct() != null) {
-                Optional<Product> product = productRepo.findById(testDrive.getProduct().getId());
-                if (product.isPresent()){
-                    res.setProductId(product.get().getId());
-                    res.setProductName(product.get().getName());
-                }
+                res.setProductId(testDrive.getProduct().getId());
+                res.setProductName(testDrive.getProduct().getName());
             }
             if (testDrive.getProductModelName() != null) {
                 res.setProductModelName(testDrive.getProductModelName());
@@ -514,11 +802,7 @@ public class TestDriveService {
                 res.setCategoryName(testDrive.getCategory().getName());
             }
             if (testDrive.getEscortStaff() != null) {
-                Optional<User> escort = userRepo.findById(testDrive.getEscortStaff().getId());
-                if (escort.isPresent()){
-                    UserRes escortRes = userService.convertUsertoUserRes(escort.get());
-                    res.setEscortStaff(escortRes);
-                }
+                res.setEscortStaff(userService.convertUsertoUserRes(testDrive.getEscortStaff()));
             }
             if (testDrive.getSpecificVIN() != null) {
                 res.setSpecificVIN(testDrive.getSpecificVIN());
@@ -741,8 +1025,6 @@ public class TestDriveService {
             if (!testDrive.isPresent()) {
                 throw new RuntimeException("TestDrive not found with id: " + testDriveId);
             } else {
-
-
                 // Use category name if product not assigned yet
                 String vehicleName = testDrive.get().getProduct() != null
                         ? testDrive.get().getProduct().getName()
@@ -750,77 +1032,21 @@ public class TestDriveService {
 
                 String dealerName = testDrive.get().getDealer() != null ? testDrive.get().getDealer().getName() : "";
                 String dealerAddress = testDrive.get().getDealer() != null ? testDrive.get().getDealer().getAddress() : "";
-                String description = testDrive.get().getNotes() != null ? testDrive.get().getNotes() : "";
-
-                // Format datetime for ICS (yyyyMMdd'T'HHmmss)
-                java.time.format.DateTimeFormatter icsFormatter =
-                        java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
-
-                java.time.LocalDateTime startTime = testDrive.get().getScheduleDate();
-                java.time.LocalDateTime endTime = startTime.plusHours(2); // Default 2 hour duration
-
-                String startTimeStr = startTime.format(icsFormatter);
-                String endTimeStr = endTime.format(icsFormatter);
-
-                // Generate unique ID for the event
-                String uid = "testdrive-" + testDriveId + "@evdm.com";
-
-                // Current timestamp for DTSTAMP
-                String now = java.time.LocalDateTime.now().format(icsFormatter);
-
-                // Build ICS content
-                StringBuilder ics = new StringBuilder();
-                ics.append("BEGIN:VCALENDAR\r\n");
-                ics.append("VERSION:2.0\r\n");
-                ics.append("PRODID:-//EVDM//Test Drive Calendar//EN\r\n");
-                ics.append("CALSCALE:GREGORIAN\r\n");
-                ics.append("METHOD:PUBLISH\r\n");
-                ics.append("X-WR-CALNAME:EVDM Test Drive\r\n");
-                ics.append("X-WR-TIMEZONE:Asia/Ho_Chi_Minh\r\n");
-
-                ics.append("BEGIN:VEVENT\r\n");
-                ics.append("UID:").append(uid).append("\r\n");
-                ics.append("DTSTAMP:").append(now).append("\r\n");
-                ics.append("DTSTART:").append(startTimeStr).append("\r\n");
-                ics.append("DTEND:").append(endTimeStr).append("\r\n");
-                ics.append("SUMMARY:").append(escapeIcsText("Lái thử " + vehicleName)).append("\r\n");
-                ics.append("LOCATION:").append(escapeIcsText(dealerName + ", " + dealerAddress)).append("\r\n");
-
-                // Build description with details
-                StringBuilder desc = new StringBuilder();
-                desc.append("Lái thử xe: ").append(vehicleName).append("\\n");
-                desc.append("Đại lý: ").append(dealerName).append("\\n");
-                desc.append("Địa chỉ: ").append(dealerAddress).append("\\n");
-                if (!description.isEmpty()) {
-                    desc.append("Ghi chú: ").append(description).append("\\n");
-                }
-                desc.append("\\nTrạng thái: ").append(testDrive.get().getStatus());
 
-                ics.append("DESCRIPTION:").append(escapeIcsText(desc.toString())).append("\r\n");
-                ics.append("STATUS:CONFIRMED\r\n");
-                ics.append("SEQUENCE:0\r\n");
-
-                // Add reminder (30 minutes before)
-                ics.append("BEGIN:VALARM\r\n");
-                ics.append("TRIGGER:-PT30M\r\n");
-                ics.append("ACTION:DISPLAY\r\n");
-                ics.append("DESCRIPTION:Nhắc nhở: Lái thử ").append(vehicleName).append(" sau 30 phút nữa\r\n");
-                ics.append("END:VALARM\r\n");
-
-                ics.append("END:VEVENT\r\n");
-                ics.append("END:VCALENDAR\r\n");
+                // Cùng định dạng với feed /api/calendar/**.ics
+                java.io.StringWriter ics = new java.io.StringWriter();
+                try {
+                    TestDriveIcsWriter.writeCalendarStart(ics, "EVDM Test Drive");
+                    TestDriveIcsWriter.writeEvent(ics, testDriveId, testDrive.get().getScheduleDate(),
+                            testDrive.get().getStatus(), testDrive.get().getNotes(), vehicleName, dealerName, dealerAddress,
+                            TestDriveIcsWriter.formatTimestamp(java.time.LocalDateTime.now()));
+                    TestDriveIcsWriter.writeCalendarEnd(ics);
+                } catch (java.io.IOException e) {
+                    throw new RuntimeException("Failed to generate calendar file: " + e.getMessage(), e);
+                }
                 return ics.toString();
             }
         }
         return null;
     }
-
-    private String escapeIcsText(String text) {
-        if (text == null) return "";
-        return text.replace("\\", "\\\\")
-                .replace(",", "\\,")
-                .replace(";", "\\;")
-                .replace("\n", "\\n")
-                .replace("\r", "");
-    }
 }
@@ -0,0 +1,271 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.SlotHoldRes;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveSlotHold;
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveSlotHoldRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Giữ chỗ tạm (xe, khung giờ) trong lúc khách điền form đặt lịch.
+ *
+ * - Bảng giữ chỗ trong bộ nhớ + khóa phân dải (striped lock) theo (xe, khung giờ):
+ *   giữ chỗ trùng bị từ chối ngay, không cần query DB
+ * - Giữ chỗ thành công được ghi xuống testdrive_slot_hold; unique (ProductId, SlotStart) chặn trùng giữa nhiều instance
+ * - Hết hạn sau testdrive.hold.minutes; job định kỳ dọn cả bộ nhớ lẫn DB
+ */
+@Service
+public class TestDriveSlotHoldService {
+
+    @Autowired
+    private TestDriveSlotHoldRepository holdRepository;
+    @Autowired
+    private TestDriveSlotIndex testDriveSlotIndex;
+
+    @Value("${testdrive.hold.minutes:5}")
+    private int holdMinutes;
+    @Value("${testdrive.hold.lock-stripes:64}")
+    private int lockStripes;
+
+    private ReentrantLock[] stripes;
+    private final Map<HoldKey, Hold> holds = new ConcurrentHashMap<>();
+    private final Map<String, Hold> holdsByToken = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        stripes = new ReentrantLock[Math.max(1, lockStripes)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Giữ khung giờ chứa scheduleDate của xe cho khách.
+     * Khách đang giữ đúng khung giờ này → gia hạn và trả lại token cũ.
+     *
+     * @throws IllegalArgumentException dữ liệu không hợp lệ
+     * @throws ConflictException khung giờ đã có lịch hoặc đang được khách khác giữ
+     */
+    public SlotHoldRes hold(int productId, LocalDateTime scheduleDate, int userId) {
+        if (productId <= 0) {
+            throw new IllegalArgumentException("ID xe không hợp lệ");
+        }
+        if (userId <= 0) {
+            throw new IllegalArgumentException("ID người dùng không hợp lệ");
+        }
+        if (scheduleDate == null) {
+            throw new IllegalArgumentException("Vui lòng chọn ngày và giờ lái thử");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (scheduleDate.isBefore(now)) {
+            throw new IllegalArgumentException("Không thể giữ chỗ trong quá khứ");
+        }
+        int slot = testDriveSlotIndex.slotOf(scheduleDate);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Thời gian ngoài giờ mở cửa lái thử (" +
+                    testDriveSlotIndex.getOpeningTime() + " - " + testDriveSlotIndex.getClosingTime() + ")");
+        }
+        LocalDateTime slotStart = testDriveSlotIndex.slotStart(scheduleDate.toLocalDate(), slot);
+        HoldKey key = new HoldKey(productId, slotStart);
+
+        // Khung giờ đã có lịch thật (slot index thường đã nằm sẵn trong bộ nhớ)
+        if (testDriveSlotIndex.getDay(productId, slotStart.toLocalDate()).get(slot)) {
+            throw new ConflictException("Xe đã được đặt trong khung giờ này, vui lòng chọn giờ khác");
+        }
+
+        LocalDateTime expiresAt = now.plusMinutes(holdMinutes);
+        Hold hold;
+        boolean renewed = false;
+        ReentrantLock lock = stripeFor(key);
+        lock.lock();
+        try {
+            Hold current = holds.get(key);
+            if (current != null && current.isActive(now)) {
+                if (current.userId() != userId) {
+                    throw new ConflictException("Khung giờ này đang được khách khác giữ chỗ, vui lòng chọn giờ khác");
+                }
+                hold = new Hold(current.token(), key, userId, expiresAt);
+                renewed = true;
+            } else {
+                if (current != null) {
+                    holdsByToken.remove(current.token());
+                }
+                hold = new Hold(UUID.randomUUID().toString(), key, userId, expiresAt);
+            }
+            holds.put(key, hold);
+            holdsByToken.put(hold.token(), hold);
+        } finally {
+            lock.unlock();
+        }
+
+        // Ghi DB ngoài khóa - unique (ProductId, SlotStart) chặn giữ chỗ trùng từ instance khác
+        try {
+            if (renewed) {
+                holdRepository.extend(hold.token(), expiresAt);
+            } else {
+                holdRepository.deleteExpired(productId, slotStart, now);
+                TestDriveSlotHold entity = new TestDriveSlotHold();
+                entity.setToken(hold.token());
+                entity.setProductId(productId);
+                entity.setSlotStart(slotStart);
+                entity.setUserId(userId);
+                entity.setExpiresAt(expiresAt);
+                entity.setCreatedAt(now);
+                holdRepository.save(entity);
+            }
+        } catch (DataIntegrityViolationException e) {
+            forget(hold);
+            throw new ConflictException("Khung giờ này đang được khách khác giữ chỗ, vui lòng chọn giờ khác");
+        }
+        return new SlotHoldRes(hold.token(), productId, slotStart, expiresAt);
+    }
+
+    /**
+     * Kiểm tra token giữ chỗ còn hiệu lực, thuộc về khách và khớp khung giờ đặt lịch.
+     *
+     * @return ID xe đang được giữ
+     */
+    public int requireHold(String token, int userId, LocalDateTime scheduleDate) {
+        LocalDateTime now = LocalDateTime.now();
+        Hold hold = holdsByToken.get(token);
+        if (hold == null) {
+            // Token do instance khác cấp
+            Optional<TestDriveSlotHold> stored = holdRepository.findByToken(token);
+            if (stored.isPresent()) {
+                TestDriveSlotHold h = stored.get();
+                hold = new Hold(h.getToken(), new HoldKey(h.getProductId(), h.getSlotStart()), h.getUserId(), h.getExpiresAt());
+            }
+        }
+        if (hold == null || !hold.isActive(now)) {
+            throw new IllegalArgumentException("Giữ chỗ đã hết hạn, vui lòng chọn lại khung giờ");
+        }
+        if (hold.userId() != userId) {
+            throw new IllegalArgumentException("Giữ chỗ không thuộc về người dùng này");
+        }
+        int slot = scheduleDate != null ? testDriveSlotIndex.slotOf(scheduleDate) : -1;
+        if (slot < 0 || !testDriveSlotIndex.slotStart(scheduleDate.toLocalDate(), slot).equals(hold.key().slotStart())) {
+            throw new IllegalArgumentException("Thời gian đặt lịch không khớp với khung giờ đã giữ");
+        }
+        return hold.key().productId();
+    }
+
+    // Nhả giữ chỗ (khách hủy form hoặc lịch đã được tạo).
+    // REQUIRES_NEW: TestDriveService gọi trong afterCommit, lúc transaction của lịch đã commit xong
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean release(String token) {
+        Hold hold = holdsByToken.get(token);
+        if (hold != null) {
+            forget(hold);
+        }
+        return holdRepository.deleteByToken(token) > 0 || hold != null;
+    }
+
+    /**
+     * true nếu có khung giờ giao với [from, to] của xe đang được giữ bởi khách khác (chỉ đọc bộ nhớ).
+     */
+    public boolean isHeldByOther(int productId, LocalDateTime from, LocalDateTime to, int userId) {
+        if (holds.isEmpty()) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (LocalDate date = from.toLocalDate(); !date.isAfter(to.toLocalDate()); date = date.plusDays(1)) {
+            for (int slot = 0; slot < testDriveSlotIndex.getSlotCount(); slot++) {
+                LocalDateTime slotStart = testDriveSlotIndex.slotStart(date, slot);
+                LocalDateTime slotEnd = slotStart.plusMinutes(testDriveSlotIndex.getSlotMinutes());
+                if (slotStart.isAfter(to) || !slotEnd.isAfter(from)) {
+                    continue;
+                }
+                Hold hold = holds.get(new HoldKey(productId, slotStart));
+                if (hold != null && hold.isActive(now) && hold.userId() != userId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gộp các khung giờ đang được giữ vào bảng chiếm chỗ của 1 ngày.
+     * Không có giữ chỗ nào → trả lại đúng bitset đầu vào (không copy).
+     */
+    public BitSet withHeldSlots(int productId, LocalDate date, BitSet occupied) {
+        if (holds.isEmpty()) {
+            return occupied;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        BitSet result = occupied;
+        for (int slot = 0; slot < testDriveSlotIndex.getSlotCount(); slot++) {
+            Hold hold = holds.get(new HoldKey(productId, testDriveSlotIndex.slotStart(date, slot)));
+            if (hold != null && hold.isActive(now) && !result.get(slot)) {
+                if (result == occupied) {
+                    result = (BitSet) occupied.clone(); // bitset của slot index dùng chung - không sửa trực tiếp
+                }
+                result.set(slot);
+            }
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${testdrive.hold.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        int evicted = 0;
+        for (Hold hold : holds.values()) {
+            if (!hold.isActive(now) && forget(hold)) {
+                evicted++;
+            }
+        }
+        int deleted = holdRepository.deleteAllExpired(now);
+        if (evicted > 0 || deleted > 0) {
+            System.out.println("🧹 Test drive slot holds: evicted " + evicted + " in memory, " + deleted + " in DB");
+        }
+    }
+
+    // Bỏ giữ chỗ khỏi bộ nhớ nếu (xe, khung giờ) vẫn đang trỏ tới đúng giữ chỗ này
+    private boolean forget(Hold hold) {
+        ReentrantLock lock = stripeFor(hold.key());
+        lock.lock();
+        try {
+            holdsByToken.remove(hold.token(), hold);
+            Hold current = holds.get(hold.key());
+            if (current != null && current.token().equals(hold.token())) {
+                holds.remove(hold.key());
+                holdsByToken.remove(current.token());
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripeFor(HoldKey key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    private record HoldKey(int productId, LocalDateTime slotStart) {}
+
+    private record Hold(String token, HoldKey key, int userId, LocalDateTime expiresAt) {
+        boolean isActive(LocalDateTime now) {
+            return expiresAt.isAfter(now);
+        }
+    }
+}
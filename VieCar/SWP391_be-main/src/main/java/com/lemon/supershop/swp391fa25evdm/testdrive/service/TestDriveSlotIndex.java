@@ -0,0 +1,216 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Bảng chiếm chỗ khung giờ lái thử: mỗi (xe, ngày) là 1 BitSet, bit i = khung giờ thứ i đã có lịch.
+ *
+ * - Load lazy: ngày chưa có trong index được load bằng 1 query cho nhiều xe / nhiều ngày
+ * - Cập nhật khi tạo / sửa / hủy / phân công xe (TestDriveService gọi {@link #move})
+ * - Mỗi ngày chỉ được tin trong testdrive.slot.max-stale-seconds kể từ lúc load
+ *   (lịch đặt từ node khác sẽ thấy sau tối đa chừng đó)
+ * - Độ dài khung giờ và giờ mở cửa cấu hình qua testdrive.slot.* trong application.properties
+ */
+@Component
+public class TestDriveSlotIndex {
+
+    // Các trạng thái còn giữ xe (đồng bộ với findConflictingTestDrives + ASSIGNING)
+    public static final List<String> ACTIVE_STATUSES = List.of("PENDING", "ASSIGNING", "APPROVED", "IN_PROGRESS");
+
+    @Autowired
+    private TestDriveRepository testDriveRepository;
+
+    @Value("${testdrive.slot.minutes:120}")
+    private int slotMinutes;
+    @Value("${testdrive.slot.opening-time:08:00}")
+    private String openingTimeValue;
+    @Value("${testdrive.slot.closing-time:18:00}")
+    private String closingTimeValue;
+    @Value("${testdrive.slot.max-stale-seconds:60}")
+    private long maxStaleSeconds;
+
+    private LocalTime openingTime;
+    private LocalTime closingTime;
+    private int slotCount;
+
+    private final Map<SlotKey, DayEntry> days = new ConcurrentHashMap<>();
+    // Tăng mỗi lần ghi - kết quả load chỉ được cache nếu không có ghi nào xen giữa
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        openingTime = LocalTime.parse(openingTimeValue);
+        closingTime = LocalTime.parse(closingTimeValue);
+        if (slotMinutes <= 0 || !openingTime.isBefore(closingTime)) {
+            throw new IllegalStateException("Cấu hình khung giờ lái thử không hợp lệ: " + openingTime + " - " +
+                                            closingTime + ", " + slotMinutes + " phút");
+        }
+        slotCount = (int) (java.time.Duration.between(openingTime, closingTime).toMinutes() / slotMinutes);
+        System.out.println("🗓️ Test drive slots: " + openingTime + " - " + closingTime + ", " +
+                           slotCount + " x " + slotMinutes + " phút");
+    }
+
+    public static boolean isActive(String status) {
+        return status != null && ACTIVE_STATUSES.contains(status);
+    }
+
+    public int getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public LocalTime getOpeningTime() {
+        return openingTime;
+    }
+
+    public LocalTime getClosingTime() {
+        return closingTime;
+    }
+
+    public LocalDateTime slotStart(LocalDate date, int slot) {
+        return date.atTime(openingTime).plusMinutes((long) slot * slotMinutes);
+    }
+
+    // Khung giờ chứa thời điểm t, -1 nếu ngoài giờ mở cửa
+    public int slotOf(LocalDateTime t) {
+        LocalTime time = t.toLocalTime();
+        if (time.isBefore(openingTime) || !time.isBefore(closingTime)) {
+            return -1;
+        }
+        int slot = (int) (java.time.Duration.between(openingTime, time).toMinutes() / slotMinutes);
+        return slot < slotCount ? slot : -1;
+    }
+
+    /**
+     * Bảng chiếm chỗ của nhiều xe trong [from, from + numDays).
+     * Các (xe, ngày) chưa có trong index được load bằng đúng 1 query.
+     */
+    public Map<Integer, Map<LocalDate, BitSet>> getOccupancy(Collection<Integer> productIds, LocalDate from, int numDays) {
+        Map<Integer, Map<LocalDate, BitSet>> result = new HashMap<>();
+        Set<Integer> missingProducts = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (Integer productId : productIds) {
+            Map<LocalDate, BitSet> perDay = new HashMap<>();
+            for (int d = 0; d < numDays; d++) {
+                LocalDate date = from.plusDays(d);
+                DayEntry entry = days.get(new SlotKey(productId, date));
+                if (entry == null || isStale(entry, now)) {
+                    missingProducts.add(productId);
+                } else {
+                    perDay.put(date, entry.bits());
+                }
+            }
+            result.put(productId, perDay);
+        }
+        if (missingProducts.isEmpty()) {
+            return result;
+        }
+
+        long generation = writeGeneration.get();
+        Map<SlotKey, BitSet> loaded = new HashMap<>();
+        for (Integer productId : missingProducts) {
+            for (int d = 0; d < numDays; d++) {
+                loaded.put(new SlotKey(productId, from.plusDays(d)), new BitSet(slotCount));
+            }
+        }
+        List<Object[]> rows = testDriveRepository.findActiveSchedulesByProductIds(
+                missingProducts, from.atStartOfDay(), from.plusDays(numDays).atStartOfDay(), ACTIVE_STATUSES);
+        for (Object[] row : rows) {
+            LocalDateTime scheduleDate = (LocalDateTime) row[1];
+            int slot = slotOf(scheduleDate);
+            if (slot >= 0) {
+                loaded.get(new SlotKey((Integer) row[0], scheduleDate.toLocalDate())).set(slot);
+            }
+        }
+        // Có ghi xen giữa lúc query → không cache (lần đọc sau sẽ load lại)
+        boolean cacheable = generation == writeGeneration.get();
+        for (Map.Entry<SlotKey, BitSet> entry : loaded.entrySet()) {
+            BitSet bits = cacheable
+                    ? days.compute(entry.getKey(), (k, current) ->
+                            current != null && !isStale(current, now) ? current : new DayEntry(entry.getValue(), now)).bits()
+                    : entry.getValue();
+            Map<LocalDate, BitSet> perDay = result.get(entry.getKey().productId());
+            perDay.putIfAbsent(entry.getKey().date(), bits);
+        }
+        return result;
+    }
+
+    public BitSet getDay(int productId, LocalDate date) {
+        return getOccupancy(List.of(productId), date, 1).get(productId).get(date);
+    }
+
+    /**
+     * Xe / thời gian / trạng thái của 1 lịch thay đổi từ (old*) sang (new*).
+     * Chiếm chỗ mới → set bit; nhả chỗ cũ → bỏ ngày đó khỏi index (có thể còn lịch khác cùng khung giờ).
+     */
+    public void move(Integer oldProductId, LocalDateTime oldDate, String oldStatus,
+                     Integer newProductId, LocalDateTime newDate, String newStatus) {
+        boolean wasActive = oldProductId != null && oldDate != null && isActive(oldStatus);
+        boolean isActive = newProductId != null && newDate != null && isActive(newStatus);
+        if (wasActive && isActive && oldProductId.equals(newProductId) && oldDate.equals(newDate)) {
+            return;
+        }
+        writeGeneration.incrementAndGet();
+        if (wasActive) {
+            days.remove(new SlotKey(oldProductId, oldDate.toLocalDate()));
+        }
+        if (isActive) {
+            int slot = slotOf(newDate);
+            if (slot >= 0) {
+                days.computeIfPresent(new SlotKey(newProductId, newDate.toLocalDate()), (k, entry) -> {
+                    BitSet copy = (BitSet) entry.bits().clone(); // copy-on-write: reader đang giữ bitset cũ không bị ảnh hưởng
+                    copy.set(slot);
+                    return new DayEntry(copy, entry.loadedAt());
+                });
+            }
+        }
+    }
+
+    // Bỏ các ngày đã qua khỏi index
+    @Scheduled(cron = "0 5 0 * * *")
+    public void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        int before = days.size();
+        days.keySet().removeIf(key -> key.date().isBefore(today));
+        System.out.println("🧹 Test drive slot index: evicted " + (before - days.size()) + " past days");
+    }
+
+    // Bỏ các ngày quá hạn tin cậy (không ai đọc lại) để index không phình theo số xe x số ngày đã xem
+    @Scheduled(fixedDelayString = "${testdrive.slot.evict-interval-ms:300000}")
+    public void evictStaleDays() {
+        long now = System.currentTimeMillis();
+        days.values().removeIf(entry -> isStale(entry, now));
+    }
+
+    private boolean isStale(DayEntry entry, long now) {
+        return now - entry.loadedAt() >= maxStaleSeconds * 1000;
+    }
+
+    private record SlotKey(int productId, LocalDate date) {}
+
+    // loadedAt: thời điểm load từ DB - cập nhật cục bộ qua move() không làm mới
+    private record DayEntry(BitSet bits, long loadedAt) {}
+}
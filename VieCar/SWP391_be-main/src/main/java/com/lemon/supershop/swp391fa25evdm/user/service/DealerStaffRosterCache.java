@@ -0,0 +1,56 @@
+package com.lemon.supershop.swp391fa25evdm.user.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.lemon.supershop.swp391fa25evdm.user.model.enums.UserStatus;
+import com.lemon.supershop.swp391fa25evdm.user.repository.UserRepo;
+
+/**
+ * Cache danh sách nhân viên (Dealer Staff) đang hoạt động của từng đại lý.
+ *
+ * - Bị xóa khi user thay đổi (UserService / AuthenService gọi invalidate)
+ * - TTL làm lưới an toàn cho các đường ghi không đi qua service
+ */
+@Component
+public class DealerStaffRosterCache {
+
+    public static final String STAFF_ROLE = "Dealer Staff";
+    private static final long TTL_MILLIS = 10 * 60 * 1000L;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    private final Map<Integer, Roster> rosters = new ConcurrentHashMap<>();
+
+    public List<StaffEntry> getActiveStaff(int dealerId) {
+        Roster roster = rosters.get(dealerId);
+        if (roster == null || System.currentTimeMillis() - roster.loadedAt() > TTL_MILLIS) {
+            List<StaffEntry> staff = userRepo.findByRole_NameAndDealer_Id(STAFF_ROLE, dealerId).stream()
+                    .filter(u -> u.getStatus() == UserStatus.ACTIVE && !u.isBlack())
+                    .map(u -> new StaffEntry(u.getId(), u.getUsername()))
+                    .toList();
+            roster = new Roster(staff, System.currentTimeMillis());
+            rosters.put(dealerId, roster);
+        }
+        return roster.staff();
+    }
+
+    public void invalidate(Integer dealerId) {
+        if (dealerId != null) {
+            rosters.remove(dealerId);
+        }
+    }
+
+    public void invalidateAll() {
+        rosters.clear();
+    }
+
+    public record StaffEntry(int id, String username) {}
+
+    private record Roster(List<StaffEntry> staff, long loadedAt) {}
+}
@@ -28,6 +28,9 @@ public class UserService {
     @Autowired
     private DealerRepo dealerRepo;
 
+    @Autowired
+    private DealerStaffRosterCache dealerStaffRosterCache;
+
     private static final Pattern EMAIL_PATTERN =
             Pattern.compile("^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,6}$", Pattern.CASE_INSENSITIVE);
 
@@ -89,6 +92,7 @@ public class UserService {
     public UserRes updateProfile(int id, UserReq dto){
         Optional<User> user = userRepo.findById(id);
         if(user.isPresent()){
+            Integer oldDealerId = user.get().getDealer() != null ? user.get().getDealer().getId() : null;
             // Update username
             if(dto.getUsername() != null && !dto.getUsername().isEmpty()){
                 user.get().setUsername(dto.getUsername());
@@ -156,6 +160,9 @@ public class UserService {
             }
             
             User savedUser = userRepo.save(user.get());
+            // Role / dealer / status có thể đổi → roster của cả dealer cũ và mới không còn đúng
+            dealerStaffRosterCache.invalidate(oldDealerId);
+            dealerStaffRosterCache.invalidate(savedUser.getDealer() != null ? savedUser.getDealer().getId() : null);
             UserRes userRes = convertUsertoUserRes(savedUser);
             
             // GOOGLE USER NOTIFICATION: Nếu vừa set password (Google user hoàn tất profile),
@@ -178,6 +185,7 @@ public class UserService {
             user.get().setBlack(true);
         }
         userRepo.save(user.get());
+        dealerStaffRosterCache.invalidate(user.get().getDealer() != null ? user.get().getDealer().getId() : null);
     }
 
     public boolean removeUser(int id) {
@@ -185,6 +193,7 @@ public class UserService {
         if(user.isPresent()){
             user.get().setStatus(UserStatus.INACTIVE);
             userRepo.save(user.get());
+            dealerStaffRosterCache.invalidate(user.get().getDealer() != null ? user.get().getDealer().getId() : null);
             return true;
         }
         return false;
@@ -195,6 +204,7 @@ public class UserService {
         Optional<User> userOpt = userRepo.findById(userId);
         if (userOpt.isPresent()) {
             User user = userOpt.get();
+            dealerStaffRosterCache.invalidate(user.getDealer() != null ? user.getDealer().getId() : null);
             
             if (dealerId == null) {
                 // Xóa dealer
@@ -210,6 +220,7 @@ public class UserService {
             }
             
             userRepo.save(user);
+            dealerStaffRosterCache.invalidate(dealerId);
             return convertUsertoUserRes(user);
         } else {
             throw new RuntimeException("User not found with id: " + userId);
@@ -24,11 +24,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
 import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
 import com.lemon.supershop.swp391fa25evdm.order.repository.OrderRepo;
+import com.lemon.supershop.swp391fa25evdm.order.service.OrderStatusChange;
+import com.lemon.supershop.swp391fa25evdm.order.service.OrderStatusMachine;
 import com.lemon.supershop.swp391fa25evdm.payment.model.entity.Payment;
 import com.lemon.supershop.swp391fa25evdm.payment.model.enums.PaymentStatus;
 import com.lemon.supershop.swp391fa25evdm.payment.repository.PaymentRepo;
+import com.lemon.supershop.swp391fa25evdm.product.service.InventoryReservationService;
 import com.lemon.supershop.swp391fa25evdm.vnpay.model.dto.response.VnpayRes;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -59,6 +64,12 @@ public class VnpayService {
     @Autowired
     private PaymentRepo paymentRepo;
 
+    @Autowired
+    private OrderStatusMachine orderStatusMachine;
+
+    @Autowired
+    private InventoryReservationService inventoryReservationService;
+
     /**
      * Mã website của merchant (được VNPay cấp)
      * VD: VLOICMA9
@@ -109,6 +120,13 @@ public class VnpayService {
     @Value("${vnpay.api_url:https://sandbox.vnpayment.vn/merchant_webapi/api/transaction}")
     private String apiUrl;
 
+    /**
+     * Thời gian sống của link thanh toán (vnp_ExpireDate), tính bằng phút
+     * Xe của đơn được giữ ít nhất hết khoảng này khi tạo link đặt cọc
+     */
+    @Value("${vnpay.expire_minutes:15}")
+    private int expireMinutes;
+
     // ============================================
     // MAIN BUSINESS METHODS
     // ============================================
@@ -154,6 +172,13 @@ public class VnpayService {
                 orderInfo = "Thanh toan 70% - " + order.getProduct().getName();
             }
         } else {
+            // Giữ xe cho đơn tới hết phiên thanh toán - xe đã về đơn khác thì không cho đặt cọc
+            try {
+                inventoryReservationService.holdForPayment(order);
+            } catch (ConflictException e) {
+                throw new Exception(e.getMessage());
+            }
+
             // Thanh toán đặt cọc 30% (mặc định)
             paymentAmount = (long) (order.getTotal() * 0.3);
             orderInfo = "Dat coc 30% don hang";
@@ -273,8 +298,8 @@ public class VnpayService {
         String vnpCreateDate = formatter.format(calendar.getTime());
         vnpParams.put("vnp_CreateDate", vnpCreateDate);
 
-        // Thời gian hết hạn (15 phút sau)
-        calendar.add(Calendar.MINUTE, 15);
+        // Thời gian hết hạn (vnpay.expire_minutes, mặc định 15 phút)
+        calendar.add(Calendar.MINUTE, expireMinutes);
         String vnpExpireDate = formatter.format(calendar.getTime());
         vnpParams.put("vnp_ExpireDate", vnpExpireDate);
 
@@ -450,16 +475,32 @@ public class VnpayService {
             payment.setUpdateAt(new Date());
             payment.setProviderResponse(providerResponse);
 
-            // 🔄 Cập nhật Order status sang "Đã đặt cọc" và set ngày đặt hàng
+            // 🔄 Cập nhật Order status sang "Đã đặt cọc" (chỉ khi bước chuyển hợp lệ - thanh toán 70% không kéo lùi trạng thái)
             Order order = payment.getOrder();
             if (order != null) {
-                order.setStatus("Đã đặt cọc");
+                OrderStatusChange statusChange = null;
+                if (order.getStatus() == null || order.getStatus().canTransitionTo(OrderStatus.DEPOSIT_PAID)) {
+                    statusChange = orderStatusMachine.apply(order, OrderStatus.DEPOSIT_PAID, null, null);
+                    try {
+                        orderStatusMachine.prepare(statusChange);
+                    } catch (ConflictException e) {
+                        // Tiền đã nhận nhưng xe đã về đơn khác: vẫn ghi nhận thanh toán, giữ nguyên trạng thái đơn
+                        order.setStatus(statusChange.from());
+                        statusChange = null;
+                        System.err.println("⚠️ Payment received but vehicle is no longer held for order " + orderId +
+                                           " - cần hoàn tiền cho khách: " + e.getMessage());
+                    }
+                }
                 // Set ngày đặt hàng nếu chưa có
                 if (order.getOrderDate() == null) {
                     order.setOrderDate(new Date());
                 }
+                if (order.getStatus() == OrderStatus.CANCELLED) {
+                    System.err.println("⚠️ Payment received for cancelled order " + orderId + " - cần hoàn tiền cho khách");
+                }
                 orderRepo.save(order);
-                System.out.println("✅ Order status updated to 'Đã đặt cọc': Order " + orderId);
+                orderStatusMachine.fire(statusChange);
+                System.out.println("✅ Order status: " + order.getStatus().getLabel() + " (Order " + orderId + ")");
             }
 
             System.out.println("✅ Payment successful: Order " + orderId + " (TxnRef: " + vnpTxnRef + ")");
@@ -0,0 +1,153 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionCompletionReq;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionReceivedItemReq;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionItem;
+import com.lemon.supershop.swp391fa25evdm.distribution.repository.DistributionRepo;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.service.VehicleCodeAllocator;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Đo DistributionIntakeService.receiveItems với 10 / 100 / 1000 xe nhận về:
+ * số statement + thời gian được ghi qua TestReporter (xem target/surefire-reports).
+ * Số statement phải tăng theo số lô insert (BATCH_SIZE), không theo số xe.
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ DistributionIntakeService.class, VehicleCodeAllocator.class })
+class DistributionIntakeBenchmarkTest {
+
+    @Autowired
+    private DistributionIntakeService distributionIntakeService;
+
+    @Autowired
+    private DistributionRepo distributionRepo;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createCodeSequence() {
+        // DatabaseInitializer tạo sequence này trên SQL Server; slice test phải tự tạo
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS vehicle_code_seq AS BIGINT START WITH 1 INCREMENT BY "
+                             + VehicleCodeAllocator.BLOCK_SIZE);
+    }
+
+    @ParameterizedTest(name = "{0} receipts")
+    @ValueSource(ints = { 10, 100, 1000 })
+    void receiveItems(int receipts, TestReporter reporter) {
+        Distribution distribution = persistDistribution(receipts);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long startedAt = System.nanoTime();
+
+        int received = distributionIntakeService.receiveItems(distribution, completion(distribution));
+
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+        long statements = statistics.getPrepareStatementCount();
+        reporter.publishEntry("receipts", String.valueOf(receipts));
+        reporter.publishEntry("statements", String.valueOf(statements));
+        reporter.publishEntry("elapsedMs", String.valueOf(elapsedMs));
+        System.out.println("📊 Intake " + receipts + " receipts: " + statements + " statements, " + elapsedMs + " ms");
+
+        assertThat(received).isEqualTo(receipts);
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(receipts);
+        Long stocked = entityManager.getEntityManager()
+                .createQuery("SELECT COUNT(p) FROM Product p WHERE p.distribution.id = :id", Long.class)
+                .setParameter("id", distribution.getId())
+                .getSingleResult();
+        assertThat(stocked).isEqualTo(receipts);
+
+        // Mỗi lô: 1 lần lấy product_seq + 1 JDBC batch insert; cộng category, product mẫu và 1 block mã VIN/ENG
+        int batches = (receipts + DistributionIntakeService.BATCH_SIZE - 1) / DistributionIntakeService.BATCH_SIZE;
+        assertThat(statements)
+                .as("statements for %d receipts", receipts)
+                .isLessThanOrEqualTo(2L * batches + 4);
+    }
+
+    // 1 dòng đặt theo xe mẫu + 1 dòng đặt theo categoryId, chia đôi số xe nhận
+    private Distribution persistDistribution(int receipts) {
+        Category category = new Category();
+        category.setName("VF 6");
+        category.setBasePrice(675_000_000L);
+        entityManager.persist(category);
+
+        Product template = new Product();
+        template.setName("VF 6 Plus");
+        template.setVinNum("VIN-TEMPLATE-" + receipts);
+        template.setEngineNum("ENG-TEMPLATE-" + receipts);
+        template.setCategory(category);
+        entityManager.persist(template);
+
+        Dealer dealer = new Dealer();
+        dealer.setName("Showroom Thủ Đức");
+        entityManager.persist(dealer);
+
+        Distribution distribution = new Distribution();
+        distribution.setDealer(dealer);
+        distribution.setManufacturerPrice(650_000_000d);
+        entityManager.persist(distribution);
+
+        DistributionItem byProduct = new DistributionItem();
+        byProduct.setDistribution(distribution);
+        byProduct.setProduct(template);
+        byProduct.setQuantity(receipts / 2);
+        entityManager.persist(byProduct);
+
+        DistributionItem byCategory = new DistributionItem();
+        byCategory.setDistribution(distribution);
+        byCategory.setCategoryId(category.getId());
+        byCategory.setQuantity(receipts - receipts / 2);
+        byCategory.setDealerPrice(BigDecimal.valueOf(640_000_000L));
+        entityManager.persist(byCategory);
+
+        entityManager.flush();
+        entityManager.clear();
+        Distribution loaded = distributionRepo.findById(distribution.getId()).orElseThrow();
+        loaded.getItems().size();
+        return loaded;
+    }
+
+    private DistributionCompletionReq completion(Distribution distribution) {
+        DistributionCompletionReq req = new DistributionCompletionReq();
+        req.setItems(distribution.getItems().stream().map(item -> {
+            DistributionReceivedItemReq received = new DistributionReceivedItemReq();
+            received.setDistributionItemId(item.getId());
+            received.setReceivedQuantity(item.getQuantity());
+            return received;
+        }).toList());
+        return req;
+    }
+}
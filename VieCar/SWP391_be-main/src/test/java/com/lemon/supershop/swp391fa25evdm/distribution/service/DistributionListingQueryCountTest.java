@@ -0,0 +1,132 @@
+package com.lemon.supershop.swp391fa25evdm.distribution.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.DealerCategory;
+import com.lemon.supershop.swp391fa25evdm.category.service.CategoryService;
+import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionItemRes;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.dto.DistributionRes;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.Distribution;
+import com.lemon.supershop.swp391fa25evdm.distribution.model.entity.DistributionItem;
+import com.lemon.supershop.swp391fa25evdm.distribution.repository.DistributionRepo;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.service.DealerStockCounter;
+import com.lemon.supershop.swp391fa25evdm.product.service.ProductService;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Trang danh sách distribution (DistributionService.getAllDistributions): findAllWithItems + DistributionAssembler.
+ * Mỗi distribution có 1 item đặt theo xe (category + dealerCategory của xe qua ProductService.convertToRes)
+ * và 1 item đặt theo categoryId (category load 1 lần cho cả trang).
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ DistributionAssembler.class, ProductService.class, CategoryService.class, DealerStockCounter.class })
+class DistributionListingQueryCountTest {
+
+    private static final int DISTRIBUTIONS = 500;
+    private static final int DEALERS = 20;
+    private static final int CATEGORIES = 10;
+
+    @Autowired
+    private DistributionRepo distributionRepo;
+
+    @Autowired
+    private DistributionAssembler distributionAssembler;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void listingStatementCountDoesNotGrowPerRow() {
+        List<Category> categories = new ArrayList<>();
+        for (int c = 0; c < CATEGORIES; c++) {
+            Category category = new Category();
+            category.setName("VF" + c);
+            categories.add(entityManager.persist(category));
+        }
+        List<DealerCategory> dealerCategories = new ArrayList<>();
+        for (int d = 0; d < DEALERS; d++) {
+            Dealer dealer = new Dealer();
+            dealer.setName("Dealer " + d);
+            entityManager.persist(dealer);
+
+            DealerCategory dealerCategory = new DealerCategory();
+            dealerCategory.setName("Kho VF" + (d % CATEGORIES));
+            dealerCategory.setDealer(dealer);
+            dealerCategory.setCategory(categories.get(d % CATEGORIES));
+            dealerCategories.add(entityManager.persist(dealerCategory));
+        }
+
+        for (int i = 0; i < DISTRIBUTIONS; i++) {
+            DealerCategory dealerCategory = dealerCategories.get(i % DEALERS);
+
+            Distribution distribution = new Distribution();
+            distribution.setDealer(dealerCategory.getDealer());
+            entityManager.persist(distribution);
+
+            Product product = new Product();
+            product.setName("Xe " + i);
+            product.setVinNum("VIN" + i);
+            product.setEngineNum("ENG" + i);
+            product.setCategory(dealerCategory.getCategory());
+            product.setDealerCategory(dealerCategory);
+            entityManager.persist(product);
+
+            DistributionItem byProduct = new DistributionItem();
+            byProduct.setDistribution(distribution);
+            byProduct.setProduct(product);
+            byProduct.setQuantity(1);
+            entityManager.persist(byProduct);
+
+            DistributionItem byCategory = new DistributionItem();
+            byCategory.setDistribution(distribution);
+            byCategory.setCategoryId(categories.get(i % CATEGORIES).getId());
+            byCategory.setQuantity(2);
+            entityManager.persist(byCategory);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<DistributionRes> listing = distributionAssembler.toRes(distributionRepo.findAllWithItems());
+
+        assertThat(listing).hasSize(DISTRIBUTIONS);
+        assertThat(listing).allSatisfy(res -> {
+            assertThat(res.getItems()).hasSize(2);
+            for (DistributionItemRes item : res.getItems()) {
+                if (item.getProduct() != null) {
+                    assertThat(item.getProduct().getCategoryId()).isPositive();
+                    assertThat(item.getProduct().getDealerId()).isPositive();
+                } else {
+                    assertThat(item.getCategory()).isNotNull();
+                }
+            }
+        });
+        assertThat(statistics.getPrepareStatementCount())
+                .as("statements for a %d-distribution listing", DISTRIBUTIONS)
+                .isLessThanOrEqualTo(10);
+    }
+}
@@ -0,0 +1,211 @@
+package com.lemon.supershop.swp391fa25evdm.email.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.mail.MailSenderAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.lemon.supershop.swp391fa25evdm.email.model.entity.EmailOutbox;
+import com.lemon.supershop.swp391fa25evdm.email.repository.EmailOutboxRepository;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailOutboxService;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailRateLimiter;
+import com.lemon.supershop.swp391fa25evdm.email.service.SmtpTransportPool;
+
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Outbox email end-to-end: EmailOutboxService → EmailOutboxDispatcher → SMTP (GreenMail).
+ *
+ * claimDue thật dùng cú pháp riêng của SQL Server (UPDLOCK / READPAST / UPDATE qua CTE) nên không chạy được trên H2;
+ * test thay bằng 1 câu UPDATE tương đương (không có phần khóa) - phần còn lại của luồng là code thật.
+ */
+@DataJpaTest(properties = {
+        "spring.mail.host=localhost",
+        "spring.mail.port=3025",
+        "spring.mail.username=outbox",
+        "spring.mail.password=secret",
+        "spring.mail.properties.mail.smtp.starttls.enable=false",
+        "spring.mail.properties.mail.smtp.starttls.required=false",
+        // GreenMail khởi động lại mỗi test → kết nối SMTP trong pool phải được kiểm tra mỗi lần mượn
+        "app.email.smtp.validate-after-idle-ms=0",
+        "app.email.from=noreply@viecar.test",
+        "app.email.from-name=VieCar",
+        "app.email.outbox.max-attempts=3",
+        "app.email.outbox.backoff-seconds=60",
+        "app.email.outbox.max-backoff-seconds=3600",
+        // Không để lượt poll định kỳ chen vào giữa các bước của test
+        "app.email.outbox.initial-delay-ms=3600000",
+        "app.email.outbox.poll-interval-ms=3600000"
+})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportAutoConfiguration(MailSenderAutoConfiguration.class)
+@Import({ EmailOutboxService.class, EmailOutboxDispatcher.class, SmtpTransportPool.class, EmailRateLimiter.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailOutboxDispatcherTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+            .withConfiguration(GreenMailConfiguration.aConfig().withUser("outbox", "secret"));
+
+    @MockitoSpyBean
+    private EmailOutboxRepository outboxRepository;
+
+    @Autowired
+    private EmailOutboxService outboxService;
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void stubClaimDue() {
+        doAnswer(invocation -> jdbcTemplate.update(
+                "UPDATE email_outbox SET status = 'SENDING', lease_owner = ?, lease_token = ?, " +
+                "lease_until = ?, attempts = attempts + 1 WHERE id IN (" +
+                "SELECT id FROM email_outbox " +
+                "WHERE (status = 'PENDING' AND next_attempt_at <= ?) OR (status = 'SENDING' AND lease_until < ?) " +
+                "ORDER BY next_attempt_at OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY)",
+                invocation.getArgument(1, String.class),
+                invocation.getArgument(0, String.class),
+                Timestamp.valueOf(invocation.getArgument(3, LocalDateTime.class)),
+                Timestamp.valueOf(invocation.getArgument(2, LocalDateTime.class)),
+                Timestamp.valueOf(invocation.getArgument(2, LocalDateTime.class)),
+                invocation.getArgument(4, Integer.class)))
+                .when(outboxRepository).claimDue(anyString(), anyString(), any(), any(), anyInt());
+    }
+
+    @AfterEach
+    void clearOutbox() {
+        outboxRepository.deleteAll();
+    }
+
+    @Test
+    void rolledBackEnqueueIsNeverSent() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxService.enqueue("rollback@viecar.test", "Rolled back", "<p>Không được gửi</p>", true);
+            status.setRollbackOnly();
+        });
+        // Email commit sau đó làm mốc: khi nó tới nơi thì dispatcher đã chạy qua outbox
+        transactionTemplate.executeWithoutResult(status ->
+                outboxService.enqueue("marker@viecar.test", "Committed", "<p>Được gửi</p>", true));
+
+        assertThat(greenMail.waitForIncomingEmail(TIMEOUT.toMillis(), 1)).isTrue();
+        dispatcher.wakeUp();
+        waitUntil(() -> outboxService.countByStatus("SENT") == 1);
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(1);
+        assertThat(received[0].getSubject()).isEqualTo("Committed");
+        assertThat(outboxRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void committedEnqueueIsDeliveredAndMarkedSent() throws Exception {
+        long id = transactionTemplate.execute(status ->
+                outboxService.enqueue("customer@viecar.test", "Xác nhận lái thử", "<p>Hẹn gặp bạn</p>", true));
+
+        assertThat(greenMail.waitForIncomingEmail(TIMEOUT.toMillis(), 1)).isTrue();
+        MimeMessage message = greenMail.getReceivedMessages()[0];
+        assertThat(message.getSubject()).isEqualTo("Xác nhận lái thử");
+        assertThat(message.getAllRecipients()[0].toString()).isEqualTo("customer@viecar.test");
+
+        waitUntil(() -> "SENT".equals(find(id).getStatus()));
+        EmailOutbox sent = find(id);
+        assertThat(sent.getAttempts()).isEqualTo(1);
+        assertThat(sent.getSentAt()).isNotNull();
+        assertThat(sent.getLeaseToken()).isNull();
+    }
+
+    @Test
+    void failedDeliveryBacksOffThenGoesDead() {
+        greenMail.stop();
+        long id = transactionTemplate.execute(status ->
+                outboxService.enqueue("down@viecar.test", "SMTP down", "Không gửi được", false));
+
+        // Lần 1, 2: lỗi → PENDING, lần thử kế tiếp lùi 60s rồi 120s
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            int expectedAttempts = attempt;
+            if (attempt > 1) {
+                makeDue(id);
+                dispatcher.wakeUp();
+            }
+            waitUntil(() -> find(id).getAttempts() == expectedAttempts && "PENDING".equals(find(id).getStatus()));
+
+            EmailOutbox failed = find(id);
+            long backoff = 60L << (attempt - 1);
+            assertThat(failed.getLastError()).isNotBlank();
+            assertThat(failed.getLeaseToken()).isNull();
+            assertThat(failed.getNextAttemptAt())
+                    .isAfter(LocalDateTime.now().plusSeconds(backoff - 10))
+                    .isBefore(LocalDateTime.now().plusSeconds(backoff + 1));
+        }
+
+        // Email chưa đến hạn thì không bị nhận lại
+        assertThat(outboxService.claimDue("test", 10, 60)).isEmpty();
+        assertThat(find(id).getAttempts()).isEqualTo(2);
+
+        // Lần 3 = max-attempts → DEAD
+        makeDue(id);
+        dispatcher.wakeUp();
+        waitUntil(() -> "DEAD".equals(find(id).getStatus()));
+        assertThat(find(id).getAttempts()).isEqualTo(3);
+        assertThat(outboxService.getDeadLetters(10)).extracting(EmailOutbox::getId).containsExactly(id);
+    }
+
+    private EmailOutbox find(long id) {
+        return outboxRepository.findById(id).orElseThrow();
+    }
+
+    // Bỏ qua thời gian backoff còn lại
+    private void makeDue(long id) {
+        jdbcTemplate.update("UPDATE email_outbox SET next_attempt_at = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), id);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met within %s", TIMEOUT).isLessThan(deadline);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
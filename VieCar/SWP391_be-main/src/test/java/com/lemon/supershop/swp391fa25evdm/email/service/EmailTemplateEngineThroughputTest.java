@@ -0,0 +1,125 @@
+package com.lemon.supershop.swp391fa25evdm.email.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Throughput render của EmailTemplateEngine với template testdrive-reminder.html thật:
+ * template được biên dịch 1 lần rồi render song song từ nhiều thread (như dispatcher outbox).
+ */
+class EmailTemplateEngineThroughputTest {
+
+    private static final String TEMPLATE = "testdrive-reminder.html";
+    private static final int THREADS = 4;
+    private static final int RENDERS_PER_THREAD = 25_000;
+    private static final int UNCACHED_RENDERS = 2_000;
+
+    private EmailTemplateEngine templateEngine;
+
+    @BeforeEach
+    void setUp() {
+        templateEngine = new EmailTemplateEngine();
+        ReflectionTestUtils.setField(templateEngine, "defaultLanguage", "vi");
+    }
+
+    @Test
+    void templateIsCompiledOncePerNameAndLanguage() {
+        CompiledEmailTemplate vi = templateEngine.getTemplate(TEMPLATE, null);
+
+        assertThat(templateEngine.getTemplate(TEMPLATE, Locale.forLanguageTag("vi"))).isSameAs(vi);
+        assertThat(templateEngine.getTemplate(TEMPLATE, Locale.ENGLISH)).isNotSameAs(vi);
+
+        templateEngine.clearCache();
+        assertThat(templateEngine.getTemplate(TEMPLATE, null)).isNotSameAs(vi);
+    }
+
+    @Test
+    void concurrentRenderThroughput(TestReporter reporter) throws Exception {
+        // Khởi động JIT trước khi đo
+        for (int i = 0; i < 5_000; i++) {
+            templateEngine.render(TEMPLATE, model(i));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    int chars = 0;
+                    for (int i = 0; i < RENDERS_PER_THREAD; i++) {
+                        String html = templateEngine.render(TEMPLATE, model(thread * RENDERS_PER_THREAD + i));
+                        chars += html.length();
+                    }
+                    return chars;
+                }));
+            }
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<Integer> worker : workers) {
+                assertThat(worker.get()).isPositive();
+            }
+            long cachedNanos = System.nanoTime() - startedAt;
+
+            // Cùng template nhưng đọc + biên dịch lại mỗi lần (cách làm trước khi có cache)
+            startedAt = System.nanoTime();
+            for (int i = 0; i < UNCACHED_RENDERS; i++) {
+                templateEngine.clearCache();
+                templateEngine.render(TEMPLATE, model(i));
+            }
+            long uncachedNanos = System.nanoTime() - startedAt;
+
+            int renders = THREADS * RENDERS_PER_THREAD;
+            long cachedPerMs = renders * 1_000_000L / Math.max(1, cachedNanos);
+            long uncachedPerMs = UNCACHED_RENDERS * 1_000_000L / Math.max(1, uncachedNanos);
+            reporter.publishEntry("cachedRendersPerMs", String.valueOf(cachedPerMs));
+            reporter.publishEntry("uncachedRendersPerMs", String.valueOf(uncachedPerMs));
+            System.out.println("📊 EmailTemplateEngine: " + renders + " renders / " + THREADS + " threads, "
+                               + cachedPerMs + " renders/ms cached vs " + uncachedPerMs + " renders/ms reloading");
+
+            assertThat(cachedPerMs).isGreaterThan(uncachedPerMs);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void renderEscapesValuesAndFillsEveryVariable() {
+        Map<String, Object> model = model(1);
+        model.put("customerName", "Nguyễn <Văn> A & B");
+
+        String html = templateEngine.render(TEMPLATE, model);
+
+        assertThat(html).contains("Nguyễn &lt;Văn&gt; A &amp; B").doesNotContain("{{");
+        assertThat(templateEngine.getTemplate(TEMPLATE, null).getVariables())
+                .allSatisfy(variable -> assertThat(model).containsKey(variable));
+    }
+
+    private static Map<String, Object> model(int i) {
+        Map<String, Object> model = new HashMap<>();
+        model.put("customerName", "Khách hàng " + i);
+        model.put("timeText", "1 ngày");
+        model.put("productName", "VF 8 Plus");
+        model.put("dealerName", "Showroom Thủ Đức");
+        model.put("dealerAddress", "12 Võ Văn Ngân, Thủ Đức");
+        model.put("scheduleDate", "20/10/2026");
+        model.put("scheduleTime", "09:30");
+        return model;
+    }
+}
@@ -0,0 +1,148 @@
+package com.lemon.supershop.swp391fa25evdm.order.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
+import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+import com.lemon.supershop.swp391fa25evdm.order.repository.OrderRepo;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.service.InventoryReservationService;
+
+/**
+ * Giao xe (DELIVERED) hủy hàng loạt các đơn khác cùng VIN / số máy.
+ *
+ * H2 không chạy được UPDATE ... OUTPUT ... FROM JOIN của SQL Server, nên cancelOtherOrdersForVehicle
+ * được thay bằng câu SELECT + UPDATE tương đương (cùng điều kiện, cùng tham số). Test kiểm tra
+ * OrderStatusHandlers truyền đúng tham số và đơn nào bị hủy / giữ nguyên.
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ OrderStatusMachine.class, OrderStatusHandlers.class })
+class CancelOtherOrdersForVehicleTest {
+
+    @MockitoSpyBean
+    private OrderRepo orderRepo;
+
+    @MockitoBean
+    private InventoryReservationService inventoryReservationService;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Autowired
+    private OrderStatusMachine orderStatusMachine;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void stubNativeUpdate() {
+        NamedParameterJdbcTemplate named = new NamedParameterJdbcTemplate(jdbcTemplate);
+        doAnswer(inv -> {
+            Map<String, Object> params = Map.of(
+                    "orderId", inv.getArgument(0),
+                    "vinNum", inv.getArgument(1),
+                    "engineNum", inv.getArgument(2),
+                    "note", inv.getArgument(3),
+                    "terminalStatuses", inv.<Collection<String>>getArgument(4));
+            List<Integer> ids = named.queryForList(
+                    "SELECT o.id FROM orders o JOIN product p ON p.id = o.product_id " +
+                    "WHERE o.id <> :orderId AND (p.vin = :vinNum OR p.engine = :engineNum) " +
+                    "AND (o.status IS NULL OR o.status NOT IN (:terminalStatuses))",
+                    params, Integer.class);
+            if (!ids.isEmpty()) {
+                named.update("UPDATE orders SET status = 'CANCELLED', ship_address = " +
+                             "CASE WHEN ship_address IS NULL OR ship_address = '' THEN :note " +
+                             "ELSE LEFT(ship_address || ' | ' || :note, 255) END WHERE id IN (:ids)",
+                        Map.<String, Object>of("note", inv.getArgument(3), "ids", ids));
+            }
+            return ids;
+        }).when(orderRepo).cancelOtherOrdersForVehicle(anyInt(), any(), any(), any(), anyCollection());
+    }
+
+    @Test
+    void deliveringCancelsOnlyOpenOrdersForTheSameVehicle() {
+        Product vehicle = persistProduct("VIN-001", "ENG-001");
+        Product otherVehicle = persistProduct("VIN-002", "ENG-002");
+
+        Order delivered = persistOrder(vehicle, OrderStatus.READY_FOR_DELIVERY, "12 Lê Lợi");
+        Order pending = persistOrder(vehicle, OrderStatus.PENDING, null);
+        Order depositPaid = persistOrder(vehicle, OrderStatus.DEPOSIT_PAID, "45 Hai Bà Trưng");
+        Order legacy = persistOrder(vehicle, null, "");
+        Order rejected = persistOrder(vehicle, OrderStatus.REJECTED, "Đại lý từ chối");
+        Order cancelled = persistOrder(vehicle, OrderStatus.CANCELLED, null);
+        Order otherPending = persistOrder(otherVehicle, OrderStatus.PENDING, null);
+        entityManager.flush();
+
+        OrderStatusChange change = orderStatusMachine.apply(delivered, OrderStatus.DELIVERED, null, null);
+        orderStatusMachine.prepare(change);
+        entityManager.flush();
+        entityManager.clear();
+
+        String note = "Xe đã được bán cho khách hàng khác (VIN: VIN-001, Số máy: ENG-001)";
+        assertThat(reload(pending).getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(reload(pending).getShipAddress()).isEqualTo(note);
+        assertThat(reload(depositPaid).getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(reload(depositPaid).getShipAddress()).isEqualTo("45 Hai Bà Trưng | " + note);
+        assertThat(reload(legacy).getStatus()).isEqualTo(OrderStatus.CANCELLED);
+
+        // Trạng thái kết thúc và xe khác giữ nguyên
+        assertThat(reload(rejected).getStatus()).isEqualTo(OrderStatus.REJECTED);
+        assertThat(reload(rejected).getShipAddress()).isEqualTo("Đại lý từ chối");
+        assertThat(reload(cancelled).getShipAddress()).isNull();
+        assertThat(reload(otherPending).getStatus()).isEqualTo(OrderStatus.PENDING);
+        assertThat(reload(delivered).getStatus()).isEqualTo(OrderStatus.DELIVERED);
+
+        verify(orderRepo).cancelOtherOrdersForVehicle(eq(delivered.getId()), eq("VIN-001"), eq("ENG-001"), eq(note),
+                argThat(statuses -> statuses.containsAll(List.of("DELIVERED", "REJECTED", "CANCELLED"))));
+    }
+
+    private Product persistProduct(String vin, String engine) {
+        Product product = new Product();
+        product.setName("VF 8 Plus");
+        product.setVinNum(vin);
+        product.setEngineNum(engine);
+        return entityManager.persist(product);
+    }
+
+    private Order persistOrder(Product product, OrderStatus status, String shipAddress) {
+        Order order = new Order();
+        order.setProduct(product);
+        order.setStatus(status);
+        order.setShipAddress(shipAddress);
+        return entityManager.persist(order);
+    }
+
+    private Order reload(Order order) {
+        return entityManager.find(Order.class, order.getId());
+    }
+}
@@ -0,0 +1,135 @@
+package com.lemon.supershop.swp391fa25evdm.order.service;
+
+import static com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+
+/**
+ * Bảng chuyển trạng thái đơn hàng (OrderStatus.next) và OrderStatusMachine: apply / prepare / fire,
+ * cùng bước chuẩn hóa nhãn tiếng Việt cũ trong orders.Status.
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(OrderStatusMachine.class)
+class OrderStatusMachineTest {
+
+    // Bảng mong đợi, viết lại độc lập với OrderStatus.next() để bắt thay đổi ngoài ý muốn
+    private static final Map<OrderStatus, Set<OrderStatus>> EXPECTED = new EnumMap<>(OrderStatus.class);
+    static {
+        EXPECTED.put(PENDING, EnumSet.of(APPROVED, AWAITING_DEPOSIT, DEPOSIT_PAID, REJECTED, CANCELLED));
+        EXPECTED.put(APPROVED, EnumSet.of(AWAITING_DEPOSIT, DEPOSIT_PAID, VEHICLE_REQUESTED, REJECTED, CANCELLED));
+        EXPECTED.put(AWAITING_DEPOSIT, EnumSet.of(DEPOSIT_PAID, VEHICLE_REQUESTED, REJECTED, CANCELLED));
+        EXPECTED.put(DEPOSIT_PAID, EnumSet.of(VEHICLE_REQUESTED, PREPARING, READY_FOR_DELIVERY, CANCELLED));
+        EXPECTED.put(VEHICLE_REQUESTED, EnumSet.of(PREPARING, READY_FOR_DELIVERY, CANCELLED));
+        EXPECTED.put(PREPARING, EnumSet.of(READY_FOR_DELIVERY, CANCELLED));
+        EXPECTED.put(READY_FOR_DELIVERY, EnumSet.of(DELIVERED, CANCELLED));
+        EXPECTED.put(DELIVERED, EnumSet.noneOf(OrderStatus.class));
+        EXPECTED.put(REJECTED, EnumSet.noneOf(OrderStatus.class));
+        EXPECTED.put(CANCELLED, EnumSet.noneOf(OrderStatus.class));
+    }
+
+    @Autowired
+    private OrderStatusMachine orderStatusMachine;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void applyFollowsTheTransitionTableForEveryPair() {
+        for (OrderStatus from : OrderStatus.values()) {
+            for (OrderStatus to : OrderStatus.values()) {
+                if (from == to) {
+                    continue;
+                }
+                Order order = orderIn(from);
+                if (EXPECTED.get(from).contains(to)) {
+                    OrderStatusChange change = orderStatusMachine.apply(order, to, null, null);
+                    assertThat(change.from()).as("%s -> %s", from, to).isEqualTo(from);
+                    assertThat(order.getStatus()).isEqualTo(to);
+                } else {
+                    assertThatThrownBy(() -> orderStatusMachine.apply(order, to, null, null))
+                            .as("%s -> %s", from, to)
+                            .isInstanceOf(ConflictException.class);
+                    assertThat(order.getStatus()).isEqualTo(from);
+                }
+            }
+        }
+    }
+
+    @Test
+    void terminalStatusesAreDeliveredRejectedAndCancelled() {
+        assertThat(OrderStatus.terminalNames()).containsExactlyInAnyOrder("DELIVERED", "REJECTED", "CANCELLED");
+        assertThat(PENDING.isTerminal()).isFalse();
+    }
+
+    @Test
+    void unchangedStatusIsNoTransitionAndLegacyOrderMayMoveAnywhere() {
+        assertThat(orderStatusMachine.apply(orderIn(PENDING), PENDING, null, null)).isNull();
+        assertThat(orderStatusMachine.apply(orderIn(PENDING), null, null, null)).isNull();
+
+        Order legacy = orderIn(null);
+        OrderStatusChange change = orderStatusMachine.apply(legacy, DELIVERED, null, "nhập tay");
+        assertThat(change.from()).isNull();
+        assertThat(change.notes()).isEqualTo("nhập tay");
+        assertThat(legacy.getStatus()).isEqualTo(DELIVERED);
+    }
+
+    @Test
+    void failingStepAbortsButFailingHandlerIsOnlyLogged() {
+        List<String> calls = new ArrayList<>();
+        orderStatusMachine.registerStep(PREPARING, change -> calls.add("step"));
+        orderStatusMachine.registerStep(PREPARING, change -> {
+            throw new ConflictException("xe đã được giữ");
+        });
+        orderStatusMachine.register(PREPARING, change -> {
+            throw new IllegalStateException("SMTP down");
+        });
+        orderStatusMachine.register(PREPARING, change -> calls.add("handler"));
+
+        OrderStatusChange change = orderStatusMachine.apply(orderIn(DEPOSIT_PAID), PREPARING, null, null);
+
+        assertThatThrownBy(() -> orderStatusMachine.prepare(change)).isInstanceOf(ConflictException.class);
+        orderStatusMachine.fire(change);
+        assertThat(calls).containsExactly("step", "handler");
+    }
+
+    @Test
+    void legacyVietnameseLabelsAreNormalizedToEnumNames() {
+        jdbcTemplate.update("INSERT INTO orders (status, total) VALUES (?, 0)", "Đã giao");
+        jdbcTemplate.update("INSERT INTO orders (status, total) VALUES (?, 0)", "Chưa đặt cọc");
+        jdbcTemplate.update("INSERT INTO orders (status, total) VALUES (?, 0)", "PENDING");
+
+        orderStatusMachine.normalizeLegacyStatuses();
+
+        assertThat(jdbcTemplate.queryForList("SELECT status FROM orders ORDER BY id", String.class))
+                .containsExactly("DELIVERED", "AWAITING_DEPOSIT", "PENDING");
+        assertThat(OrderStatus.parse("Đã từ chối")).isEqualTo(REJECTED);
+        assertThat(OrderStatus.parse("cancelled")).isEqualTo(CANCELLED);
+    }
+
+    private static Order orderIn(OrderStatus status) {
+        Order order = new Order();
+        order.setStatus(status);
+        return order;
+    }
+}
@@ -0,0 +1,245 @@
+package com.lemon.supershop.swp391fa25evdm.product.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.DealerCategory;
+import com.lemon.supershop.swp391fa25evdm.category.repository.DealerCategoryRepository;
+import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
+import com.lemon.supershop.swp391fa25evdm.dealer.repository.DealerRepo;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.order.model.entity.Order;
+import com.lemon.supershop.swp391fa25evdm.order.model.enums.OrderStatus;
+import com.lemon.supershop.swp391fa25evdm.order.repository.OrderRepo;
+import com.lemon.supershop.swp391fa25evdm.order.service.OrderStatusMachine;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.product.model.enums.ProductStatus;
+import com.lemon.supershop.swp391fa25evdm.product.repository.ProductRepo;
+
+/**
+ * Giữ xe cho đơn hàng trên H2: reserve / release / expire đi qua UPDATE có điều kiện (status + version),
+ * counter tồn kho của đại lý chỉ đổi khi transaction commit.
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ InventoryReservationService.class, DealerStockCounter.class, OrderStatusMachine.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryReservationServiceTest {
+
+    @Autowired
+    private InventoryReservationService reservationService;
+
+    @Autowired
+    private DealerStockCounter dealerStockCounter;
+
+    @MockitoSpyBean
+    private ProductRepo productRepo;
+
+    @Autowired
+    private OrderRepo orderRepo;
+
+    @Autowired
+    private DealerRepo dealerRepo;
+
+    @Autowired
+    private DealerCategoryRepository dealerCategoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+    private Dealer dealer;
+    private Product vehicle;
+
+    @BeforeEach
+    void setUpShowroom() {
+        tx = new TransactionTemplate(transactionManager);
+        // Mỗi test 1 đại lý riêng: DealerStockCounter sống cùng context
+        dealer = new Dealer();
+        dealer.setName("Showroom Quận 7");
+        dealer = dealerRepo.save(dealer);
+
+        DealerCategory dealerCategory = new DealerCategory();
+        dealerCategory.setName("Kho VF 8");
+        dealerCategory.setDealer(dealer);
+        dealerCategory = dealerCategoryRepository.save(dealerCategory);
+
+        vehicle = persistVehicle(dealerCategory, "A");
+        persistVehicle(dealerCategory, "B");
+        assertThat(dealerStockCounter.available(dealer.getId())).isEqualTo(2);
+    }
+
+    @AfterEach
+    void resetSpy() {
+        reset(productRepo);
+    }
+
+    @Test
+    void reserveMovesVehicleToReservedAndBumpsVersion() {
+        Order order = persistOrder(OrderStatus.AWAITING_DEPOSIT);
+        long version = reload(vehicle).getVersion();
+
+        tx.executeWithoutResult(status -> reservationService.reserve(vehicle, order));
+
+        Product reserved = reload(vehicle);
+        assertThat(reserved.getStatus()).isEqualTo(ProductStatus.RESERVED);
+        assertThat(reserved.getReservedOrderId()).isEqualTo(order.getId());
+        assertThat(reserved.getReservedUntil()).isAfter(LocalDateTime.now());
+        assertThat(reserved.getVersion()).isEqualTo(version + 1);
+        assertThat(dealerStockCounter.available(dealer.getId())).isEqualTo(1);
+
+        // Cùng đơn giữ lại → bỏ qua, không đổi version
+        tx.executeWithoutResult(status -> reservationService.reserve(vehicle, order));
+        assertThat(reload(vehicle).getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    void secondOrderCannotReserveTheSameVehicle() {
+        Order first = persistOrder(OrderStatus.PENDING);
+        Order second = persistOrder(OrderStatus.PENDING);
+        tx.executeWithoutResult(status -> reservationService.reserve(vehicle, first));
+
+        assertThatThrownBy(() -> tx.executeWithoutResult(status -> reservationService.reserve(vehicle, second)))
+                .isInstanceOf(ConflictException.class);
+
+        assertThat(reload(vehicle).getReservedOrderId()).isEqualTo(first.getId());
+        assertThat(reload(vehicle).getReservedUntil()).isNull();
+        assertThat(dealerStockCounter.available(dealer.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void staleVersionIsRereadAndRetried() {
+        Order order = persistOrder(OrderStatus.PENDING);
+        AtomicBoolean concurrentEdit = new AtomicBoolean(true);
+        // Spy của repository Spring Data (proxy) chuyển tiếp sang bean thật qua default answer
+        Answer<?> delegate = mockingDetails(productRepo).getMockCreationSettings().getDefaultAnswer();
+        // Lần UPDATE đầu: 1 request khác vừa sửa xe (version tăng) giữa lúc đọc và lúc giữ
+        doAnswer(inv -> {
+            if (concurrentEdit.getAndSet(false)) {
+                jdbcTemplate.update("UPDATE product SET version = version + 1 WHERE id = ?", vehicle.getId());
+            }
+            return delegate.answer(inv);
+        }).when(productRepo).reserve(anyInt(), anyLong(), anyInt(), any(), any(), any());
+
+        tx.executeWithoutResult(status -> reservationService.reserve(vehicle, order));
+
+        verify(productRepo, times(2)).reserve(eq(vehicle.getId()), anyLong(), eq(order.getId()), any(), any(), any());
+        assertThat(reload(vehicle).getReservedOrderId()).isEqualTo(order.getId());
+        assertThat(dealerStockCounter.available(dealer.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void rolledBackReservationLeavesStockCounterUntouched() {
+        Order order = persistOrder(OrderStatus.PENDING);
+
+        assertThatThrownBy(() -> tx.executeWithoutResult(status -> {
+            reservationService.reserve(vehicle, order);
+            throw new ConflictException("lưu đơn thất bại");
+        })).isInstanceOf(ConflictException.class);
+
+        assertThat(reload(vehicle).getStatus()).isEqualTo(ProductStatus.ACTIVE);
+        assertThat(dealerStockCounter.available(dealer.getId())).isEqualTo(2);
+    }
+
+    @Test
+    void releaseOnlyFreesTheHoldingOrder() {
+        Order holder = persistOrder(OrderStatus.PENDING);
+        Order other = persistOrder(OrderStatus.PENDING);
+        tx.executeWithoutResult(status -> reservationService.reserve(vehicle, holder));
+
+        tx.executeWithoutResult(status -> reservationService.release(other));
+        assertThat(reload(vehicle).getStatus()).isEqualTo(ProductStatus.RESERVED);
+
+        tx.executeWithoutResult(status -> reservationService.release(holder));
+        Product released = reload(vehicle);
+        assertThat(released.getStatus()).isEqualTo(ProductStatus.ACTIVE);
+        assertThat(released.getReservedOrderId()).isNull();
+        assertThat(dealerStockCounter.available(dealer.getId())).isEqualTo(2);
+    }
+
+    @Test
+    void expiredDepositHoldIsReleasedAndOrderCancelled() {
+        Order order = persistOrder(OrderStatus.AWAITING_DEPOSIT);
+        tx.executeWithoutResult(status -> reservationService.reserve(vehicle, order));
+        jdbcTemplate.update("UPDATE product SET reserved_until = ? WHERE id = ?",
+                LocalDateTime.now().minusMinutes(1), vehicle.getId());
+
+        tx.executeWithoutResult(status -> reservationService.expireReservations());
+
+        assertThat(reload(vehicle).getStatus()).isEqualTo(ProductStatus.ACTIVE);
+        Order cancelled = orderRepo.findById(order.getId()).orElseThrow();
+        assertThat(cancelled.getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(cancelled.getShipAddress()).contains("quá hạn đặt cọc");
+        assertThat(dealerStockCounter.available(dealer.getId())).isEqualTo(2);
+    }
+
+    @Test
+    void expiredHoldOfPaidOrderBecomesIndefinite() {
+        Order order = persistOrder(OrderStatus.AWAITING_DEPOSIT);
+        tx.executeWithoutResult(status -> reservationService.reserve(vehicle, order));
+        jdbcTemplate.update("UPDATE orders SET status = 'DEPOSIT_PAID' WHERE id = ?", order.getId());
+        jdbcTemplate.update("UPDATE product SET reserved_until = ? WHERE id = ?",
+                LocalDateTime.now().minusMinutes(1), vehicle.getId());
+
+        tx.executeWithoutResult(status -> reservationService.expireReservations());
+
+        Product kept = reload(vehicle);
+        assertThat(kept.getStatus()).isEqualTo(ProductStatus.RESERVED);
+        assertThat(kept.getReservedOrderId()).isEqualTo(order.getId());
+        assertThat(kept.getReservedUntil()).isNull();
+        assertThat(orderRepo.findById(order.getId()).orElseThrow().getStatus()).isEqualTo(OrderStatus.DEPOSIT_PAID);
+    }
+
+    private Product persistVehicle(DealerCategory dealerCategory, String suffix) {
+        Product product = new Product();
+        product.setName("VF 8 Eco");
+        product.setVinNum("VIN-" + dealerCategory.getId() + suffix);
+        product.setEngineNum("ENG-" + dealerCategory.getId() + suffix);
+        product.setStatus(ProductStatus.ACTIVE);
+        product.setDealerCategory(dealerCategory);
+        return productRepo.save(product);
+    }
+
+    private Order persistOrder(OrderStatus status) {
+        Order order = new Order();
+        order.setStatus(status);
+        order.setProduct(vehicle);
+        return orderRepo.save(order);
+    }
+
+    private Product reload(Product product) {
+        return productRepo.findById(product.getId()).orElseThrow();
+    }
+}
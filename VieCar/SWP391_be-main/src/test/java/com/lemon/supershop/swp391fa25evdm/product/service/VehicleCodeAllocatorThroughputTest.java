@@ -0,0 +1,107 @@
+package com.lemon.supershop.swp391fa25evdm.product.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Throughput của VehicleCodeAllocator trên sequence H2: nhiều thread cấp mã cùng lúc,
+ * mã không trùng và chỉ vào DB 1 lần cho mỗi block {@link VehicleCodeAllocator#BLOCK_SIZE} mã.
+ */
+@JdbcTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(VehicleCodeAllocator.class)
+// Không bọc test trong transaction: các thread cấp mã dùng connection riêng
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class VehicleCodeAllocatorThroughputTest {
+
+    private static final int THREADS = 8;
+    private static final int CODES_PER_THREAD = 25_000;
+
+    @MockitoSpyBean
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private VehicleCodeAllocator vehicleCodeAllocator;
+
+    @BeforeEach
+    void createCodeSequence() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS vehicle_code_seq AS BIGINT START WITH 1 INCREMENT BY "
+                             + VehicleCodeAllocator.BLOCK_SIZE);
+        clearInvocations(jdbcTemplate);
+    }
+
+    @Test
+    void concurrentAllocationIsUniqueAndHitsSequenceOncePerBlock(TestReporter reporter) throws Exception {
+        Set<String> codes = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < CODES_PER_THREAD; i++) {
+                        codes.add(vehicleCodeAllocator.nextCode());
+                    }
+                    return null;
+                }));
+            }
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            long elapsedMs = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+
+            int total = THREADS * CODES_PER_THREAD;
+            reporter.publishEntry("codes", String.valueOf(total));
+            reporter.publishEntry("elapsedMs", String.valueOf(elapsedMs));
+            reporter.publishEntry("codesPerMs", String.valueOf(total / elapsedMs));
+            System.out.println("📊 VehicleCodeAllocator: " + total + " codes / " + THREADS + " threads in "
+                               + elapsedMs + " ms (" + total / elapsedMs + " codes/ms)");
+
+            assertThat(codes).hasSize(total);
+            assertThat(codes).allSatisfy(code -> assertThat(code).hasSize(16).containsOnlyDigits());
+            // Block đang dở từ test trước (context dùng chung) có thể cần thêm 1 lần refill
+            int blocks = total / VehicleCodeAllocator.BLOCK_SIZE + 1;
+            verify(jdbcTemplate, atMost(blocks)).queryForObject(anyString(), eq(Long.class));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void intakeBlockOfThousandCodesNeedsAtMostTwoSequenceCalls() {
+        List<String> codes = vehicleCodeAllocator.nextCodes(VehicleCodeAllocator.BLOCK_SIZE);
+
+        assertThat(codes).doesNotHaveDuplicates().hasSize(VehicleCodeAllocator.BLOCK_SIZE);
+        verify(jdbcTemplate, atMost(2)).queryForObject(anyString(), eq(Long.class));
+    }
+}
@@ -0,0 +1,170 @@
+package com.lemon.supershop.swp391fa25evdm.promotion.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.DealerCategory;
+import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.promotion.model.dto.PromotionQuoteRes;
+import com.lemon.supershop.swp391fa25evdm.promotion.model.entity.Promotion;
+
+/**
+ * Báo giá khuyến mãi: cộng dồn PERCENT / AMOUNT theo phạm vi đại lý + dòng xe, GIFT không trừ giá,
+ * tổng giảm không vượt giá gốc (dealerPrice).
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ PromotionEngine.class, PromotionCache.class, PromotionChangeListener.class })
+class PromotionEngineTest {
+
+    private static final long DEALER_PRICE = 800_000_000L;
+
+    @Autowired
+    private PromotionEngine promotionEngine;
+
+    @Autowired
+    private PromotionCache promotionCache;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Category vf8;
+    private Category vf9;
+    private Dealer showroom;
+    private Dealer otherShowroom;
+    private Product vehicle;
+
+    @BeforeEach
+    void setUpShowroom() {
+        vf8 = persistCategory("VF 8", 1_050_000_000L);
+        vf9 = persistCategory("VF 9", 1_500_000_000L);
+        showroom = persistDealer("Showroom Quận 7");
+        otherShowroom = persistDealer("Showroom Hà Đông");
+
+        DealerCategory stock = new DealerCategory();
+        stock.setName("Kho VF 8");
+        stock.setDealer(showroom);
+        stock.setCategory(vf8);
+        entityManager.persist(stock);
+
+        vehicle = new Product();
+        vehicle.setName("VF 8 Plus");
+        vehicle.setVinNum("VIN-PROMO-1");
+        vehicle.setEngineNum("ENG-PROMO-1");
+        vehicle.setCategory(vf8);
+        vehicle.setDealerCategory(stock);
+        vehicle.setDealerPrice(DEALER_PRICE);
+        vehicle.setRetailPrice(950_000_000L);
+        entityManager.persist(vehicle);
+    }
+
+    @Test
+    void percentAndAmountStackAcrossScopesAndGiftsAreListedOnly() {
+        persistPromotion("Giảm 5% VF 8 tại showroom", "PERCENT", 5, showroom, vf8, null);
+        persistPromotion("Hỗ trợ lệ phí trước bạ", "AMOUNT", 10_000_000, null, null, null);
+        persistPromotion("Tặng bộ sạc", "Quà tặng", 3_000_000, showroom, null, null);
+        // Không thuộc phạm vi / không hiệu lực
+        persistPromotion("Giảm VF 9", "PERCENT", 10, null, vf9, null);
+        persistPromotion("Showroom khác", "AMOUNT", 20_000_000, otherShowroom, null, null);
+        persistPromotion("Đã tắt", "AMOUNT", 20_000_000, null, null, "INACTIVE");
+        Promotion ended = persistPromotion("Đã kết thúc", "AMOUNT", 20_000_000, null, null, null);
+        ended.setStartDate(daysFromNow(-10));
+        ended.setEndDate(daysFromNow(-1));
+        Promotion upcoming = persistPromotion("Sắp diễn ra", "AMOUNT", 20_000_000, null, null, null);
+        upcoming.setStartDate(daysFromNow(1));
+        reloadCache();
+
+        // dealerId null → lấy theo đại lý đang giữ xe
+        PromotionQuoteRes quote = promotionEngine.quote(vehicle, null);
+
+        assertThat(quote.getDealerId()).isEqualTo(showroom.getId());
+        assertThat(quote.getListPrice()).isEqualTo(DEALER_PRICE);
+        assertThat(quote.getApplied()).extracting(PromotionQuoteRes.Line::getAmount)
+                .containsExactlyInAnyOrder(40_000_000L, 10_000_000L);
+        assertThat(quote.getDiscount()).isEqualTo(50_000_000L);
+        assertThat(quote.getFinalPrice()).isEqualTo(750_000_000L);
+        assertThat(quote.getGifts()).singleElement()
+                .satisfies(gift -> assertThat(gift.getAmount()).isEqualTo(3_000_000L));
+    }
+
+    @Test
+    void totalDiscountIsCappedAtListPrice() {
+        persistPromotion("Xả kho 60%", "PERCENT", 60, showroom, vf8, null);
+        persistPromotion("Giảm thêm 50%", "PERCENT", 50, null, vf8, null);
+        persistPromotion("Giảm thẳng", "AMOUNT", 90_000_000, null, null, null);
+        reloadCache();
+
+        PromotionQuoteRes quote = promotionEngine.quote(vehicle, showroom.getId());
+
+        assertThat(quote.getDiscount()).isEqualTo(DEALER_PRICE);
+        assertThat(quote.getFinalPrice()).isZero();
+        assertThat(quote.getApplied()).hasSize(3)
+                .allSatisfy(line -> assertThat(line.getAmount()).isBetween(0L, DEALER_PRICE));
+        assertThat(quote.getApplied().stream().mapToLong(PromotionQuoteRes.Line::getAmount).sum())
+                .isEqualTo(DEALER_PRICE);
+    }
+
+    @Test
+    void categoryQuoteUsesBasePriceAndSystemWidePromotions() {
+        persistPromotion("Giảm 5% VF 8 tại showroom", "PERCENT", 5, showroom, vf8, null);
+        persistPromotion("Giảm 2% toàn quốc", "PERCENT", 2, null, vf9, null);
+        reloadCache();
+
+        PromotionQuoteRes quote = promotionEngine.quote(otherShowroom.getId(), null, vf9.getId());
+
+        assertThat(quote.getListPrice()).isEqualTo(1_500_000_000L);
+        assertThat(quote.getDiscount()).isEqualTo(30_000_000L);
+        assertThat(quote.getFinalPrice()).isEqualTo(1_470_000_000L);
+    }
+
+    // Thêm khuyến mãi chỉ invalidate sau commit; test chạy trong 1 transaction nên tự invalidate
+    private void reloadCache() {
+        entityManager.flush();
+        promotionCache.invalidate();
+    }
+
+    private Promotion persistPromotion(String name, String type, double value, Dealer dealer, Category category, String status) {
+        Promotion promotion = new Promotion();
+        promotion.setName(name);
+        promotion.setType(type);
+        promotion.setValue(value);
+        promotion.setStatus(status);
+        promotion.setStartDate(daysFromNow(-1));
+        promotion.setEndDate(daysFromNow(30));
+        promotion.setDealer(dealer);
+        promotion.setCategory(category);
+        return entityManager.persist(promotion);
+    }
+
+    private Category persistCategory(String name, long basePrice) {
+        Category category = new Category();
+        category.setName(name);
+        category.setBasePrice(basePrice);
+        return entityManager.persist(category);
+    }
+
+    private Dealer persistDealer(String name) {
+        Dealer dealer = new Dealer();
+        dealer.setName(name);
+        return entityManager.persist(dealer);
+    }
+
+    private static Date daysFromNow(int days) {
+        return Date.from(Instant.now().plus(Duration.ofDays(days)));
+    }
+}
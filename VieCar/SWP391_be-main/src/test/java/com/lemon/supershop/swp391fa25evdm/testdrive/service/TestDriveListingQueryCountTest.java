@@ -0,0 +1,170 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.lemon.supershop.swp391fa25evdm.category.model.entity.Category;
+import com.lemon.supershop.swp391fa25evdm.dealer.model.entity.Dealer;
+import com.lemon.supershop.swp391fa25evdm.dealer.service.DealerService;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
+import com.lemon.supershop.swp391fa25evdm.product.model.entity.Product;
+import com.lemon.supershop.swp391fa25evdm.role.model.entity.Role;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.TestDriveRes;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDrive;
+import com.lemon.supershop.swp391fa25evdm.testdrive.policy.TestDriveBookingPolicyEngine;
+import com.lemon.supershop.swp391fa25evdm.user.model.entity.User;
+import com.lemon.supershop.swp391fa25evdm.user.service.DealerStaffRosterCache;
+import com.lemon.supershop.swp391fa25evdm.user.service.UserService;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * TestDriveService.getAllTestDrive (findAllWithDetails + convertToRes) phải chạy cùng số statement
+ * dù danh sách có 50 hay 500 lịch - đọc quan hệ lazy theo từng dòng sẽ làm số statement tăng theo.
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ TestDriveService.class, UserService.class, DealerService.class })
+class TestDriveListingQueryCountTest {
+
+    // Collaborator không tham gia dựng danh sách
+    @MockitoBean
+    private EmailService emailService;
+    @MockitoBean
+    private TestDriveSlotIndex testDriveSlotIndex;
+    @MockitoBean
+    private DealerStaffRosterCache dealerStaffRosterCache;
+    @MockitoBean
+    private TestDriveBookingPolicyEngine testDriveBookingPolicyEngine;
+    @MockitoBean
+    private TestDriveReminderService testDriveReminderService;
+    @MockitoBean
+    private TestDriveCalendarFeedService testDriveCalendarFeedService;
+    @MockitoBean
+    private TestDriveSlotHoldService testDriveSlotHoldService;
+
+    @Autowired
+    private TestDriveService testDriveService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Role customerRole;
+    private final List<Dealer> dealers = new ArrayList<>();
+    private final List<Category> categories = new ArrayList<>();
+    private final List<Product> products = new ArrayList<>();
+    private final List<User> staff = new ArrayList<>();
+    private int booked;
+
+    @BeforeEach
+    void setUpShowroom() {
+        customerRole = persistRole("Customer");
+        Role staffRole = persistRole("Dealer Staff");
+        for (int c = 0; c < 4; c++) {
+            Category category = new Category();
+            category.setName("VF" + (c + 5));
+            categories.add(entityManager.persist(category));
+        }
+        for (int d = 0; d < 8; d++) {
+            Dealer dealer = new Dealer();
+            dealer.setName("Showroom " + d);
+            dealer.setAddress("Số " + d + " Nguyễn Văn Linh");
+            dealers.add(entityManager.persist(dealer));
+            staff.add(persistUser("staff" + d, staffRole, dealer));
+
+            // Mỗi showroom 1 xe lái thử cho mỗi dòng xe
+            for (Category category : categories) {
+                Product product = new Product();
+                product.setName(category.getName() + " demo " + d);
+                product.setVinNum("VIN-" + d + "-" + category.getName());
+                product.setEngineNum("ENG-" + d + "-" + category.getName());
+                product.setCategory(category);
+                products.add(entityManager.persist(product));
+            }
+        }
+    }
+
+    @Test
+    void listingStatementCountDoesNotDependOnRowCount() {
+        bookTestDrives(50);
+        long small = countListingStatements(50);
+
+        bookTestDrives(450);
+        long large = countListingStatements(500);
+
+        assertThat(large).as("statements for 500 test drives vs 50").isEqualTo(small);
+    }
+
+    // Mỗi lịch do 1 khách khác nhau đặt, xe / showroom / nhân viên hộ tống dùng chung
+    private void bookTestDrives(int count) {
+        for (int i = 0; i < count; i++, booked++) {
+            int d = booked % dealers.size();
+            Product product = products.get(booked % products.size());
+
+            TestDrive testDrive = new TestDrive();
+            testDrive.setScheduleDate(LocalDateTime.now().plusDays(1).plusMinutes(booked * 30L));
+            testDrive.setStatus("APPROVED");
+            testDrive.setUser(persistUser("customer" + booked, customerRole, null));
+            testDrive.setDealer(dealers.get(d));
+            testDrive.setProduct(product);
+            testDrive.setCategory(product.getCategory());
+            testDrive.setEscortStaff(staff.get(d));
+            entityManager.persist(testDrive);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private long countListingStatements(int expectedRows) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<TestDriveRes> listing = testDriveService.getAllTestDrive();
+
+        assertThat(listing).hasSize(expectedRows);
+        assertThat(listing).allSatisfy(res -> {
+            assertThat(res.getUser().getRole()).isEqualTo("Customer");
+            assertThat(res.getDealer().getAddress()).isNotBlank();
+            assertThat(res.getProductName()).isNotBlank();
+            assertThat(res.getCategoryName()).isNotBlank();
+            assertThat(res.getEscortStaff().getDealerName()).isNotBlank();
+        });
+        long statements = statistics.getPrepareStatementCount();
+        entityManager.clear();
+        return statements;
+    }
+
+    private Role persistRole(String name) {
+        Role role = new Role();
+        role.setName(name);
+        return entityManager.persist(role);
+    }
+
+    private User persistUser(String username, Role role, Dealer dealer) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@viecar.test");
+        user.setRole(role);
+        user.setDealer(dealer);
+        return entityManager.persist(user);
+    }
+}
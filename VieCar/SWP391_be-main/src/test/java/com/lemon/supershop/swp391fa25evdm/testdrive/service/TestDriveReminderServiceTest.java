@@ -0,0 +1,94 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lemon.supershop.swp391fa25evdm.email.repository.EmailOutboxRepository;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailOutboxService;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailService;
+import com.lemon.supershop.swp391fa25evdm.email.service.EmailTemplateEngine;
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveReminder;
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveReminderRepository;
+import com.lemon.supershop.swp391fa25evdm.testdrive.service.TestDriveReminderService.ReminderEmail;
+
+// Email nhắc vào outbox ⇔ reminder SENT (cùng 1 transaction)
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ TestDriveReminderService.class, EmailService.class, EmailOutboxService.class, EmailTemplateEngine.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TestDriveReminderServiceTest {
+
+    @Autowired
+    private TestDriveReminderService reminderService;
+
+    @Autowired
+    private TestDriveReminderRepository reminderRepository;
+
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+
+    @AfterEach
+    void cleanUp() {
+        reminderRepository.deleteAll();
+        outboxRepository.deleteAll();
+    }
+
+    @Test
+    void queueAllQueuesEmailsAndMarksBatchSent() {
+        TestDriveReminder first = leased("lease-1");
+        TestDriveReminder second = leased("lease-1");
+
+        int queued = reminderService.queueAll(List.of(emailFor(first), emailFor(second)));
+
+        assertThat(queued).isEqualTo(2);
+        assertThat(outboxRepository.countByStatus("PENDING")).isEqualTo(2);
+        assertThat(reminderRepository.findAll())
+                .allSatisfy(r -> {
+                    assertThat(r.getStatus()).isEqualTo("SENT");
+                    assertThat(r.getLeaseToken()).isNull();
+                });
+    }
+
+    @Test
+    void queueAllRollsBackEmailsWhenLeaseWasLost() {
+        TestDriveReminder kept = leased("lease-1");
+        TestDriveReminder lost = leased("lease-1");
+        List<ReminderEmail> batch = List.of(emailFor(kept), emailFor(lost));
+        // Lease hết hạn, node khác đã nhận lại reminder này
+        lost.setLeaseToken("lease-2");
+        reminderRepository.save(lost);
+
+        assertThatThrownBy(() -> reminderService.queueAll(batch))
+                .isInstanceOf(ConflictException.class);
+
+        assertThat(outboxRepository.count()).isZero();
+        assertThat(reminderRepository.findById(kept.getId()).orElseThrow().getStatus()).isEqualTo("SENDING");
+    }
+
+    private TestDriveReminder leased(String token) {
+        TestDriveReminder reminder = new TestDriveReminder(1, 24, LocalDateTime.now().plusDays(1));
+        reminder.setStatus("SENDING");
+        reminder.setLeaseToken(token);
+        return reminderRepository.save(reminder);
+    }
+
+    private ReminderEmail emailFor(TestDriveReminder reminder) {
+        return new ReminderEmail(reminder.getId(), reminder.getLeaseToken(), 1, "customer@viecar.test", "Khách",
+                "VF8", "Đại lý", "Hà Nội", "01/01/2027", "09:00", reminder.getHoursBefore());
+    }
+}
@@ -0,0 +1,138 @@
+package com.lemon.supershop.swp391fa25evdm.testdrive.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lemon.supershop.swp391fa25evdm.exception.ConflictException;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.dto.SlotHoldRes;
+import com.lemon.supershop.swp391fa25evdm.testdrive.model.entity.TestDriveSlotHold;
+import com.lemon.supershop.swp391fa25evdm.testdrive.repository.TestDriveSlotHoldRepository;
+
+/**
+ * Giữ chỗ khung giờ lái thử: trùng giữ chỗ, gia hạn, giữ chỗ từ instance khác (unique trong DB) và nhả giữ chỗ.
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ TestDriveSlotHoldService.class, TestDriveSlotIndex.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TestDriveSlotHoldServiceTest {
+
+    private static final int CUSTOMER = 11;
+    private static final int OTHER_CUSTOMER = 12;
+
+    // Bảng giữ chỗ trong bộ nhớ sống cùng context → mỗi test dùng 1 xe riêng
+    private static final AtomicInteger PRODUCT_IDS = new AtomicInteger(1000);
+
+    @Autowired
+    private TestDriveSlotHoldService holdService;
+
+    @Autowired
+    private TestDriveSlotHoldRepository holdRepository;
+
+    private final LocalDateTime tomorrowAtTen = LocalDate.now().plusDays(1).atTime(LocalTime.of(10, 15));
+
+    @AfterEach
+    void cleanUp() {
+        holdRepository.deleteAll();
+    }
+
+    @Test
+    void secondCustomerCannotHoldTheSameSlot() {
+        int productId = PRODUCT_IDS.incrementAndGet();
+        SlotHoldRes first = holdService.hold(productId, tomorrowAtTen, CUSTOMER);
+
+        assertThatThrownBy(() -> holdService.hold(productId, tomorrowAtTen.plusMinutes(30), OTHER_CUSTOMER))
+                .isInstanceOf(ConflictException.class);
+
+        assertThat(holdRepository.findAll()).singleElement()
+                .satisfies(h -> assertThat(h.getToken()).isEqualTo(first.getToken()));
+        assertThat(holdService.isHeldByOther(productId, tomorrowAtTen, tomorrowAtTen, OTHER_CUSTOMER)).isTrue();
+        assertThat(holdService.isHeldByOther(productId, tomorrowAtTen, tomorrowAtTen, CUSTOMER)).isFalse();
+    }
+
+    @Test
+    void sameCustomerRenewsAndKeepsToken() throws InterruptedException {
+        int productId = PRODUCT_IDS.incrementAndGet();
+        SlotHoldRes first = holdService.hold(productId, tomorrowAtTen, CUSTOMER);
+        Thread.sleep(20);
+
+        SlotHoldRes renewed = holdService.hold(productId, tomorrowAtTen, CUSTOMER);
+
+        assertThat(renewed.getToken()).isEqualTo(first.getToken());
+        assertThat(renewed.getSlotStart()).isEqualTo(first.getSlotStart());
+        assertThat(renewed.getExpiresAt()).isAfter(first.getExpiresAt());
+        assertThat(holdRepository.findAll()).singleElement()
+                .satisfies(h -> assertThat(h.getExpiresAt()).isAfter(first.getExpiresAt()));
+        assertThat(holdService.requireHold(renewed.getToken(), CUSTOMER, tomorrowAtTen)).isEqualTo(productId);
+    }
+
+    @Test
+    void holdFromAnotherInstanceIsRejectedByUniqueConstraint() {
+        int productId = PRODUCT_IDS.incrementAndGet();
+        SlotHoldRes local = holdService.hold(productId, tomorrowAtTen, CUSTOMER);
+        LocalDateTime slotStart = local.getSlotStart();
+        holdService.release(local.getToken());
+
+        // Instance khác đã ghi giữ chỗ còn hiệu lực cho cùng (xe, khung giờ)
+        persistHold(productId, slotStart, OTHER_CUSTOMER, LocalDateTime.now().plusMinutes(5));
+
+        assertThatThrownBy(() -> holdService.hold(productId, tomorrowAtTen, CUSTOMER))
+                .isInstanceOf(ConflictException.class);
+        // Giữ chỗ trong bộ nhớ bị gỡ lại, không chặn nhầm khách khác
+        assertThat(holdService.isHeldByOther(productId, tomorrowAtTen, tomorrowAtTen, OTHER_CUSTOMER)).isFalse();
+    }
+
+    @Test
+    void expiredHoldInDatabaseIsReplaced() {
+        int productId = PRODUCT_IDS.incrementAndGet();
+        SlotHoldRes probe = holdService.hold(productId, tomorrowAtTen, CUSTOMER);
+        holdService.release(probe.getToken());
+        persistHold(productId, probe.getSlotStart(), OTHER_CUSTOMER, LocalDateTime.now().minusMinutes(1));
+
+        SlotHoldRes hold = holdService.hold(productId, tomorrowAtTen, CUSTOMER);
+
+        assertThat(holdRepository.findAll()).singleElement()
+                .satisfies(h -> assertThat(h.getToken()).isEqualTo(hold.getToken()));
+    }
+
+    @Test
+    void releaseFreesTheSlotForOthers() {
+        int productId = PRODUCT_IDS.incrementAndGet();
+        SlotHoldRes hold = holdService.hold(productId, tomorrowAtTen, CUSTOMER);
+
+        assertThat(holdService.release(hold.getToken())).isTrue();
+
+        assertThat(holdRepository.findByToken(hold.getToken())).isEmpty();
+        assertThatThrownBy(() -> holdService.requireHold(hold.getToken(), CUSTOMER, tomorrowAtTen))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(holdService.hold(productId, tomorrowAtTen, OTHER_CUSTOMER).getToken()).isNotEqualTo(hold.getToken());
+    }
+
+    private void persistHold(int productId, LocalDateTime slotStart, int userId, LocalDateTime expiresAt) {
+        TestDriveSlotHold entity = new TestDriveSlotHold();
+        entity.setToken(UUID.randomUUID().toString());
+        entity.setProductId(productId);
+        entity.setSlotStart(slotStart);
+        entity.setUserId(userId);
+        entity.setExpiresAt(expiresAt);
+        entity.setCreatedAt(LocalDateTime.now());
+        holdRepository.save(entity);
+    }
+}